@@ -1,159 +1,726 @@
 package com.japg.mastermoviles.opengl10;
 
-import static android.opengl.GLES10.glBindTexture;
-import static android.opengl.GLES10.glClearColor;
-import static android.opengl.GLES10.glDrawArrays;
-import static android.opengl.GLES10.glGetIntegerv;
 import static android.opengl.GLES20.GL_MAX_TEXTURE_IMAGE_UNITS;
 import static android.opengl.GLES20.GL_MAX_VERTEX_TEXTURE_IMAGE_UNITS;
-import static android.opengl.GLES20.glEnableVertexAttribArray;
-import static android.opengl.GLES20.glGetAttribLocation;
-import static android.opengl.GLES20.glGetUniformLocation;
-import static android.opengl.GLES20.glUniform1f;
-import static android.opengl.GLES20.glUniform4f;
-import static android.opengl.GLES20.glUniformMatrix4fv;
-import static android.opengl.GLES20.glUseProgram;
-import static android.opengl.GLES20.glVertexAttribPointer;
-import static android.opengl.Matrix.multiplyMM;
-import static android.opengl.Matrix.rotateM;
-import static android.opengl.Matrix.setIdentityM;
-import static android.opengl.Matrix.translateM;
-
-import static javax.microedition.khronos.opengles.GL10.GL_FLOAT;
+
 import static javax.microedition.khronos.opengles.GL10.GL_TEXTURE_2D;
-import static javax.microedition.khronos.opengles.GL10.GL_TRIANGLES;
 
 import android.content.Context;
+import android.graphics.BitmapFactory;
 
-import com.japg.mastermoviles.opengl10.util.LoggerConfig;
-import com.japg.mastermoviles.opengl10.util.Resource3DSReader;
+import com.japg.mastermoviles.opengl10.util.AndroidResources;
+import com.japg.mastermoviles.opengl10.util.AssetLoader;
+import com.japg.mastermoviles.opengl10.util.Frustum;
+import com.japg.mastermoviles.opengl10.util.GLBackend;
+import com.japg.mastermoviles.opengl10.util.GLES20Backend;
+import com.japg.mastermoviles.opengl10.util.InstancedBuffers;
+import com.japg.mastermoviles.opengl10.util.MatrixHelper;
+import com.japg.mastermoviles.opengl10.util.ModelBatches;
+import com.japg.mastermoviles.opengl10.util.ModelBuffers;
+import com.japg.mastermoviles.opengl10.util.ModelCache;
+import com.japg.mastermoviles.opengl10.util.ModelInstances;
+import com.japg.mastermoviles.opengl10.util.ModelTransform;
+import com.japg.mastermoviles.opengl10.util.ResidencyManager;
+import com.japg.mastermoviles.opengl10.util.ResourceSource;
+import com.japg.mastermoviles.opengl10.util.SceneGraph;
 import com.japg.mastermoviles.opengl10.util.ShaderHelper;
-import com.japg.mastermoviles.opengl10.util.TextResourceReader;
+import com.japg.mastermoviles.opengl10.util.ShaderProgram;
 import com.japg.mastermoviles.opengl10.util.TextureHelper;
+import com.japg.mastermoviles.opengl10.util.VertexQuantizer;
 
-import java.nio.Buffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
-public class Model3D {
-    private final Context context;
+public class Model3D implements ResidencyManager.Resident {
+    // De dónde se leen el modelo, la textura y los shaders
+    private final ResourceSource resources;
+    private ShaderProgram program;
     private int uMVPMatrixLocation;
     private int uMVMatrixLocation;
     private int uColorLocation;
     private int uTextureUnitLocation;
+    private int uUVTransformLocation;
     private int aPositionLocation;
     private int aNormalLocation;
     private int aUVLocation;
     private final float[] modelViewProjectionMatrix = new float[16];
-    private static final int BYTES_PER_FLOAT = 4;
-    private static final int POSITION_COMPONENT_COUNT = 3;
-    private static final int NORMAL_COMPONENT_COUNT = 3;
-    private static final int UV_COMPONENT_COUNT = 2;
-    private static final int STRIDE = (POSITION_COMPONENT_COUNT + NORMAL_COMPONENT_COUNT + UV_COMPONENT_COUNT) * BYTES_PER_FLOAT;
-    private final Resource3DSReader modelData;
+    private volatile ModelBatches modelData;
+    private final ModelBuffers buffers;
+    private final GLBackend gl;
+    // Dibujo por instancias (enableInstancing): buffers, programa y si los buffers están
+    // preparados para el contexto actual
+    private InstancedBuffers instanced;
+    private ShaderProgram instancedProgram;
+    private boolean instancedPrepared;
     private int textureId;
+    private final int modelResource;
     private final int textureResource;
-    private float rotationX;
-    private float rotationY;
-    private float rotationZ;
-    private float destinationX;
-    private float destinationY;
+    // Opciones de lectura del modelo (ModelCache.FLAG_*)
+    private final int loadFlags;
+    private final AssetLoader loader;
+    private Future<ModelBatches> modelFuture;
+    private Future<ResourceSource.Image> textureFuture;
+    // Contexto de OpenGL para el que valen las subidas encoladas; las de uno anterior se descartan
+    private volatile int contextGeneration;
+    // Presupuesto de memoria (setResidencyManager): entrada del modelo, si está expulsado, y
+    // lectura vigente (las que terminen después de una expulsión se descartan)
+    private ResidencyManager residencyManager;
+    private ResidencyManager.Entry residency;
+    private boolean evicted;
+    private volatile int loadGeneration;
+    private volatile long parseNanos;
+    private volatile long decodeNanos;
+    private long uploadNanos;
+    // Rotación, traslación y nodo del grafo de escena; drawModel usa su matriz
+    private final ModelTransform transform;
     private final float[] modelMatrix = new float[16];
+    private boolean[] meshHidden;
+    private boolean[] meshHasTransform;
+    private float[] meshTransforms;
+    private final float[] meshModelMatrix = new float[16];
+    private final float[] meshModelViewProjectionMatrix = new float[16];
+    private final float[] meshScratchMatrix = new float[16];
+    // Planos del volumen de visión en el espacio del modelo y en el de una malla transformada,
+    // y mallas descartadas en el frame actual
+    private final float[] frustumPlanes = new float[Frustum.NUM_PLANES * Frustum.PLANE_FLOATS];
+    private final float[] meshFrustumPlanes = new float[Frustum.NUM_PLANES * Frustum.PLANE_FLOATS];
+    private boolean[] meshCulled;
+    private int culledMeshes;
+    private int drawnMeshes;
+    // Cambios de estado (programa, buffers de vértices) y enlaces de textura del último
+    // drawModel y del último drawInstanced
+    private int stateChanges;
+    private int textureBinds;
+    private int instancedStateChanges;
+    private int instancedTextureBinds;
+    // Vértices comprimidos: descompresión del lote actual y matrices con ella aplicada
+    private final float[] dequantMatrix = new float[16];
+    private final float[] batchModelMatrix = new float[16];
+    private final float[] batchModelViewProjectionMatrix = new float[16];
+    // Nivel de detalle con el que se dibuja (0 = completo)
+    private int lodLevel;
+
+    // Tamaño en pantalla (radio proyectado, en unidades de NDC) por debajo del cual se pasa
+    // de cada nivel al siguiente, y margen de histéresis para no alternar en el límite
+    private static final float[] LOD_SCREEN_SIZE = {0.5f, 0.25f, 0.125f};
+    private static final float LOD_HYSTERESIS = 0.1f;
+
+    // Opciones de lectura por defecto: índices, normales suavizadas, orden de triángulos
+    // optimizado para la caché de vértices y niveles de detalle
+    public static final int DEFAULT_LOAD_FLAGS = ModelCache.FLAG_INDEXED | ModelCache.FLAG_SMOOTH
+            | ModelCache.FLAG_CACHE_OPTIMIZED | ModelCache.FLAG_LOD;
 
     public Model3D(Context context, int modelResource, int textureResource, float initialRotationX, float initialRotationY, float initialRotationZ){
-        this.context = context;
-        this.rotationX = initialRotationX;
-        this.rotationY = initialRotationY;
-        this.rotationZ = initialRotationZ;
+        this(context, GLES20Backend.INSTANCE, modelResource, textureResource, initialRotationX, initialRotationY, initialRotationZ);
+    }
+
+    public Model3D(Context context, GLBackend gl, int modelResource, int textureResource, float initialRotationX, float initialRotationY, float initialRotationZ){
+        this(context, gl, null, modelResource, textureResource, DEFAULT_LOAD_FLAGS, initialRotationX, initialRotationY, initialRotationZ);
+    }
+
+    // Con un AssetLoader el modelo se lee y su textura se decodifica en segundo plano, y la
+    // subida a la GPU se reparte entre frames; mientras tanto drawModel no dibuja nada.
+    public Model3D(Context context, AssetLoader loader, int modelResource, int textureResource, float initialRotationX, float initialRotationY, float initialRotationZ){
+        this(context, GLES20Backend.INSTANCE, loader, modelResource, textureResource, DEFAULT_LOAD_FLAGS, initialRotationX, initialRotationY, initialRotationZ);
+    }
+
+    // loadFlags: opciones de ModelCache; con FLAG_QUANTIZED los vértices se comprimen a 16 bytes
+    public Model3D(Context context, AssetLoader loader, int modelResource, int textureResource, int loadFlags, float initialRotationX, float initialRotationY, float initialRotationZ){
+        this(context, GLES20Backend.INSTANCE, loader, modelResource, textureResource, loadFlags, initialRotationX, initialRotationY, initialRotationZ);
+    }
+
+    public Model3D(Context context, GLBackend gl, AssetLoader loader, int modelResource, int textureResource, int loadFlags, float initialRotationX, float initialRotationY, float initialRotationZ){
+        this(new AndroidResources(context), gl, loader, modelResource, textureResource, loadFlags, initialRotationX, initialRotationY, initialRotationZ);
+    }
+
+    // Con los recursos de otra ResourceSource (por ejemplo, fuera del dispositivo)
+    public Model3D(ResourceSource resources, GLBackend gl, AssetLoader loader, int modelResource, int textureResource, int loadFlags, float initialRotationX, float initialRotationY, float initialRotationZ){
+        this.resources = resources;
+        this.loadFlags = loadFlags;
+        this.gl = gl;
+        this.buffers = new ModelBuffers(gl);
+        this.loader = loader;
+        this.transform = new ModelTransform(initialRotationX, initialRotationY, initialRotationZ);
+        this.modelResource = modelResource;
         this.textureResource = textureResource;
-        this.modelData = new Resource3DSReader();
-        this.modelData.read3DSFromResource(context, modelResource);
+        if (loader == null) {
+            setModelData(parseModel(modelResource));
+            return;
+        }
+        submitModel();
+    }
+
+    // Lee el modelo en un hilo del pool y encola la subida de sus lotes
+    private void submitModel(){
+        final int load = loadGeneration;
+        this.modelFuture = loader.submit(new Callable<ModelBatches>() {
+            @Override
+            public ModelBatches call() {
+                ModelBatches batches = parseModel(modelResource);
+                // Expulsado mientras se leía: no se publica
+                if (load != loadGeneration) return batches;
+                setModelData(batches);
+                enqueueBatchUploads(batches, contextGeneration);
+                return batches;
+            }
+        });
+    }
+
+    private ModelBatches parseModel(int modelResource){
+        long start = System.nanoTime();
+        // Desde la caché binaria si está al día; si no se lee el 3DS y se guarda en ella
+        ModelBatches batches = ModelCache.load(resources, modelResource, loadFlags);
+        parseNanos = System.nanoTime() - start;
+        return batches;
+    }
+
+    // Publica el modelo leído; modelData es volatile, así que los arrays por malla quedan
+    // visibles para el hilo de OpenGL en cuanto vea modelData distinto de null.
+    // Al recargarlo tras una expulsión se conservan las mallas ocultas y transformadas.
+    private void setModelData(ModelBatches batches){
+        if (meshHidden == null || meshHidden.length != batches.numMeshes) {
+            this.meshHidden = new boolean[batches.numMeshes];
+            this.meshHasTransform = new boolean[batches.numMeshes];
+            this.meshCulled = new boolean[batches.numMeshes];
+            this.meshTransforms = new float[batches.numMeshes * 16];
+        }
+        this.modelData = batches;
+    }
+
+    // Encola la subida de cada lote a la GPU. Se llama tanto desde el hilo que lee el modelo
+    // como desde loadTexture(); lo que llegue primero prepara los buffers de ese contexto.
+    private void enqueueBatchUploads(final ModelBatches batches, final int generation){
+        for (int b=0; b<batches.numBatches; b++) {
+            final int batch = b;
+            final long bytes = ModelBuffers.batchBytes(batches, b);
+            loader.enqueueUpload(new AssetLoader.Upload() {
+                @Override
+                public long bytes() {
+                    return bytes;
+                }
+
+                @Override
+                public void upload() {
+                    if (generation != contextGeneration) return;
+                    long start = System.nanoTime();
+                    if (buffers.getBatchCount() != batches.numBatches) buffers.prepare(batches);
+                    buffers.uploadBatch(batch);
+                    uploadNanos += System.nanoTime() - start;
+                }
+            });
+        }
+    }
+
+    // Decodifica la textura en un hilo del pool y encola su subida
+    private void requestTexture(final int generation){
+        final BitmapFactory.Options options = TextureHelper.defaultOptions();
+        textureFuture = loader.submit(new Callable<ResourceSource.Image>() {
+            @Override
+            public ResourceSource.Image call() {
+                long start = System.nanoTime();
+                final ResourceSource.Image image = TextureHelper.decodeImage(resources, textureResource, options);
+                decodeNanos = System.nanoTime() - start;
+                if (image == null) return null;
+                loader.enqueueUpload(new AssetLoader.Upload() {
+                    @Override
+                    public long bytes() {
+                        return image.getByteCount();
+                    }
+
+                    @Override
+                    public void upload() {
+                        if (generation != contextGeneration || textureId != 0) {
+                            image.recycle();
+                            return;
+                        }
+                        long start = System.nanoTime();
+                        textureId = TextureHelper.acquireTexture(gl, textureResource, options, image);
+                        uploadNanos += System.nanoTime() - start;
+                    }
+                });
+                return image;
+            }
+        });
+    }
+
+    public Future<ModelBatches> getModelFuture(){
+        return modelFuture;
+    }
+
+    public Future<ResourceSource.Image> getTextureFuture(){
+        return textureFuture;
+    }
+
+    // Somete el modelo al presupuesto de memoria de manager: cuenta en él en cuanto está en
+    // la GPU y puede ser expulsado si hace tiempo que no se dibuja. En el hilo de OpenGL.
+    public void setResidencyManager(ResidencyManager manager){
+        if (residency != null) residencyManager.unregister(residency);
+        this.residencyManager = manager;
+        this.residency = manager != null ? manager.register(this) : null;
+    }
+
+    // Expulsión (desde ResidencyManager, en el hilo de OpenGL): libera los buffers y la
+    // textura en la GPU y suelta los lotes en memoria; se vuelve a cargar al dibujarlo.
+    @Override
+    public void evict(){
+        // Descarta la lectura y las subidas que estén en curso
+        loadGeneration++;
+        contextGeneration++;
+        this.buffers.release();
+        if (instanced != null) {
+            instanced.release();
+            instancedPrepared = false;
+        }
+        TextureHelper.releaseTexture(gl, this.textureId);
+        this.textureId = 0;
+        this.modelData = null;
+        this.evicted = true;
+    }
+
+    public boolean isEvicted(){
+        return evicted;
+    }
+
+    // Marca el modelo como usado en este frame, lo recarga si estaba expulsado y, cuando
+    // termina de cargarse, avisa al gestor de lo que ocupa
+    private void touchResidency(){
+        if (residency == null) return;
+        if (!residencyManager.touch(residency)) {
+            reload();
+        }
+        if (!residency.isLoaded() && isResident()) {
+            residencyManager.loaded(residency, residentBytes());
+        }
+    }
+
+    // Vuelve a cargar el modelo expulsado: de la caché binaria (o del 3DS) y su textura, en
+    // segundo plano si hay AssetLoader
+    private void reload(){
+        evicted = false;
+        if (loader == null) {
+            setModelData(parseModel(modelResource));
+            this.textureId = TextureHelper.acquireTexture(gl, resources, this.textureResource);
+            this.buffers.upload(modelData);
+            return;
+        }
+        this.uploadNanos = 0;
+        submitModel();
+        requestTexture(contextGeneration);
+    }
+
+    // Bytes que ocupa el modelo cargado: sus lotes en la GPU y en memoria, y su textura
+    // (entera, aunque la compartan otros modelos). No incluye los buffers de instancias.
+    private long residentBytes(){
+        final ModelBatches batches = modelData;
+        long bytes = TextureHelper.getTextureBytes(textureId);
+        for (int b=0; b<batches.numBatches; b++) {
+            bytes += 2 * ModelBuffers.batchBytes(batches, b);
+        }
+        return bytes;
+    }
+
+    // true cuando la geometría y la textura ya están en la GPU
+    public boolean isResident(){
+        return modelData != null && buffers.isUploaded() && textureId != 0;
+    }
+
+    // Tiempos de carga: lectura del modelo y decodificación (en el pool) y subidas (en el hilo de OpenGL)
+    public long getParseNanos(){
+        return parseNanos;
+    }
+
+    public long getDecodeNanos(){
+        return decodeNanos;
+    }
+
+    public long getUploadNanos(){
+        return uploadNanos;
+    }
+
+    // 0 mientras el modelo se está leyendo en segundo plano
+    public int getMeshCount(){
+        ModelBatches batches = modelData;
+        return batches == null ? 0 : batches.numMeshes;
+    }
+
+    public void setMeshVisible(int mesh, boolean visible){
+        if (modelData == null) return;
+        this.meshHidden[mesh] = !visible;
+    }
+
+    // Transformación propia de una malla, aplicada antes de la del modelo
+    public void setMeshTransform(int mesh, float[] transform, int offset){
+        if (modelData == null) return;
+        System.arraycopy(transform, offset, meshTransforms, mesh * 16, 16);
+        this.meshHasTransform[mesh] = true;
+    }
+
+    public void clearMeshTransform(int mesh){
+        if (modelData == null) return;
+        this.meshHasTransform[mesh] = false;
+    }
+
+    // Llamadas de dibujo emitidas en el último drawModel (y drawInstanced)
+    public int getDrawCalls(){
+        return buffers.getDrawCalls() + (instanced != null ? instanced.getDrawCalls() : 0);
+    }
+
+    // Triángulos dibujados en el último drawModel (y drawInstanced)
+    public int getTrianglesDrawn(){
+        return buffers.getTrianglesDrawn() + (instanced != null ? instanced.getTrianglesDrawn() : 0);
+    }
+
+    // Cambios de programa y de buffers de vértices en el último drawModel (y drawInstanced)
+    public int getStateChanges(){
+        return stateChanges + instancedStateChanges;
+    }
+
+    // Texturas enlazadas en el último drawModel (y drawInstanced)
+    public int getTextureBinds(){
+        return textureBinds + instancedTextureBinds;
+    }
+
+    // Activa el dibujo por instancias (drawInstanced) en el modo de InstancedBuffers que
+    // corresponda a la versión del contexto. Se llama antes de loadTexture() y necesita los
+    // vértices sin comprimir (sin FLAG_QUANTIZED).
+    public void enableInstancing(int mode){
+        if ((loadFlags & ModelCache.FLAG_QUANTIZED) != 0) {
+            throw new IllegalStateException("El dibujo por instancias necesita vértices sin comprimir");
+        }
+        this.instanced = new InstancedBuffers(gl, mode);
+    }
+
+    // Mallas descartadas por estar fuera del volumen de visión y mallas dibujadas en el último drawModel
+    public int getCulledMeshes(){
+        return culledMeshes;
+    }
+
+    public int getDrawnMeshes(){
+        return drawnMeshes;
+    }
+
+    // Nivel de detalle usado en el último drawModel
+    public int getLodLevel(){
+        return lodLevel;
+    }
+
+    // Asocia el modelo a un nodo del grafo de escena; a partir de aquí su rotación y
+    // traslación son relativas a las del padre del nodo
+    public void attach(SceneGraph scene, int node){
+        transform.attach(scene, node);
+    }
+
+    public int getSceneNode(){
+        return transform.getSceneNode();
+    }
+
+    public ModelTransform getTransform(){
+        return transform;
     }
 
     public void setDestination(float destinationX, float destinationY){
-        this.destinationX = destinationX;
-        this.destinationY = destinationY;
+        transform.setDestination(destinationX, destinationY);
     }
 
     public void updatePosition(float speed){
-        float differenceX = this.destinationX - this.rotationX;
-        float differenceY = this.destinationY - this.rotationY;
-
-        this.rotationX += differenceX * speed;
-        this.rotationY += differenceY * speed;
+        transform.updatePosition(speed);
     }
 
     public void rotateY(float rotationY){
-        this.destinationY += rotationY;
+        transform.rotateY(rotationY);
     }
 
     public void zoom(float rotationZ){
-        this.rotationZ += rotationZ;
+        transform.zoom(rotationZ);
     }
 
     public void loadTexture(){
-        String vertexShaderSource;
-        String fragmentShaderSource;
-
-        glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+        gl.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
         int[]	maxVertexTextureImageUnits = new int[1];
         int[]	maxTextureImageUnits       = new int[1];
 
-        glGetIntegerv(GL_MAX_VERTEX_TEXTURE_IMAGE_UNITS, maxVertexTextureImageUnits, 0);
-        glGetIntegerv(GL_MAX_TEXTURE_IMAGE_UNITS, maxTextureImageUnits, 0);
+        gl.glGetIntegerv(GL_MAX_VERTEX_TEXTURE_IMAGE_UNITS, maxVertexTextureImageUnits, 0);
+        gl.glGetIntegerv(GL_MAX_TEXTURE_IMAGE_UNITS, maxTextureImageUnits, 0);
 
+        // El programa se comparte con los demás modelos que usan los mismos shaders
+        boolean quantized = (loadFlags & ModelCache.FLAG_QUANTIZED) != 0;
         if (maxVertexTextureImageUnits[0]>0) {
-            vertexShaderSource = TextResourceReader.readTextFileFromResource(context, R.raw.specular_vertex_shader);
-            fragmentShaderSource = TextResourceReader.readTextFileFromResource(context, R.raw.specular_fragment_shader);
+            program = ShaderHelper.getProgram(gl, resources,
+                    quantized ? R.raw.specular_quantized_vertex_shader : R.raw.specular_vertex_shader,
+                    R.raw.specular_fragment_shader);
         } else {
-            vertexShaderSource = TextResourceReader.readTextFileFromResource(context, R.raw.specular_vertex_shader2);
-            fragmentShaderSource = TextResourceReader.readTextFileFromResource(context, R.raw.specular_fragment_shader2);
+            program = ShaderHelper.getProgram(gl, resources,
+                    quantized ? R.raw.specular_quantized_vertex_shader2 : R.raw.specular_vertex_shader2,
+                    R.raw.specular_fragment_shader2);
         }
 
-        int vertexShader = ShaderHelper.compileVertexShader(vertexShaderSource);
-        int fragmentShader = ShaderHelper.compileFragmentShader(fragmentShaderSource);
+        gl.glUseProgram(program.programId);
 
-        int program = ShaderHelper.linkProgram(vertexShader, fragmentShader);
+        uMVPMatrixLocation = program.uMVPMatrixLocation;
+        uMVMatrixLocation = program.uMVMatrixLocation;
+        uColorLocation = program.uColorLocation;
+        uTextureUnitLocation = program.uTextureUnitLocation;
+        uUVTransformLocation = program.uUVTransformLocation;
+        aPositionLocation = program.aPositionLocation;
+        gl.glEnableVertexAttribArray(aPositionLocation);
+        aNormalLocation = program.aNormalLocation;
+        gl.glEnableVertexAttribArray(aNormalLocation);
+        aUVLocation = program.aUVLocation;
+        gl.glEnableVertexAttribArray(aUVLocation);
 
-        if (LoggerConfig.ON) {
-            ShaderHelper.validateProgram(program);
+        if (instanced != null) {
+            boolean es3 = instanced.getMode() == InstancedBuffers.MODE_INSTANCED;
+            instancedProgram = ShaderHelper.getProgram(gl, resources,
+                    es3 ? R.raw.instanced_vertex_shader : R.raw.instanced_uniform_vertex_shader,
+                    es3 ? R.raw.instanced_fragment_shader : R.raw.instanced_uniform_fragment_shader);
+            instancedPrepared = false;
         }
 
-        glUseProgram(program);
+        // Expulsado: se carga cuando se vuelva a dibujar
+        if (evicted) return;
+        if (loader == null) {
+            this.textureId = TextureHelper.acquireTexture(gl, resources, this.textureResource);
+            this.buffers.upload(modelData);
+            return;
+        }
+        // Contexto nuevo: lo subido al anterior ya no existe y se vuelve a pedir todo
+        final int generation = ++contextGeneration;
+        this.textureId = 0;
+        this.uploadNanos = 0;
+        ModelBatches batches = modelData;
+        if (batches != null) {
+            buffers.prepare(batches);
+            enqueueBatchUploads(batches, generation);
+        }
+        requestTexture(generation);
+    }
 
-        uMVPMatrixLocation = glGetUniformLocation(program, "u_MVPMatrix");
-        uMVMatrixLocation = glGetUniformLocation(program, "u_MVMatrix");
-        uColorLocation = glGetUniformLocation(program, "u_Color");
-        uTextureUnitLocation = glGetUniformLocation(program, "u_TextureUnit");
-        aPositionLocation = glGetAttribLocation(program, "a_Position");
-        glEnableVertexAttribArray(aPositionLocation);
-        aNormalLocation = glGetAttribLocation(program, "a_Normal");
-        glEnableVertexAttribArray(aNormalLocation);
-        aUVLocation = glGetAttribLocation(program, "a_UV");
-        glEnableVertexAttribArray(aUVLocation);
-        this.textureId = TextureHelper.loadTexture(context, this.textureResource);
+    public void release(){
+        if (residency != null) residencyManager.unregister(residency);
+        this.buffers.release();
+        if (instanced != null) {
+            instanced.release();
+            instancedPrepared = false;
+        }
+        TextureHelper.releaseTexture(gl, this.textureId);
+        this.textureId = 0;
     }
 
     public void drawModel(float[] projectionMatrix) {
-        setIdentityM(modelMatrix, 0);
-        translateM(modelMatrix, 0, 0f, 0.0f, rotationZ);
-        rotateM(modelMatrix, 0, rotationY, 0f, 1f, 0f);
-        rotateM(modelMatrix, 0, rotationX, 1f, 0f, 0f);
-        multiplyMM(modelViewProjectionMatrix, 0, projectionMatrix, 0, modelMatrix, 0);
-        glUniformMatrix4fv(uMVPMatrixLocation, 1, false, modelViewProjectionMatrix, 0);
-        glUniformMatrix4fv(uMVMatrixLocation, 1, false, modelMatrix, 0);
-        glUniform4f(uColorLocation, 1.0f, 1.0f, 1.0f, 1.0f);
-        glBindTexture(GL_TEXTURE_2D, textureId);
-        glUniform1f(this.uTextureUnitLocation, 0);
-
-        for (int i=0; i<this.modelData.numMeshes; i++) {
-            final Buffer pos = this.modelData.dataBuffer[i].position(0);
-            glVertexAttribPointer(this.aPositionLocation, POSITION_COMPONENT_COUNT, GL_FLOAT, false, STRIDE, modelData.dataBuffer[i]);
-
-            this.modelData.dataBuffer[i].position(POSITION_COMPONENT_COUNT);
-            glVertexAttribPointer(aNormalLocation, NORMAL_COMPONENT_COUNT, GL_FLOAT, false, STRIDE, modelData.dataBuffer[i]);
-
-            this.modelData.dataBuffer[i].position(POSITION_COMPONENT_COUNT+ NORMAL_COMPONENT_COUNT);
-            glVertexAttribPointer(aUVLocation, NORMAL_COMPONENT_COUNT, GL_FLOAT, false, STRIDE, modelData.dataBuffer[i]);
-            glDrawArrays(GL_TRIANGLES, 0, this.modelData.numVertices[i]);
+        touchResidency();
+        final ModelBatches modelData = this.modelData;
+        stateChanges = 0;
+        textureBinds = 0;
+        if (modelData == null || buffers.getBatchCount() == 0) return;
+
+        loadModelMatrix();
+        MatrixHelper.multiply(modelViewProjectionMatrix, 0, projectionMatrix, 0, modelMatrix, 0);
+        cullMeshes(modelData);
+        gl.glUseProgram(program.programId);
+        stateChanges++;
+        gl.glUniformMatrix4fv(uMVPMatrixLocation, 1, false, modelViewProjectionMatrix, 0);
+        gl.glUniformMatrix4fv(uMVMatrixLocation, 1, false, modelMatrix, 0);
+        gl.glUniform4f(uColorLocation, 1.0f, 1.0f, 1.0f, 1.0f);
+        gl.glBindTexture(GL_TEXTURE_2D, textureId);
+        textureBinds++;
+        gl.glUniform1f(this.uTextureUnitLocation, 0);
+
+        selectLevel(modelData, projectionMatrix);
+        buffers.resetDrawCalls();
+        for (int b=0; b<modelData.numBatches; b++) {
+            // Los lotes aparecen según se van subiendo
+            if (!buffers.isBatchUploaded(b)) continue;
+            buffers.bind(b, aPositionLocation, aNormalLocation, aUVLocation);
+            stateChanges++;
+            if (modelData.isQuantized()) {
+                loadBatchMatrices(modelData, b, projectionMatrix);
+            }
+            drawBatch(b, projectionMatrix);
+        }
+        buffers.unbind();
+    }
+
+    private void loadModelMatrix(){
+        transform.loadModelMatrix(modelMatrix, 0);
+    }
+
+    // Dibuja instances.getCount() copias del modelo, cada una con su matriz relativa a la del
+    // modelo: una llamada por lote con OpenGL ES 3.0, o una por cada
+    // InstancedBuffers.MAX_UNIFORM_INSTANCES copias con 2.0. Todas con el mismo nivel de
+    // detalle, el de la copia más cercana, y sin ocultar ni transformar mallas.
+    public void drawInstanced(float[] projectionMatrix, ModelInstances instances) {
+        touchResidency();
+        final ModelBatches modelData = this.modelData;
+        final ShaderProgram shader = instancedProgram;
+        final int count = instances.getCount();
+        instanced.resetDrawCalls();
+        instancedStateChanges = 0;
+        instancedTextureBinds = 0;
+        if (modelData == null || buffers.getBatchCount() == 0 || count == 0) return;
+        if (!instancedPrepared) {
+            instanced.prepare(modelData);
+            instancedPrepared = true;
+        }
+
+        loadModelMatrix();
+        selectInstancedLevel(modelData, projectionMatrix, instances);
+        gl.glUseProgram(shader.programId);
+        instancedStateChanges++;
+        gl.glUniformMatrix4fv(shader.uProjectionMatrixLocation, 1, false, projectionMatrix, 0);
+        gl.glUniformMatrix4fv(shader.uMVMatrixLocation, 1, false, modelMatrix, 0);
+        gl.glUniform4f(shader.uColorLocation, 1.0f, 1.0f, 1.0f, 1.0f);
+        gl.glBindTexture(GL_TEXTURE_2D, textureId);
+        instancedTextureBinds++;
+        gl.glUniform1i(shader.uTextureUnitLocation, 0);
+        gl.glEnableVertexAttribArray(shader.aPositionLocation);
+        gl.glEnableVertexAttribArray(shader.aNormalLocation);
+        gl.glEnableVertexAttribArray(shader.aUVLocation);
+
+        if (instanced.getMode() == InstancedBuffers.MODE_INSTANCED) {
+            instanced.uploadInstances(instances);
+            for (int b=0; b<modelData.numBatches; b++) {
+                if (!buffers.isBatchUploaded(b)) continue;
+                buffers.bind(b, shader.aPositionLocation, shader.aNormalLocation, shader.aUVLocation);
+                instanced.bindInstanceMatrices(shader.aInstanceMatrixLocation);
+                instancedStateChanges += 2;
+                instanced.drawInstanced(b, lodLevel, count);
+            }
+            instanced.unbindInstanceMatrices(shader.aInstanceMatrixLocation);
+        } else {
+            for (int b=0; b<modelData.numBatches; b++) {
+                if (!buffers.isBatchUploaded(b)) continue;
+                instanced.bindCopies(b, shader.aPositionLocation, shader.aNormalLocation,
+                        shader.aUVLocation, shader.aInstanceIndexLocation);
+                instancedStateChanges++;
+                final int copies = instanced.getCopies(b);
+                for (int first=0; first<count; first+=copies) {
+                    final int n = Math.min(copies, count - first);
+                    gl.glUniformMatrix4fv(shader.uInstanceMatricesLocation, n, false,
+                            instances.matrices, first * ModelInstances.MATRIX_FLOATS);
+                    instanced.drawCopies(b, lodLevel, n);
+                }
+            }
+            instanced.unbindCopies(shader.aInstanceIndexLocation);
+        }
+        buffers.unbind();
+    }
+
+    // Nivel de detalle de las instancias: el que correspondería a la más cercana
+    private void selectInstancedLevel(ModelBatches modelData, float[] projectionMatrix, ModelInstances instances){
+        final float[] bounds = modelData.bounds;
+        final float[] m = instances.matrices;
+        float nearest = Float.MAX_VALUE;
+
+        for (int i=0; i<instances.getCount(); i++) {
+            final int o = i * ModelInstances.MATRIX_FLOATS;
+            final float x = m[o] * bounds[0] + m[o + 4] * bounds[1] + m[o + 8] * bounds[2] + m[o + 12];
+            final float y = m[o + 1] * bounds[0] + m[o + 5] * bounds[1] + m[o + 9] * bounds[2] + m[o + 13];
+            final float z = m[o + 2] * bounds[0] + m[o + 6] * bounds[1] + m[o + 10] * bounds[2] + m[o + 14];
+            final float distance = -(modelMatrix[2] * x + modelMatrix[6] * y + modelMatrix[10] * z + modelMatrix[14]);
+            if (distance < nearest) nearest = distance;
+        }
+        selectLevel(modelData, projectionMatrix, nearest);
+    }
+
+    // Marca las mallas sin transformación propia que quedan fuera del volumen de visión
+    // (las transformadas se prueban en drawBatch con su matriz)
+    private void cullMeshes(ModelBatches modelData){
+        Frustum.extractPlanes(modelViewProjectionMatrix, 0, frustumPlanes);
+        culledMeshes = 0;
+        drawnMeshes = 0;
+        for (int m=0; m<modelData.numMeshes; m++) {
+            meshCulled[m] = !meshHidden[m] && !meshHasTransform[m]
+                    && Frustum.meshOutside(frustumPlanes, modelData.meshBounds, m * ModelBatches.MESH_BOUNDS_FLOATS);
+            if (meshCulled[m]) culledMeshes++;
+        }
+    }
+
+    // Elige el nivel de detalle por el tamaño proyectado de la esfera del modelo: su radio
+    // por la escala vertical de la proyección entre la distancia a la cámara
+    private void selectLevel(ModelBatches modelData, float[] projectionMatrix){
+        final float[] bounds = modelData.bounds;
+        selectLevel(modelData, projectionMatrix, -(modelMatrix[2] * bounds[0] + modelMatrix[6] * bounds[1]
+                + modelMatrix[10] * bounds[2] + modelMatrix[14]));
+    }
+
+    // Igual, con la distancia a la cámara (profundidad) del centro de la esfera ya calculada
+    private void selectLevel(ModelBatches modelData, float[] projectionMatrix, float distance){
+        final float[] bounds = modelData.bounds;
+        final int maxLevel = Math.min(modelData.numLevels, LOD_SCREEN_SIZE.length + 1) - 1;
+
+        if (distance <= bounds[3]) {
+            // Cámara dentro de la esfera (o detrás): todo el detalle
+            lodLevel = 0;
+            return;
+        }
+        final float size = bounds[3] * projectionMatrix[5] / distance;
+        if (lodLevel > maxLevel) lodLevel = maxLevel;
+        while (lodLevel < maxLevel && size < LOD_SCREEN_SIZE[lodLevel] * (1 - LOD_HYSTERESIS)) {
+            lodLevel++;
+        }
+        while (lodLevel > 0 && size > LOD_SCREEN_SIZE[lodLevel - 1] * (1 + LOD_HYSTERESIS)) {
+            lodLevel--;
+        }
+    }
+
+    // Vértices comprimidos: la descompresión del lote se multiplica por las matrices del modelo
+    private void loadBatchMatrices(ModelBatches modelData, int batch, float[] projectionMatrix){
+        final int offset = batch * VertexQuantizer.DEQUANT_FLOATS;
+        VertexQuantizer.dequantMatrix(dequantMatrix, 0, modelData.batchDequant, offset);
+        MatrixHelper.multiply(batchModelMatrix, 0, modelMatrix, 0, dequantMatrix, 0);
+        MatrixHelper.multiply(batchModelViewProjectionMatrix, 0, projectionMatrix, 0, batchModelMatrix, 0);
+        gl.glUniformMatrix4fv(uMVPMatrixLocation, 1, false, batchModelViewProjectionMatrix, 0);
+        gl.glUniformMatrix4fv(uMVMatrixLocation, 1, false, batchModelMatrix, 0);
+        gl.glUniform4f(uUVTransformLocation, modelData.batchDequant[offset + 6], modelData.batchDequant[offset + 7],
+                modelData.batchDequant[offset + 4], modelData.batchDequant[offset + 5]);
+    }
+
+    // Dibuja en una llamada cada tramo de mallas visibles sin transformación propia;
+    // las mallas transformadas se dibujan después, una a una, con su matriz.
+    // Las mallas fuera del volumen de visión cortan los tramos igual que las ocultas.
+    private void drawBatch(int batch, float[] projectionMatrix){
+        final int firstSlot = modelData.batchFirstSlot[batch];
+        final int endSlot = firstSlot + modelData.batchSlotCount[batch];
+        int runStart = -1;
+        boolean transformed = false;
+
+        for (int s=firstSlot; s<endSlot; s++) {
+            final int mesh = modelData.slotMesh[s];
+            if (!meshHidden[mesh] && !meshHasTransform[mesh] && !meshCulled[mesh]) {
+                if (runStart < 0) runStart = s;
+                drawnMeshes++;
+            } else {
+                if (runStart >= 0) buffers.drawSlots(batch, lodLevel, runStart, s - 1);
+                runStart = -1;
+                transformed |= !meshHidden[mesh];
+            }
+        }
+        if (runStart >= 0) buffers.drawSlots(batch, lodLevel, runStart, endSlot - 1);
+
+        if (!transformed) return;
+        final boolean quantized = modelData.isQuantized();
+        for (int s=firstSlot; s<endSlot; s++) {
+            final int mesh = modelData.slotMesh[s];
+            if (meshHidden[mesh] || !meshHasTransform[mesh]) continue;
+            MatrixHelper.multiply(meshModelMatrix, 0, modelMatrix, 0, meshTransforms, mesh * 16);
+            MatrixHelper.multiply(meshModelViewProjectionMatrix, 0, projectionMatrix, 0, meshModelMatrix, 0);
+            Frustum.extractPlanes(meshModelViewProjectionMatrix, 0, meshFrustumPlanes);
+            if (Frustum.meshOutside(meshFrustumPlanes, modelData.meshBounds, mesh * ModelBatches.MESH_BOUNDS_FLOATS)) {
+                culledMeshes++;
+                continue;
+            }
+            if (quantized) {
+                MatrixHelper.multiply(meshScratchMatrix, 0, meshModelMatrix, 0, dequantMatrix, 0);
+                System.arraycopy(meshScratchMatrix, 0, meshModelMatrix, 0, 16);
+                MatrixHelper.multiply(meshScratchMatrix, 0, meshModelViewProjectionMatrix, 0, dequantMatrix, 0);
+                System.arraycopy(meshScratchMatrix, 0, meshModelViewProjectionMatrix, 0, 16);
+            }
+            drawnMeshes++;
+            gl.glUniformMatrix4fv(uMVPMatrixLocation, 1, false, meshModelViewProjectionMatrix, 0);
+            gl.glUniformMatrix4fv(uMVMatrixLocation, 1, false, meshModelMatrix, 0);
+            buffers.drawSlots(batch, lodLevel, s, s);
         }
+        gl.glUniformMatrix4fv(uMVPMatrixLocation, 1, false, quantized ? batchModelViewProjectionMatrix : modelViewProjectionMatrix, 0);
+        gl.glUniformMatrix4fv(uMVMatrixLocation, 1, false, quantized ? batchModelMatrix : modelMatrix, 0);
     }
 }
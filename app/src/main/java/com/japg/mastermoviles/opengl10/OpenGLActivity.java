@@ -15,34 +15,57 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.FrameLayout;
 import android.widget.ImageButton;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.japg.mastermoviles.opengl10.util.AndroidLogSink;
+import com.japg.mastermoviles.opengl10.util.InputQueue;
+import com.japg.mastermoviles.opengl10.util.Logger;
+import com.japg.mastermoviles.opengl10.util.LoggerConfig;
+
 public class OpenGLActivity extends AppCompatActivity {
 	private ImageButton leftBtn;
 	private ImageButton rightBtn;
 	private OpenGLRenderer renderer;
+	// Cola de eventos del renderer: encolar no reserva memoria, a diferencia de queueEvent()
+	private InputQueue input;
 	private View layout;
 	private GLSurfaceView glSurfaceView;
 	private boolean rendererSet = false;
 	private float dstX = 1f;
 	private float dstY = 1f;
 
+	// HUD con los tiempos de los últimos frames (en depuración), refrescada cada HUD_PERIOD_MS
+	private static final long HUD_PERIOD_MS = 500;
+	private TextView hud;
+	private final Runnable hudUpdater = new Runnable() {
+		@Override
+		public void run() {
+			hud.setText(renderer.getMetrics().summary());
+			hud.postDelayed(this, HUD_PERIOD_MS);
+		}
+	};
+
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
+		Logger.setSink(AndroidLogSink.INSTANCE);
 
 		layout = LayoutInflater.from(this).inflate(R.layout.activity_main, null);
 		leftBtn = layout.findViewById(R.id.left_btn);
 		rightBtn = layout.findViewById(R.id.right_btn);
-		leftBtn.setOnClickListener(v -> glSurfaceView.queueEvent(() -> renderer.rotateHeadLeft()));
-		rightBtn.setOnClickListener(v -> glSurfaceView.queueEvent(() -> renderer.rotateHeadRight()));
+		leftBtn.setOnClickListener(v -> input.push(InputQueue.ROTATE_LEFT));
+		rightBtn.setOnClickListener(v -> input.push(InputQueue.ROTATE_RIGHT));
 
 		glSurfaceView = new GLSurfaceView(this);
-		renderer = new OpenGLRenderer(this);
 		final ActivityManager activityManager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
 		final ConfigurationInfo configurationInfo = activityManager.getDeviceConfigurationInfo();
+		// Con OpenGL ES 3.0 la multitud se dibuja con glDraw*Instanced
+		final int glesVersion = configurationInfo.reqGlEsVersion >= 0x30000 ? 3 : 2;
+		renderer = new OpenGLRenderer(this, glesVersion);
+		input = renderer.getInputQueue();
 
 		//final boolean supportsEs2 = configurationInfo.reqGlEsVersion >= 0x20000;
 		final boolean supportsEs2 = configurationInfo.reqGlEsVersion >= 0x20000
@@ -53,14 +76,14 @@ public class OpenGLActivity extends AppCompatActivity {
 				|| Build.MODEL.contains("Android SDK built for x86");
 
 		if (supportsEs2) {
-			// Request OpenGL 2.0 compatible context.
-			glSurfaceView.setEGLContextClientVersion(2);
+			// Request OpenGL 2.0 (or 3.0) compatible context.
+			glSurfaceView.setEGLContextClientVersion(glesVersion);
 			// Para que funcione en el emulador
 			glSurfaceView.setEGLConfigChooser(8, 8, 8, 8, 16, 0);
 			// Asigna nuestro renderer.
 			glSurfaceView.setRenderer(renderer);
 			rendererSet = true;
-			Toast.makeText(this, "OpenGL ES 2.0 soportado", LENGTH_LONG).show();
+			Toast.makeText(this, "OpenGL ES " + glesVersion + ".0 soportado", LENGTH_LONG).show();
 		} else {
 			Toast.makeText(this, "Este dispositivo no soporta OpenGL ES 2.0", LENGTH_LONG).show();
 			return;
@@ -72,13 +95,13 @@ public class OpenGLActivity extends AppCompatActivity {
 				final float normalizedY = -((event.getY() / (float) v.getHeight()) * 2 - 1);
 
 				if (event.getAction() == MotionEvent.ACTION_DOWN) {
-					glSurfaceView.queueEvent(() -> renderer.handleTouchPress(normalizedX, normalizedY));
+					input.push(InputQueue.TOUCH_PRESS, normalizedX, normalizedY);
 
 					dstX = normalizedX;
 					dstY = normalizedY;
 
 				} else if (event.getAction() == MotionEvent.ACTION_MOVE) {
-					glSurfaceView.queueEvent(() -> renderer.handleTouchDrag(normalizedX, normalizedY));
+					input.push(InputQueue.TOUCH_DRAG, normalizedX, normalizedY);
 
 					if (event.getPointerCount() == 2) {
 						float secondFingerX = (event.getX(1) / (float) v.getWidth()) * 2 - 1;
@@ -88,12 +111,12 @@ public class OpenGLActivity extends AppCompatActivity {
 
 						if (Math.abs(distanceOld) < Math.abs(distanceNew)) {
 							float zoomFactor = (distanceNew - distanceOld) * 10;
-							glSurfaceView.queueEvent(() -> renderer.handleZoomOut(zoomFactor));
+							input.push(InputQueue.ZOOM_OUT, zoomFactor, 0f);
 						}
 
 						if (Math.abs(distanceOld) > Math.abs(distanceNew)) {
 							float zoomFactor = (distanceOld - distanceNew) * 10;
-							glSurfaceView.queueEvent(() -> renderer.handleZoomIn(zoomFactor));
+							input.push(InputQueue.ZOOM_IN, zoomFactor, 0f);
 						}
 						dstX = normalizedX;
 						dstY = normalizedY;
@@ -110,6 +133,15 @@ public class OpenGLActivity extends AppCompatActivity {
 		FrameLayout parent = (FrameLayout) glSurfaceView.getParent();
 		parent.addView(layout, new FrameLayout.LayoutParams(
 				ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.BOTTOM));
+
+		if (LoggerConfig.ON) {
+			hud = new TextView(this);
+			hud.setTextColor(0xFFFFFFFF);
+			hud.setBackgroundColor(0x80000000);
+			hud.setTextSize(12);
+			parent.addView(hud, new FrameLayout.LayoutParams(
+					ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.TOP | Gravity.START));
+		}
 	}
 
 	@Override
@@ -118,6 +150,9 @@ public class OpenGLActivity extends AppCompatActivity {
     	if (rendererSet) {
     		glSurfaceView.onPause();
     	}
+    	if (hud != null) {
+    		hud.removeCallbacks(hudUpdater);
+    	}
     }
     		
     @Override
@@ -126,6 +161,9 @@ public class OpenGLActivity extends AppCompatActivity {
     	if (rendererSet) {
     		glSurfaceView.onResume();
     	}
+    	if (hud != null) {
+    		hud.post(hudUpdater);
+    	}
     }
 
 	private float getDistance(float x1, float y1, float x2, float y2) {
@@ -4,8 +4,25 @@ import android.content.Context;
 import android.opengl.GLSurfaceView.Renderer;
 import android.util.Log;
 
+import com.japg.mastermoviles.opengl10.util.AllocationTracker;
+import com.japg.mastermoviles.opengl10.util.AndroidResources;
+import com.japg.mastermoviles.opengl10.util.AssetLoader;
+import com.japg.mastermoviles.opengl10.util.FrameMetrics;
+import com.japg.mastermoviles.opengl10.util.GLBackend;
+import com.japg.mastermoviles.opengl10.util.GLES20Backend;
+import com.japg.mastermoviles.opengl10.util.GLTimerQuery;
+import com.japg.mastermoviles.opengl10.util.InputQueue;
+import com.japg.mastermoviles.opengl10.util.InstancedBuffers;
 import com.japg.mastermoviles.opengl10.util.LoggerConfig;
+import com.japg.mastermoviles.opengl10.util.ModelCache;
+import com.japg.mastermoviles.opengl10.util.ModelInstances;
+import com.japg.mastermoviles.opengl10.util.Projection;
+import com.japg.mastermoviles.opengl10.util.ResidencyManager;
 import com.japg.mastermoviles.opengl10.util.Resource3DSReader;
+import com.japg.mastermoviles.opengl10.util.ResourceSource;
+import com.japg.mastermoviles.opengl10.util.SceneGraph;
+import com.japg.mastermoviles.opengl10.util.ShaderHelper;
+import com.japg.mastermoviles.opengl10.util.TextureHelper;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -15,14 +32,8 @@ import static android.opengl.GLES20.GL_CULL_FACE;
 import static android.opengl.GLES20.GL_DEPTH_BUFFER_BIT;
 import static android.opengl.GLES20.GL_DEPTH_TEST;
 import static android.opengl.GLES20.GL_TEXTURE0;
-import static android.opengl.GLES20.glActiveTexture;
-import static android.opengl.GLES20.glClear;
-import static android.opengl.GLES20.glEnable;
-import static android.opengl.GLES20.glLineWidth;
-import static android.opengl.GLES20.glViewport;
-import static android.opengl.Matrix.frustumM;
-
-public class OpenGLRenderer implements Renderer {
+
+public class OpenGLRenderer implements Renderer, InputQueue.Handler {
 	private static final String TAG = "OpenGLRenderer";
 	
 	// Para paralela
@@ -32,7 +43,7 @@ public class OpenGLRenderer implements Renderer {
 	
 	private static final int BYTES_PER_FLOAT = 4;
 	
-	private final Context context;
+	private final ResourceSource resources;
 	private int program;
 	
 	// Nombre de los uniform
@@ -75,9 +86,63 @@ public class OpenGLRenderer implements Renderer {
 
 	Resource3DSReader obj3DS;
 
+	// Bytes que se suben a la GPU como mucho en cada frame mientras hay cargas pendientes
+	private static final long UPLOAD_BUDGET_BYTES = 1024 * 1024;
+
+	private static final int QUANTIZED_FLAGS = Model3D.DEFAULT_LOAD_FLAGS | ModelCache.FLAG_QUANTIZED;
+
+	// Lee los modelos y decodifica las texturas fuera del hilo de OpenGL
+	private final AssetLoader loader;
+
+	// Memoria para la geometría y las texturas de los modelos; al pasarse se expulsan los
+	// que hace más tiempo que no se dibujan, y se recargan al volver a dibujarlos
+	private static final long MODEL_BUDGET_BYTES = 64L * 1024 * 1024;
+	private final ResidencyManager residency = new ResidencyManager(MODEL_BUDGET_BYTES);
+	private long residencyChanges;
+
 	// ADDED
 	private final Model3D halo;
 	private final Model3D body;
+
+	// El halo cuelga del cuerpo: hereda su giro y su zoom, y se mueve respecto a él
+	private final SceneGraph scene = new SceneGraph();
+	private final int bodyNode;
+	private final int haloNode;
+
+	// Multitud de ángeles detrás del principal, dibujada por instancias; las matrices de las
+	// copias se recalculan cada frame en el mismo array. Es una demo del dibujo por
+	// instancias: el shader instanciado no lee vértices comprimidos, así que carga otra vez
+	// el halo y el cuerpo sin comprimir, y sólo se activa a mano (sin ella, null)
+	private static final boolean CROWD_DEMO = false;
+	private static final int CROWD_COLUMNS = 10;
+	private static final int CROWD_ROWS = 10;
+	private static final float CROWD_SPACING = 1.5f;
+	private static final float CROWD_DISTANCE = -20f;
+	private final Model3D crowdHalo;
+	private final Model3D crowdBody;
+	private final ModelInstances crowd = CROWD_DEMO ? new ModelInstances(CROWD_COLUMNS * CROWD_ROWS) : null;
+	private float crowdAngle;
+
+	// Toques y botones que llegan del hilo de la interfaz; se aplican, agrupados, al principio de cada frame
+	private final InputQueue input = new InputQueue();
+
+	// Sólo en las compilaciones de depuración se cuentan las reservas de memoria de cada
+	// frame, que deben ser cero. No se auditan los frames con subidas pendientes ni los
+	// siguientes, que preparan buffers.
+	private static final boolean AUDIT_ALLOCATIONS = BuildConfig.DEBUG;
+	private static final int AUDIT_SKIP_FRAMES = 2;
+	private final AllocationTracker allocationTracker = new AllocationTracker(false);
+
+	// Llamadas de dibujo, triángulos y mallas dibujadas y descartadas del último frame
+	private int drawCalls;
+	private int trianglesDrawn;
+	private int drawnMeshes;
+	private int culledMeshes;
+
+	// Tiempos y contadores de cada frame, para la HUD y los informes
+	private final FrameMetrics metrics = new FrameMetrics();
+	private final int glesVersion;
+	private final GLBackend gl;
 	
 	float[] tablaVertices = {
 		// Abanico de triángulos, x, y, R, G, B
@@ -93,151 +158,259 @@ public class OpenGLRenderer implements Renderer {
 		 0.5f, 0f, 1.0f, 0.0f, 0.0f
 	};
 
-	void frustum(float[] m, int offset, float l, float r, float b, float t, float n, float f)
-	{
-		frustumM(m, offset, l, r, b, t, n, f);
-		// Corrección del bug de Android
-		m[8] /= 2;
+	public OpenGLRenderer(Context context) {
+		this(context, 2);
 	}
-	
-    void perspective(float[] m, int offset, float fovy, float aspect, float n, float f)
-    {	final float d = f-n;
-    	final float angleInRadians = (float) (fovy * Math.PI / 180.0);
-    	final float a = (float) (1.0 / Math.tan(angleInRadians / 2.0));
-        
-    	m[0] = a/aspect;
-        m[1] = 0f;
-        m[2] = 0f;
-        m[3] = 0f;
-
-        m[4] = 0f;
-        m[5] = a;
-        m[6] = 0f;
-        m[7] = 0f;
-
-        m[8] = 0;
-        m[9] = 0;
-        m[10] = (n - f) / d;
-        m[11] = -1f;
-
-        m[12] = 0f;
-        m[13] = 0f;
-        m[14] = -2*f*n/d;
-        m[15] = 0f;
-
-    }
-	
-	void perspective2(float[] m, int offset, float fovy, float aspect, float n, float f)
-	{	float fH, fW;
-		
-		fH = (float) Math.tan( fovy / 360 * Math.PI ) * n;
-		fW = fH * aspect;
-		frustum(m, offset, -fW, fW, -fH, fH, n, f);
-		
+
+	// glesVersion: versión del contexto que ha conseguido OpenGLActivity (2 o 3)
+	public OpenGLRenderer(Context context, int glesVersion) {
+		this(context, glesVersion, GLES20Backend.INSTANCE);
 	}
 
-	void frustum2(float[] m, int offset, float l, float r, float b, float t, float n, float f)
-	{
-		float d1 = r-l;
-		float d2 = t-b;
-		float d3 = f-n;
+	// Con otro GLBackend (por ejemplo SoftwareGLBackend) se dibuja sin contexto de OpenGL
+	public OpenGLRenderer(Context context, int glesVersion, GLBackend gl) {
+		this(new AndroidResources(context), glesVersion, gl);
+	}
 
-		m[0] = 2*n/d1;
-		m[1] = 0f;
-		m[2] = 0f;
-		m[3] = 0f;
-		
-		m[4] = 0f;
-		m[5] = 2*n/d2;
-		m[6] = 0f;
-		m[7] = 0f;
-		
-		m[8] = (r+l)/d1;
-		m[9] = (t+b)/d2;
-		m[10] = (n-f)/d3;
-		m[11] = -1f;
+	// Y con otra ResourceSource, sin Context (los modelos, texturas y shaders salen de ella)
+	public OpenGLRenderer(ResourceSource resources, int glesVersion, GLBackend gl) {
+		this.resources = resources;
+		this.glesVersion = glesVersion;
+		this.gl = gl;
 		
-		m[12] = 0f;
-		m[13] = 0f;
-		m[14] = -2*f*n/d3;
-		m[15] = 0f;
+		// Lee los archivos 3DS en segundo plano; el constructor no espera a que terminen
+		loader = new AssetLoader(AssetLoader.defaultThreadCount());
+		// con los vértices comprimidos a 16 bytes (VertexQuantizer)
+		halo = new Model3D(resources, gl, loader, R.raw.angel_halo, R.drawable.halo_texture, QUANTIZED_FLAGS, 0, 0, 0);
+		body = new Model3D(resources, gl, loader, R.raw.body, R.drawable.body_texture, QUANTIZED_FLAGS, 0, 0, -5);
+		bodyNode = scene.createNode(SceneGraph.NO_PARENT);
+		haloNode = scene.createNode(bodyNode);
+		body.attach(scene, bodyNode);
+		halo.attach(scene, haloNode);
+
+		halo.setResidencyManager(residency);
+		body.setResidencyManager(residency);
+
+		if (CROWD_DEMO) {
+			// Con OpenGL ES 3.0 glDraw*Instanced; con 2.0, matrices en un array de uniform
+			final int instancingMode = glesVersion >= 3 ? InstancedBuffers.MODE_INSTANCED : InstancedBuffers.MODE_UNIFORM_ARRAY;
+			crowdHalo = new Model3D(resources, gl, loader, R.raw.angel_halo, R.drawable.halo_texture, Model3D.DEFAULT_LOAD_FLAGS, 0, 0, 0);
+			crowdBody = new Model3D(resources, gl, loader, R.raw.body, R.drawable.body_texture, Model3D.DEFAULT_LOAD_FLAGS, 0, 0, CROWD_DISTANCE);
+			crowdHalo.enableInstancing(instancingMode);
+			crowdBody.enableInstancing(instancingMode);
+			final int crowdNode = scene.createNode(SceneGraph.NO_PARENT);
+			crowdBody.attach(scene, crowdNode);
+			crowdHalo.attach(scene, scene.createNode(crowdNode));
+			crowd.setCount(CROWD_COLUMNS * CROWD_ROWS);
+			crowdHalo.setResidencyManager(residency);
+			crowdBody.setResidencyManager(residency);
+		} else {
+			crowdHalo = null;
+			crowdBody = null;
+		}
 	}
-	
-	public OpenGLRenderer(Context context) {
-		this.context = context;
-		
-		// Lee un archivo 3DS desde un recurso
-		halo = new Model3D(context, R.raw.angel_halo, R.drawable.halo_texture, 0, 0, -5);
-		body = new Model3D(context, R.raw.body, R.drawable.body_texture, 0, 0, -5);
+
+	// Coloca las copias en una rejilla, cada una girando a su ritmo, sin reservar memoria
+	private void updateCrowd() {
+		crowdAngle += 1f;
+		for (int row = 0; row < CROWD_ROWS; row++) {
+			for (int column = 0; column < CROWD_COLUMNS; column++) {
+				final int i = row * CROWD_COLUMNS + column;
+				crowd.setTranslationRotationY(i, (column - (CROWD_COLUMNS - 1) / 2f) * CROWD_SPACING, 0f,
+						-row * CROWD_SPACING, crowdAngle * (1 + (i % 3)) + i * 17);
+			}
+		}
 	}
 
 	@Override
 	public void onSurfaceCreated(GL10 glUnused, EGLConfig config) {
+		// Contexto nuevo: los programas y texturas del anterior ya no existen
+		ShaderHelper.clearProgramCache();
+		TextureHelper.clearTextureCache();
 		halo.loadTexture();
 		body.loadTexture();
+		if (CROWD_DEMO) {
+			crowdHalo.loadTexture();
+			crowdBody.loadTexture();
+		}
+		// Las consultas del contexto anterior tampoco existen ya
+		metrics.setGpuTimer(GLTimerQuery.isSupported(gl, glesVersion) ? new GLTimerQuery(gl) : null);
+		if (LoggerConfig.ON) {
+			Log.w(TAG, "Shaders compilados: " + ShaderHelper.getCompileCount()
+					+ ", programas enlazados: " + ShaderHelper.getLinkCount()
+					+ ", bytes de textura: " + TextureHelper.getResidentTextureBytes());
+		}
 	}
 	
 	@Override
 	public void onSurfaceChanged(GL10 glUnused, int width, int height) {
 		// Establecer el viewport de  OpenGL para ocupar toda la superficie.
-		glViewport(0, 0, width, height);
+		gl.glViewport(0, 0, width, height);
 		final float aspectRatio = width > height ?
 				(float) width / (float) height :
 				(float) height / (float) width;
 		if (width > height) {
 				// Landscape
 				//orthoM(projectionMatrix, 0, -aspectRatio*TAM, aspectRatio*TAM, -TAM, TAM, -100.0f, 100.0f);
-				perspective(projectionMatrix, 0, 45f, aspectRatio, 0.01f, 1000f);
-				//frustum(projectionMatrix, 0, -aspectRatio*TAM, aspectRatio*TAM, -TAM, TAM, 1f, 1000.0f);
+				Projection.perspective(projectionMatrix, 0, 45f, aspectRatio, 0.01f, 1000f);
+				//Projection.frustum(projectionMatrix, 0, -aspectRatio*TAM, aspectRatio*TAM, -TAM, TAM, 1f, 1000.0f);
 		} else {
 				// Portrait or square
 				//orthoM(projectionMatrix, 0, -TAM, TAM, -aspectRatio*TAM, aspectRatio*TAM, -100.0f, 100.0f);
-				perspective(projectionMatrix, 0, 45f, 1f/aspectRatio, 0.01f, 1000f);
-				//frustum(projectionMatrix, 0, -TAM, TAM, -aspectRatio*TAM, aspectRatio*TAM, 1f, 1000.0f);
+				Projection.perspective(projectionMatrix, 0, 45f, 1f/aspectRatio, 0.01f, 1000f);
+				//Projection.frustum(projectionMatrix, 0, -TAM, TAM, -aspectRatio*TAM, aspectRatio*TAM, 1f, 1000.0f);
 		}
 	}
 
 	@Override
 	public void onDrawFrame(GL10 glUnused) {
+		if (AUDIT_ALLOCATIONS) allocationTracker.begin();
+		metrics.beginFrame();
+		residency.beginFrame();
+		input.drain(this);
+
 		// Clear the rendering surface.
-		glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-		glEnable(GL_DEPTH_TEST);
-		glEnable(GL_CULL_FACE);
-		glLineWidth(2.0f);
+		gl.glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+		gl.glEnable(GL_DEPTH_TEST);
+		gl.glEnable(GL_CULL_FACE);
+		gl.glLineWidth(2.0f);
+
+		// Subimos lo que ya esté cargado, sin pasarnos del presupuesto del frame
+		if (loader.hasPendingUploads()) {
+			allocationTracker.skipFrames(AUDIT_SKIP_FRAMES);
+			loader.processUploads(UPLOAD_BUDGET_BYTES);
+			if (LoggerConfig.ON && !loader.hasPendingUploads()) {
+				Log.w(TAG, "Carga: halo " + halo.getParseNanos() / 1000 + "/" + halo.getDecodeNanos() / 1000
+						+ "/" + halo.getUploadNanos() / 1000 + " us, body " + body.getParseNanos() / 1000
+						+ "/" + body.getDecodeNanos() / 1000 + "/" + body.getUploadNanos() / 1000
+						+ " us (lectura/decodificación/subida); caché de modelos: " + ModelCache.getCacheHits()
+						+ " aciertos, " + ModelCache.getAssetHits() + " preconvertidos, " + ModelCache.getParses() + " leídos");
+			}
+		}
 
 		// Pasamos la textura
-		glActiveTexture(GL_TEXTURE0);
+		gl.glActiveTexture(GL_TEXTURE0);
+
+		// Matrices de mundo de lo que se haya movido desde el último frame
+		scene.update();
 
 		// Dibujamos el objeto
 		halo.drawModel(projectionMatrix);
 		body.drawModel(projectionMatrix);
+		drawCalls = halo.getDrawCalls() + body.getDrawCalls();
+		trianglesDrawn = halo.getTrianglesDrawn() + body.getTrianglesDrawn();
+		int stateChanges = halo.getStateChanges() + body.getStateChanges();
+		int textureBinds = halo.getTextureBinds() + body.getTextureBinds();
+		if (CROWD_DEMO) {
+			updateCrowd();
+			crowdHalo.drawInstanced(projectionMatrix, crowd);
+			crowdBody.drawInstanced(projectionMatrix, crowd);
+			drawCalls += crowdHalo.getDrawCalls() + crowdBody.getDrawCalls();
+			trianglesDrawn += crowdHalo.getTrianglesDrawn() + crowdBody.getTrianglesDrawn();
+			stateChanges += crowdHalo.getStateChanges() + crowdBody.getStateChanges();
+			textureBinds += crowdHalo.getTextureBinds() + crowdBody.getTextureBinds();
+		}
+		drawnMeshes = halo.getDrawnMeshes() + body.getDrawnMeshes();
+		culledMeshes = halo.getCulledMeshes() + body.getCulledMeshes();
+
+		// Las recargas y expulsiones de este frame piden y liberan memoria: no se auditan
+		if (residency.getMisses() + residency.getEvictions() != residencyChanges) {
+			residencyChanges = residency.getMisses() + residency.getEvictions();
+			allocationTracker.skipFrames(AUDIT_SKIP_FRAMES);
+			if (LoggerConfig.ON) {
+				Log.w(TAG, "Memoria de modelos: " + residency.getResidentBytes() / 1024 + " de "
+						+ residency.getBudgetBytes() / 1024 + " KB, " + residency.getResidentCount() + " modelos; "
+						+ residency.getHits() + " aciertos, " + residency.getMisses() + " fallos, "
+						+ residency.getEvictions() + " expulsiones");
+			}
+		}
 
 		halo.updatePosition(0.06f);
 		body.updatePosition(0.06f);
+
+		metrics.endFrame(drawCalls, trianglesDrawn, stateChanges, textureBinds);
+		if (AUDIT_ALLOCATIONS && allocationTracker.end() > 0) {
+			Log.w(TAG, "El frame ha reservado " + allocationTracker.getLastAllocations() + " bytes ("
+					+ allocationTracker.getAllocatingFrames() + " de " + allocationTracker.getAuditedFrames() + " frames)");
+		}
 	}
 
-	public void handleTouchPress(float normalizedX, float normalizedY) {
-		if (LoggerConfig.ON) {
-			Log.w(TAG, "Touch Press ["+normalizedX+", "+normalizedY+"]");
+	// El halo y el cuerpo ya están leídos y en la GPU, con su textura
+	public boolean isLoaded() {
+		return halo.isResident() && body.isResident();
+	}
+
+	public FrameMetrics getMetrics() {
+		return metrics;
+	}
+
+	public InputQueue getInputQueue() {
+		return input;
+	}
+
+	public AllocationTracker getAllocationTracker() {
+		return allocationTracker;
+	}
+
+	public ResidencyManager getResidencyManager() {
+		return residency;
+	}
+
+	@Override
+	public void onInputEvent(int type, float x, float y) {
+		switch (type) {
+			case InputQueue.TOUCH_PRESS:
+				handleTouchPress(x, y);
+				break;
+			case InputQueue.TOUCH_DRAG:
+				handleTouchDrag(x, y);
+				break;
+			case InputQueue.ZOOM_IN:
+				handleZoomIn(x);
+				break;
+			case InputQueue.ZOOM_OUT:
+				handleZoomOut(x);
+				break;
+			case InputQueue.ROTATE_LEFT:
+				rotateHeadLeft();
+				break;
+			case InputQueue.ROTATE_RIGHT:
+				rotateHeadRight();
+				break;
 		}
+	}
+
+	public int getDrawCalls() {
+		return drawCalls;
+	}
+
+	public int getTrianglesDrawn() {
+		return trianglesDrawn;
+	}
+
+	public int getDrawnMeshes() {
+		return drawnMeshes;
+	}
+
+	public int getCulledMeshes() {
+		return culledMeshes;
+	}
+
+	public void handleTouchPress(float normalizedX, float normalizedY) {
 		halo.setDestination(-normalizedY * 20f, normalizedX * 20f);
 	}
 
 	public void handleTouchDrag(float normalizedX, float normalizedY) {
-		if (LoggerConfig.ON) {
-			Log.w(TAG, "Touch Drag ["+normalizedX+", "+normalizedY+"]");
-		}
-		halo.setDestination(-normalizedY * 180f, normalizedX * 180f);
+		// El cuerpo arrastra al halo, que vuelve a su sitio
 		body.setDestination(-normalizedY * 180f, normalizedX * 180f);
+		halo.setDestination(0f, 0f);
 	}
 
 	public void handleZoomIn(float normalizedZ) {
-		halo.zoom(-normalizedZ);
 		body.zoom(-normalizedZ);
 	}
 
 	public void handleZoomOut(float normalizedZ){
-		halo.zoom(normalizedZ);
 		body.zoom(normalizedZ);
 	}
 
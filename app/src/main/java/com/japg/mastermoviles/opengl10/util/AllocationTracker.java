@@ -0,0 +1,126 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import android.os.Debug;
+
+/* Auditoría de reservas de memoria por frame, para depuración.
+*  Cuenta los bytes reservados entre begin() y end(); en un frame normal deben ser cero,
+*  porque cada reserva acaba en una pausa del recolector y en frames perdidos en sesiones
+*  largas. En modo estricto un frame que reserve lanza una excepción, así una prueba que
+*  dibuje frames falla en cuanto aparece una reserva.
+*
+*  Por defecto cuenta con las estadísticas de ART (Debug.getRuntimeStat, API 23), que son
+*  de todo el proceso: en el dispositivo también cuentan las reservas de otros hilos, así
+*  que un frame con reservas indica dónde mirar, no quién ha reservado. Fuera del
+*  dispositivo se le pasa otro Counter (en la JVM, los bytes del hilo que dibuja).
+*/
+public class AllocationTracker {
+
+	public interface Counter {
+		void start();
+		// Bytes reservados hasta ahora
+		long allocations();
+	}
+
+	public static final Counter ANDROID = new RuntimeStatCounter();
+
+	// Bytes reservados por el proceso según ART. Cada lectura reserva el String con el valor:
+	// start() mide lo que ocupa y allocations() lo descuenta, para que un frame sin reservas
+	// dé cero.
+	private static class RuntimeStatCounter implements Counter {
+		private static final String BYTES_ALLOCATED = "art.gc.bytes-allocated";
+		private long readBytes;
+		private long reads;
+
+		@Override
+		public void start() {
+			final long first = read();
+			readBytes = read() - first;
+			reads = 0;
+		}
+
+		@Override
+		public long allocations() {
+			reads++;
+			return read() - reads * readBytes;
+		}
+
+		// 0 si el runtime no da la estadística (entonces no se detecta nada)
+		private static long read() {
+			final String value = Debug.getRuntimeStat(BYTES_ALLOCATED);
+			return value != null ? Long.parseLong(value) : 0;
+		}
+	}
+
+	private final Counter counter;
+	private final boolean strict;
+	private boolean started;
+	private boolean measuring;
+	private long startCount;
+	// Frames que no se auditan (carga, primeros usos que preparan buffers)
+	private int skipFrames;
+
+	private int auditedFrames;
+	private int allocatingFrames;
+	private long lastAllocations;
+	private long totalAllocations;
+
+	public AllocationTracker(boolean strict) {
+		this(ANDROID, strict);
+	}
+
+	public AllocationTracker(Counter counter, boolean strict) {
+		this.counter = counter;
+		this.strict = strict;
+	}
+
+	// No audita el frame en curso ni los frames siguientes (al menos frames)
+	public void skipFrames(int frames) {
+		skipFrames = Math.max(skipFrames, frames);
+		measuring = false;
+	}
+
+	public void begin() {
+		if (!started) {
+			counter.start();
+			started = true;
+		}
+		measuring = skipFrames == 0;
+		if (!measuring) {
+			skipFrames--;
+			return;
+		}
+		startCount = counter.allocations();
+	}
+
+	// Termina el frame. Devuelve los bytes que ha reservado (0 si no se ha auditado).
+	public long end() {
+		if (!measuring) return 0;
+		measuring = false;
+		lastAllocations = counter.allocations() - startCount;
+		auditedFrames++;
+		if (lastAllocations > 0) {
+			allocatingFrames++;
+			totalAllocations += lastAllocations;
+			if (strict) {
+				throw new IllegalStateException("El frame " + auditedFrames + " ha reservado " + lastAllocations + " bytes");
+			}
+		}
+		return lastAllocations;
+	}
+
+	public int getAuditedFrames() {
+		return auditedFrames;
+	}
+
+	public int getAllocatingFrames() {
+		return allocatingFrames;
+	}
+
+	public long getLastAllocations() {
+		return lastAllocations;
+	}
+
+	public long getTotalAllocations() {
+		return totalAllocations;
+	}
+}
@@ -0,0 +1,13 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import android.util.Log;
+
+// Salida de Logger a android.util.Log; la instala OpenGLActivity al crearse
+public class AndroidLogSink implements Logger.Sink {
+	public static final AndroidLogSink INSTANCE = new AndroidLogSink();
+
+	@Override
+	public void w(String tag, String message) {
+		Log.w(tag, message);
+	}
+}
@@ -0,0 +1,121 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+// Recursos de la aplicación a través de su Context
+public class AndroidResources implements ResourceSource {
+	private static final String TAG = "AndroidResources";
+
+	// Imagen decodificada con BitmapFactory
+	public static class BitmapImage implements Image {
+		private final Bitmap bitmap;
+
+		public BitmapImage(Bitmap bitmap) {
+			this.bitmap = bitmap;
+		}
+
+		@Override
+		public int getByteCount() {
+			return bitmap.getByteCount();
+		}
+
+		@Override
+		public void upload(GLBackend gl, int target, int level) {
+			gl.texImage2D(target, level, bitmap, 0);
+		}
+
+		@Override
+		public void recycle() {
+			bitmap.recycle();
+		}
+	}
+
+	private final Context context;
+
+	public AndroidResources(Context context) {
+		this.context = context;
+	}
+
+	// Mapeado si está sin comprimir, si no leído entero.
+	// openRawResourceFd no devuelve null con un recurso comprimido (falta noCompress '3ds'):
+	// lanza NotFoundException, y entonces se lee por el stream, que sí lo descomprime.
+	@Override
+	public ByteBuffer readRaw(int resourceId) throws IOException {
+		try {
+			AssetFileDescriptor fd = null;
+			try {
+				fd = context.getResources().openRawResourceFd(resourceId);
+			} catch (Resources.NotFoundException compressed) {
+				if (LoggerConfig.ON) {
+					Logger.w(TAG, "El recurso " + resourceId + " está comprimido, no se puede mapear");
+				}
+			}
+			if (fd != null) {
+				return mapDescriptor(fd);
+			}
+			InputStream inputStream = context.getResources().openRawResource(resourceId);
+			try {
+				return Resource3DSReader.readFully(inputStream).order(ByteOrder.LITTLE_ENDIAN);
+			} finally {
+				inputStream.close();
+			}
+		} catch (Resources.NotFoundException nfe) {
+			throw new FileNotFoundException("Recurso no encontrado: " + resourceId);
+		}
+	}
+
+	@Override
+	public String getResourceName(int resourceId) {
+		return context.getResources().getResourceEntryName(resourceId);
+	}
+
+	@Override
+	public File getCacheDir() {
+		return context.getCacheDir();
+	}
+
+	// Debe ir sin comprimir para poder mapearlo
+	@Override
+	public ByteBuffer readAsset(String path) throws IOException {
+		AssetFileDescriptor fd;
+
+		try {
+			fd = context.getAssets().openFd(path);
+		} catch (IOException e) {
+			// No existe
+			return null;
+		}
+		return mapDescriptor(fd);
+	}
+
+	@Override
+	public Image decodeImage(int resourceId, BitmapFactory.Options options) {
+		final Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), resourceId, options);
+		return bitmap != null ? new BitmapImage(bitmap) : null;
+	}
+
+	private static ByteBuffer mapDescriptor(AssetFileDescriptor fd) throws IOException {
+		FileInputStream stream = new FileInputStream(fd.getFileDescriptor());
+		try {
+			return stream.getChannel()
+					.map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength())
+					.order(ByteOrder.LITTLE_ENDIAN);
+		} finally {
+			stream.close();
+			fd.close();
+		}
+	}
+}
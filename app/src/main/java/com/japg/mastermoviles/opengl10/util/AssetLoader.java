@@ -0,0 +1,79 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* Carga de recursos en segundo plano.
+*  El trabajo de CPU (leer modelos, decodificar imágenes) se hace en un pool de hilos,
+*  y lo que debe ir a la GPU se encola para que el hilo de OpenGL lo suba poco a poco,
+*  con un límite de bytes por frame para no bloquear el dibujado.
+*/
+public class AssetLoader {
+
+	// Subida a la GPU que se ejecuta en el hilo de OpenGL
+	public interface Upload {
+		// Bytes aproximados que sube (para el presupuesto por frame)
+		long bytes();
+		void upload();
+	}
+
+	private final ExecutorService workers;
+	private final ConcurrentLinkedQueue<Upload> uploads = new ConcurrentLinkedQueue<Upload>();
+
+	public AssetLoader(int threads) {
+		final AtomicInteger count = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "AssetLoader-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				thread.setPriority(Thread.NORM_PRIORITY - 1);
+				return thread;
+			}
+		});
+	}
+
+	public static int defaultThreadCount() {
+		return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+	}
+
+	// Ejecuta un trabajo de CPU en el pool
+	public <T> Future<T> submit(Callable<T> task) {
+		return workers.submit(task);
+	}
+
+	// Encola una subida a la GPU. Se puede llamar desde cualquier hilo.
+	public void enqueueUpload(Upload upload) {
+		uploads.add(upload);
+	}
+
+	public boolean hasPendingUploads() {
+		return !uploads.isEmpty();
+	}
+
+	// Ejecuta subidas pendientes hasta gastar byteBudget (al menos una por llamada,
+	// para que una subida grande no se quede atascada). Se llama una vez por frame
+	// desde el hilo de OpenGL. Devuelve el número de subidas hechas.
+	public int processUploads(long byteBudget) {
+		long spent = 0;
+		int done = 0;
+		Upload upload;
+
+		while (spent < byteBudget && (upload = uploads.poll()) != null) {
+			upload.upload();
+			spent += upload.bytes();
+			done++;
+		}
+		return done;
+	}
+
+	public void shutdown() {
+		workers.shutdownNow();
+		uploads.clear();
+	}
+}
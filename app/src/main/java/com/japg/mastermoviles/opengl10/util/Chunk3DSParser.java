@@ -0,0 +1,445 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/* Lector de chunks de 3DS por eventos, al estilo de SAX: recorre el fichero una vez y avisa
+*  al Handler de cada chunk que empieza y termina y de las listas de las mallas (vértices,
+*  caras, coordenadas de textura y grupos de suavizado) según las encuentra.
+*
+*  Sigue el anidamiento por la longitud de cada chunk: sólo entra en los contenedores
+*  (CHUNK_MAIN, CHUNK_OBJMESH, CHUNK_OBJBLOCK tras el nombre, CHUNK_TRIMESH y CHUNK_FACELIST
+*  tras las caras) y salta los demás enteros, aunque no los conozca. Un hijo que dice
+*  salirse de su padre se recorta al final del padre; si el fichero se acaba en el límite
+*  entre dos chunks se cierran los que queden abiertos (ficheros truncados o con longitudes
+*  de más), y si se acaba en medio de uno se lanza EOFException.
+*
+*  Lee de un ByteBuffer (las listas son vistas sobre él, sin copia) o de un InputStream o
+*  ReadableByteChannel de tamaño desconocido, sin available() ni leerlo entero: sólo guarda
+*  en memoria la lista que está leyendo (como mucho 65535 elementos, por cómo se cuentan en
+*  el formato) y los chunks que salta los descarta por un buffer fijo. El fin de
+*  CHUNK_OBJBLOCK (endChunk) marca que una malla está completa.
+*
+*  Las longitudes del fichero no son de fiar: los grupos de suavizado se limitan al número
+*  de caras de su CHUNK_FACELIST, y la entrada no puede pasar de setMaxBytes (si sigue
+*  después del límite se lanza IOException). Así también queda acotado lo que retenga un
+*  handler que guarde todas las listas que recibe.
+*/
+public class Chunk3DSParser {
+	// Identificadores de los trozos (chunks) que se interpretan
+	// Descripción del formato en: http://es.wikipedia.org/wiki/.3ds
+	public static final int CHUNK_MAIN		= 0x4d4d;
+	public static final int CHUNK_OBJMESH	= 0x3d3d;
+	public static final int CHUNK_OBJBLOCK	= 0x4000;
+	public static final int CHUNK_TRIMESH	= 0x4100;
+	public static final int CHUNK_VERTLIST	= 0x4110;
+	public static final int CHUNK_FACELIST	= 0x4120;
+	public static final int CHUNK_MAPLIST	= 0x4140;
+	public static final int CHUNK_SMOOLIST	= 0x4150;
+
+	public static final int CHUNK_HEADER_SIZE = 6;
+
+	// Bytes de cada elemento de las listas: x, y, z; v0, v1, v2, flags; u, v; grupos
+	public static final int VERTEX_BYTES = 12;
+	public static final int FACE_BYTES = 8;
+	public static final int UV_BYTES = 8;
+	public static final int SMOOTH_BYTES = 4;
+
+	private static final int MAX_DEPTH = 32;
+	// Caracteres del nombre de un objeto que se guardan (el resto se lee y se descarta)
+	private static final int MAX_NAME_LENGTH = 64;
+	private static final int SKIP_BUFFER_SIZE = 8192;
+
+	// Límite por defecto de la entrada (el mayor modelo de res/raw ocupa 3,5 MB)
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+	public interface Handler {
+		// Al empezar un chunk, con su longitud (cabecera incluida) y su profundidad.
+		// Devolviendo false se salta entero, sin más eventos suyos ni endChunk.
+		boolean startChunk(int id, long length, int depth);
+		// Al terminar un chunk en el que se ha entrado
+		void endChunk(int id, int depth);
+		// Nombre de un CHUNK_OBJBLOCK, justo después de su startChunk
+		void objectName(String name);
+		// Listas de la malla actual: count elementos little-endian desde data.position().
+		// data puede ser una vista sobre la entrada: se puede guardar, pero no modificar.
+		void vertexList(ByteBuffer data, int count);
+		void faceList(ByteBuffer data, int count);
+		void mapList(ByteBuffer data, int count);
+		void smoothList(ByteBuffer data, int count);
+	}
+
+	// Handler que entra en todos los chunks y no hace nada, para heredar sólo lo que se use
+	public static class DefaultHandler implements Handler {
+		@Override
+		public boolean startChunk(int id, long length, int depth) {
+			return true;
+		}
+
+		@Override
+		public void endChunk(int id, int depth) {
+		}
+
+		@Override
+		public void objectName(String name) {
+		}
+
+		@Override
+		public void vertexList(ByteBuffer data, int count) {
+		}
+
+		@Override
+		public void faceList(ByteBuffer data, int count) {
+		}
+
+		@Override
+		public void mapList(ByteBuffer data, int count) {
+		}
+
+		@Override
+		public void smoothList(ByteBuffer data, int count) {
+		}
+	}
+
+	// Chunks abiertos: id y posición de su final
+	private final int[] openIds = new int[MAX_DEPTH];
+	private final long[] openEnds = new long[MAX_DEPTH];
+	private final StringBuilder name = new StringBuilder();
+	// Caras de la CHUNK_FACELIST actual (los grupos de suavizado van dentro de ella)
+	private int faceCount;
+	private long maxBytes = DEFAULT_MAX_BYTES;
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	// Bytes que se aceptan de una entrada; si tiene más, parse lanza IOException
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	// Recorre data desde su posición hasta su límite; lo deja en el límite.
+	// Las listas que se pasan al handler son vistas sobre data.
+	public void parse(ByteBuffer data, Handler handler) throws IOException {
+		if (data.remaining() > maxBytes) throw limitExceeded(maxBytes);
+		parse(new BufferInput(data), handler);
+	}
+
+	// Lee el stream hasta el final. No lo cierra.
+	public void parse(InputStream inputStream, Handler handler) throws IOException {
+		parse(Channels.newChannel(inputStream), handler);
+	}
+
+	// Lee el canal hasta el final. No lo cierra.
+	public void parse(ReadableByteChannel channel, Handler handler) throws IOException {
+		parse(new ChannelInput(channel, maxBytes), handler);
+	}
+
+	private void parse(Input in, Handler handler) throws IOException {
+		int depth = 0;
+		faceCount = 0;
+
+		while (true) {
+			// Cierra los chunks que terminan aquí
+			while (depth > 0 && in.position() >= openEnds[depth - 1]) {
+				depth--;
+				handler.endChunk(openIds[depth], depth);
+			}
+			// Relleno al final de un contenedor que no llega a una cabecera
+			if (depth > 0 && openEnds[depth - 1] - in.position() < CHUNK_HEADER_SIZE) {
+				if (!in.skip(openEnds[depth - 1] - in.position())) break;
+				continue;
+			}
+			if (!in.readHeader()) break;
+
+			final int id = in.headerId();
+			final long length = in.headerLength();
+			final long start = in.position() - CHUNK_HEADER_SIZE;
+			if (length < CHUNK_HEADER_SIZE) {
+				throw new IOException("Chunk 0x" + Integer.toHexString(id) + " con longitud " + length + " en " + start);
+			}
+			long end = start + length;
+			if (depth > 0 && end > openEnds[depth - 1]) end = openEnds[depth - 1];
+
+			if (!handler.startChunk(id, length, depth)) {
+				if (!in.skip(end - in.position())) break;
+				continue;
+			}
+
+			int n;
+			boolean container = false;
+			switch (id) {
+				case CHUNK_MAIN:
+				case CHUNK_OBJMESH:
+				case CHUNK_TRIMESH:
+					container = true;
+					break;
+
+				case CHUNK_OBJBLOCK:
+					faceCount = 0;
+					handler.objectName(readName(in, end));
+					container = true;
+					break;
+
+				case CHUNK_VERTLIST:
+					n = readCount(in, end);
+					handler.vertexList(in.read(n * VERTEX_BYTES, end), n);
+					break;
+
+				case CHUNK_FACELIST:
+					// Las caras y después los chunks de la lista (grupos de suavizado, materiales)
+					n = readCount(in, end);
+					faceCount = n;
+					handler.faceList(in.read(n * FACE_BYTES, end), n);
+					container = true;
+					break;
+
+				case CHUNK_MAPLIST:
+					n = readCount(in, end);
+					handler.mapList(in.read(n * UV_BYTES, end), n);
+					break;
+
+				case CHUNK_SMOOLIST:
+					// Un grupo por cara: los que quepan en el chunk, sin pasar de las caras
+					n = (int) Math.min(faceCount, (end - in.position()) / SMOOTH_BYTES);
+					handler.smoothList(in.read(n * SMOOTH_BYTES, end), n);
+					break;
+
+				default:
+					break;
+			}
+
+			if (container) {
+				if (depth == MAX_DEPTH) {
+					throw new IOException("Chunks anidados a más de " + MAX_DEPTH + " niveles en " + start);
+				}
+				openIds[depth] = id;
+				openEnds[depth] = end;
+				depth++;
+			} else {
+				final boolean more = in.skip(end - in.position());
+				handler.endChunk(id, depth);
+				if (!more) break;
+			}
+		}
+
+		// Fin de la entrada: se cierran los chunks que quedaran abiertos
+		while (depth > 0) {
+			depth--;
+			handler.endChunk(openIds[depth], depth);
+		}
+	}
+
+	static IOException limitExceeded(long maxBytes) {
+		return new IOException("El 3DS pasa del límite de " + maxBytes + " bytes");
+	}
+
+	private static int readCount(Input in, long end) throws IOException {
+		if (end - in.position() < 2) {
+			throw new IOException("Lista sin número de elementos en " + in.position());
+		}
+		return in.readUnsignedShort();
+	}
+
+	// Nombre terminado en 0, sin pasar del final del chunk
+	private String readName(Input in, long end) throws IOException {
+		name.setLength(0);
+		while (in.position() < end) {
+			final int c = in.readUnsignedByte();
+			if (c == 0) break;
+			if (name.length() < MAX_NAME_LENGTH) name.append((char) c);
+		}
+		return name.toString();
+	}
+
+	/* Origen de los bytes, con la posición contada desde el principio */
+	private static abstract class Input {
+		protected final ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+		abstract long position();
+		// Lee una cabecera en header; false si la entrada se acaba antes de ella
+		abstract boolean readHeader() throws IOException;
+		abstract int readUnsignedByte() throws IOException;
+		abstract int readUnsignedShort() throws IOException;
+		// length bytes en un buffer little-endian desde su posición, sin pasar de end
+		abstract ByteBuffer read(int length, long end) throws IOException;
+		// Salta n bytes; false si la entrada se acaba antes (sin error: final de chunk truncado)
+		abstract boolean skip(long n) throws IOException;
+
+		int headerId() {
+			return header.getShort(0) & 0xffff;
+		}
+
+		long headerLength() {
+			return header.getInt(2) & 0xffffffffL;
+		}
+
+		static void checkLength(long position, int length, long end) throws IOException {
+			if (position + length > end) {
+				throw new IOException("Lista de " + length + " bytes más larga que su chunk en " + position);
+			}
+		}
+	}
+
+	private static class BufferInput extends Input {
+		private final ByteBuffer data;
+		private final int start;
+
+		BufferInput(ByteBuffer data) {
+			this.data = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			this.start = data.position();
+		}
+
+		@Override
+		long position() {
+			return data.position() - start;
+		}
+
+		// Como la versión anterior del lector: unos bytes sueltos al final no son un error
+		@Override
+		boolean readHeader() {
+			if (data.remaining() < CHUNK_HEADER_SIZE) {
+				data.position(data.limit());
+				return false;
+			}
+			header.clear();
+			header.putShort(0, data.getShort());
+			header.putInt(2, data.getInt());
+			return true;
+		}
+
+		@Override
+		int readUnsignedByte() throws IOException {
+			if (!data.hasRemaining()) throw new EOFException();
+			return data.get() & 0xff;
+		}
+
+		@Override
+		int readUnsignedShort() throws IOException {
+			if (data.remaining() < 2) throw new EOFException();
+			return data.getShort() & 0xffff;
+		}
+
+		@Override
+		ByteBuffer read(int length, long end) throws IOException {
+			checkLength(position(), length, end);
+			if (data.remaining() < length) throw new EOFException();
+			final ByteBuffer list = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+			list.limit(length);
+			data.position(data.position() + length);
+			return list;
+		}
+
+		@Override
+		boolean skip(long n) {
+			if (n > data.remaining()) {
+				data.position(data.limit());
+				return false;
+			}
+			data.position(data.position() + (int) n);
+			return true;
+		}
+	}
+
+	private static class ChannelInput extends Input {
+		private final ReadableByteChannel channel;
+		private final long maxBytes;
+		private final ByteBuffer small = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+		private ByteBuffer skipBuffer;
+		private long position;
+
+		ChannelInput(ReadableByteChannel channel, long maxBytes) {
+			this.channel = channel;
+			this.maxBytes = maxBytes;
+		}
+
+		@Override
+		long position() {
+			return position;
+		}
+
+		// Lee hasta llenar target; devuelve los bytes leídos (menos si se acaba la entrada).
+		// No lee más allá de maxBytes: si la entrada sigue después, IOException.
+		private int fill(ByteBuffer target) throws IOException {
+			final int limit = target.limit();
+			final boolean capped = target.remaining() > maxBytes - position;
+			if (capped) target.limit(target.position() + (int) Math.max(0, maxBytes - position));
+			int total = 0;
+			while (target.hasRemaining()) {
+				final int n = channel.read(target);
+				if (n < 0) break;
+				total += n;
+			}
+			position += total;
+			if (capped) {
+				target.limit(limit);
+				if (position == maxBytes && !atEnd()) throw limitExceeded(maxBytes);
+			}
+			return total;
+		}
+
+		// true si el canal no tiene más bytes (se usa al llegar al límite: el que lea se pierde)
+		private boolean atEnd() throws IOException {
+			small.clear();
+			small.limit(1);
+			int n;
+			do {
+				n = channel.read(small);
+			} while (n == 0);
+			return n < 0;
+		}
+
+		@Override
+		boolean readHeader() throws IOException {
+			header.clear();
+			final int n = fill(header);
+			if (n == 0) return false;
+			if (n < CHUNK_HEADER_SIZE) throw new EOFException("Cabecera de chunk incompleta en " + (position - n));
+			return true;
+		}
+
+		@Override
+		int readUnsignedByte() throws IOException {
+			small.clear();
+			small.limit(1);
+			if (fill(small) < 1) throw new EOFException();
+			return small.get(0) & 0xff;
+		}
+
+		@Override
+		int readUnsignedShort() throws IOException {
+			small.clear();
+			if (fill(small) < 2) throw new EOFException();
+			return small.getShort(0) & 0xffff;
+		}
+
+		@Override
+		ByteBuffer read(int length, long end) throws IOException {
+			checkLength(position, length, end);
+			// Antes de reservar la lista: una que pase del límite no se lee entera
+			if (position + length > maxBytes) throw limitExceeded(maxBytes);
+			final ByteBuffer list = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+			if (fill(list) < length) throw new EOFException("Lista incompleta en " + position);
+			list.flip();
+			return list;
+		}
+
+		@Override
+		boolean skip(long n) throws IOException {
+			if (skipBuffer == null) skipBuffer = ByteBuffer.allocate(SKIP_BUFFER_SIZE);
+			while (n > 0) {
+				skipBuffer.clear();
+				if (n < skipBuffer.capacity()) skipBuffer.limit((int) n);
+				final int read = fill(skipBuffer);
+				if (read == 0) return false;
+				n -= read;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/* Histograma de duraciones de tamaño fijo, sin cerrojos ni reservas de memoria al registrar.
+*  Las duraciones se reparten en numBuckets cubos de bucketNanos cada uno; las que no caben
+*  van al último. Un único hilo registra (el de OpenGL) y cualquier otro puede pedir
+*  percentiles a la vez: los contadores son atómicos, así una lectura concurrente puede ir
+*  algún frame por detrás pero nunca ve un contador a medio escribir.
+*
+*  Con window > 0 sólo cuenta las últimas window muestras (ventana móvil, para la HUD);
+*  con 0 las acumula todas (para los informes de las pruebas largas).
+*/
+public class FrameHistogram {
+	private final long bucketNanos;
+	private final AtomicIntegerArray counts;
+	// Cubo de cada una de las últimas muestras, para sacarlas al salir de la ventana
+	private final int[] window;
+	private int windowNext;
+
+	private volatile long samples;
+	private volatile long totalNanos;
+	private volatile long maxNanos;
+
+	public FrameHistogram(long bucketNanos, int numBuckets, int window) {
+		this.bucketNanos = bucketNanos;
+		this.counts = new AtomicIntegerArray(numBuckets);
+		this.window = window > 0 ? new int[window] : null;
+	}
+
+	// Sólo desde el hilo que registra
+	public void record(long nanos) {
+		final int last = counts.length() - 1;
+		final int bucket = nanos <= 0 ? 0 : (int) Math.min(nanos / bucketNanos, last);
+		if (window != null) {
+			if (samples >= window.length) {
+				counts.decrementAndGet(window[windowNext]);
+			}
+			window[windowNext] = bucket;
+			windowNext = (windowNext + 1) % window.length;
+		}
+		counts.incrementAndGet(bucket);
+		samples = samples + 1;
+		totalNanos = totalNanos + nanos;
+		if (nanos > maxNanos) maxNanos = nanos;
+	}
+
+	// Muestras en el histograma (las de la ventana si la tiene)
+	public long getCount() {
+		return window != null ? Math.min(samples, window.length) : samples;
+	}
+
+	// Muestras registradas desde el principio, con o sin ventana
+	public long getSamples() {
+		return samples;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	// Máxima desde el principio, con o sin ventana
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	// Duración por debajo de la cual queda la fracción p (0..1) de las muestras, redondeada
+	// al límite superior de su cubo. 0 si no hay muestras.
+	public long percentile(double p) {
+		long total = 0;
+		for (int b = 0; b < counts.length(); b++) {
+			total += counts.get(b);
+		}
+		if (total <= 0) return 0;
+		final long rank = Math.max(1, (long) Math.ceil(p * total));
+		long cumulative = 0;
+		for (int b = 0; b < counts.length(); b++) {
+			cumulative += counts.get(b);
+			if (cumulative >= rank) {
+				return (b + 1) * bucketNanos;
+			}
+		}
+		return counts.length() * bucketNanos;
+	}
+
+	public int getBucketCount() {
+		return counts.length();
+	}
+
+	public long getBucketNanos() {
+		return bucketNanos;
+	}
+
+	public int getBucket(int bucket) {
+		return counts.get(bucket);
+	}
+
+	// Sólo desde el hilo que registra
+	public void reset() {
+		for (int b = 0; b < counts.length(); b++) {
+			counts.set(b, 0);
+		}
+		windowNext = 0;
+		samples = 0;
+		totalNanos = 0;
+		maxNanos = 0;
+	}
+}
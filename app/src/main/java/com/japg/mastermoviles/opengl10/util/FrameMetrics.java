@@ -0,0 +1,190 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+/* Métricas de los frames: tiempo de CPU (y de GPU si hay con qué medirlo), llamadas de
+*  dibujo, triángulos, cambios de estado y enlaces de textura.
+*  Java puro, sin OpenGL: el renderer le pasa los números de cada frame y el tiempo de GPU
+*  llega por un GpuTimer opcional (GLTimerQuery en el dispositivo), así que se puede usar
+*  y probar sin contexto. Registrar un frame no reserva memoria.
+*
+*  Cada tiempo va a dos histogramas: uno con los últimos WINDOW_FRAMES frames, para la HUD,
+*  y otro acumulado desde el principio, para los informes (dumpToLog, dump, dumpToFile).
+*/
+public class FrameMetrics {
+	private static final String TAG = "FrameMetrics";
+
+	// Cubos de 0,1 ms hasta 100 ms
+	public static final long BUCKET_NANOS = 100000;
+	public static final int NUM_BUCKETS = 1000;
+	public static final int WINDOW_FRAMES = 120;
+
+	public interface GpuTimer {
+		// Alrededor del trabajo del frame, en el hilo de OpenGL
+		void begin();
+		void end();
+		// Tiempo de GPU de algún frame anterior que ya esté disponible, o -1 si no hay ninguno
+		long pollNanos();
+	}
+
+	private final FrameHistogram cpuRecent = new FrameHistogram(BUCKET_NANOS, NUM_BUCKETS, WINDOW_FRAMES);
+	private final FrameHistogram cpuTotal = new FrameHistogram(BUCKET_NANOS, NUM_BUCKETS, 0);
+	private final FrameHistogram gpuRecent = new FrameHistogram(BUCKET_NANOS, NUM_BUCKETS, WINDOW_FRAMES);
+	private final FrameHistogram gpuTotal = new FrameHistogram(BUCKET_NANOS, NUM_BUCKETS, 0);
+
+	private GpuTimer gpuTimer;
+	private long frameStart;
+
+	// Contadores del último frame
+	private volatile int drawCalls;
+	private volatile int triangles;
+	private volatile int stateChanges;
+	private volatile int textureBinds;
+
+	// null para dejar de medir la GPU
+	public void setGpuTimer(GpuTimer gpuTimer) {
+		this.gpuTimer = gpuTimer;
+	}
+
+	public boolean hasGpuTimer() {
+		return gpuTimer != null;
+	}
+
+	public void beginFrame() {
+		frameStart = System.nanoTime();
+		if (gpuTimer != null) gpuTimer.begin();
+	}
+
+	public void endFrame(int drawCalls, int triangles, int stateChanges, int textureBinds) {
+		if (gpuTimer != null) {
+			gpuTimer.end();
+			final long gpuNanos = gpuTimer.pollNanos();
+			if (gpuNanos >= 0) recordGpu(gpuNanos);
+		}
+		recordFrame(System.nanoTime() - frameStart, drawCalls, triangles, stateChanges, textureBinds);
+	}
+
+	// Registra un frame ya medido (endFrame lo usa; las pruebas lo pueden llamar directamente)
+	public void recordFrame(long cpuNanos, int drawCalls, int triangles, int stateChanges, int textureBinds) {
+		cpuRecent.record(cpuNanos);
+		cpuTotal.record(cpuNanos);
+		this.drawCalls = drawCalls;
+		this.triangles = triangles;
+		this.stateChanges = stateChanges;
+		this.textureBinds = textureBinds;
+	}
+
+	public void recordGpu(long gpuNanos) {
+		gpuRecent.record(gpuNanos);
+		gpuTotal.record(gpuNanos);
+	}
+
+	public FrameHistogram getCpuRecent() {
+		return cpuRecent;
+	}
+
+	public FrameHistogram getCpuTotal() {
+		return cpuTotal;
+	}
+
+	public FrameHistogram getGpuRecent() {
+		return gpuRecent;
+	}
+
+	public FrameHistogram getGpuTotal() {
+		return gpuTotal;
+	}
+
+	public long getFrames() {
+		return cpuTotal.getSamples();
+	}
+
+	public int getDrawCalls() {
+		return drawCalls;
+	}
+
+	public int getTriangles() {
+		return triangles;
+	}
+
+	public int getStateChanges() {
+		return stateChanges;
+	}
+
+	public int getTextureBinds() {
+		return textureBinds;
+	}
+
+	// Resumen de los últimos frames, para la HUD. Desde cualquier hilo.
+	public String summary() {
+		StringBuilder text = new StringBuilder(160);
+		appendPercentiles(text.append("CPU "), cpuRecent);
+		if (gpuRecent.getCount() > 0) {
+			appendPercentiles(text.append("\nGPU "), gpuRecent);
+		}
+		text.append('\n').append(drawCalls).append(" llamadas, ").append(triangles).append(" triángulos, ")
+				.append(stateChanges).append(" cambios de estado, ").append(textureBinds).append(" texturas");
+		return text.toString();
+	}
+
+	// Informe completo: percentiles acumulados y los cubos con muestras
+	public void dump(Writer out) throws IOException {
+		out.write("Frames: " + getFrames() + "\n");
+		dumpHistogram(out, "CPU", cpuTotal);
+		if (gpuTotal.getCount() > 0) {
+			dumpHistogram(out, "GPU", gpuTotal);
+		}
+		out.write("Último frame: " + drawCalls + " llamadas, " + triangles + " triángulos, "
+				+ stateChanges + " cambios de estado, " + textureBinds + " texturas\n");
+		out.flush();
+	}
+
+	public void dumpToLog(String tag) {
+		StringWriter out = new StringWriter();
+		try {
+			dump(out);
+		} catch (IOException e) {
+			// StringWriter no lanza
+		}
+		Logger.w(tag != null ? tag : TAG, out.toString());
+	}
+
+	public void dumpToFile(File file) throws IOException {
+		FileWriter out = new FileWriter(file);
+		try {
+			dump(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void appendPercentiles(StringBuilder text, FrameHistogram histogram) {
+		text.append("p50 ").append(formatMillis(histogram.percentile(0.50)))
+				.append(" p95 ").append(formatMillis(histogram.percentile(0.95)))
+				.append(" p99 ").append(formatMillis(histogram.percentile(0.99))).append(" ms");
+	}
+
+	private static void dumpHistogram(Writer out, String name, FrameHistogram histogram) throws IOException {
+		out.write(name + ": p50 " + formatMillis(histogram.percentile(0.50))
+				+ " p95 " + formatMillis(histogram.percentile(0.95))
+				+ " p99 " + formatMillis(histogram.percentile(0.99))
+				+ " máx " + formatMillis(histogram.getMaxNanos())
+				+ " media " + formatMillis(histogram.getTotalNanos() / Math.max(1, histogram.getSamples())) + " ms\n");
+		for (int b = 0; b < histogram.getBucketCount(); b++) {
+			final int count = histogram.getBucket(b);
+			if (count == 0) continue;
+			// El último cubo recoge también todo lo que no cabe en el histograma
+			final String upper = b == histogram.getBucketCount() - 1 ? "" : formatMillis((b + 1) * histogram.getBucketNanos());
+			out.write("  " + formatMillis(b * histogram.getBucketNanos()) + "-" + upper + " ms: " + count + "\n");
+		}
+	}
+
+	private static String formatMillis(long nanos) {
+		return String.format(Locale.US, "%.1f", nanos / 1e6);
+	}
+}
@@ -0,0 +1,81 @@
+package com.japg.mastermoviles.opengl10.util;
+
+/* Planos del volumen de visión y pruebas de esferas y cajas contra ellos.
+*  Los planos se extraen de una matriz modelo-vista-proyección (column-major, como las de
+*  android.opengl.Matrix), así quedan en el espacio del modelo y las cajas y esferas de sus
+*  mallas se prueban sin transformarlas. Sin reservas de memoria: todo va en arrays del llamador.
+*  Java puro, sin dependencias de Android.
+*/
+public class Frustum {
+	public static final int NUM_PLANES = 6;
+	// Cada plano son 4 floats (a, b, c, d), normalizado y con la normal hacia dentro:
+	// un punto p está dentro si a*px + b*py + c*pz + d >= 0
+	public static final int PLANE_FLOATS = 4;
+
+	public static final int LEFT = 0;
+	public static final int RIGHT = 1;
+	public static final int BOTTOM = 2;
+	public static final int TOP = 3;
+	public static final int NEAR = 4;
+	public static final int FAR = 5;
+
+	// Extrae los planos de mvp (método de Gribb-Hartmann) en planes[0..NUM_PLANES*PLANE_FLOATS)
+	public static void extractPlanes(float[] mvp, int offset, float[] planes) {
+		for (int p = 0; p < NUM_PLANES; p++) {
+			// Fila 3 de la matriz más o menos la fila 0 (x), 1 (y) o 2 (z)
+			int row = p / 2;
+			float sign = (p & 1) == 0 ? 1 : -1;
+			float a = mvp[offset + 3]  + sign * mvp[offset + row];
+			float b = mvp[offset + 7]  + sign * mvp[offset + 4 + row];
+			float c = mvp[offset + 11] + sign * mvp[offset + 8 + row];
+			float d = mvp[offset + 15] + sign * mvp[offset + 12 + row];
+			float length = (float) Math.sqrt(a * a + b * b + c * c);
+			if (length > 0) {
+				a /= length;
+				b /= length;
+				c /= length;
+				d /= length;
+			}
+			planes[p * PLANE_FLOATS]     = a;
+			planes[p * PLANE_FLOATS + 1] = b;
+			planes[p * PLANE_FLOATS + 2] = c;
+			planes[p * PLANE_FLOATS + 3] = d;
+		}
+	}
+
+	// true si la esfera (x, y, z, radius) queda entera fuera de algún plano
+	public static boolean sphereOutside(float[] planes, float x, float y, float z, float radius) {
+		for (int p = 0; p < NUM_PLANES * PLANE_FLOATS; p += PLANE_FLOATS) {
+			if (planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < -radius) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// true si la caja de centro (cx, cy, cz) y semilados (hx, hy, hz) queda entera fuera de
+	// algún plano (su vértice más adentro del plano está fuera)
+	public static boolean boxOutside(float[] planes, float cx, float cy, float cz, float hx, float hy, float hz) {
+		for (int p = 0; p < NUM_PLANES * PLANE_FLOATS; p += PLANE_FLOATS) {
+			float distance = planes[p] * cx + planes[p + 1] * cy + planes[p + 2] * cz + planes[p + 3];
+			float extent = Math.abs(planes[p]) * hx + Math.abs(planes[p + 1]) * hy + Math.abs(planes[p + 2]) * hz;
+			if (distance + extent < 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Prueba de los volúmenes de ModelBatches.meshBounds[offset..]: primero la esfera (barata)
+	// y, si no basta para descartar, la caja, que se ajusta mejor a las mallas alargadas
+	public static boolean meshOutside(float[] planes, float[] bounds, int offset) {
+		float cx = bounds[offset + ModelBatches.BOUNDS_CENTER];
+		float cy = bounds[offset + ModelBatches.BOUNDS_CENTER + 1];
+		float cz = bounds[offset + ModelBatches.BOUNDS_CENTER + 2];
+		if (sphereOutside(planes, cx, cy, cz, bounds[offset + ModelBatches.BOUNDS_RADIUS])) {
+			return true;
+		}
+		return boxOutside(planes, cx, cy, cz, bounds[offset + ModelBatches.BOUNDS_EXTENT],
+				bounds[offset + ModelBatches.BOUNDS_EXTENT + 1], bounds[offset + ModelBatches.BOUNDS_EXTENT + 2]);
+	}
+}
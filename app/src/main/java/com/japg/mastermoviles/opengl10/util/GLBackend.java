@@ -0,0 +1,81 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+
+/* Interfaz sobre las llamadas de OpenGL ES que usa el camino de dibujo (Model3D,
+*  OpenGLRenderer, ShaderHelper, TextureHelper y los buffers de geometría).
+*  Implementaciones:
+*  - GLES20Backend: la real, que llama a android.opengl.GLES20 (y GLES30).
+*  - RecordingGLBackend: cuenta (y si se quiere anota) las llamadas y las pasa a otra.
+*  - SoftwareGLBackend: rasterizador por CPU sin contexto, para ejecutar onDrawFrame
+*    entero en una JVM (pruebas, benchmarks, comparación de imágenes).
+*/
+public interface GLBackend {
+	// Estado y framebuffer
+	void glClear(int mask);
+	void glClearColor(float red, float green, float blue, float alpha);
+	void glEnable(int cap);
+	void glDisable(int cap);
+	void glViewport(int x, int y, int width, int height);
+	void glLineWidth(float width);
+	void glGetIntegerv(int pname, int[] params, int offset);
+	String glGetString(int name);
+	void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels);
+
+	// Shaders y programas
+	int glCreateShader(int type);
+	void glShaderSource(int shader, String source);
+	void glCompileShader(int shader);
+	void glGetShaderiv(int shader, int pname, int[] params, int offset);
+	String glGetShaderInfoLog(int shader);
+	void glDeleteShader(int shader);
+	int glCreateProgram();
+	void glAttachShader(int program, int shader);
+	void glLinkProgram(int program);
+	void glValidateProgram(int program);
+	void glGetProgramiv(int program, int pname, int[] params, int offset);
+	String glGetProgramInfoLog(int program);
+	void glDeleteProgram(int program);
+	void glUseProgram(int program);
+	int glGetUniformLocation(int program, String name);
+	int glGetAttribLocation(int program, String name);
+	void glUniform1i(int location, int x);
+	void glUniform1f(int location, float x);
+	void glUniform4f(int location, float x, float y, float z, float w);
+	void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+	// Texturas
+	void glGenTextures(int n, int[] textures, int offset);
+	void glDeleteTextures(int n, int[] textures, int offset);
+	void glActiveTexture(int texture);
+	void glBindTexture(int target, int texture);
+	void glTexParameteri(int target, int pname, int param);
+	void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels);
+	// Como GLUtils.texImage2D: sube el bitmap con su formato
+	void texImage2D(int target, int level, Bitmap bitmap, int border);
+	void glGenerateMipmap(int target);
+
+	// Buffers y dibujo
+	void glGenBuffers(int n, int[] buffers, int offset);
+	void glDeleteBuffers(int n, int[] buffers, int offset);
+	void glBindBuffer(int target, int buffer);
+	void glBufferData(int target, int size, Buffer data, int usage);
+	void glBufferSubData(int target, int offset, int size, Buffer data);
+	void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
+	void glEnableVertexAttribArray(int index);
+	void glDisableVertexAttribArray(int index);
+	void glDrawArrays(int mode, int first, int count);
+	void glDrawElements(int mode, int count, int type, int offset);
+
+	// OpenGL ES 3.0: sólo se pueden llamar con un contexto de esa versión
+	void glVertexAttribDivisor(int index, int divisor);
+	void glDrawArraysInstanced(int mode, int first, int count, int instanceCount);
+	void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount);
+	void glGenQueries(int n, int[] ids, int offset);
+	void glDeleteQueries(int n, int[] ids, int offset);
+	void glBeginQuery(int target, int id);
+	void glEndQuery(int target);
+	void glGetQueryObjectuiv(int id, int pname, int[] params, int offset);
+}
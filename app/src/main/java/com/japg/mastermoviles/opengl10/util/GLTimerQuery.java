@@ -0,0 +1,75 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+/* Tiempo de GPU de cada frame con consultas de EXT_disjoint_timer_query.
+*  Las funciones de consulta son las de OpenGL ES 3.0 (con 2.0 sólo existen como funciones
+*  de la extensión, a las que no se llega desde Java), así que hace falta un contexto 3.0
+*  con la extensión; isSupported() lo comprueba.
+*  Usa un anillo de QUERY_COUNT consultas para no esperar a la GPU: el resultado de un frame
+*  se recoge unos frames después. Los resultados de intervalos en los que la GPU ha
+*  perdido la cuenta (GL_GPU_DISJOINT_EXT) se descartan.
+*  Hay que crearla en el hilo de OpenGL, con el contexto ya creado.
+*/
+public class GLTimerQuery implements FrameMetrics.GpuTimer {
+	private static final String EXTENSION = "GL_EXT_disjoint_timer_query";
+	private static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+	private static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+	private static final int QUERY_COUNT = 4;
+
+	private final GLBackend gl;
+	private final int[] queries = new int[QUERY_COUNT];
+	private final boolean[] pending = new boolean[QUERY_COUNT];
+	private final int[] result = new int[1];
+	// Siguiente consulta por empezar y más antigua por recoger
+	private int next;
+	private int oldest;
+	private boolean active;
+
+	public GLTimerQuery(GLBackend gl) {
+		this.gl = gl;
+		gl.glGenQueries(QUERY_COUNT, queries, 0);
+	}
+
+	public static boolean isSupported(GLBackend gl, int glesVersion) {
+		if (glesVersion < 3) return false;
+		final String extensions = gl.glGetString(GLES20.GL_EXTENSIONS);
+		return extensions != null && extensions.contains(EXTENSION);
+	}
+
+	@Override
+	public void begin() {
+		// Si la GPU va tan atrasada que no queda consulta libre, este frame no se mide
+		active = !pending[next];
+		if (active) {
+			gl.glBeginQuery(GL_TIME_ELAPSED_EXT, queries[next]);
+		}
+	}
+
+	@Override
+	public void end() {
+		if (!active) return;
+		gl.glEndQuery(GL_TIME_ELAPSED_EXT);
+		pending[next] = true;
+		next = (next + 1) % QUERY_COUNT;
+		active = false;
+	}
+
+	@Override
+	public long pollNanos() {
+		if (!pending[oldest]) return -1;
+		gl.glGetQueryObjectuiv(queries[oldest], GLES30.GL_QUERY_RESULT_AVAILABLE, result, 0);
+		if (result[0] == 0) return -1;
+		gl.glGetQueryObjectuiv(queries[oldest], GLES30.GL_QUERY_RESULT, result, 0);
+		pending[oldest] = false;
+		oldest = (oldest + 1) % QUERY_COUNT;
+		final long nanos = result[0] & 0xFFFFFFFFL;
+		gl.glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+		return result[0] != 0 ? -1 : nanos;
+	}
+
+	public void release() {
+		gl.glDeleteQueries(QUERY_COUNT, queries, 0);
+	}
+}
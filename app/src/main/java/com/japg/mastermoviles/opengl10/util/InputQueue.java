@@ -0,0 +1,229 @@
+package com.japg.mastermoviles.opengl10.util;
+
+/* Cola de eventos de entrada (toques, zoom, botones) del hilo de la interfaz al de OpenGL.
+*  Es un buffer circular de capacidad fija con los campos de los eventos en arrays de
+*  primitivos, así que ni encolar ni vaciar reserva memoria, a diferencia de
+*  GLSurfaceView.queueEvent(), que necesita un Runnable nuevo por evento.
+*
+*  Sin cerrojos: un único hilo productor (el de la interfaz) llama a push() y un único
+*  consumidor (el de OpenGL) a drain(). Cada uno sólo escribe su índice (tail y head,
+*  volatile y siempre crecientes), y la escritura de tail publica los campos del evento.
+*  Si la cola se llena (el hilo de OpenGL no dibuja), los arrastres y los zoom que no caben
+*  no se pierden: el productor guarda aparte el último arrastre (con la posición de la cola
+*  en que ocurrió, para entregarlo en orden) y la suma de los zoom, y drain() los recoge.
+*  Esos campos se publican con un contador de versión (impar mientras se escriben): si
+*  drain() los lee a medias, los deja para el frame siguiente. Los demás eventos que no
+*  caben se descartan y se cuentan.
+*
+*  drain() se llama una vez por frame y agrupa los eventos: entre dos eventos que no sean
+*  de arrastre ni de zoom (pulsaciones, botones), que se entregan en orden, los arrastres se
+*  quedan en el último y los zoom se suman en uno. Así con pantallas de 120-240 Hz no se
+*  aplican posiciones ya pasadas.
+*/
+public class InputQueue {
+	public static final int TOUCH_PRESS = 0;
+	public static final int TOUCH_DRAG = 1;
+	public static final int ZOOM_IN = 2;
+	public static final int ZOOM_OUT = 3;
+	public static final int ROTATE_LEFT = 4;
+	public static final int ROTATE_RIGHT = 5;
+
+	public static final int DEFAULT_CAPACITY = 64;
+
+	public interface Handler {
+		void onInputEvent(int type, float x, float y);
+	}
+
+	private final int[] types;
+	private final float[] xs;
+	private final float[] ys;
+	private final int mask;
+	// Siguiente evento por leer (lo escribe el consumidor) y siguiente hueco por escribir
+	// (lo escribe el productor)
+	private volatile int head;
+	private volatile int tail;
+	private volatile int droppedEvents;
+
+	// Arrastres y zoom que no han cabido en la cola; sólo los escribe el productor. El
+	// arrastre va después del evento overflowDragTail - 1 de la cola, y overflowZoom es la
+	// suma de todos los zoom desbordados desde el principio (positiva hacia ZOOM_OUT), que
+	// se entrega donde el último de ellos (los zoom se suman, el orden entre ellos da igual).
+	private volatile int overflowVersion;
+	private volatile int overflowDrags;
+	private volatile float overflowDragX;
+	private volatile float overflowDragY;
+	private volatile int overflowDragTail;
+	private volatile double overflowZoom;
+	private volatile int overflowZoomTail;
+	private volatile int overflowEvents;
+
+	// Lo que drain() ya ha recogido de lo anterior
+	private int drainedOverflowDrags;
+	private double drainedOverflowZoom;
+
+	// Agrupación en curso en drain(); sólo la usa el consumidor
+	private boolean dragPending;
+	private float dragX;
+	private float dragY;
+	private boolean zoomPending;
+	private float zoomDelta;
+	private int coalescedEvents;
+
+	public InputQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	// capacity se redondea a la siguiente potencia de 2
+	public InputQueue(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		types = new int[size];
+		xs = new float[size];
+		ys = new float[size];
+		mask = size - 1;
+	}
+
+	public int getCapacity() {
+		return types.length;
+	}
+
+	// Sólo desde el hilo productor. Devuelve false si la cola está llena y el evento se ha
+	// descartado (nunca con arrastres y zoom).
+	public boolean push(int type, float x, float y) {
+		final int t = tail;
+		if (t - head == types.length) {
+			return overflow(t, type, x, y);
+		}
+		final int e = t & mask;
+		types[e] = type;
+		xs[e] = x;
+		ys[e] = y;
+		tail = t + 1;
+		return true;
+	}
+
+	public boolean push(int type) {
+		return push(type, 0f, 0f);
+	}
+
+	// Con la cola llena: guarda aparte el arrastre o el zoom, o descarta el evento
+	private boolean overflow(int t, int type, float x, float y) {
+		if (type != TOUCH_DRAG && type != ZOOM_IN && type != ZOOM_OUT) {
+			droppedEvents++;
+			return false;
+		}
+		final int version = overflowVersion;
+		overflowVersion = version + 1;
+		if (type == TOUCH_DRAG) {
+			overflowDragX = x;
+			overflowDragY = y;
+			overflowDragTail = t;
+			overflowDrags++;
+		} else {
+			overflowZoom += type == ZOOM_OUT ? x : -x;
+			overflowZoomTail = t;
+		}
+		overflowVersion = version + 2;
+		overflowEvents++;
+		return true;
+	}
+
+	// Sólo desde el hilo consumidor: pasa al handler los eventos encolados hasta ahora,
+	// agrupados. Devuelve cuántos ha entregado.
+	public int drain(Handler handler) {
+		final int t = tail;
+		int delivered = 0;
+
+		// Lo desbordado, si se lee entero, y sólo si ocurrió antes de t (si no, va detrás de
+		// eventos de la cola que se entregan en el frame siguiente)
+		boolean drag = false;
+		boolean zoom = false;
+		float x = 0f, y = 0f, zoomAmount = 0f;
+		int dragTail = 0, zoomTail = 0;
+		final int version = overflowVersion;
+		if ((version & 1) == 0) {
+			final int drags = overflowDrags;
+			x = overflowDragX;
+			y = overflowDragY;
+			dragTail = overflowDragTail;
+			final double zoomTotal = overflowZoom;
+			zoomTail = overflowZoomTail;
+			if (overflowVersion == version) {
+				drag = drags != drainedOverflowDrags && dragTail - t <= 0;
+				if (drag) drainedOverflowDrags = drags;
+				zoom = zoomTotal != drainedOverflowZoom && zoomTail - t <= 0;
+				if (zoom) {
+					zoomAmount = (float) (zoomTotal - drainedOverflowZoom);
+					drainedOverflowZoom = zoomTotal;
+				}
+			}
+		}
+
+		for (int h = head; h != t; h++) {
+			if (drag && h == dragTail) coalesceDrag(x, y);
+			if (zoom && h == zoomTail) coalesceZoom(zoomAmount);
+			final int e = h & mask;
+			final int type = types[e];
+			if (type == TOUCH_DRAG) {
+				coalesceDrag(xs[e], ys[e]);
+			} else if (type == ZOOM_IN || type == ZOOM_OUT) {
+				coalesceZoom(type == ZOOM_OUT ? xs[e] : -xs[e]);
+			} else {
+				delivered += flush(handler);
+				handler.onInputEvent(type, xs[e], ys[e]);
+				delivered++;
+			}
+		}
+		if (drag && dragTail == t) coalesceDrag(x, y);
+		if (zoom && zoomTail == t) coalesceZoom(zoomAmount);
+		delivered += flush(handler);
+		// Libera los huecos para el productor
+		head = t;
+		return delivered;
+	}
+
+	private void coalesceDrag(float x, float y) {
+		if (dragPending) coalescedEvents++;
+		dragPending = true;
+		dragX = x;
+		dragY = y;
+	}
+
+	private void coalesceZoom(float delta) {
+		if (zoomPending) coalescedEvents++;
+		zoomPending = true;
+		zoomDelta += delta;
+	}
+
+	// Entrega el arrastre y el zoom agrupados: el último arrastre y la suma de los zoom
+	private int flush(Handler handler) {
+		int delivered = 0;
+		if (dragPending) {
+			handler.onInputEvent(TOUCH_DRAG, dragX, dragY);
+			dragPending = false;
+			delivered++;
+		}
+		if (zoomPending) {
+			if (zoomDelta != 0) {
+				handler.onInputEvent(zoomDelta > 0 ? ZOOM_OUT : ZOOM_IN, Math.abs(zoomDelta), 0f);
+				delivered++;
+			}
+			zoomPending = false;
+			zoomDelta = 0;
+		}
+		return delivered;
+	}
+
+	public int getDroppedEvents() {
+		return droppedEvents;
+	}
+
+	// Arrastres y zoom que no cabían en la cola y se han guardado aparte
+	public int getOverflowEvents() {
+		return overflowEvents;
+	}
+
+	// Eventos que no se han entregado por agruparse con otros
+	public int getCoalescedEvents() {
+		return coalescedEvents;
+	}
+}
@@ -0,0 +1,308 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import static android.opengl.GLES20.GL_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_ELEMENT_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_FLOAT;
+import static android.opengl.GLES20.GL_STATIC_DRAW;
+import static android.opengl.GLES20.GL_STREAM_DRAW;
+import static android.opengl.GLES20.GL_TRIANGLES;
+import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/* Buffers para dibujar muchas copias (ModelInstances) de un modelo con pocas llamadas.
+*
+*  MODE_INSTANCED (OpenGL ES 3.0): los lotes de ModelBuffers se dibujan con
+*  glDraw*Instanced y la matriz de cada instancia es un atributo (4 columnas vec4 con
+*  divisor 1) leído de un VBO que se actualiza sólo cuando cambian las matrices.
+*
+*  MODE_UNIFORM_ARRAY (OpenGL ES 2.0, sin divisor): cada lote se copia hasta
+*  MAX_UNIFORM_INSTANCES veces en un VBO propio, con un atributo más que dice a qué copia
+*  pertenece cada vértice; el shader toma la matriz de un array de uniform con ese índice,
+*  así cada llamada dibuja hasta ese número de instancias. En los lotes con índices de 16 bits
+*  las copias caben mientras no pasen de 65536 vértices, y en todos se limitan a
+*  MAX_COPY_BYTES para que un modelo grande no multiplique su memoria.
+*/
+public class InstancedBuffers {
+	public static final int MODE_INSTANCED = 1;
+	public static final int MODE_UNIFORM_ARRAY = 2;
+
+	// Tamaño del array u_InstanceMatrices del shader de OpenGL ES 2.0 (16 mat4 = 64 vectores
+	// de uniform, de los 128 que garantiza la especificación)
+	public static final int MAX_UNIFORM_INSTANCES = 16;
+
+	private static final int FLOATS_PER_VERTEX = 8;
+	private static final int BYTES_PER_FLOAT = 4;
+	private static final int BYTES_PER_SHORT = 2;
+	private static final int POSITION_COMPONENT_COUNT = 3;
+	private static final int NORMAL_COMPONENT_COUNT = 3;
+	private static final int UV_COMPONENT_COUNT = 2;
+	private static final int STRIDE = FLOATS_PER_VERTEX * BYTES_PER_FLOAT;
+	private static final int MATRIX_COLUMNS = 4;
+	private static final int MATRIX_STRIDE = ModelInstances.MATRIX_FLOATS * BYTES_PER_FLOAT;
+	// Vértices que caben en un lote indexado con GL_UNSIGNED_SHORT
+	private static final int MAX_BATCH_VERTICES = 0x10000;
+	private static final int MAX_COPY_BYTES = 4 * 1024 * 1024;
+
+	private final GLBackend gl;
+	private final int mode;
+	private ModelBatches batches;
+
+	// MODE_INSTANCED: VBO con las matrices, su tamaño y versión de las matrices que tiene
+	private int[] instanceBuffer = new int[1];
+	private int instanceBufferBytes;
+	private ModelInstances uploadedInstances;
+	private int uploadedVersion;
+
+	// MODE_UNIFORM_ARRAY: por lote, copias que caben y buffers con ellas (0 = sin subir)
+	private int[] copies = new int[0];
+	private int[] vertexBuffers = new int[0];
+	private int[] copyIndexBuffers = new int[0];
+	private int[] indexBuffers = new int[0];
+
+	// Llamadas de dibujo y triángulos emitidos desde el último resetDrawCalls()
+	private int drawCalls;
+	private int trianglesDrawn;
+
+	public InstancedBuffers(GLBackend gl, int mode) {
+		this.gl = gl;
+		this.mode = mode;
+	}
+
+	public int getMode() {
+		return mode;
+	}
+
+	public int getDrawCalls() {
+		return drawCalls;
+	}
+
+	public int getTrianglesDrawn() {
+		return trianglesDrawn;
+	}
+
+	public void resetDrawCalls() {
+		drawCalls = 0;
+		trianglesDrawn = 0;
+	}
+
+	// Prepara los buffers para un contexto nuevo; los del anterior murieron con él
+	public void prepare(ModelBatches batches) {
+		if (batches.isQuantized()) {
+			throw new IllegalArgumentException("El dibujo por instancias necesita vértices sin comprimir");
+		}
+		this.batches = batches;
+		instanceBuffer = new int[1];
+		instanceBufferBytes = 0;
+		uploadedInstances = null;
+		copies = new int[batches.numBatches];
+		vertexBuffers = new int[batches.numBatches];
+		copyIndexBuffers = new int[batches.numBatches];
+		indexBuffers = new int[batches.numBatches];
+		for (int b = 0; b < batches.numBatches; b++) {
+			int vertices = Math.max(1, batches.batchVertexCount[b]);
+			int fit = MAX_COPY_BYTES / (vertices * STRIDE);
+			if (batches.indexData[b] != null) {
+				fit = Math.min(fit, MAX_BATCH_VERTICES / vertices);
+			}
+			copies[b] = Math.max(1, Math.min(MAX_UNIFORM_INSTANCES, fit));
+		}
+	}
+
+	public boolean isPrepared() {
+		return batches != null;
+	}
+
+	// Instancias que se dibujan por llamada en el lote b (MODE_UNIFORM_ARRAY)
+	public int getCopies(int batch) {
+		return copies[batch];
+	}
+
+	// ---- MODE_INSTANCED ----
+
+	// Sube las matrices si han cambiado desde la última vez
+	public void uploadInstances(ModelInstances instances) {
+		int bytes = instances.getCount() * MATRIX_STRIDE;
+		if (uploadedInstances == instances && uploadedVersion == instances.getVersion() && instanceBuffer[0] != 0) {
+			return;
+		}
+		if (instanceBuffer[0] == 0) {
+			gl.glGenBuffers(1, instanceBuffer, 0);
+		}
+		gl.glBindBuffer(GL_ARRAY_BUFFER, instanceBuffer[0]);
+		if (bytes > instanceBufferBytes) {
+			gl.glBufferData(GL_ARRAY_BUFFER, bytes, instances.buffer(), GL_STREAM_DRAW);
+			instanceBufferBytes = bytes;
+		} else if (bytes > 0) {
+			gl.glBufferSubData(GL_ARRAY_BUFFER, 0, bytes, instances.buffer());
+		}
+		gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+		uploadedInstances = instances;
+		uploadedVersion = instances.getVersion();
+	}
+
+	// Apunta las 4 columnas del atributo mat4 (a partir de location) al VBO de matrices
+	public void bindInstanceMatrices(int location) {
+		gl.glBindBuffer(GL_ARRAY_BUFFER, instanceBuffer[0]);
+		for (int c = 0; c < MATRIX_COLUMNS; c++) {
+			gl.glEnableVertexAttribArray(location + c);
+			gl.glVertexAttribPointer(location + c, 4, GL_FLOAT, false, MATRIX_STRIDE, c * 4 * BYTES_PER_FLOAT);
+			gl.glVertexAttribDivisor(location + c, 1);
+		}
+	}
+
+	// Deja las columnas sin divisor y desactivadas para no afectar a los demás programas
+	public void unbindInstanceMatrices(int location) {
+		for (int c = 0; c < MATRIX_COLUMNS; c++) {
+			gl.glVertexAttribDivisor(location + c, 0);
+			gl.glDisableVertexAttribArray(location + c);
+		}
+	}
+
+	// Dibuja count instancias del lote (enlazado con ModelBuffers.bind) en el nivel level
+	public void drawInstanced(int batch, int level, int count) {
+		if (batches.indexData[batch] != null) {
+			int first = levelFirst(batch, level);
+			int indices = levelEnd(batch, level) - first;
+			gl.glDrawElementsInstanced(GL_TRIANGLES, indices, GL_UNSIGNED_SHORT, first * BYTES_PER_SHORT, count);
+			trianglesDrawn += indices / 3 * count;
+		} else {
+			gl.glDrawArraysInstanced(GL_TRIANGLES, 0, batches.batchVertexCount[batch], count);
+			trianglesDrawn += batches.batchVertexCount[batch] / 3 * count;
+		}
+		drawCalls++;
+	}
+
+	// ---- MODE_UNIFORM_ARRAY ----
+
+	// Enlaza las copias del lote (subiéndolas la primera vez) y apunta los atributos,
+	// con aInstanceIndexLocation para el índice de la copia
+	public void bindCopies(int batch, int aPositionLocation, int aNormalLocation, int aUVLocation, int aInstanceIndexLocation) {
+		if (vertexBuffers[batch] == 0) {
+			uploadCopies(batch);
+		}
+		gl.glBindBuffer(GL_ARRAY_BUFFER, vertexBuffers[batch]);
+		gl.glVertexAttribPointer(aPositionLocation, POSITION_COMPONENT_COUNT, GL_FLOAT, false, STRIDE, 0);
+		gl.glVertexAttribPointer(aNormalLocation, NORMAL_COMPONENT_COUNT, GL_FLOAT, false, STRIDE,
+				POSITION_COMPONENT_COUNT * BYTES_PER_FLOAT);
+		gl.glVertexAttribPointer(aUVLocation, UV_COMPONENT_COUNT, GL_FLOAT, false, STRIDE,
+				(POSITION_COMPONENT_COUNT + NORMAL_COMPONENT_COUNT) * BYTES_PER_FLOAT);
+		gl.glBindBuffer(GL_ARRAY_BUFFER, copyIndexBuffers[batch]);
+		gl.glEnableVertexAttribArray(aInstanceIndexLocation);
+		gl.glVertexAttribPointer(aInstanceIndexLocation, 1, GL_FLOAT, false, BYTES_PER_FLOAT, 0);
+		gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBuffers[batch]);
+	}
+
+	// Dibuja las count primeras copias del lote enlazado con bindCopies (count <= getCopies)
+	public void drawCopies(int batch, int level, int count) {
+		int n = copies[batch];
+		if (batches.indexData[batch] != null) {
+			// Cada bloque de nivel está repetido n veces seguidas
+			int first = levelFirst(batch, level);
+			int indices = levelEnd(batch, level) - first;
+			gl.glDrawElements(GL_TRIANGLES, indices * count, GL_UNSIGNED_SHORT, first * n * BYTES_PER_SHORT);
+			trianglesDrawn += indices / 3 * count;
+		} else {
+			gl.glDrawArrays(GL_TRIANGLES, 0, batches.batchVertexCount[batch] * count);
+			trianglesDrawn += batches.batchVertexCount[batch] / 3 * count;
+		}
+		drawCalls++;
+	}
+
+	public void unbindCopies(int aInstanceIndexLocation) {
+		gl.glDisableVertexAttribArray(aInstanceIndexLocation);
+	}
+
+	// Rango de índices del bloque del nivel level en el índice del lote
+	private int levelFirst(int batch, int level) {
+		return batches.first(level, batches.slotMesh[batches.batchFirstSlot[batch]]);
+	}
+
+	private int levelEnd(int batch, int level) {
+		int lastMesh = batches.slotMesh[batches.batchFirstSlot[batch] + batches.batchSlotCount[batch] - 1];
+		return batches.first(level, lastMesh) + batches.count(level, lastMesh);
+	}
+
+	// Sube n copias de los vértices del lote, el índice de copia de cada vértice y, si tiene,
+	// su índice con cada bloque de nivel repetido n veces (desplazado a cada copia)
+	private void uploadCopies(int b) {
+		int n = copies[b];
+		int vertexCount = batches.batchVertexCount[b];
+		FloatBuffer source = batches.vertexData[b].duplicate();
+		FloatBuffer vertices = ByteBuffer
+				.allocateDirect(n * vertexCount * STRIDE)
+				.order(ByteOrder.nativeOrder())
+				.asFloatBuffer();
+		FloatBuffer copyIndex = ByteBuffer
+				.allocateDirect(n * vertexCount * BYTES_PER_FLOAT)
+				.order(ByteOrder.nativeOrder())
+				.asFloatBuffer();
+		for (int c = 0; c < n; c++) {
+			source.position(0);
+			source.limit(vertexCount * FLOATS_PER_VERTEX);
+			vertices.put(source);
+			for (int v = 0; v < vertexCount; v++) {
+				copyIndex.put(c);
+			}
+		}
+		vertices.position(0);
+		copyIndex.position(0);
+
+		int[] names = new int[3];
+		gl.glGenBuffers(2, names, 0);
+		vertexBuffers[b] = names[0];
+		copyIndexBuffers[b] = names[1];
+		gl.glBindBuffer(GL_ARRAY_BUFFER, vertexBuffers[b]);
+		gl.glBufferData(GL_ARRAY_BUFFER, n * vertexCount * STRIDE, vertices, GL_STATIC_DRAW);
+		gl.glBindBuffer(GL_ARRAY_BUFFER, copyIndexBuffers[b]);
+		gl.glBufferData(GL_ARRAY_BUFFER, n * vertexCount * BYTES_PER_FLOAT, copyIndex, GL_STATIC_DRAW);
+		gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+		ShortBuffer index = batches.indexData[b];
+		if (index == null) {
+			return;
+		}
+		ShortBuffer indices = ByteBuffer
+				.allocateDirect(n * batches.batchIndexCount[b] * BYTES_PER_SHORT)
+				.order(ByteOrder.nativeOrder())
+				.asShortBuffer();
+		for (int level = 0; level < batches.numLevels; level++) {
+			int first = levelFirst(b, level);
+			int end = levelEnd(b, level);
+			for (int c = 0; c < n; c++) {
+				int base = c * vertexCount;
+				for (int i = first; i < end; i++) {
+					indices.put((short) ((index.get(i) & 0xffff) + base));
+				}
+			}
+		}
+		indices.position(0);
+		gl.glGenBuffers(1, names, 2);
+		indexBuffers[b] = names[2];
+		gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBuffers[b]);
+		gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, n * batches.batchIndexCount[b] * BYTES_PER_SHORT, indices, GL_STATIC_DRAW);
+		gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+
+	// Libera los buffers de la GPU (en el hilo de OpenGL, con el contexto vivo)
+	public void release() {
+		if (batches == null) {
+			return;
+		}
+		gl.glDeleteBuffers(1, instanceBuffer, 0);
+		gl.glDeleteBuffers(vertexBuffers.length, vertexBuffers, 0);
+		gl.glDeleteBuffers(copyIndexBuffers.length, copyIndexBuffers, 0);
+		gl.glDeleteBuffers(indexBuffers.length, indexBuffers, 0);
+		batches = null;
+		instanceBuffer = new int[1];
+		instanceBufferBytes = 0;
+		uploadedInstances = null;
+		copies = new int[0];
+		vertexBuffers = new int[0];
+		copyIndexBuffers = new int[0];
+		indexBuffers = new int[0];
+	}
+}
@@ -0,0 +1,30 @@
+package com.japg.mastermoviles.opengl10.util;
+
+/* Salida de los mensajes de log de las clases que también se usan fuera de Android
+*  (por ejemplo ModelConverter, que se ejecuta en la máquina de compilación, o los
+*  benchmarks de la JVM). Java puro: por defecto escribe en System.err y la aplicación
+*  cambia a android.util.Log con setSink(AndroidLogSink.INSTANCE) al arrancar.
+*/
+public class Logger {
+
+	public interface Sink {
+		void w(String tag, String message);
+	}
+
+	public static final Sink CONSOLE = new Sink() {
+		@Override
+		public void w(String tag, String message) {
+			System.err.println(tag + ": " + message);
+		}
+	};
+
+	private static volatile Sink sink = CONSOLE;
+
+	public static void setSink(Sink newSink) {
+		sink = newSink;
+	}
+
+	public static void w(String tag, String message) {
+		sink.w(tag, message);
+	}
+}
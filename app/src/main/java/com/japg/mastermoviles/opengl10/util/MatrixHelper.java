@@ -0,0 +1,64 @@
+package com.japg.mastermoviles.opengl10.util;
+
+/* Operaciones con matrices 4x4 column-major, iguales a las de android.opengl.Matrix que usa
+*  el dibujo de los modelos (setIdentityM, translateM, rotateM y multiplyMM), en Java puro:
+*  así el camino de cada frame se puede ejecutar y medir fuera del dispositivo. Ninguna
+*  reserva memoria.
+*/
+public class MatrixHelper {
+	public static final int MATRIX_FLOATS = 16;
+
+	public static void setIdentity(float[] m, int offset) {
+		for (int i = 0; i < MATRIX_FLOATS; i++) {
+			m[offset + i] = (i % 5 == 0) ? 1 : 0;
+		}
+	}
+
+	// m = m * T(x, y, z)
+	public static void translate(float[] m, int offset, float x, float y, float z) {
+		for (int row = 0; row < 4; row++) {
+			m[offset + 12 + row] += m[offset + row] * x + m[offset + 4 + row] * y + m[offset + 8 + row] * z;
+		}
+	}
+
+	// m = m * R(a, x, y, z): a grados alrededor del eje (x, y, z), que no hace falta normalizar
+	public static void rotate(float[] m, int offset, float a, float x, float y, float z) {
+		final float radians = (float) Math.toRadians(a);
+		final float s = (float) Math.sin(radians);
+		final float c = (float) Math.cos(radians);
+		final float length = (float) Math.sqrt(x * x + y * y + z * z);
+		if (length == 0) return;
+		x /= length;
+		y /= length;
+		z /= length;
+		final float nc = 1.0f - c;
+		// Columnas de la rotación
+		final float r00 = x * x * nc + c, r10 = x * y * nc + z * s, r20 = x * z * nc - y * s;
+		final float r01 = x * y * nc - z * s, r11 = y * y * nc + c, r21 = y * z * nc + x * s;
+		final float r02 = x * z * nc + y * s, r12 = y * z * nc - x * s, r22 = z * z * nc + c;
+		for (int row = 0; row < 4; row++) {
+			final float m0 = m[offset + row];
+			final float m1 = m[offset + 4 + row];
+			final float m2 = m[offset + 8 + row];
+			m[offset + row]     = m0 * r00 + m1 * r10 + m2 * r20;
+			m[offset + 4 + row] = m0 * r01 + m1 * r11 + m2 * r21;
+			m[offset + 8 + row] = m0 * r02 + m1 * r12 + m2 * r22;
+		}
+	}
+
+	// result = lhs * rhs. result no puede solaparse con lhs ni con rhs.
+	public static void multiply(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+		for (int column = 0; column < 4; column++) {
+			float r0 = rhs[rhsOffset + column * 4];
+			float r1 = rhs[rhsOffset + column * 4 + 1];
+			float r2 = rhs[rhsOffset + column * 4 + 2];
+			float r3 = rhs[rhsOffset + column * 4 + 3];
+			for (int row = 0; row < 4; row++) {
+				result[resultOffset + column * 4 + row] = lhs[lhsOffset + row] * r0
+						+ lhs[lhsOffset + 4 + row] * r1
+						+ lhs[lhsOffset + 8 + row] * r2
+						+ lhs[lhsOffset + 12 + row] * r3;
+			}
+		}
+	}
+}
@@ -0,0 +1,444 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import java.util.Arrays;
+
+/* Simplificación de mallas indexadas por colapso de aristas con cuádricas de error
+*  (Garland-Heckbert), para generar niveles de detalle (LOD).
+*
+*  La topología se construye soldando los vértices sólo por posición, así las costuras de
+*  normales o uv no parten la malla. Los colapsos son de media arista (un extremo se funde
+*  en el otro, que no se mueve), de modo que todos los niveles usan los vértices originales:
+*  cada nivel es sólo otra lista de índices sobre el mismo buffer de vértices.
+*  Java puro, sin dependencias de Android.
+*/
+public class MeshSimplifier {
+	// Peso de los planos que protegen los bordes abiertos de la malla
+	private static final double BOUNDARY_WEIGHT = 1000;
+	// Coseno mínimo entre la normal de un triángulo antes y después de un colapso
+	private static final double MIN_NORMAL_COS = 0.2;
+
+	private final float[] positions;
+	private final int numPositions;
+
+	// Triángulos sobre las posiciones y, por esquina, el vértice original
+	private final int[] tri;
+	private final int[] corner;
+	private final boolean[] triDead;
+	private int liveTriangles;
+
+	// Vértice original que representa a cada posición, y posición de cada vértice original
+	private final int[] representative;
+	private final int[] positionOf;
+
+	// Triángulos de cada posición (pueden quedar triángulos muertos, se limpian al recorrerlos)
+	private final int[][] adjacency;
+	private final int[] adjacencyCount;
+
+	private final double[] quadrics;
+	private final boolean[] removed;
+	private final int[] stamp;
+
+	// Cola de prioridad (montículo binario) de colapsos candidatos, con invalidación perezosa
+	private int[] heap = new int[64];
+	private int heapSize;
+	private double[] edgeCost = new double[64];
+	private int[] edgeFrom = new int[64];
+	private int[] edgeTo = new int[64];
+	private int[] edgeStampFrom = new int[64];
+	private int[] edgeStampTo = new int[64];
+	private int numEdges;
+	private int[] freeEdges = new int[64];
+	private int numFreeEdges;
+
+	// Planos de trabajo de canCollapse
+	private final double[] before = new double[4];
+	private final double[] after = new double[4];
+
+	// Marcas para recorrer vecinos sin repetir
+	private final int[] mark;
+	private int markValue;
+
+	// Genera un nivel por cada ratio (fracción de triángulos a conservar, decreciente) a partir
+	// de indices[0..indexCount), con las posiciones en vertices[v*stride .. v*stride+2].
+	public static int[][] buildLevels(int[] indices, int indexCount, float[] vertices, int vertexCount, int stride, float[] ratios) {
+		MeshSimplifier simplifier = new MeshSimplifier(indices, indexCount, vertices, vertexCount, stride);
+		int[][] levels = new int[ratios.length][];
+		int triangles = indexCount / 3;
+
+		for (int i = 0; i < ratios.length; i++) {
+			simplifier.simplify(Math.max(1, (int) (triangles * ratios[i])));
+			levels[i] = simplifier.snapshot();
+			if (levels[i].length == 0) {
+				// Mallas diminutas (un cubo): el último colapso puede quitar los dos últimos
+				// triángulos; el nivel se queda como el anterior para no hacer desaparecer la malla
+				levels[i] = i > 0 ? levels[i - 1].clone() : Arrays.copyOf(indices, indexCount);
+			}
+		}
+		return levels;
+	}
+
+	private MeshSimplifier(int[] indices, int indexCount, float[] vertices, int vertexCount, int stride) {
+		int numTriangles = indexCount / 3;
+		int t, k, v;
+
+		// Soldamos por posición
+		VertexWelder welder = new VertexWelder(3, vertexCount);
+		float[] position = new float[3];
+		positionOf = new int[vertexCount];
+		for (v = 0; v < vertexCount; v++) {
+			System.arraycopy(vertices, v * stride, position, 0, 3);
+			positionOf[v] = welder.add(position, 0);
+		}
+		numPositions = welder.getVertexCount();
+		positions = welder.getVertices();
+		representative = new int[numPositions];
+		Arrays.fill(representative, -1);
+		for (v = 0; v < vertexCount; v++) {
+			if (representative[positionOf[v]] < 0) representative[positionOf[v]] = v;
+		}
+
+		tri = new int[numTriangles * 3];
+		corner = new int[numTriangles * 3];
+		triDead = new boolean[numTriangles];
+		adjacency = new int[numPositions][];
+		adjacencyCount = new int[numPositions];
+		for (t = 0; t < numTriangles; t++) {
+			for (k = 0; k < 3; k++) {
+				corner[t * 3 + k] = indices[t * 3 + k];
+				tri[t * 3 + k] = positionOf[indices[t * 3 + k]];
+			}
+			if (tri[t * 3] == tri[t * 3 + 1] || tri[t * 3 + 1] == tri[t * 3 + 2] || tri[t * 3] == tri[t * 3 + 2]) {
+				triDead[t] = true;
+				continue;
+			}
+			liveTriangles++;
+			for (k = 0; k < 3; k++) {
+				addAdjacent(tri[t * 3 + k], t);
+			}
+		}
+
+		quadrics = new double[numPositions * 10];
+		removed = new boolean[numPositions];
+		stamp = new int[numPositions];
+		mark = new int[numPositions];
+
+		double[] plane = new double[4];
+		for (t = 0; t < numTriangles; t++) {
+			if (triDead[t]) continue;
+			double area = trianglePlane(tri[t * 3], tri[t * 3 + 1], tri[t * 3 + 2], plane);
+			for (k = 0; k < 3; k++) {
+				addPlane(tri[t * 3 + k], plane, area);
+			}
+		}
+		addBoundaryPlanes(plane);
+
+		// Colapsos iniciales: cada arista una vez
+		for (v = 0; v < numPositions; v++) {
+			int tag = nextMark();
+			for (int i = 0; i < adjacencyCount[v]; i++) {
+				t = adjacency[v][i];
+				for (k = 0; k < 3; k++) {
+					int n = tri[t * 3 + k];
+					if (n > v && mark[n] != tag) {
+						mark[n] = tag;
+						pushEdge(v, n);
+					}
+				}
+			}
+		}
+	}
+
+	// Colapsa aristas hasta que queden targetTriangles triángulos o no haya más colapsos válidos
+	private void simplify(int targetTriangles) {
+		while (liveTriangles > targetTriangles && heapSize > 0) {
+			int e = popEdge();
+			int from = edgeFrom[e];
+			int to = edgeTo[e];
+			boolean valid = !removed[from] && !removed[to]
+					&& stamp[from] == edgeStampFrom[e] && stamp[to] == edgeStampTo[e];
+			freeEdges = grow(freeEdges, numFreeEdges + 1);
+			freeEdges[numFreeEdges++] = e;
+			if (valid && canCollapse(from, to)) {
+				collapse(from, to);
+			}
+		}
+	}
+
+	// Índices del nivel actual sobre los vértices originales
+	private int[] snapshot() {
+		int[] out = new int[liveTriangles * 3];
+		int n = 0;
+
+		for (int t = 0; t < triDead.length; t++) {
+			if (triDead[t]) continue;
+			for (int k = 0; k < 3; k++) {
+				int p = tri[t * 3 + k];
+				int original = corner[t * 3 + k];
+				// La esquina conserva su vértice (normal y uv) si su posición no se ha fundido
+				out[n++] = positionOf[original] == p ? original : representative[p];
+			}
+		}
+		return out;
+	}
+
+	private void collapse(int from, int to) {
+		for (int i = 0; i < adjacencyCount[from]; i++) {
+			int t = adjacency[from][i];
+			if (triDead[t]) continue;
+			if (tri[t * 3] == to || tri[t * 3 + 1] == to || tri[t * 3 + 2] == to) {
+				triDead[t] = true;
+				liveTriangles--;
+				continue;
+			}
+			for (int k = 0; k < 3; k++) {
+				if (tri[t * 3 + k] == from) tri[t * 3 + k] = to;
+			}
+			addAdjacent(to, t);
+		}
+		removed[from] = true;
+		adjacency[from] = null;
+		adjacencyCount[from] = 0;
+		for (int q = 0; q < 10; q++) {
+			quadrics[to * 10 + q] += quadrics[from * 10 + q];
+		}
+		stamp[to]++;
+		compactAdjacency(to);
+
+		// Nuevos candidatos desde to
+		int tag = nextMark();
+		mark[to] = tag;
+		for (int i = 0; i < adjacencyCount[to]; i++) {
+			int t = adjacency[to][i];
+			for (int k = 0; k < 3; k++) {
+				int n = tri[t * 3 + k];
+				if (mark[n] != tag) {
+					mark[n] = tag;
+					pushEdge(to, n);
+				}
+			}
+		}
+	}
+
+	// Comprueba que mover from hasta to no da la vuelta a ningún triángulo y que se cumple
+	// la condición de enlace (no se crean zonas no-manifold)
+	private boolean canCollapse(int from, int to) {
+		int shared = 0;
+		int i, k;
+
+		for (i = 0; i < adjacencyCount[from]; i++) {
+			int t = adjacency[from][i];
+			if (triDead[t]) continue;
+			int a = tri[t * 3], b = tri[t * 3 + 1], c = tri[t * 3 + 2];
+			if (a == to || b == to || c == to) {
+				shared++;
+				continue;
+			}
+			trianglePlane(a, b, c, before);
+			trianglePlane(a == from ? to : a, b == from ? to : b, c == from ? to : c, after);
+			double cos = before[0] * after[0] + before[1] * after[1] + before[2] * after[2];
+			if (cos < MIN_NORMAL_COS) {
+				return false;
+			}
+		}
+
+		// Vecinos comunes de from y to: tantos como triángulos comparten la arista
+		int tag = nextMark();
+		for (i = 0; i < adjacencyCount[from]; i++) {
+			int t = adjacency[from][i];
+			if (triDead[t]) continue;
+			for (k = 0; k < 3; k++) mark[tri[t * 3 + k]] = tag;
+		}
+		int tagTo = nextMark();
+		int common = 0;
+		for (i = 0; i < adjacencyCount[to]; i++) {
+			int t = adjacency[to][i];
+			if (triDead[t]) continue;
+			for (k = 0; k < 3; k++) {
+				int n = tri[t * 3 + k];
+				if (n != from && n != to && mark[n] == tag) {
+					mark[n] = tagTo;
+					common++;
+				}
+			}
+		}
+		return common <= shared;
+	}
+
+	private void pushEdge(int a, int b) {
+		double costAB = vertexError(a, b, b);
+		double costBA = vertexError(a, b, a);
+		int e;
+
+		if (numFreeEdges > 0) {
+			e = freeEdges[--numFreeEdges];
+		} else {
+			e = numEdges++;
+			if (e == edgeCost.length) {
+				int size = e * 2;
+				edgeCost = Arrays.copyOf(edgeCost, size);
+				edgeFrom = Arrays.copyOf(edgeFrom, size);
+				edgeTo = Arrays.copyOf(edgeTo, size);
+				edgeStampFrom = Arrays.copyOf(edgeStampFrom, size);
+				edgeStampTo = Arrays.copyOf(edgeStampTo, size);
+			}
+		}
+		edgeFrom[e] = costAB <= costBA ? a : b;
+		edgeTo[e] = costAB <= costBA ? b : a;
+		edgeCost[e] = Math.min(costAB, costBA);
+		edgeStampFrom[e] = stamp[edgeFrom[e]];
+		edgeStampTo[e] = stamp[edgeTo[e]];
+
+		heap = grow(heap, heapSize + 1);
+		int i = heapSize++;
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			if (edgeCost[heap[parent]] <= edgeCost[e]) break;
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = e;
+	}
+
+	private int popEdge() {
+		int top = heap[0];
+		int last = heap[--heapSize];
+		int i = 0;
+
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize) break;
+			if (child + 1 < heapSize && edgeCost[heap[child + 1]] < edgeCost[heap[child]]) child++;
+			if (edgeCost[heap[child]] >= edgeCost[last]) break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		if (heapSize > 0) heap[i] = last;
+		return top;
+	}
+
+	// Error de (Qa + Qb) en la posición p
+	private double vertexError(int a, int b, int p) {
+		double x = positions[p * 3], y = positions[p * 3 + 1], z = positions[p * 3 + 2];
+		double[] q = quadrics;
+		int i = a * 10, j = b * 10;
+
+		return (q[i] + q[j]) * x * x + 2 * (q[i + 1] + q[j + 1]) * x * y + 2 * (q[i + 2] + q[j + 2]) * x * z
+				+ 2 * (q[i + 3] + q[j + 3]) * x + (q[i + 4] + q[j + 4]) * y * y + 2 * (q[i + 5] + q[j + 5]) * y * z
+				+ 2 * (q[i + 6] + q[j + 6]) * y + (q[i + 7] + q[j + 7]) * z * z + 2 * (q[i + 8] + q[j + 8]) * z
+				+ (q[i + 9] + q[j + 9]);
+	}
+
+	// Plano (normal unitaria, d) del triángulo; devuelve su área
+	private double trianglePlane(int a, int b, int c, double[] plane) {
+		double ux = positions[b * 3] - positions[a * 3];
+		double uy = positions[b * 3 + 1] - positions[a * 3 + 1];
+		double uz = positions[b * 3 + 2] - positions[a * 3 + 2];
+		double vx = positions[c * 3] - positions[a * 3];
+		double vy = positions[c * 3 + 1] - positions[a * 3 + 1];
+		double vz = positions[c * 3 + 2] - positions[a * 3 + 2];
+		double nx = uy * vz - uz * vy;
+		double ny = uz * vx - ux * vz;
+		double nz = ux * vy - uy * vx;
+		double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+		if (length > 0) {
+			nx /= length;
+			ny /= length;
+			nz /= length;
+		}
+		plane[0] = nx;
+		plane[1] = ny;
+		plane[2] = nz;
+		plane[3] = -(nx * positions[a * 3] + ny * positions[a * 3 + 1] + nz * positions[a * 3 + 2]);
+		return length / 2;
+	}
+
+	private void addPlane(int v, double[] p, double weight) {
+		int i = v * 10;
+		quadrics[i]     += weight * p[0] * p[0];
+		quadrics[i + 1] += weight * p[0] * p[1];
+		quadrics[i + 2] += weight * p[0] * p[2];
+		quadrics[i + 3] += weight * p[0] * p[3];
+		quadrics[i + 4] += weight * p[1] * p[1];
+		quadrics[i + 5] += weight * p[1] * p[2];
+		quadrics[i + 6] += weight * p[1] * p[3];
+		quadrics[i + 7] += weight * p[2] * p[2];
+		quadrics[i + 8] += weight * p[2] * p[3];
+		quadrics[i + 9] += weight * p[3] * p[3];
+	}
+
+	// Las aristas de un solo triángulo reciben un plano perpendicular al triángulo que
+	// penaliza alejarse del borde
+	private void addBoundaryPlanes(double[] plane) {
+		double[] edgePlane = new double[4];
+		int[] count = new int[numPositions];
+
+		for (int v = 0; v < numPositions; v++) {
+			int i, k;
+			for (i = 0; i < adjacencyCount[v]; i++) {
+				int t = adjacency[v][i];
+				for (k = 0; k < 3; k++) count[tri[t * 3 + k]]++;
+			}
+			for (i = 0; i < adjacencyCount[v]; i++) {
+				int t = adjacency[v][i];
+				for (k = 0; k < 3; k++) {
+					int n = tri[t * 3 + k];
+					// Arista v->n en el sentido del triángulo, vista una sola vez desde v
+					if (tri[t * 3 + (k + 2) % 3] != v || count[n] != 1) continue;
+					trianglePlane(tri[t * 3], tri[t * 3 + 1], tri[t * 3 + 2], plane);
+					double ex = positions[n * 3] - positions[v * 3];
+					double ey = positions[n * 3 + 1] - positions[v * 3 + 1];
+					double ez = positions[n * 3 + 2] - positions[v * 3 + 2];
+					double nx = ey * plane[2] - ez * plane[1];
+					double ny = ez * plane[0] - ex * plane[2];
+					double nz = ex * plane[1] - ey * plane[0];
+					double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+					if (length == 0) continue;
+					edgePlane[0] = nx / length;
+					edgePlane[1] = ny / length;
+					edgePlane[2] = nz / length;
+					edgePlane[3] = -(edgePlane[0] * positions[v * 3] + edgePlane[1] * positions[v * 3 + 1]
+							+ edgePlane[2] * positions[v * 3 + 2]);
+					double weight = BOUNDARY_WEIGHT * (ex * ex + ey * ey + ez * ez);
+					addPlane(v, edgePlane, weight);
+					addPlane(n, edgePlane, weight);
+				}
+			}
+			for (i = 0; i < adjacencyCount[v]; i++) {
+				int t = adjacency[v][i];
+				for (k = 0; k < 3; k++) count[tri[t * 3 + k]] = 0;
+			}
+		}
+	}
+
+	private void addAdjacent(int v, int t) {
+		if (adjacency[v] == null) {
+			adjacency[v] = new int[8];
+		} else if (adjacencyCount[v] == adjacency[v].length) {
+			adjacency[v] = Arrays.copyOf(adjacency[v], adjacencyCount[v] * 2);
+		}
+		adjacency[v][adjacencyCount[v]++] = t;
+	}
+
+	// Quita de la lista de v los triángulos muertos y los repetidos
+	private void compactAdjacency(int v) {
+		int[] list = adjacency[v];
+		int n = 0;
+
+		Arrays.sort(list, 0, adjacencyCount[v]);
+		for (int i = 0; i < adjacencyCount[v]; i++) {
+			int t = list[i];
+			if (triDead[t] || (n > 0 && list[n - 1] == t)) continue;
+			list[n++] = t;
+		}
+		adjacencyCount[v] = n;
+	}
+
+	private int nextMark() {
+		return ++markValue;
+	}
+
+	private static int[] grow(int[] array, int size) {
+		return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+	}
+}
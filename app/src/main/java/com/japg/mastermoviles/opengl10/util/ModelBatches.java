@@ -0,0 +1,347 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/* Agrupa las mallas de un modelo en lotes (batches) que se dibujan de una vez.
+*  Las mallas con la misma clave (material/textura) se copian seguidas en un mismo
+*  buffer de vértices, y sus índices se desplazan para apuntar a su nuevo rango.
+*  Cada malla conserva su sub-rango para poder ocultarla o transformarla por separado.
+*
+*  Con niveles de detalle (Resource3DSReader.setLodLevels) el índice de un lote guarda un
+*  bloque por nivel, con todas sus mallas en el mismo orden; los niveles reutilizan los
+*  vértices del lote. Las mallas sin niveles repiten su índice completo en cada bloque.
+*/
+public class ModelBatches {
+	private static final int FLOATS_PER_VERTEX = 8;
+	private static final int BYTES_PER_FLOAT = 4;
+	private static final int BYTES_PER_SHORT = 2;
+
+	// Vértices que caben en un lote indexado con GL_UNSIGNED_SHORT
+	private static final int MAX_BATCH_VERTICES = 0x10000;
+
+	// Lotes: vértices intercalados (x, y, z, A, B, C, u, v) e índices (null = glDrawArrays)
+	public int numBatches;
+	public FloatBuffer[] vertexData;
+
+	// Lotes comprimidos (quantize): vértices en el formato de VertexQuantizer, y sus
+	// parámetros de descompresión (DEQUANT_FLOATS por lote). Con ellos vertexData es null.
+	public ByteBuffer[] packedData;
+	public float[] batchDequant;
+	public ShortBuffer[] indexData;
+	public int[] batchVertexCount;
+	public int[] batchIndexCount;
+	public int[] batchKey;
+
+	// Las mallas del lote b son slotMesh[batchFirstSlot[b] .. batchFirstSlot[b]+batchSlotCount[b]-1],
+	// en el mismo orden en que están en sus buffers
+	public int[] batchFirstSlot;
+	public int[] batchSlotCount;
+	public int[] slotMesh;
+
+	// Sub-rango de cada malla dentro de su lote: primer índice y número de índices
+	// (o primer vértice y número de vértices en los lotes sin índices).
+	// meshFirst y meshCount tienen numLevels * numMeshes entradas: la de la malla m en el
+	// nivel l es l * numMeshes + m (el nivel 0 es la malla completa).
+	public int numMeshes;
+	public int numLevels = 1;
+	public int[] meshBatch;
+	public int[] meshFirst;
+	public int[] meshCount;
+
+	// Esfera que envuelve el modelo: centro (x, y, z) y radio
+	public float[] bounds = new float[4];
+
+	// Volúmenes de cada malla, MESH_BOUNDS_FLOATS por malla: centro de la caja (x, y, z),
+	// radio de la esfera con ese centro y semilados de la caja (x, y, z)
+	public static final int BOUNDS_CENTER = 0;
+	public static final int BOUNDS_RADIUS = 3;
+	public static final int BOUNDS_EXTENT = 4;
+	public static final int MESH_BOUNDS_FLOATS = 7;
+	public float[] meshBounds;
+
+	// Construye los lotes a partir de la salida del lector. meshKeys indica la clave de
+	// cada malla (null = todas comparten material y textura).
+	public static ModelBatches build(Resource3DSReader data, int[] meshKeys) {
+		ModelBatches batches = new ModelBatches();
+		int n = data.numMeshes;
+		int[] batchOfMesh = new int[n];
+		boolean[] assigned = new boolean[n];
+
+		batches.numMeshes = n;
+		batches.numLevels = levelsOf(data);
+		batches.meshBatch = batchOfMesh;
+		batches.meshFirst = new int[batches.numLevels * n];
+		batches.meshCount = new int[batches.numLevels * n];
+		batches.batchVertexCount = new int[n];
+		batches.batchIndexCount = new int[n];
+		batches.batchKey = new int[n];
+		batches.batchSlotCount = new int[n];
+		boolean[] indexed = new boolean[n];
+
+		// Asigna cada malla a un lote: por cada clave (en orden de aparición) se abre un lote
+		// indexado y otro sin índices, y el indexado se parte al llegar al límite de 16 bits
+		for (int first = 0; first < n; first++) {
+			if (assigned[first]) continue;
+			int key = keyOf(meshKeys, first);
+			int indexedBatch = -1;
+			int arraysBatch = -1;
+
+			for (int m = first; m < n; m++) {
+				if (assigned[m] || keyOf(meshKeys, m) != key) continue;
+				assigned[m] = true;
+
+				boolean hasIndices = data.indexBuffer != null && data.indexBuffer[m] != null;
+				int b;
+				if (hasIndices) {
+					if (indexedBatch < 0 || batches.batchVertexCount[indexedBatch] + data.numVertices[m] > MAX_BATCH_VERTICES) {
+						indexedBatch = batches.newBatch(key, true, indexed);
+					}
+					b = indexedBatch;
+					// Los desplazamientos por nivel se calculan en pack()
+					for (int l = 0; l < batches.numLevels; l++) {
+						batches.batchIndexCount[b] += levelIndexCount(data, m, l);
+					}
+				} else {
+					if (arraysBatch < 0) {
+						arraysBatch = batches.newBatch(key, false, indexed);
+					}
+					b = arraysBatch;
+					// Sin índices no hay niveles: todos dibujan los vértices de la malla
+					for (int l = 0; l < batches.numLevels; l++) {
+						batches.meshFirst[l * n + m] = batches.batchVertexCount[b];
+						batches.meshCount[l * n + m] = data.numVertices[m];
+					}
+				}
+				batchOfMesh[m] = b;
+				batches.batchVertexCount[b] += data.numVertices[m];
+				batches.batchSlotCount[b]++;
+			}
+		}
+
+		// Tabla de mallas por lote (orden estable)
+		batches.batchFirstSlot = new int[batches.numBatches];
+		batches.slotMesh = new int[n];
+		for (int b = 1; b < batches.numBatches; b++) {
+			batches.batchFirstSlot[b] = batches.batchFirstSlot[b - 1] + batches.batchSlotCount[b - 1];
+		}
+		int[] cursor = Arrays.copyOf(batches.batchFirstSlot, batches.numBatches);
+		for (int m = 0; m < n; m++) {
+			batches.slotMesh[cursor[batchOfMesh[m]]++] = m;
+		}
+
+		batches.trim();
+		batches.pack(data, indexed);
+		batches.computeBounds(data);
+		return batches;
+	}
+
+	// Primer índice (o vértice) y número de ellos de la malla m en el nivel level
+	public int first(int level, int m) {
+		return meshFirst[level * numMeshes + m];
+	}
+
+	public int count(int level, int m) {
+		return meshCount[level * numMeshes + m];
+	}
+
+	public boolean isQuantized() {
+		return packedData != null;
+	}
+
+	// Bytes de vértices del lote b
+	public int vertexBytes(int b) {
+		return isQuantized() ? batchVertexCount[b] * VertexQuantizer.BYTES_PER_VERTEX
+				: batchVertexCount[b] * FLOATS_PER_VERTEX * BYTES_PER_FLOAT;
+	}
+
+	// Pasa los vértices de todos los lotes al formato comprimido y libera los floats.
+	// Si error no es null, deja en él el error máximo cometido (ver VertexQuantizer.measure).
+	public void quantize(float[] error) {
+		if (isQuantized()) {
+			return;
+		}
+		ByteBuffer[] packed = new ByteBuffer[numBatches];
+		float[] dequant = new float[numBatches * VertexQuantizer.DEQUANT_FLOATS];
+		for (int b = 0; b < numBatches; b++) {
+			int offset = b * VertexQuantizer.DEQUANT_FLOATS;
+			packed[b] = VertexQuantizer.pack(vertexData[b], batchVertexCount[b], dequant, offset);
+			if (error != null) {
+				VertexQuantizer.measure(vertexData[b], packed[b], batchVertexCount[b], dequant, offset, error);
+			}
+		}
+		packedData = packed;
+		batchDequant = dequant;
+		vertexData = null;
+	}
+
+	// Niveles de detalle de la salida del lector (el máximo entre sus mallas)
+	private static int levelsOf(Resource3DSReader data) {
+		int levels = 1;
+		if (data.lodIndexBuffer != null) {
+			for (int m = 0; m < data.numMeshes; m++) {
+				if (data.lodIndexBuffer[m] != null) {
+					levels = Math.max(levels, data.lodIndexBuffer[m].length + 1);
+				}
+			}
+		}
+		return levels;
+	}
+
+	// Índices de la malla m en el nivel level (los del nivel más detallado que tenga)
+	private static ShortBuffer levelIndices(Resource3DSReader data, int m, int level) {
+		ShortBuffer[] lod = data.lodIndexBuffer != null ? data.lodIndexBuffer[m] : null;
+		if (level == 0 || lod == null) {
+			return data.indexBuffer[m];
+		}
+		return lod[Math.min(level, lod.length) - 1];
+	}
+
+	private static int levelIndexCount(Resource3DSReader data, int m, int level) {
+		return level == 0 ? data.numIndices[m] : levelIndices(data, m, level).capacity();
+	}
+
+	private static int keyOf(int[] meshKeys, int mesh) {
+		return meshKeys == null ? 0 : meshKeys[mesh];
+	}
+
+	private int newBatch(int key, boolean isIndexed, boolean[] indexed) {
+		int b = numBatches++;
+		batchKey[b] = key;
+		indexed[b] = isIndexed;
+		return b;
+	}
+
+	private void trim() {
+		batchVertexCount = Arrays.copyOf(batchVertexCount, numBatches);
+		batchIndexCount = Arrays.copyOf(batchIndexCount, numBatches);
+		batchKey = Arrays.copyOf(batchKey, numBatches);
+		batchSlotCount = Arrays.copyOf(batchSlotCount, numBatches);
+	}
+
+	// Copia la geometría de cada malla a los buffers de su lote
+	private void pack(Resource3DSReader data, boolean[] indexed) {
+		vertexData = new FloatBuffer[numBatches];
+		indexData = new ShortBuffer[numBatches];
+
+		for (int b = 0; b < numBatches; b++) {
+			vertexData[b] = ByteBuffer
+					.allocateDirect(batchVertexCount[b] * FLOATS_PER_VERTEX * BYTES_PER_FLOAT)
+					.order(ByteOrder.nativeOrder())
+					.asFloatBuffer();
+			if (indexed[b]) {
+				indexData[b] = ByteBuffer
+						.allocateDirect(batchIndexCount[b] * BYTES_PER_SHORT)
+						.order(ByteOrder.nativeOrder())
+						.asShortBuffer();
+			}
+
+			int[] baseVertex = new int[batchSlotCount[b]];
+			for (int s = batchFirstSlot[b]; s < batchFirstSlot[b] + batchSlotCount[b]; s++) {
+				int m = slotMesh[s];
+				baseVertex[s - batchFirstSlot[b]] = vertexData[b].position() / FLOATS_PER_VERTEX;
+
+				FloatBuffer source = data.dataBuffer[m].duplicate();
+				source.position(0);
+				source.limit(data.numVertices[m] * FLOATS_PER_VERTEX);
+				vertexData[b].put(source);
+			}
+
+			// Un bloque de índices por nivel, con las mallas en el orden de los huecos
+			for (int l = 0; indexed[b] && l < numLevels; l++) {
+				for (int s = batchFirstSlot[b]; s < batchFirstSlot[b] + batchSlotCount[b]; s++) {
+					int m = slotMesh[s];
+					ShortBuffer indices = levelIndices(data, m, l);
+					int count = levelIndexCount(data, m, l);
+					int base = baseVertex[s - batchFirstSlot[b]];
+
+					meshFirst[l * numMeshes + m] = indexData[b].position();
+					meshCount[l * numMeshes + m] = count;
+					for (int i = 0; i < count; i++) {
+						indexData[b].put((short) ((indices.get(i) & 0xffff) + base));
+					}
+				}
+			}
+			vertexData[b].position(0);
+			if (indexed[b]) {
+				indexData[b].position(0);
+			}
+		}
+	}
+
+	// Caja y esfera de cada malla (a partir de la salida del lector) y esfera del modelo
+	private void computeBounds(Resource3DSReader data) {
+		float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+		float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+		int m, k;
+
+		meshBounds = new float[numMeshes * MESH_BOUNDS_FLOATS];
+		for (m = 0; m < numMeshes; m++) {
+			int offset = m * MESH_BOUNDS_FLOATS;
+			meshBounds(data.dataBuffer[m], data.numVertices[m], meshBounds, offset);
+			if (data.numVertices[m] == 0) continue;
+			for (k = 0; k < 3; k++) {
+				float center = meshBounds[offset + BOUNDS_CENTER + k];
+				float extent = meshBounds[offset + BOUNDS_EXTENT + k];
+				min[k] = Math.min(min[k], center - extent);
+				max[k] = Math.max(max[k], center + extent);
+			}
+		}
+		bounds = new float[4];
+		if (min[0] > max[0]) {
+			return;
+		}
+		for (k = 0; k < 3; k++) {
+			bounds[k] = (min[k] + max[k]) / 2;
+		}
+		bounds[3] = (float) Math.sqrt(maxDistance2(data, bounds));
+	}
+
+	// Caja de los count vértices de vertices y esfera centrada en ella, en out[offset..]
+	private static void meshBounds(FloatBuffer vertices, int count, float[] out, int offset) {
+		float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+		float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+		int i, k;
+
+		if (count == 0) {
+			return;
+		}
+		for (i = 0; i < count; i++) {
+			for (k = 0; k < 3; k++) {
+				float value = vertices.get(i * FLOATS_PER_VERTEX + k);
+				if (value < min[k]) min[k] = value;
+				if (value > max[k]) max[k] = value;
+			}
+		}
+		float radius2 = 0;
+		for (k = 0; k < 3; k++) {
+			out[offset + BOUNDS_CENTER + k] = (min[k] + max[k]) / 2;
+			out[offset + BOUNDS_EXTENT + k] = (max[k] - min[k]) / 2;
+		}
+		for (i = 0; i < count; i++) {
+			float dx = vertices.get(i * FLOATS_PER_VERTEX)     - out[offset + BOUNDS_CENTER];
+			float dy = vertices.get(i * FLOATS_PER_VERTEX + 1) - out[offset + BOUNDS_CENTER + 1];
+			float dz = vertices.get(i * FLOATS_PER_VERTEX + 2) - out[offset + BOUNDS_CENTER + 2];
+			radius2 = Math.max(radius2, dx * dx + dy * dy + dz * dz);
+		}
+		out[offset + BOUNDS_RADIUS] = (float) Math.sqrt(radius2);
+	}
+
+	// Mayor distancia al cuadrado de un vértice del modelo a center
+	private static float maxDistance2(Resource3DSReader data, float[] center) {
+		float radius2 = 0;
+		for (int m = 0; m < data.numMeshes; m++) {
+			FloatBuffer vertices = data.dataBuffer[m];
+			for (int i = 0; i < data.numVertices[m]; i++) {
+				float dx = vertices.get(i * FLOATS_PER_VERTEX)     - center[0];
+				float dy = vertices.get(i * FLOATS_PER_VERTEX + 1) - center[1];
+				float dz = vertices.get(i * FLOATS_PER_VERTEX + 2) - center[2];
+				radius2 = Math.max(radius2, dx * dx + dy * dy + dz * dz);
+			}
+		}
+		return radius2;
+	}
+}
@@ -0,0 +1,184 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import static android.opengl.GLES20.GL_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_ELEMENT_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_FLOAT;
+import static android.opengl.GLES20.GL_SHORT;
+import static android.opengl.GLES20.GL_STATIC_DRAW;
+import static android.opengl.GLES20.GL_TRIANGLES;
+import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
+
+import java.nio.Buffer;
+
+/* Vertex Buffer Objects con la geometría de un modelo agrupada en lotes (ModelBatches).
+*  Cada lote se sube una sola vez a un VBO estático (y su índice a un IBO, si lo tiene);
+*  al dibujar sólo se enlazan los buffers y se pasan desplazamientos.
+*  Los lotes se pueden subir de uno en uno (uploadBatch) para repartir la carga entre frames.
+*/
+public class ModelBuffers {
+	private static final int BYTES_PER_FLOAT = 4;
+	private static final int BYTES_PER_SHORT = 2;
+	private static final int POSITION_COMPONENT_COUNT = 3;
+	private static final int NORMAL_COMPONENT_COUNT = 3;
+	private static final int UV_COMPONENT_COUNT = 2;
+	private static final int STRIDE = (POSITION_COMPONENT_COUNT + NORMAL_COMPONENT_COUNT + UV_COMPONENT_COUNT) * BYTES_PER_FLOAT;
+
+	private final GLBackend gl;
+	private ModelBatches batches;
+
+	// Nombres de los buffers de cada lote (0 = sin buffer)
+	private int[] vertexBuffers = new int[0];
+	private int[] indexBuffers = new int[0];
+	private int numBatches;
+
+	// Llamadas de dibujo y triángulos emitidos desde el último resetDrawCalls()
+	private int drawCalls;
+	private int trianglesDrawn;
+
+	public ModelBuffers(GLBackend gl) {
+		this.gl = gl;
+	}
+
+	public int getBatchCount() {
+		return numBatches;
+	}
+
+	public boolean isUploaded() {
+		for (int b = 0; b < numBatches; b++) {
+			if (vertexBuffers[b] == 0) return false;
+		}
+		return numBatches > 0;
+	}
+
+	public boolean isBatchUploaded(int batch) {
+		return vertexBuffers[batch] != 0;
+	}
+
+	public int getDrawCalls() {
+		return drawCalls;
+	}
+
+	public int getTrianglesDrawn() {
+		return trianglesDrawn;
+	}
+
+	public void resetDrawCalls() {
+		drawCalls = 0;
+		trianglesDrawn = 0;
+	}
+
+	// Prepara los buffers para un contexto nuevo sin subir nada todavía. Si había buffers
+	// de un contexto anterior se olvidan sin borrarlos, porque murieron con ese contexto.
+	public void prepare(ModelBatches batches) {
+		this.batches = batches;
+		numBatches = batches.numBatches;
+		vertexBuffers = new int[numBatches];
+		indexBuffers = new int[numBatches];
+	}
+
+	// Sube todos los lotes a la GPU de una vez (en el hilo de OpenGL)
+	public void upload(ModelBatches batches) {
+		prepare(batches);
+		for (int b = 0; b < numBatches; b++) {
+			uploadBatch(b);
+		}
+	}
+
+	// Bytes que ocupa un lote en la GPU
+	public static long batchBytes(ModelBatches batches, int batch) {
+		long bytes = batches.vertexBytes(batch);
+		if (batches.indexData[batch] != null) {
+			bytes += (long) batches.indexData[batch].capacity() * BYTES_PER_SHORT;
+		}
+		return bytes;
+	}
+
+	// Sube un lote a la GPU (en el hilo de OpenGL). No hace nada si ya estaba subido.
+	public void uploadBatch(int b) {
+		if (vertexBuffers[b] != 0) {
+			return;
+		}
+		gl.glGenBuffers(1, vertexBuffers, b);
+		Buffer vertices = batches.isQuantized() ? batches.packedData[b] : batches.vertexData[b];
+		vertices.position(0);
+		gl.glBindBuffer(GL_ARRAY_BUFFER, vertexBuffers[b]);
+		gl.glBufferData(GL_ARRAY_BUFFER, batches.vertexBytes(b), vertices, GL_STATIC_DRAW);
+		gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+		if (batches.indexData[b] != null) {
+			gl.glGenBuffers(1, indexBuffers, b);
+			batches.indexData[b].position(0);
+			gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBuffers[b]);
+			gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, batches.indexData[b].capacity() * BYTES_PER_SHORT,
+					batches.indexData[b], GL_STATIC_DRAW);
+			gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+		}
+	}
+
+	// Enlaza los buffers del lote y apunta los atributos a sus desplazamientos
+	public void bind(int batch, int aPositionLocation, int aNormalLocation, int aUVLocation) {
+		gl.glBindBuffer(GL_ARRAY_BUFFER, vertexBuffers[batch]);
+		if (batches.isQuantized()) {
+			// Formato de VertexQuantizer: shorts normalizados
+			gl.glVertexAttribPointer(aPositionLocation, 4, GL_SHORT, true,
+					VertexQuantizer.BYTES_PER_VERTEX, VertexQuantizer.POSITION_OFFSET);
+			gl.glVertexAttribPointer(aNormalLocation, 2, GL_SHORT, true,
+					VertexQuantizer.BYTES_PER_VERTEX, VertexQuantizer.NORMAL_OFFSET);
+			gl.glVertexAttribPointer(aUVLocation, UV_COMPONENT_COUNT, GL_UNSIGNED_SHORT, true,
+					VertexQuantizer.BYTES_PER_VERTEX, VertexQuantizer.UV_OFFSET);
+			gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBuffers[batch]);
+			return;
+		}
+		gl.glVertexAttribPointer(aPositionLocation, POSITION_COMPONENT_COUNT, GL_FLOAT, false, STRIDE, 0);
+		gl.glVertexAttribPointer(aNormalLocation, NORMAL_COMPONENT_COUNT, GL_FLOAT, false, STRIDE,
+				POSITION_COMPONENT_COUNT * BYTES_PER_FLOAT);
+		gl.glVertexAttribPointer(aUVLocation, UV_COMPONENT_COUNT, GL_FLOAT, false, STRIDE,
+				(POSITION_COMPONENT_COUNT + NORMAL_COMPONENT_COUNT) * BYTES_PER_FLOAT);
+		gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBuffers[batch]);
+	}
+
+	// Dibuja, con una sola llamada, las mallas que ocupan los huecos [firstSlot, lastSlot]
+	// del lote enlazado con bind(), en el nivel de detalle level. Esas mallas son contiguas
+	// en los buffers del lote.
+	public void drawSlots(int batch, int level, int firstSlot, int lastSlot) {
+		int first = batches.first(level, batches.slotMesh[firstSlot]);
+		int lastMesh = batches.slotMesh[lastSlot];
+		int count = batches.first(level, lastMesh) + batches.count(level, lastMesh) - first;
+
+		if (count == 0) {
+			return;
+		}
+		if (batches.indexData[batch] != null) {
+			gl.glDrawElements(GL_TRIANGLES, count, GL_UNSIGNED_SHORT, first * BYTES_PER_SHORT);
+		} else {
+			gl.glDrawArrays(GL_TRIANGLES, first, count);
+		}
+		drawCalls++;
+		trianglesDrawn += count / 3;
+	}
+
+	// Dibuja el lote entero con todo el detalle
+	public void draw(int batch) {
+		int firstSlot = batches.batchFirstSlot[batch];
+		drawSlots(batch, 0, firstSlot, firstSlot + batches.batchSlotCount[batch] - 1);
+	}
+
+	// Deja sin enlazar los buffers para no afectar a quien dibuje con arrays de cliente
+	public void unbind() {
+		gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+		gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+
+	// Libera los buffers de la GPU. Debe llamarse en el hilo de OpenGL con el contexto vivo.
+	// Los nombres a 0 (lotes sin subir) se ignoran en glDeleteBuffers.
+	public void release() {
+		if (numBatches == 0) {
+			return;
+		}
+		gl.glDeleteBuffers(numBatches, vertexBuffers, 0);
+		gl.glDeleteBuffers(numBatches, indexBuffers, 0);
+		vertexBuffers = new int[0];
+		indexBuffers = new int[0];
+		numBatches = 0;
+	}
+}
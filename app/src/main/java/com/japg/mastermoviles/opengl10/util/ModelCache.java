@@ -0,0 +1,435 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/* Caché en disco de los modelos ya procesados (ModelBatches), en un formato binario listo
+*  para la GPU: cabecera + tabla de lotes + tabla de mallas + vértices intercalados e índices
+*  de cada lote. Se guarda en el directorio de caché de la aplicación tras la primera lectura
+*  y en las siguientes se mapea el fichero y se usa directamente, sin volver a leer el 3DS.
+*
+*  Formato (little-endian, enteros de 32 bits):
+*    MAGIC, FORMAT_VERSION, flags, longitud y CRC32 del 3DS de origen, numBatches, numMeshes,
+*    numLevels
+*    por lote:  vértices, índices (de todos los niveles), clave, primer hueco, número de huecos,
+*               con índices (0/1)
+*    slotMesh[numMeshes]
+*    por malla: lote
+*    por nivel y malla: primer índice/vértice, número de índices/vértices
+*    esfera envolvente (4 floats)
+*    por malla: caja y esfera (ModelBatches.MESH_BOUNDS_FLOATS floats)
+*    [FLAG_QUANTIZED] por lote: parámetros de descompresión (VertexQuantizer.DEQUANT_FLOATS)
+*    por lote:  vértices (8 floats, o 16 bytes si están comprimidos) e índices (shorts,
+*               rellenado a 4 bytes)
+*  Un fichero con otra versión, otras opciones o de otro 3DS (CRC/longitud) se descarta.
+*/
+public class ModelCache {
+	private static final String TAG = "ModelCache";
+
+	private static final int MAGIC = 0x4344334d;	// "M3DC"
+	// Subir al cambiar el formato o la forma de generar la geometría
+	private static final int FORMAT_VERSION = 6;
+
+	private static final int FLOATS_PER_VERTEX = 8;
+	private static final int BYTES_PER_FLOAT = 4;
+	private static final int BYTES_PER_SHORT = 2;
+	private static final int BYTES_PER_INT = 4;
+	private static final int HEADER_INTS = 8;
+	private static final int BATCH_INTS = 6;
+	private static final int LEVEL_MESH_INTS = 2;
+	private static final int BOUNDS_FLOATS = 4;
+
+	// Opciones de lectura, forman parte de la clave de la caché
+	public static final int FLAG_INDEXED = 1;
+	public static final int FLAG_SMOOTH = 2;
+	public static final int FLAG_QUANTIZED = 4;
+	public static final int FLAG_CACHE_OPTIMIZED = 8;
+	public static final int FLAG_LOD = 16;
+
+	// Niveles de detalle que se generan con FLAG_LOD (incluido el completo)
+	public static final int LOD_LEVELS = 4;
+
+	public static final String EXTENSION = ".m3dc";
+	// Modelos preconvertidos al compilar (ModelConverter) dentro de assets
+	public static final String ASSET_DIR = "models";
+
+	private static final int CRC_CHUNK = 64 * 1024;
+
+	// Contadores de la sesión (aciertos en la caché, en assets y lecturas del 3DS)
+	private static int cacheHits;
+	private static int assetHits;
+	private static int parses;
+
+	// Carga el modelo resourceId: de la caché si está al día, si no de assets (preconvertido)
+	// y si no leyendo el 3DS, en cuyo caso se guarda en la caché para la próxima vez.
+	public static ModelBatches load(Context context, int resourceId, int flags) {
+		return load(new AndroidResources(context), resourceId, flags);
+	}
+
+	public static ModelBatches load(ResourceSource resources, int resourceId, int flags) {
+		ByteBuffer source = readResource(resources, resourceId);
+		int sourceCrc = checksum(source);
+		int sourceLength = source.remaining();
+		String fileName = cacheFileName(resources.getResourceName(resourceId), flags);
+		File cacheFile = new File(resources.getCacheDir(), fileName);
+		ModelBatches batches;
+
+		if (cacheFile.exists()) {
+			try {
+				batches = read(mapFile(cacheFile), flags, sourceCrc, sourceLength);
+				if (batches != null) {
+					synchronized (ModelCache.class) {
+						cacheHits++;
+					}
+					return batches;
+				}
+			} catch (IOException e) {
+				if (LoggerConfig.ON) {
+					Logger.w(TAG, "No se pudo leer " + cacheFile + ": " + e);
+				}
+			}
+			if (LoggerConfig.ON) {
+				Logger.w(TAG, "Caché desfasada: " + fileName);
+			}
+		}
+
+		batches = readAsset(resources, fileName, flags, sourceCrc, sourceLength);
+		if (batches != null) {
+			synchronized (ModelCache.class) {
+				assetHits++;
+			}
+			return batches;
+		}
+
+		batches = parse(source, flags);
+		synchronized (ModelCache.class) {
+			parses++;
+		}
+		try {
+			write(batches, flags, sourceCrc, sourceLength, cacheFile);
+		} catch (IOException e) {
+			if (LoggerConfig.ON) {
+				Logger.w(TAG, "No se pudo escribir " + cacheFile + ": " + e);
+			}
+		}
+		return batches;
+	}
+
+	public static synchronized int getCacheHits() {
+		return cacheHits;
+	}
+
+	public static synchronized int getAssetHits() {
+		return assetHits;
+	}
+
+	public static synchronized int getParses() {
+		return parses;
+	}
+
+	public static String cacheFileName(String modelName, int flags) {
+		return modelName + "_" + flags + EXTENSION;
+	}
+
+	// Lector configurado con las opciones indicadas
+	public static Resource3DSReader newReader(int flags) {
+		Resource3DSReader reader = new Resource3DSReader();
+		reader.setIndexedOutput((flags & FLAG_INDEXED) != 0);
+		reader.setSmoothNormals((flags & FLAG_SMOOTH) != 0);
+		reader.setOptimizeVertexCache((flags & FLAG_CACHE_OPTIMIZED) != 0);
+		reader.setLodLevels((flags & FLAG_LOD) != 0 ? LOD_LEVELS : 1);
+		return reader;
+	}
+
+	// Lee un 3DS (little-endian) y agrupa sus mallas con las opciones indicadas
+	public static ModelBatches parse(ByteBuffer source, int flags) {
+		return parse(newReader(flags), source, flags);
+	}
+
+	// Igual, con un lector ya creado (con newReader) para poder consultar sus estadísticas
+	public static ModelBatches parse(Resource3DSReader reader, ByteBuffer source, int flags) {
+		reader.read3DSFromBuffer(source.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+		// Todas las mallas comparten la textura del modelo: un único grupo de lotes
+		ModelBatches batches = ModelBatches.build(reader, null);
+		if ((flags & FLAG_QUANTIZED) != 0) {
+			batches.quantize(null);
+		}
+		return batches;
+	}
+
+	// CRC32 de los bytes restantes del buffer, sin modificar su posición
+	public static int checksum(ByteBuffer source) {
+		CRC32 crc = new CRC32();
+		ByteBuffer data = source.duplicate();
+		if (data.hasArray()) {
+			crc.update(data.array(), data.arrayOffset() + data.position(), data.remaining());
+		} else {
+			byte[] chunk = new byte[Math.min(CRC_CHUNK, data.remaining())];
+			while (data.hasRemaining()) {
+				int n = Math.min(chunk.length, data.remaining());
+				data.get(chunk, 0, n);
+				crc.update(chunk, 0, n);
+			}
+		}
+		return (int) crc.getValue();
+	}
+
+	// Escribe el modelo en file (a través de un temporal, para no dejar ficheros a medias)
+	public static void write(ModelBatches batches, int flags, int sourceCrc, int sourceLength, File file) throws IOException {
+		ByteBuffer out = ByteBuffer.allocate(fileSize(batches)).order(ByteOrder.LITTLE_ENDIAN);
+		int b, m;
+
+		out.putInt(MAGIC);
+		out.putInt(FORMAT_VERSION);
+		out.putInt(flags);
+		out.putInt(sourceLength);
+		out.putInt(sourceCrc);
+		out.putInt(batches.numBatches);
+		out.putInt(batches.numMeshes);
+		out.putInt(batches.numLevels);
+		for (b = 0; b < batches.numBatches; b++) {
+			out.putInt(batches.batchVertexCount[b]);
+			out.putInt(batches.batchIndexCount[b]);
+			out.putInt(batches.batchKey[b]);
+			out.putInt(batches.batchFirstSlot[b]);
+			out.putInt(batches.batchSlotCount[b]);
+			out.putInt(batches.indexData[b] != null ? 1 : 0);
+		}
+		for (m = 0; m < batches.numMeshes; m++) {
+			out.putInt(batches.slotMesh[m]);
+		}
+		for (m = 0; m < batches.numMeshes; m++) {
+			out.putInt(batches.meshBatch[m]);
+		}
+		for (int i = 0; i < batches.numLevels * batches.numMeshes; i++) {
+			out.putInt(batches.meshFirst[i]);
+			out.putInt(batches.meshCount[i]);
+		}
+		for (int i = 0; i < BOUNDS_FLOATS; i++) {
+			out.putFloat(batches.bounds[i]);
+		}
+		for (int i = 0; i < batches.numMeshes * ModelBatches.MESH_BOUNDS_FLOATS; i++) {
+			out.putFloat(batches.meshBounds[i]);
+		}
+		if (batches.isQuantized()) {
+			for (int i = 0; i < batches.numBatches * VertexQuantizer.DEQUANT_FLOATS; i++) {
+				out.putFloat(batches.batchDequant[i]);
+			}
+		}
+		for (b = 0; b < batches.numBatches; b++) {
+			if (batches.isQuantized()) {
+				// Ya están en el orden nativo (little-endian), se copian tal cual
+				ByteBuffer packed = batches.packedData[b].duplicate();
+				packed.position(0);
+				packed.limit(batches.vertexBytes(b));
+				out.put(packed);
+			} else {
+				int count = batches.batchVertexCount[b] * FLOATS_PER_VERTEX;
+				for (int i = 0; i < count; i++) {
+					out.putFloat(batches.vertexData[b].get(i));
+				}
+			}
+			if (batches.indexData[b] != null) {
+				for (int i = 0; i < batches.batchIndexCount[b]; i++) {
+					out.putShort(batches.indexData[b].get(i));
+				}
+				out.position(align(out.position()));
+			}
+		}
+		out.flip();
+
+		File parent = file.getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("No se pudo crear " + parent);
+		}
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(temp);
+		try {
+			FileChannel channel = stream.getChannel();
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+			stream.getFD().sync();
+		} finally {
+			stream.close();
+		}
+		if (!temp.renameTo(file)) {
+			temp.delete();
+			throw new IOException("No se pudo renombrar " + temp);
+		}
+	}
+
+	// Reconstruye el modelo a partir del fichero (little-endian). Los buffers de vértices e
+	// índices son vistas sobre data, sin copia. Devuelve null si el fichero no corresponde
+	// a esta versión, estas opciones o este 3DS, o si está truncado.
+	public static ModelBatches read(ByteBuffer data, int flags, int sourceCrc, int sourceLength) {
+		// Los buffers se pasan tal cual a OpenGL, que los lee en el orden nativo
+		if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+			return null;
+		}
+		data = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			if (data.getInt() != MAGIC || data.getInt() != FORMAT_VERSION || data.getInt() != flags
+					|| data.getInt() != sourceLength || data.getInt() != sourceCrc) {
+				return null;
+			}
+			ModelBatches batches = new ModelBatches();
+			int numBatches = data.getInt();
+			int numMeshes = data.getInt();
+			int numLevels = data.getInt();
+			int b, m;
+
+			if (numBatches < 0 || numMeshes < 0 || numLevels < 1
+					|| (long) numMeshes * numLevels > data.remaining() / BYTES_PER_INT) {
+				return null;
+			}
+			batches.numBatches = numBatches;
+			batches.numMeshes = numMeshes;
+			batches.numLevels = numLevels;
+			batches.batchVertexCount = new int[numBatches];
+			batches.batchIndexCount = new int[numBatches];
+			batches.batchKey = new int[numBatches];
+			batches.batchFirstSlot = new int[numBatches];
+			batches.batchSlotCount = new int[numBatches];
+			boolean[] indexed = new boolean[numBatches];
+			for (b = 0; b < numBatches; b++) {
+				batches.batchVertexCount[b] = data.getInt();
+				batches.batchIndexCount[b] = data.getInt();
+				batches.batchKey[b] = data.getInt();
+				batches.batchFirstSlot[b] = data.getInt();
+				batches.batchSlotCount[b] = data.getInt();
+				indexed[b] = data.getInt() != 0;
+			}
+			batches.slotMesh = new int[numMeshes];
+			for (m = 0; m < numMeshes; m++) {
+				batches.slotMesh[m] = data.getInt();
+			}
+			batches.meshBatch = new int[numMeshes];
+			for (m = 0; m < numMeshes; m++) {
+				batches.meshBatch[m] = data.getInt();
+			}
+			batches.meshFirst = new int[numLevels * numMeshes];
+			batches.meshCount = new int[numLevels * numMeshes];
+			for (int i = 0; i < numLevels * numMeshes; i++) {
+				batches.meshFirst[i] = data.getInt();
+				batches.meshCount[i] = data.getInt();
+			}
+			for (int i = 0; i < BOUNDS_FLOATS; i++) {
+				batches.bounds[i] = data.getFloat();
+			}
+			batches.meshBounds = new float[numMeshes * ModelBatches.MESH_BOUNDS_FLOATS];
+			for (int i = 0; i < batches.meshBounds.length; i++) {
+				batches.meshBounds[i] = data.getFloat();
+			}
+
+			boolean quantized = (flags & FLAG_QUANTIZED) != 0;
+			if (quantized) {
+				batches.batchDequant = new float[numBatches * VertexQuantizer.DEQUANT_FLOATS];
+				for (int i = 0; i < batches.batchDequant.length; i++) {
+					batches.batchDequant[i] = data.getFloat();
+				}
+				batches.packedData = new ByteBuffer[numBatches];
+			} else {
+				batches.vertexData = new FloatBuffer[numBatches];
+			}
+			batches.indexData = new ShortBuffer[numBatches];
+			for (b = 0; b < numBatches; b++) {
+				int bytes = batches.vertexBytes(b);
+				if (quantized) {
+					batches.packedData[b] = slice(data, bytes);
+				} else {
+					batches.vertexData[b] = slice(data, bytes).asFloatBuffer();
+				}
+				if (indexed[b]) {
+					bytes = batches.batchIndexCount[b] * BYTES_PER_SHORT;
+					batches.indexData[b] = slice(data, bytes).asShortBuffer();
+					data.position(align(data.position()));
+				}
+			}
+			if (data.hasRemaining()) {
+				return null;
+			}
+			return batches;
+		} catch (BufferUnderflowException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			// Tamaños negativos o que se salen del fichero
+			return null;
+		}
+	}
+
+	// Bytes que ocupa el modelo en el formato de la caché
+	public static int fileSize(ModelBatches batches) {
+		int size = (HEADER_INTS + batches.numBatches * BATCH_INTS + batches.numMeshes * 2
+				+ batches.numLevels * batches.numMeshes * LEVEL_MESH_INTS + BOUNDS_FLOATS
+				+ batches.numMeshes * ModelBatches.MESH_BOUNDS_FLOATS) * BYTES_PER_INT;
+		if (batches.isQuantized()) {
+			size += batches.numBatches * VertexQuantizer.DEQUANT_FLOATS * BYTES_PER_FLOAT;
+		}
+		for (int b = 0; b < batches.numBatches; b++) {
+			size += batches.vertexBytes(b);
+			if (batches.indexData[b] != null) {
+				size = align(size + batches.batchIndexCount[b] * BYTES_PER_SHORT);
+			}
+		}
+		return size;
+	}
+
+	private static int align(int position) {
+		return (position + BYTES_PER_INT - 1) & ~(BYTES_PER_INT - 1);
+	}
+
+	// Vista little-endian de los siguientes bytes de data, que avanza tras ellos
+	private static ByteBuffer slice(ByteBuffer data, int bytes) {
+		if (bytes < 0 || bytes > data.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		ByteBuffer view = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+		view.limit(bytes);
+		data.position(data.position() + bytes);
+		return view;
+	}
+
+	public static ByteBuffer mapFile(File file) throws IOException {
+		FileInputStream stream = new FileInputStream(file);
+		try {
+			FileChannel channel = stream.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+		} finally {
+			stream.close();
+		}
+	}
+
+	private static ByteBuffer readResource(ResourceSource resources, int resourceId) {
+		try {
+			return resources.readRaw(resourceId);
+		} catch (IOException e) {
+			throw new RuntimeException("No se pudo abrir el recurso: " + resourceId, e);
+		}
+	}
+
+	// Modelo preconvertido en assets/models
+	private static ModelBatches readAsset(ResourceSource resources, String fileName, int flags, int sourceCrc, int sourceLength) {
+		try {
+			ByteBuffer data = resources.readAsset(ASSET_DIR + "/" + fileName);
+			// Si no hay modelo preconvertido, null
+			return data != null ? read(data, flags, sourceCrc, sourceLength) : null;
+		} catch (IOException e) {
+			if (LoggerConfig.ON) {
+				Logger.w(TAG, "No se pudo leer el asset " + fileName + ": " + e);
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/* Conversor de línea de comandos: lee los .3ds de un directorio (normalmente res/raw)
+*  y escribe su versión para ModelCache en otro (normalmente assets/models), para que la
+*  aplicación no tenga que leer los 3DS ni la primera vez. Se ejecuta fuera de Android:
+*
+*      ./gradlew :app:bakeModels
+*
+*  o a mano: java ...ModelConverter <directorio 3ds> <directorio salida> [flags...]
+*
+*  Informa del ACMR de los modelos optimizados (FLAG_CACHE_OPTIMIZED) antes y después,
+*  de los comprimidos (FLAG_QUANTIZED), del ahorro de memoria y del error máximo, y con
+*  FLAG_LOD de los triángulos de cada nivel de detalle.
+*/
+public class ModelConverter {
+	// Opciones con las que Model3D carga los modelos: con y sin vértices comprimidos
+	public static final int DEFAULT_FLAGS = ModelCache.FLAG_INDEXED | ModelCache.FLAG_SMOOTH
+			| ModelCache.FLAG_CACHE_OPTIMIZED | ModelCache.FLAG_LOD;
+	public static final int[] BAKED_FLAGS = {DEFAULT_FLAGS, DEFAULT_FLAGS | ModelCache.FLAG_QUANTIZED};
+
+	private static final String SOURCE_EXTENSION = ".3ds";
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Uso: ModelConverter <directorio 3ds> <directorio salida> [flags...]");
+			System.exit(2);
+		}
+		Logger.setSink(Logger.CONSOLE);
+		File inputDir = new File(args[0]);
+		File outputDir = new File(args[1]);
+		int[] flagSets = BAKED_FLAGS;
+		if (args.length > 2) {
+			flagSets = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++) {
+				flagSets[i - 2] = Integer.parseInt(args[i]);
+			}
+		}
+
+		File[] sources = inputDir.listFiles();
+		if (sources == null) {
+			System.err.println("No se puede leer " + inputDir);
+			System.exit(1);
+		}
+		Arrays.sort(sources);
+		int converted = 0;
+		for (File source : sources) {
+			String name = source.getName();
+			if (!name.endsWith(SOURCE_EXTENSION)) continue;
+			for (int flags : flagSets) {
+				File output = new File(outputDir, ModelCache.cacheFileName(
+						name.substring(0, name.length() - SOURCE_EXTENSION.length()), flags));
+				convert(source, output, flags);
+				converted++;
+			}
+		}
+		System.out.println(converted + " modelo(s) convertidos en " + outputDir);
+	}
+
+	public static void convert(File source, File output, int flags) throws IOException {
+		long start = System.nanoTime();
+		ByteBuffer data = ModelCache.mapFile(source);
+		Resource3DSReader reader = ModelCache.newReader(flags);
+		ModelBatches batches = ModelCache.parse(reader, data, flags & ~ModelCache.FLAG_QUANTIZED);
+		String report = "";
+		if ((flags & ModelCache.FLAG_CACHE_OPTIMIZED) != 0 && reader.indexedTriangles > 0) {
+			report += String.format(Locale.ROOT, "; ACMR %.3f -> %.3f", reader.getAcmrBefore(), reader.getAcmrAfter());
+		}
+		if (batches.numLevels > 1) {
+			report += "; triángulos por nivel";
+			for (int l = 0; l < batches.numLevels; l++) {
+				report += (l == 0 ? " " : " / ") + triangles(batches, l);
+			}
+		}
+		if ((flags & ModelCache.FLAG_QUANTIZED) != 0) {
+			long before = vertexBytes(batches);
+			float[] error = new float[3];
+			batches.quantize(error);
+			long after = vertexBytes(batches);
+			report += String.format(Locale.ROOT, "; vértices %d -> %d bytes (%d%% menos), error máx: posición %.3g (%.4f%% de la caja), normal %.3f°, uv %.3g",
+					before, after, 100 - 100 * after / Math.max(1, before), error[0],
+					100 * error[0] / Math.max(Float.MIN_VALUE, boxSize(batches)), error[1], error[2]);
+		}
+		ModelCache.write(batches, flags, ModelCache.checksum(data), data.remaining(), output);
+		System.out.println(source.getName() + " -> " + output.getName() + " (" + batches.numMeshes + " mallas, "
+				+ batches.numBatches + " lotes, " + output.length() + " bytes, "
+				+ (System.nanoTime() - start) / 1000000 + " ms" + report + ")");
+	}
+
+	private static int triangles(ModelBatches batches, int level) {
+		int triangles = 0;
+		for (int m = 0; m < batches.numMeshes; m++) {
+			triangles += batches.count(level, m) / 3;
+		}
+		return triangles;
+	}
+
+	private static long vertexBytes(ModelBatches batches) {
+		long bytes = 0;
+		for (int b = 0; b < batches.numBatches; b++) {
+			bytes += batches.vertexBytes(b);
+		}
+		return bytes;
+	}
+
+	// Lado del mayor cubo de compresión de los lotes
+	private static float boxSize(ModelBatches batches) {
+		float size = 0;
+		for (int b = 0; b < batches.numBatches; b++) {
+			size = Math.max(size, 2 * batches.batchDequant[b * VertexQuantizer.DEQUANT_FLOATS + 3]);
+		}
+		return size;
+	}
+}
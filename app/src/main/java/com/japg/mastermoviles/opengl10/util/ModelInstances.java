@@ -0,0 +1,116 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/* Transformaciones de las copias (instancias) de un modelo que se dibujan de una vez.
+*  Las matrices (column-major) van seguidas en un único float[], MATRIX_FLOATS por instancia,
+*  y se pueden escribir directamente en él (llamando después a markChanged()) o con los
+*  métodos set*. Sólo se reserva memoria al crecer la capacidad, nunca por frame.
+*
+*  version cambia con cada modificación, así quien sube las matrices a la GPU sabe si las
+*  que tiene ya están al día aunque las compartan varios modelos (cuerpo y halo).
+*/
+public class ModelInstances {
+	public static final int MATRIX_FLOATS = 16;
+	private static final int BYTES_PER_FLOAT = 4;
+
+	// Matrices de las instancias: la de i empieza en matrices[i * MATRIX_FLOATS]
+	public float[] matrices;
+	private int count;
+	private int version;
+
+	// Copia directa de las matrices para glBufferData
+	private FloatBuffer staging;
+	private int stagingVersion = -1;
+
+	public ModelInstances(int capacity) {
+		matrices = new float[Math.max(1, capacity) * MATRIX_FLOATS];
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	// Cambia el número de instancias; las nuevas empiezan con la identidad
+	public void setCount(int count) {
+		ensureCapacity(count);
+		for (int i = this.count; i < count; i++) {
+			setIdentity(i);
+		}
+		this.count = count;
+		version++;
+	}
+
+	public void ensureCapacity(int capacity) {
+		if (capacity * MATRIX_FLOATS > matrices.length) {
+			matrices = Arrays.copyOf(matrices, Math.max(capacity, matrices.length / MATRIX_FLOATS * 2) * MATRIX_FLOATS);
+		}
+	}
+
+	// Avisa de que se han escrito matrices directamente en matrices[]
+	public void markChanged() {
+		version++;
+	}
+
+	public void setTransform(int instance, float[] m, int offset) {
+		System.arraycopy(m, offset, matrices, instance * MATRIX_FLOATS, MATRIX_FLOATS);
+		version++;
+	}
+
+	public void setIdentity(int instance) {
+		setTranslationRotationY(instance, 0, 0, 0, 0);
+	}
+
+	// Traslación (x, y, z) por un giro de degrees grados alrededor del eje y
+	public void setTranslationRotationY(int instance, float x, float y, float z, float degrees) {
+		int o = instance * MATRIX_FLOATS;
+		float radians = (float) Math.toRadians(degrees);
+		float cos = (float) Math.cos(radians);
+		float sin = (float) Math.sin(radians);
+
+		matrices[o]      = cos;
+		matrices[o + 1]  = 0;
+		matrices[o + 2]  = -sin;
+		matrices[o + 3]  = 0;
+		matrices[o + 4]  = 0;
+		matrices[o + 5]  = 1;
+		matrices[o + 6]  = 0;
+		matrices[o + 7]  = 0;
+		matrices[o + 8]  = sin;
+		matrices[o + 9]  = 0;
+		matrices[o + 10] = cos;
+		matrices[o + 11] = 0;
+		matrices[o + 12] = x;
+		matrices[o + 13] = y;
+		matrices[o + 14] = z;
+		matrices[o + 15] = 1;
+		version++;
+	}
+
+	// Matrices de las count instancias en un buffer directo, listo para OpenGL
+	public FloatBuffer buffer() {
+		int floats = count * MATRIX_FLOATS;
+		if (staging == null || staging.capacity() < floats) {
+			staging = ByteBuffer
+					.allocateDirect(matrices.length * BYTES_PER_FLOAT)
+					.order(ByteOrder.nativeOrder())
+					.asFloatBuffer();
+			stagingVersion = -1;
+		}
+		if (stagingVersion != version) {
+			staging.clear();
+			staging.put(matrices, 0, floats);
+			stagingVersion = version;
+		}
+		staging.position(0);
+		staging.limit(floats);
+		return staging;
+	}
+}
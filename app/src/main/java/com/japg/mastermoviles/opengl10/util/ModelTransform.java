@@ -0,0 +1,108 @@
+package com.japg.mastermoviles.opengl10.util;
+
+/* Posición de un modelo: rotaciones en x e y que se acercan poco a poco a un destino
+*  (setDestination/updatePosition), y traslación en z (zoom). Da la matriz del modelo
+*  directamente o a través de un nodo del grafo de escena.
+*  Es la parte de Model3D que se calcula en cada frame, en Java puro y sin reservas de
+*  memoria, así se puede medir fuera del dispositivo.
+*/
+public class ModelTransform {
+	private float rotationX;
+	private float rotationY;
+	private float rotationZ;
+	private float destinationX;
+	private float destinationY;
+	// Nodo del grafo de escena: su matriz local es la rotación/traslación del modelo
+	// (null = sin grafo, la local es la del modelo)
+	private SceneGraph scene;
+	private int sceneNode = SceneGraph.NO_PARENT;
+	private final float[] localMatrix = new float[MatrixHelper.MATRIX_FLOATS];
+	private final float[] pushedTransform = new float[3];
+
+	public ModelTransform(float initialRotationX, float initialRotationY, float initialRotationZ) {
+		this.rotationX = initialRotationX;
+		this.rotationY = initialRotationY;
+		this.rotationZ = initialRotationZ;
+	}
+
+	public float getRotationX() {
+		return rotationX;
+	}
+
+	public float getRotationY() {
+		return rotationY;
+	}
+
+	public float getRotationZ() {
+		return rotationZ;
+	}
+
+	// Asocia la transformación a un nodo del grafo de escena; a partir de aquí su rotación y
+	// traslación son relativas a las del padre del nodo
+	public void attach(SceneGraph scene, int node) {
+		this.scene = scene;
+		this.sceneNode = node;
+		writeLocalMatrix();
+	}
+
+	public int getSceneNode() {
+		return sceneNode;
+	}
+
+	public void setDestination(float destinationX, float destinationY) {
+		this.destinationX = destinationX;
+		this.destinationY = destinationY;
+	}
+
+	public void updatePosition(float speed) {
+		float differenceX = this.destinationX - this.rotationX;
+		float differenceY = this.destinationY - this.rotationY;
+
+		this.rotationX += differenceX * speed;
+		this.rotationY += differenceY * speed;
+		pushTransform();
+	}
+
+	public void rotateY(float rotationY) {
+		this.destinationY += rotationY;
+	}
+
+	public void zoom(float rotationZ) {
+		this.rotationZ += rotationZ;
+		pushTransform();
+	}
+
+	// Matriz del modelo en m[offset..]: la de mundo de su nodo (ya actualizada por
+	// SceneGraph.update() en este frame) o, sin grafo, la local
+	public void loadModelMatrix(float[] m, int offset) {
+		if (scene != null) {
+			scene.getWorldMatrix(sceneNode, m, offset);
+		} else {
+			setLocalTransform(m, offset);
+		}
+	}
+
+	// Pasa la rotación y traslación actuales al nodo, sólo si han cambiado, para que el grafo
+	// recalcule únicamente lo que se mueve
+	private void pushTransform() {
+		if (scene == null) return;
+		if (pushedTransform[0] == rotationX && pushedTransform[1] == rotationY && pushedTransform[2] == rotationZ) return;
+		writeLocalMatrix();
+	}
+
+	private void writeLocalMatrix() {
+		pushedTransform[0] = rotationX;
+		pushedTransform[1] = rotationY;
+		pushedTransform[2] = rotationZ;
+		setLocalTransform(localMatrix, 0);
+		scene.setLocalMatrix(sceneNode, localMatrix, 0);
+	}
+
+	// Traslación en z y rotaciones en y y en x del modelo
+	private void setLocalTransform(float[] m, int offset) {
+		MatrixHelper.setIdentity(m, offset);
+		MatrixHelper.translate(m, offset, 0f, 0.0f, rotationZ);
+		MatrixHelper.rotate(m, offset, rotationY, 0f, 1f, 0f);
+		MatrixHelper.rotate(m, offset, rotationX, 1f, 0f, 0f);
+	}
+}
@@ -0,0 +1,97 @@
+package com.japg.mastermoviles.opengl10.util;
+
+/* Matrices de proyección (column-major) del renderer, en Java puro para poder medirlas
+*  fuera del dispositivo. Cada una escribe m[offset..offset+15].
+*/
+public class Projection {
+
+	// Como android.opengl.Matrix.frustumM, con la corrección de su fallo en m[8]
+	// (frustumM lo calcula como 2*(r+l)/(r-l))
+	public static void frustum(float[] m, int offset, float l, float r, float b, float t, float n, float f)
+	{
+		final float rWidth = 1.0f / (r - l);
+		final float rHeight = 1.0f / (t - b);
+		final float rDepth = 1.0f / (n - f);
+
+		m[offset] = 2 * n * rWidth;
+		m[offset + 1] = 0f;
+		m[offset + 2] = 0f;
+		m[offset + 3] = 0f;
+
+		m[offset + 4] = 0f;
+		m[offset + 5] = 2 * n * rHeight;
+		m[offset + 6] = 0f;
+		m[offset + 7] = 0f;
+
+		m[offset + 8] = (r + l) * rWidth;
+		m[offset + 9] = (t + b) * rHeight;
+		m[offset + 10] = (f + n) * rDepth;
+		m[offset + 11] = -1f;
+
+		m[offset + 12] = 0f;
+		m[offset + 13] = 0f;
+		m[offset + 14] = 2 * f * n * rDepth;
+		m[offset + 15] = 0f;
+	}
+
+	public static void perspective(float[] m, int offset, float fovy, float aspect, float n, float f)
+	{	final float d = f-n;
+		final float angleInRadians = (float) (fovy * Math.PI / 180.0);
+		final float a = (float) (1.0 / Math.tan(angleInRadians / 2.0));
+
+		m[offset] = a/aspect;
+		m[offset + 1] = 0f;
+		m[offset + 2] = 0f;
+		m[offset + 3] = 0f;
+
+		m[offset + 4] = 0f;
+		m[offset + 5] = a;
+		m[offset + 6] = 0f;
+		m[offset + 7] = 0f;
+
+		m[offset + 8] = 0;
+		m[offset + 9] = 0;
+		m[offset + 10] = (n - f) / d;
+		m[offset + 11] = -1f;
+
+		m[offset + 12] = 0f;
+		m[offset + 13] = 0f;
+		m[offset + 14] = -2*f*n/d;
+		m[offset + 15] = 0f;
+	}
+
+	public static void perspective2(float[] m, int offset, float fovy, float aspect, float n, float f)
+	{	float fH, fW;
+
+		fH = (float) Math.tan( fovy / 360 * Math.PI ) * n;
+		fW = fH * aspect;
+		frustum(m, offset, -fW, fW, -fH, fH, n, f);
+	}
+
+	public static void frustum2(float[] m, int offset, float l, float r, float b, float t, float n, float f)
+	{
+		float d1 = r-l;
+		float d2 = t-b;
+		float d3 = f-n;
+
+		m[offset] = 2*n/d1;
+		m[offset + 1] = 0f;
+		m[offset + 2] = 0f;
+		m[offset + 3] = 0f;
+
+		m[offset + 4] = 0f;
+		m[offset + 5] = 2*n/d2;
+		m[offset + 6] = 0f;
+		m[offset + 7] = 0f;
+
+		m[offset + 8] = (r+l)/d1;
+		m[offset + 9] = (t+b)/d2;
+		m[offset + 10] = (n-f)/d3;
+		m[offset + 11] = -1f;
+
+		m[offset + 12] = 0f;
+		m[offset + 13] = 0f;
+		m[offset + 14] = -2*f*n/d3;
+		m[offset + 15] = 0f;
+	}
+}
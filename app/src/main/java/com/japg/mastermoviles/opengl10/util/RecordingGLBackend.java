@@ -0,0 +1,428 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/* GLBackend que cuenta las llamadas por función y se las pasa a otro (delegate).
+*  Con setLogging(true) además anota cada llamada con sus argumentos, para comparar
+*  secuencias de llamadas en pruebas. Sin delegate no dibuja nada: los glGen* y glCreate*
+*  devuelven nombres consecutivos, las posiciones de uniform y attribute son -1 y
+*  las consultas no escriben en los arrays.
+*  Contar no reserva memoria salvo la primera vez que aparece cada función; anotar sí.
+*/
+public class RecordingGLBackend implements GLBackend {
+	private final GLBackend delegate;
+	private final HashMap<String, int[]> counts = new HashMap<String, int[]>();
+	private long totalCalls;
+	private List<String> log;
+	private int nextName = 1;
+
+	public RecordingGLBackend() {
+		this(null);
+	}
+
+	public RecordingGLBackend(GLBackend delegate) {
+		this.delegate = delegate;
+	}
+
+	public GLBackend getDelegate() {
+		return delegate;
+	}
+
+	public void setLogging(boolean logging) {
+		log = logging ? new ArrayList<String>() : null;
+	}
+
+	// Llamadas anotadas desde setLogging(true) o el último reset() (vacía sin anotar)
+	public List<String> getLog() {
+		return log != null ? log : new ArrayList<String>();
+	}
+
+	public int getCallCount(String function) {
+		final int[] count = counts.get(function);
+		return count != null ? count[0] : 0;
+	}
+
+	public long getTotalCalls() {
+		return totalCalls;
+	}
+
+	// Número de llamadas de cada función, ordenadas por nombre
+	public String summary() {
+		final ArrayList<String> names = new ArrayList<String>(counts.keySet());
+		Collections.sort(names);
+		final StringBuilder text = new StringBuilder();
+		for (String name : names) {
+			text.append(name).append(": ").append(counts.get(name)[0]).append('\n');
+		}
+		return text.toString();
+	}
+
+	public void reset() {
+		for (int[] count : counts.values()) {
+			count[0] = 0;
+		}
+		totalCalls = 0;
+		if (log != null) log.clear();
+	}
+
+	// Cuenta la llamada; devuelve true si además hay que anotarla
+	private boolean record(String function) {
+		int[] count = counts.get(function);
+		if (count == null) {
+			count = new int[1];
+			counts.put(function, count);
+		}
+		count[0]++;
+		totalCalls++;
+		return log != null;
+	}
+
+	private void log(String call) {
+		log.add(call);
+	}
+
+	private void generateNames(int n, int[] names, int offset) {
+		for (int i = 0; i < n; i++) {
+			names[offset + i] = nextName++;
+		}
+	}
+
+	@Override
+	public void glClear(int mask) {
+		if (record("glClear")) log("glClear(" + mask + ")");
+		if (delegate != null) delegate.glClear(mask);
+	}
+
+	@Override
+	public void glClearColor(float red, float green, float blue, float alpha) {
+		if (record("glClearColor")) log("glClearColor(" + red + ", " + green + ", " + blue + ", " + alpha + ")");
+		if (delegate != null) delegate.glClearColor(red, green, blue, alpha);
+	}
+
+	@Override
+	public void glEnable(int cap) {
+		if (record("glEnable")) log("glEnable(" + cap + ")");
+		if (delegate != null) delegate.glEnable(cap);
+	}
+
+	@Override
+	public void glDisable(int cap) {
+		if (record("glDisable")) log("glDisable(" + cap + ")");
+		if (delegate != null) delegate.glDisable(cap);
+	}
+
+	@Override
+	public void glViewport(int x, int y, int width, int height) {
+		if (record("glViewport")) log("glViewport(" + x + ", " + y + ", " + width + ", " + height + ")");
+		if (delegate != null) delegate.glViewport(x, y, width, height);
+	}
+
+	@Override
+	public void glLineWidth(float width) {
+		if (record("glLineWidth")) log("glLineWidth(" + width + ")");
+		if (delegate != null) delegate.glLineWidth(width);
+	}
+
+	@Override
+	public void glGetIntegerv(int pname, int[] params, int offset) {
+		if (record("glGetIntegerv")) log("glGetIntegerv(" + pname + ", int[], " + offset + ")");
+		if (delegate != null) delegate.glGetIntegerv(pname, params, offset);
+	}
+
+	@Override
+	public String glGetString(int name) {
+		if (record("glGetString")) log("glGetString(" + name + ")");
+		return delegate != null ? delegate.glGetString(name) : "";
+	}
+
+	@Override
+	public void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels) {
+		if (record("glReadPixels")) log("glReadPixels(" + x + ", " + y + ", " + width + ", " + height + ", " + format + ", " + type + ", Buffer)");
+		if (delegate != null) delegate.glReadPixels(x, y, width, height, format, type, pixels);
+	}
+
+	@Override
+	public int glCreateShader(int type) {
+		if (record("glCreateShader")) log("glCreateShader(" + type + ")");
+		return delegate != null ? delegate.glCreateShader(type) : nextName++;
+	}
+
+	@Override
+	public void glShaderSource(int shader, String source) {
+		if (record("glShaderSource")) log("glShaderSource(" + shader + ", ...)");
+		if (delegate != null) delegate.glShaderSource(shader, source);
+	}
+
+	@Override
+	public void glCompileShader(int shader) {
+		if (record("glCompileShader")) log("glCompileShader(" + shader + ")");
+		if (delegate != null) delegate.glCompileShader(shader);
+	}
+
+	@Override
+	public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+		if (record("glGetShaderiv")) log("glGetShaderiv(" + shader + ", " + pname + ", int[], " + offset + ")");
+		if (delegate != null) delegate.glGetShaderiv(shader, pname, params, offset);
+	}
+
+	@Override
+	public String glGetShaderInfoLog(int shader) {
+		if (record("glGetShaderInfoLog")) log("glGetShaderInfoLog(" + shader + ")");
+		return delegate != null ? delegate.glGetShaderInfoLog(shader) : "";
+	}
+
+	@Override
+	public void glDeleteShader(int shader) {
+		if (record("glDeleteShader")) log("glDeleteShader(" + shader + ")");
+		if (delegate != null) delegate.glDeleteShader(shader);
+	}
+
+	@Override
+	public int glCreateProgram() {
+		if (record("glCreateProgram")) log("glCreateProgram()");
+		return delegate != null ? delegate.glCreateProgram() : nextName++;
+	}
+
+	@Override
+	public void glAttachShader(int program, int shader) {
+		if (record("glAttachShader")) log("glAttachShader(" + program + ", " + shader + ")");
+		if (delegate != null) delegate.glAttachShader(program, shader);
+	}
+
+	@Override
+	public void glLinkProgram(int program) {
+		if (record("glLinkProgram")) log("glLinkProgram(" + program + ")");
+		if (delegate != null) delegate.glLinkProgram(program);
+	}
+
+	@Override
+	public void glValidateProgram(int program) {
+		if (record("glValidateProgram")) log("glValidateProgram(" + program + ")");
+		if (delegate != null) delegate.glValidateProgram(program);
+	}
+
+	@Override
+	public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+		if (record("glGetProgramiv")) log("glGetProgramiv(" + program + ", " + pname + ", int[], " + offset + ")");
+		if (delegate != null) delegate.glGetProgramiv(program, pname, params, offset);
+	}
+
+	@Override
+	public String glGetProgramInfoLog(int program) {
+		if (record("glGetProgramInfoLog")) log("glGetProgramInfoLog(" + program + ")");
+		return delegate != null ? delegate.glGetProgramInfoLog(program) : "";
+	}
+
+	@Override
+	public void glDeleteProgram(int program) {
+		if (record("glDeleteProgram")) log("glDeleteProgram(" + program + ")");
+		if (delegate != null) delegate.glDeleteProgram(program);
+	}
+
+	@Override
+	public void glUseProgram(int program) {
+		if (record("glUseProgram")) log("glUseProgram(" + program + ")");
+		if (delegate != null) delegate.glUseProgram(program);
+	}
+
+	@Override
+	public int glGetUniformLocation(int program, String name) {
+		if (record("glGetUniformLocation")) log("glGetUniformLocation(" + program + ", " + name + ")");
+		return delegate != null ? delegate.glGetUniformLocation(program, name) : -1;
+	}
+
+	@Override
+	public int glGetAttribLocation(int program, String name) {
+		if (record("glGetAttribLocation")) log("glGetAttribLocation(" + program + ", " + name + ")");
+		return delegate != null ? delegate.glGetAttribLocation(program, name) : -1;
+	}
+
+	@Override
+	public void glUniform1i(int location, int x) {
+		if (record("glUniform1i")) log("glUniform1i(" + location + ", " + x + ")");
+		if (delegate != null) delegate.glUniform1i(location, x);
+	}
+
+	@Override
+	public void glUniform1f(int location, float x) {
+		if (record("glUniform1f")) log("glUniform1f(" + location + ", " + x + ")");
+		if (delegate != null) delegate.glUniform1f(location, x);
+	}
+
+	@Override
+	public void glUniform4f(int location, float x, float y, float z, float w) {
+		if (record("glUniform4f")) log("glUniform4f(" + location + ", " + x + ", " + y + ", " + z + ", " + w + ")");
+		if (delegate != null) delegate.glUniform4f(location, x, y, z, w);
+	}
+
+	@Override
+	public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+		if (record("glUniformMatrix4fv")) log("glUniformMatrix4fv(" + location + ", " + count + ", " + transpose + ", float[], " + offset + ")");
+		if (delegate != null) delegate.glUniformMatrix4fv(location, count, transpose, value, offset);
+	}
+
+	@Override
+	public void glGenTextures(int n, int[] textures, int offset) {
+		if (record("glGenTextures")) log("glGenTextures(" + n + ", int[], " + offset + ")");
+		if (delegate != null) delegate.glGenTextures(n, textures, offset);
+		else generateNames(n, textures, offset);
+	}
+
+	@Override
+	public void glDeleteTextures(int n, int[] textures, int offset) {
+		if (record("glDeleteTextures")) log("glDeleteTextures(" + n + ", int[], " + offset + ")");
+		if (delegate != null) delegate.glDeleteTextures(n, textures, offset);
+	}
+
+	@Override
+	public void glActiveTexture(int texture) {
+		if (record("glActiveTexture")) log("glActiveTexture(" + texture + ")");
+		if (delegate != null) delegate.glActiveTexture(texture);
+	}
+
+	@Override
+	public void glBindTexture(int target, int texture) {
+		if (record("glBindTexture")) log("glBindTexture(" + target + ", " + texture + ")");
+		if (delegate != null) delegate.glBindTexture(target, texture);
+	}
+
+	@Override
+	public void glTexParameteri(int target, int pname, int param) {
+		if (record("glTexParameteri")) log("glTexParameteri(" + target + ", " + pname + ", " + param + ")");
+		if (delegate != null) delegate.glTexParameteri(target, pname, param);
+	}
+
+	@Override
+	public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels) {
+		if (record("glTexImage2D")) log("glTexImage2D(" + target + ", " + level + ", " + internalformat + ", " + width + ", " + height + ", " + border + ", " + format + ", " + type + ", Buffer)");
+		if (delegate != null) delegate.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+	}
+
+	@Override
+	public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+		if (record("texImage2D")) log("texImage2D(" + target + ", " + level + ", Bitmap, " + border + ")");
+		if (delegate != null) delegate.texImage2D(target, level, bitmap, border);
+	}
+
+	@Override
+	public void glGenerateMipmap(int target) {
+		if (record("glGenerateMipmap")) log("glGenerateMipmap(" + target + ")");
+		if (delegate != null) delegate.glGenerateMipmap(target);
+	}
+
+	@Override
+	public void glGenBuffers(int n, int[] buffers, int offset) {
+		if (record("glGenBuffers")) log("glGenBuffers(" + n + ", int[], " + offset + ")");
+		if (delegate != null) delegate.glGenBuffers(n, buffers, offset);
+		else generateNames(n, buffers, offset);
+	}
+
+	@Override
+	public void glDeleteBuffers(int n, int[] buffers, int offset) {
+		if (record("glDeleteBuffers")) log("glDeleteBuffers(" + n + ", int[], " + offset + ")");
+		if (delegate != null) delegate.glDeleteBuffers(n, buffers, offset);
+	}
+
+	@Override
+	public void glBindBuffer(int target, int buffer) {
+		if (record("glBindBuffer")) log("glBindBuffer(" + target + ", " + buffer + ")");
+		if (delegate != null) delegate.glBindBuffer(target, buffer);
+	}
+
+	@Override
+	public void glBufferData(int target, int size, Buffer data, int usage) {
+		if (record("glBufferData")) log("glBufferData(" + target + ", " + size + ", Buffer, " + usage + ")");
+		if (delegate != null) delegate.glBufferData(target, size, data, usage);
+	}
+
+	@Override
+	public void glBufferSubData(int target, int offset, int size, Buffer data) {
+		if (record("glBufferSubData")) log("glBufferSubData(" + target + ", " + offset + ", " + size + ", Buffer)");
+		if (delegate != null) delegate.glBufferSubData(target, offset, size, data);
+	}
+
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+		if (record("glVertexAttribPointer")) log("glVertexAttribPointer(" + index + ", " + size + ", " + type + ", " + normalized + ", " + stride + ", " + offset + ")");
+		if (delegate != null) delegate.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+	}
+
+	@Override
+	public void glEnableVertexAttribArray(int index) {
+		if (record("glEnableVertexAttribArray")) log("glEnableVertexAttribArray(" + index + ")");
+		if (delegate != null) delegate.glEnableVertexAttribArray(index);
+	}
+
+	@Override
+	public void glDisableVertexAttribArray(int index) {
+		if (record("glDisableVertexAttribArray")) log("glDisableVertexAttribArray(" + index + ")");
+		if (delegate != null) delegate.glDisableVertexAttribArray(index);
+	}
+
+	@Override
+	public void glDrawArrays(int mode, int first, int count) {
+		if (record("glDrawArrays")) log("glDrawArrays(" + mode + ", " + first + ", " + count + ")");
+		if (delegate != null) delegate.glDrawArrays(mode, first, count);
+	}
+
+	@Override
+	public void glDrawElements(int mode, int count, int type, int offset) {
+		if (record("glDrawElements")) log("glDrawElements(" + mode + ", " + count + ", " + type + ", " + offset + ")");
+		if (delegate != null) delegate.glDrawElements(mode, count, type, offset);
+	}
+
+	@Override
+	public void glVertexAttribDivisor(int index, int divisor) {
+		if (record("glVertexAttribDivisor")) log("glVertexAttribDivisor(" + index + ", " + divisor + ")");
+		if (delegate != null) delegate.glVertexAttribDivisor(index, divisor);
+	}
+
+	@Override
+	public void glDrawArraysInstanced(int mode, int first, int count, int instanceCount) {
+		if (record("glDrawArraysInstanced")) log("glDrawArraysInstanced(" + mode + ", " + first + ", " + count + ", " + instanceCount + ")");
+		if (delegate != null) delegate.glDrawArraysInstanced(mode, first, count, instanceCount);
+	}
+
+	@Override
+	public void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount) {
+		if (record("glDrawElementsInstanced")) log("glDrawElementsInstanced(" + mode + ", " + count + ", " + type + ", " + offset + ", " + instanceCount + ")");
+		if (delegate != null) delegate.glDrawElementsInstanced(mode, count, type, offset, instanceCount);
+	}
+
+	@Override
+	public void glGenQueries(int n, int[] ids, int offset) {
+		if (record("glGenQueries")) log("glGenQueries(" + n + ", int[], " + offset + ")");
+		if (delegate != null) delegate.glGenQueries(n, ids, offset);
+		else generateNames(n, ids, offset);
+	}
+
+	@Override
+	public void glDeleteQueries(int n, int[] ids, int offset) {
+		if (record("glDeleteQueries")) log("glDeleteQueries(" + n + ", int[], " + offset + ")");
+		if (delegate != null) delegate.glDeleteQueries(n, ids, offset);
+	}
+
+	@Override
+	public void glBeginQuery(int target, int id) {
+		if (record("glBeginQuery")) log("glBeginQuery(" + target + ", " + id + ")");
+		if (delegate != null) delegate.glBeginQuery(target, id);
+	}
+
+	@Override
+	public void glEndQuery(int target) {
+		if (record("glEndQuery")) log("glEndQuery(" + target + ")");
+		if (delegate != null) delegate.glEndQuery(target);
+	}
+
+	@Override
+	public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {
+		if (record("glGetQueryObjectuiv")) log("glGetQueryObjectuiv(" + id + ", " + pname + ", int[], " + offset + ")");
+		if (delegate != null) delegate.glGetQueryObjectuiv(id, pname, params, offset);
+	}
+}
@@ -0,0 +1,197 @@
+package com.japg.mastermoviles.opengl10.util;
+
+/* Presupuesto de memoria para la geometría y las texturas de los modelos.
+*  Cada modelo registrado tiene una entrada con los bytes que ocupa mientras está cargado
+*  (buffers de la GPU, sus copias en memoria nativa y su textura). Al dibujarlo se marca
+*  como usado (touch) y, si al cargarse otro se pasa del presupuesto, se expulsan los que
+*  hace más tiempo que no se dibujan: liberan lo que ocupan y se vuelven a cargar (de la
+*  caché de ModelCache o del 3DS) la próxima vez que se dibujen.
+*
+*  Las entradas forman una lista doblemente enlazada, de la menos a la más reciente, así
+*  que touch no reserva memoria. Nunca se expulsa lo que se ha dibujado en el frame actual
+*  ni en el anterior (lo que se ve ahora y se acaba de ver, que no tiene por qué tocarse en
+*  el mismo orden en cada frame): si eso no cabe en el presupuesto, se pasa de él.
+*  Sólo se usa desde el hilo de OpenGL (las expulsiones borran buffers y texturas).
+*/
+public class ResidencyManager {
+
+	// Lo que se puede expulsar: libera todo lo que cuenta en su entrada
+	public interface Resident {
+		void evict();
+	}
+
+	public static final class Entry {
+		private final Resident resident;
+		private long bytes;
+		private boolean loaded;
+		private boolean evicted;
+		private long lastFrame = -1;
+		private Entry previous;
+		private Entry next;
+
+		private Entry(Resident resident) {
+			this.resident = resident;
+		}
+
+		// true mientras cuenta en el presupuesto (cargado y sin expulsar)
+		public boolean isLoaded() {
+			return loaded;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+	}
+
+	private long budgetBytes;
+	private long residentBytes;
+	private int residentCount;
+	private long frame;
+
+	// Lista de entradas cargadas: head es la que hace más tiempo que no se usa
+	private Entry head;
+	private Entry tail;
+
+	// Dibujos de modelos cargados, de modelos expulsados (que se recargan) y expulsiones
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public ResidencyManager(long budgetBytes) {
+		this.budgetBytes = budgetBytes;
+	}
+
+	// Registra un modelo que se está cargando; cuenta en el presupuesto a partir de loaded()
+	public Entry register(Resident resident) {
+		return new Entry(resident);
+	}
+
+	// Lo saca del presupuesto sin expulsarlo (el modelo se libera por su cuenta)
+	public void unregister(Entry entry) {
+		if (entry.loaded) {
+			unlink(entry);
+		}
+		entry.evicted = false;
+	}
+
+	public long getBudgetBytes() {
+		return budgetBytes;
+	}
+
+	// Cambia el presupuesto y expulsa lo que sobre
+	public void setBudgetBytes(long budgetBytes) {
+		this.budgetBytes = budgetBytes;
+		trim();
+	}
+
+	// Al principio de cada frame, antes de dibujar
+	public void beginFrame() {
+		frame++;
+	}
+
+	// El modelo se va a dibujar en este frame. Devuelve false si estaba expulsado: entonces
+	// cuenta como fallo y el llamador debe volver a cargarlo (y avisar con loaded()).
+	public boolean touch(Entry entry) {
+		entry.lastFrame = frame;
+		if (entry.evicted) {
+			entry.evicted = false;
+			misses++;
+			return false;
+		}
+		if (entry.loaded) {
+			hits++;
+			if (entry != tail) {
+				unlink(entry);
+				link(entry);
+			}
+		}
+		return true;
+	}
+
+	// El modelo ha terminado de cargarse y ocupa bytes. Si no cabe, se expulsan los menos
+	// usados recientemente.
+	public void loaded(Entry entry, long bytes) {
+		if (entry.loaded) {
+			unlink(entry);
+		}
+		entry.bytes = bytes;
+		entry.evicted = false;
+		link(entry);
+		trim();
+	}
+
+	// Expulsa, de la menos a la más reciente, las entradas que no se han usado en este frame
+	// ni en el anterior hasta volver al presupuesto
+	public void trim() {
+		Entry entry = head;
+		while (residentBytes > budgetBytes && entry != null) {
+			Entry next = entry.next;
+			if (entry.lastFrame < frame - 1) {
+				unlink(entry);
+				entry.evicted = true;
+				evictions++;
+				entry.resident.evict();
+			}
+			entry = next;
+		}
+	}
+
+	public long getResidentBytes() {
+		return residentBytes;
+	}
+
+	public int getResidentCount() {
+		return residentCount;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	public void resetCounters() {
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	// Añade la entrada al final (la más reciente)
+	private void link(Entry entry) {
+		entry.previous = tail;
+		entry.next = null;
+		if (tail != null) {
+			tail.next = entry;
+		} else {
+			head = entry;
+		}
+		tail = entry;
+		entry.loaded = true;
+		residentBytes += entry.bytes;
+		residentCount++;
+	}
+
+	private void unlink(Entry entry) {
+		if (entry.previous != null) {
+			entry.previous.next = entry.next;
+		} else {
+			head = entry.next;
+		}
+		if (entry.next != null) {
+			entry.next.previous = entry.previous;
+		} else {
+			tail = entry.previous;
+		}
+		entry.previous = null;
+		entry.next = null;
+		entry.loaded = false;
+		residentBytes -= entry.bytes;
+		residentCount--;
+	}
+}
@@ -7,19 +7,60 @@ package com.japg.mastermoviles.opengl10.util;
  * Máster Universitario en Desarrollo de Software para Dispositivos Móviles
  */
 
-import android.content.Context;
-import android.content.res.Resources;
-import android.util.Log;
-
-import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
-/* Versión 2.5 de Resource3DSReader
+/* Versión 3.9 de Resource3DSReader
 *  Changelog:
+*    Cambios desde la versión 3.8:
+*       Sin límite de mallas: las tablas de cada objeto crecen según se leen. En el modo
+*       indexado, un objeto con más vértices únicos de los que caben en índices de 16 bits
+*       se parte en varias mallas (meshObject dice de qué objeto sale cada una) en lugar
+*       de dibujarse sin índices.
+*    Cambios desde la versión 3.7:
+*       Los chunks se recorren con Chunk3DSParser siguiendo su anidamiento. Los streams y
+*       canales se leen según llegan, sin cargarlos enteros, y con setMeshListener cada
+*       malla se expande y se entrega en cuanto termina su CHUNK_OBJBLOCK.
+*    Cambios desde la versión 3.6:
+*       Sin dependencias de Android, para usarlo y medirlo en la JVM: la lectura de
+*       recursos pasa a ModelCache (mapResource) y read3DSFromResource se sustituye por
+*       read3DSFromStream. La lectura se separa en readChunks y expandMeshes.
+*    Cambios desde la versión 3.5:
+*       Niveles de detalle opcionales en el modo indexado (setLodLevels): índices
+*       simplificados con MeshSimplifier sobre los mismos vértices de la malla.
+*    Cambios desde la versión 3.4:
+*       Optimización opcional para la caché de vértices de la GPU en el modo indexado
+*       (setOptimizeVertexCache): triángulos reordenados con VertexCacheOptimizer y
+*       vértices en el orden en que se leen. Se informa del ACMR antes y después.
+*    Cambios desde la versión 3.3:
+*       Primero se recorren los chunks guardando las listas de cada malla, y después
+*       las mallas se expanden en paralelo en un pool fork-join (setThreadCount).
+*       Cada malla se expande igual que en serie, así que el resultado no cambia.
+*    Cambios desde la versión 3.2:
+*       Normales por vértice según los grupos de suavizado (setSmoothNormals), usando
+*       una tabla de adyacencia vértice->caras compacta (offsets + lista, tipo CSR).
+*    Cambios desde la versión 3.1:
+*       Salida indexada opcional (setIndexedOutput): vértices únicos soldados por
+*       posición + normal + uv, más un buffer de índices para glDrawElements.
+*    Cambios desde la versión 3.0:
+*       Modo de lectura con el fichero mapeado en memoria (FileChannel.map).
+*       Las listas ya no se copian a vectores temporales: la expansión lee
+*       directamente de vistas sobre el buffer del fichero.
+*    Cambios desde la versión 2.5:
+*       Lectura en una sola pasada: el recurso se carga entero en un ByteBuffer
+*       (little-endian) y las listas se decodifican en bloque con vistas
+*       asFloatBuffer()/asShortBuffer(). Los vectores temporales crecen según se necesita.
 *    Cambios desde la versión 2.0:
 *    	Lee grupos de suavizado
 *    Cambios desde la versión 1.5:
@@ -35,51 +76,157 @@ public class Resource3DSReader {
 	// Constantes
 	private static final int BYTES_PER_FLOAT = 4;
 	private static final int BYTES_PER_SHORT = 2;
-	private static final int TRIMESH_SIZE    = 8*3;
-	
-	// Número máximo de mallas de triángulos a leer
-	private static final int MAX_MESHES      = 500;
-	
-	// Identificadores de los trozos (chunks) del archivo que vamos a leer
-	// Descripción del formato en: http://es.wikipedia.org/wiki/.3ds
-	private static final int CHUNK_MAIN		= 0x4d4d;
-	private static final int CHUNK_OBJMESH	= 0x3d3d;
-	private static final int CHUNK_OBJBLOCK	= 0x4000;
-	private static final int CHUNK_TRIMESH	= 0x4100;
-	private static final int CHUNK_VERTLIST	= 0x4110;
-	private static final int CHUNK_FACELIST	= 0x4120;
-	private static final int CHUNK_MAPLIST	= 0x4140;
-	private static final int CHUNK_SMOOLIST	= 0x4150;
+	private static final int BYTES_PER_INT   = 4;
+	private static final int FLOATS_PER_VERTEX = 8;
+	private static final int TRIMESH_SIZE    = FLOATS_PER_VERTEX*3;
+	
+	// Mayor índice representable con GL_UNSIGNED_SHORT
+	private static final int MAX_SHORT_INDEX = 0xffff;
 	
+	// Capacidad inicial de las tablas de objetos y de salida (crecen al doble cuando se llenan)
+	private static final int INITIAL_MESHES  = 8;
+	
+	// Objetos (CHUNK_OBJBLOCK) leídos del fichero, con el número de vértices, caras y uv's de
+	// cada uno (cada lista cuenta con 16 bits en el formato)
+	int numObjects;
 	int[] numVer;
 	int[] numPol;
 	int[] numUv;
-	
-	int maxVer;
-	int maxPol;
-	int maxUv;
 		
-	// Vectores temporales
-	float[] vertexBuffer;
-	int[]	polBuffer;
-	float[]	uvBuffer;
-	int[]	smoothBuffer;
+	// Vistas sobre el buffer del fichero con las listas de cada malla (sin copia)
+	FloatBuffer[]	vertexLists;
+	ShortBuffer[]	faceLists;
+	FloatBuffer[]	uvLists;
+	IntBuffer[]		smoothLists;
+	
+	// Piezas de salida de cada objeto, según se expanden (una salvo que haya que partirlo)
+	private MeshPart[][] objectParts;
 	
 	// [Salida] Vectores (JNI) con la mallas de triángulos resultante, y su número de vértices 
 	public FloatBuffer[]	dataBuffer;
 	public int[]			numVertices;	
 	
+	// [Salida, modo indexado] Índices de cada malla y su número. Un objeto cuyos vértices
+	// únicos no caben en índices de 16 bits se parte en varias mallas seguidas.
+	public ShortBuffer[]	indexBuffer;
+	public int[]			numIndices;
+	
+	// [Salida, con setLodLevels] Índices de los niveles 1.. de cada malla indexada, sobre sus
+	// mismos vértices (null en las mallas sin índices)
+	public ShortBuffer[][]	lodIndexBuffer;
+	
 	// Número de mallas
 	public int numMeshes;
 	
+	// [Salida] Objeto del fichero del que sale cada malla
+	public int[] meshObject;
+	
+	// Vértices antes y después de soldar (para el informe del modo indexado)
+	public int totalExpandedVertices;
+	public int totalUniqueVertices;
+	
+	// Fallos de la caché de vértices (FIFO de VertexCacheOptimizer.FIFO_SIZE) de las mallas
+	// indexadas, antes y después de optimizarlas, y sus triángulos
+	public long cacheMissesBefore;
+	public long cacheMissesAfter;
+	public long indexedTriangles;
+	
+	private boolean indexedOutput;
+	private boolean smoothNormals;
+	private boolean optimizeVertexCache;
+	private int		lodLevels = 1;
+	private int		defaultSmoothingGroup;
+	
+	// Hilos para expandir las mallas: 0 = pool fork-join común, 1 = en el hilo que lee
+	private int		threadCount;
+	
+	// Recorrido de los chunks (el formato se describe en Chunk3DSParser)
+	private final Chunk3DSParser parser = new Chunk3DSParser();
+	private final MeshCollector collector = new MeshCollector();
+	
+	// Con un listener cada malla se expande en cuanto se lee y se avisa de que está lista
+	private MeshListener meshListener;
+	private MeshExpander streamExpander;
+	
+	/* Aviso de malla lista en la lectura progresiva: sus tablas de salida (dataBuffer,
+	*  numVertices, indexBuffer...) en la posición mesh ya están completas. Se llama en el
+	*  hilo que lee, antes de leer el objeto siguiente, una vez por cada malla del objeto.
+	*/
+	public interface MeshListener {
+		void meshReady(Resource3DSReader reader, int mesh);
+	}
+	
 	public Resource3DSReader() {
-		numMeshes = -1;
-		numVer = new int[MAX_MESHES];
-		numPol = new int[MAX_MESHES];
-		numUv  = new int[MAX_MESHES];
-		maxVer = 0;
-		maxPol = 0;
-		maxUv  = 0;
+		numObjects = -1;
+	}
+	
+	// Si se activa, cada malla se devuelve como vértices únicos + índices en lugar
+	// de la lista de triángulos expandida. Debe llamarse antes de leer.
+	public void setIndexedOutput(boolean indexed) {
+		this.indexedOutput = indexed;
+	}
+	
+	// Lectura progresiva: cada malla se expande al terminar su CHUNK_OBJBLOCK (en serie,
+	// sin setThreadCount) y se entrega al listener; de la entrada sólo se retienen las listas
+	// de la malla en curso. null = todas las mallas se expanden al final. Antes de leer.
+	// Sin listener, los streams y canales guardan copias de las listas de todos los objetos
+	// hasta el final: lo que ocupan queda acotado por setMaxInputBytes.
+	public void setMeshListener(MeshListener listener) {
+		this.meshListener = listener;
+	}
+	
+	// Bytes que se aceptan del 3DS (por defecto Chunk3DSParser.DEFAULT_MAX_BYTES). Una
+	// entrada más larga es un error: IOException al leer streams y canales, y la misma
+	// RuntimeException que un 3DS mal formado al leer de un buffer.
+	public void setMaxInputBytes(long maxBytes) {
+		parser.setMaxBytes(maxBytes);
+	}
+	
+	public boolean isIndexedOutput() {
+		return indexedOutput;
+	}
+	
+	// Si se activa, las mallas con grupos de suavizado reciben normales por vértice
+	// (media de las caras adyacentes que comparten grupo) en lugar de la normal de la cara.
+	public void setSmoothNormals(boolean smooth) {
+		this.smoothNormals = smooth;
+	}
+	
+	// Grupo de suavizado que se asigna a todas las caras de las mallas sin CHUNK_SMOOLIST.
+	// Con 0 (por defecto) esas mallas se quedan facetadas, como indica el formato.
+	public void setDefaultSmoothingGroup(int group) {
+		this.defaultSmoothingGroup = group;
+	}
+	
+	// Si se activa (y la salida es indexada), los triángulos de cada malla se reordenan para
+	// la caché de vértices de la GPU y los vértices se ordenan según se usan.
+	public void setOptimizeVertexCache(boolean optimize) {
+		this.optimizeVertexCache = optimize;
+	}
+	
+	// Número de niveles de detalle (el 0 es la malla completa y cada uno tiene la mitad de
+	// triángulos que el anterior). Sólo afecta al modo indexado. Por defecto 1 (sin niveles).
+	public void setLodLevels(int levels) {
+		this.lodLevels = Math.max(1, levels);
+	}
+	
+	public int getLodLevels() {
+		return lodLevels;
+	}
+	
+	// ACMR (fallos de caché por triángulo) de las mallas indexadas antes y después de optimizar
+	public float getAcmrBefore() {
+		return indexedTriangles == 0 ? 0 : (float) cacheMissesBefore / indexedTriangles;
+	}
+	
+	public float getAcmrAfter() {
+		return indexedTriangles == 0 ? 0 : (float) cacheMissesAfter / indexedTriangles;
+	}
+	
+	// Número de hilos con que se expanden las mallas. Con 0 (por defecto) se usa el pool
+	// fork-join común; con 1 todo se hace en el hilo que llama a read3DS*.
+	public void setThreadCount(int threads) {
+		this.threadCount = threads;
 	}
 	
 	private void vector_cross(float[] N, float[] va, float[] vb) {
@@ -97,382 +244,679 @@ public class Resource3DSReader {
 		}	
 	}
 	
-	private int readUnsignedShort(InputStream is) {
-		
-		int a, b; 
+	// Lee el recurso completo en memoria. available() sólo se usa como estimación del tamaño.
+	static ByteBuffer readFully(InputStream inputStream) throws IOException {
+		byte[] bytes = new byte[Math.max(inputStream.available(), 8192)];
+		int length = 0;
+		int n;
 		
-		try {
-			a = is.read();
-			b = is.read();
-		
-		} catch (IOException e) {
-			throw new RuntimeException("No se pudo abrir el recurso", e);
-		} catch (Resources.NotFoundException nfe) {
-			throw new RuntimeException("Recurso no encontrado", nfe);
+		while ((n = inputStream.read(bytes, length, bytes.length - length)) != -1) {
+			length += n;
+			if (length == bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
 		}
-		return a + (b << 8);
+		return ByteBuffer.wrap(bytes, 0, length).order(ByteOrder.LITTLE_ENDIAN);
 	}
-
-	private int readUnsignedInt(InputStream is) {
-		
-		int a, b, c, d; 
+	
+	private void addMesh() {
+		numObjects++;
+		if (numObjects == numVer.length) {
+			int capacity = numObjects * 2;
+			numVer = Arrays.copyOf(numVer, capacity);
+			numPol = Arrays.copyOf(numPol, capacity);
+			numUv = Arrays.copyOf(numUv, capacity);
+			vertexLists = Arrays.copyOf(vertexLists, capacity);
+			faceLists = Arrays.copyOf(faceLists, capacity);
+			uvLists = Arrays.copyOf(uvLists, capacity);
+			smoothLists = Arrays.copyOf(smoothLists, capacity);
+			objectParts = Arrays.copyOf(objectParts, capacity);
+		}
+		numVer[numObjects] = 0;
+		numPol[numObjects] = 0;
+		numUv[numObjects]  = 0;
+	}
+	
+	// Pasa las piezas del objeto a las tablas de salida, detrás de las que ya haya
+	private void placeParts(int object) {
+		MeshPart[] parts = objectParts[object];
+		if (numMeshes + parts.length > dataBuffer.length) {
+			int capacity = Math.max(dataBuffer.length * 2, numMeshes + parts.length);
+			dataBuffer = Arrays.copyOf(dataBuffer, capacity);
+			numVertices = Arrays.copyOf(numVertices, capacity);
+			indexBuffer = Arrays.copyOf(indexBuffer, capacity);
+			numIndices = Arrays.copyOf(numIndices, capacity);
+			lodIndexBuffer = Arrays.copyOf(lodIndexBuffer, capacity);
+			meshObject = Arrays.copyOf(meshObject, capacity);
+		}
+		for (MeshPart part : parts) {
+			dataBuffer[numMeshes] = part.data;
+			numVertices[numMeshes] = part.numVertices;
+			indexBuffer[numMeshes] = part.indices;
+			numIndices[numMeshes] = part.numIndices;
+			lodIndexBuffer[numMeshes] = part.lod;
+			meshObject[numMeshes] = object;
+			numMeshes++;
+		}
+	}
+	
+	// Tablas de salida vacías
+	private void resetOutput() {
+		numMeshes = 0;
+		dataBuffer = new FloatBuffer[INITIAL_MESHES];
+		numVertices = new int[INITIAL_MESHES];
+		indexBuffer = new ShortBuffer[INITIAL_MESHES];
+		numIndices = new int[INITIAL_MESHES];
+		lodIndexBuffer = new ShortBuffer[INITIAL_MESHES][];
+		meshObject = new int[INITIAL_MESHES];
+	}
+	
+	// Expande todos los objetos leídos. Cada hilo coge el siguiente objeto libre, empezando
+	// por los de más caras para repartir mejor la carga; cada objeto escribe sólo en su
+	// posición de objectParts, y después se pasan en orden a las tablas de salida, así que el
+	// orden de ejecución no afecta al resultado.
+	void expandMeshes() {
+		int threads = threadCount > 0 ? threadCount : ForkJoinPool.getCommonPoolParallelism();
+		threads = Math.min(threads, numObjects);
 		
-		try {
-			a = is.read();
-			b = is.read();
-			c = is.read();
-			d = is.read();
+		if (threads <= 1) {
+			MeshExpander expander = new MeshExpander();
+			for (int m=0; m<numObjects; m++) {
+				expander.expand(m);
+			}
+		} else {
+			// Objetos ordenados por número de caras, de mayor a menor
+			long[] bySize = new long[numObjects];
+			final int[] order = new int[numObjects];
+			for (int m=0; m<numObjects; m++) {
+				bySize[m] = ((long) numPol[m] << 32) | m;
+			}
+			Arrays.sort(bySize);
+			for (int m=0; m<numObjects; m++) {
+				order[m] = (int) bySize[numObjects - 1 - m];
+			}
 			
-		} catch (IOException e) {
-			throw new RuntimeException("No se pudo abrir el recurso", e);
-		} catch (Resources.NotFoundException nfe) {
-			throw new RuntimeException("Recurso no encontrado", nfe);
+			final AtomicInteger next = new AtomicInteger();
+			final ExpandTask[] tasks = new ExpandTask[threads];
+			for (int t=0; t<threads; t++) {
+				tasks[t] = new ExpandTask(order, next);
+			}
+			if (threadCount > 0) {
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				try {
+					pool.invoke(new ExpandAll(tasks));
+				} finally {
+					pool.shutdown();
+				}
+			} else {
+				ForkJoinPool.commonPool().invoke(new ExpandAll(tasks));
+			}
+		}
+		
+		resetOutput();
+		for (int m=0; m<numObjects; m++) {
+			placeParts(m);
 		}
-		return a + (b << 8) + (c << 16) + (d <<24);
+		sumTotals();
 	}
 	
-	private float readFloat(InputStream is) {
-		return Float.intBitsToFloat(readUnsignedInt(is));
+	private void sumTotals() {
+		totalExpandedVertices = 0;
+		totalUniqueVertices = 0;
+		cacheMissesBefore = 0;
+		cacheMissesAfter = 0;
+		indexedTriangles = 0;
+		for (int m=0; m<numObjects; m++) {
+			totalExpandedVertices += numPol[m]*3;
+			for (MeshPart part : objectParts[m]) {
+				totalUniqueVertices += part.numVertices;
+				if (part.indices != null) {
+					cacheMissesBefore += part.missesBefore;
+					cacheMissesAfter += part.missesAfter;
+					indexedTriangles += part.numIndices / 3;
+				}
+			}
+		}
 	}
 	
-	public void analize3DSFromResource(Context context, int resourceId) {
-		int 	l_chunk_id;
-		int 	l_chunk_length;
-		int 	l_byte;
-		int		i;
-		String name;
-		int		totalPol;
-		
-		numMeshes=-1;
-		totalPol=0;
-
-		try {
-			InputStream inputStream = context.getResources().openRawResource(resourceId);
+	/* Una malla de salida: vértices intercalados, su número, y en el modo indexado sus
+	*  índices, niveles de detalle y fallos de caché antes y después de optimizarla.
+	*/
+	private static class MeshPart {
+		FloatBuffer		data;
+		int				numVertices;
+		ShortBuffer		indices;
+		int				numIndices;
+		ShortBuffer[]	lod;
+		int				missesBefore;
+		int				missesAfter;
+	}
 	
-			// Bucle para leer los trozos (chunks) de archivo mientras queden bytes por leer
-			while (inputStream.available() > 0) {
-				
-				// Lee la cabecera, id y longitud								
-				l_chunk_id = readUnsignedShort(inputStream);
-				l_chunk_length = readUnsignedInt(inputStream);
-				//if (LoggerConfig.ON) {
-					//Log.w(TAG, "[A] Leyendo 3DS id: " + l_chunk_id);
-					//Log.w(TAG, "[A] Leyendo 3DS length: " + l_chunk_length);
-				//}		
-				switch (l_chunk_id)
-			    {
-			    	case CHUNK_MAIN: 
-			    		break;
-			        
-			    	case CHUNK_OBJMESH:
-			        	break;
-			         
-			        case CHUNK_OBJBLOCK: 
-			        	
-			        	name="";
-			        	i=0;
-			            do {
-			            	l_byte = inputStream.read();
-			            	if (l_byte>0) name=name+(char)l_byte;
-			            	i++;
-			            } while(l_byte != 0 && i<20);
-			            numMeshes++;
-			            if (LoggerConfig.ON) {
-			        		Log.w(TAG, "[A] CHUNK_OBJBLOCK [" + numMeshes + "]: " + name);
-						}
-			            break;
-			        
-			        case CHUNK_TRIMESH:
-			        	break;  
-			        	
-			        case CHUNK_VERTLIST: 
-			        	numVer[numMeshes] = readUnsignedShort(inputStream);
-			        	//if (LoggerConfig.ON) {
-							//Log.w(TAG, "[A] Número de Vértices: " + numVer[numMeshes]);
-						//}
-			            inputStream.skip(numVer[numMeshes]*3*BYTES_PER_FLOAT);
-			            break;
-			            
-			        case CHUNK_FACELIST:
-			        	numPol[numMeshes] = readUnsignedShort(inputStream);
-			        	//if (LoggerConfig.ON) {
-							//Log.w(TAG, "[A] Número de Polígonos: " + numPol[numMeshes]);
-						//}
-			            inputStream.skip(numPol[numMeshes]*4*BYTES_PER_SHORT);
-			            totalPol+=numPol[numMeshes];
-			            break;
-			            
-			        case CHUNK_MAPLIST:
-			        	numUv[numMeshes] = readUnsignedShort(inputStream);
-			        	//if (LoggerConfig.ON) {
-							//Log.w(TAG, "[A] Número de Uv: " + numUv[numMeshes]);
-						//}
-			            inputStream.skip(numUv[numMeshes]*2*BYTES_PER_FLOAT);
-			            break;
-			            
-			        default:
-			            //if (LoggerConfig.ON) {
-							//Log.w(TAG, "[A] 3DS saltando: " + (l_chunk_length-6) + " bytes, quedan: "+inputStream.available());
-						//}
-			            inputStream.skip(l_chunk_length-6);
-			        	break;
-			    }	
-			}
-			inputStream.close();
-		} catch (EOFException e) {
-			throw new RuntimeException("Fin de fichero EOF: " + resourceId, e);
-		} catch (IOException e) {
-			throw new RuntimeException("No se pudo abrir el recurso: " + resourceId, e);
-		} catch (Resources.NotFoundException nfe) {
-			throw new RuntimeException("Recurso no encontrado: " + resourceId, nfe);
+	// Las tareas del pool nunca se serializan
+	@SuppressWarnings("serial")
+	private static class ExpandAll extends RecursiveAction {
+		private final ExpandTask[] tasks;
+		
+		ExpandAll(ExpandTask[] tasks) {
+			this.tasks = tasks;
 		}
-		numMeshes++;		
 		
-		dataBuffer = new FloatBuffer[numMeshes];
-		numVertices = new int[numMeshes];
+		@Override
+		protected void compute() {
+			invokeAll(tasks);
+		}
+	}
+	
+	// Un trabajador del pool: expande mallas hasta que no quede ninguna
+	@SuppressWarnings("serial")
+	private class ExpandTask extends RecursiveAction {
+		private final int[] order;
+		private final AtomicInteger next;
 		
-		maxVer=0;
-		maxPol=0;
-		maxUv=0;
-		for (i=0; i<numMeshes; i++) {
-			if (maxVer<numVer[i]) maxVer=numVer[i];
-			if (maxPol<numPol[i]) maxPol=numPol[i];
-			if (maxUv<numUv[i]) maxUv=numUv[i];
-			numVertices[i] = numPol[i]*3;
+		ExpandTask(int[] order, AtomicInteger next) {
+			this.order = order;
+			this.next = next;
 		}
-		if (LoggerConfig.ON) {
-			if (numMeshes==1)
-				Log.w(TAG, "[A] Recurso 3DS analizado correctamente, con " + numMeshes + " malla y " + totalPol + " polígonos");
-			else
-				Log.w(TAG, "[A] Recurso 3DS analizado correctamente, con " + numMeshes + " mallas y " + totalPol + " polígonos");
+		
+		@Override
+		protected void compute() {
+			MeshExpander expander = new MeshExpander();
+			int k;
+			while ((k = next.getAndIncrement()) < order.length) {
+				expander.expand(order[k]);
+			}
 		}
 	}
-
-	private void expandVertices(int nM) {
-		int i, j, pos;
+	
+	/* Expansión de una malla a la lista de triángulos (o vértices únicos + índices).
+	*  Guarda los vectores de trabajo, que se reutilizan entre las mallas de un mismo hilo.
+	*/
+	private class MeshExpander {
+		private final float[] tri = new float[TRIMESH_SIZE];
+		private final float[] va = new float[3];
+		private final float[] vb = new float[3];
+		private final float[] N  = new float[3];
+		private VertexWelder welder;
 		
-		float[]	va = new float[3];
-		float[] vb = new float[3];
-		float[] N  = new float[3];
+		// Al partir un objeto: vértice local de cada vértice soldado en la pieza actual (-1 =
+		// aún no está) y los que se han marcado, para limpiarlos al cerrar la pieza
+		private int[] partVertex;
+		private int[] partUsed;
 		
-		// Crea un buffer en JNI (Java Native Interface)
-		dataBuffer[nM] = ByteBuffer
-					.allocateDirect(numPol[nM] * TRIMESH_SIZE * BYTES_PER_FLOAT)
-					.order(ByteOrder.nativeOrder())
-					.asFloatBuffer();
-				
-		// Crea la malla de triángulos
-		for (i=0; i<numPol[nM]; i++) {
-					
+		// Listas de la malla actual
+		private FloatBuffer	vertexList;
+		private ShortBuffer	faceList;
+		private FloatBuffer	uvList;
+		private IntBuffer	smoothList;
+		
+		// Normales suavizadas: normales de cara y adyacencia vértice->caras de la malla actual.
+		// Las caras del vértice v son vertexFaces[vertexFaceStart[v] .. vertexFaceStart[v+1]-1]
+		private boolean smoothingActive;
+		private float[] faceNormals;
+		private int[]	vertexFaceStart;
+		private int[]	vertexFaces;
+		
+		// Expande el objeto nM y deja sus mallas en objectParts[nM]
+		void expand(int nM) {
+			vertexList = vertexLists[nM];
+			faceList   = faceLists[nM];
+			uvList     = uvLists[nM];
+			smoothList = smoothLists[nM];
+			
+			smoothingActive = smoothNormals && (smoothList != null || defaultSmoothingGroup != 0);
+			if (smoothingActive) {
+				prepareSmoothing(nM);
+			}
+			
+			if (indexedOutput) {
+				objectParts[nM] = expandIndexed(nM);
+			} else {
+				objectParts[nM] = new MeshPart[] { expandTriangles(nM) };
+			}
+		}
+		
+		// Rellena tri con los 3 vértices (x, y, z, A, B, C, u, v) de la cara i de la malla nM
+		private void buildTriangle(int nM, int i) {
+			int j, pos;
+			
 			// Para cada vértice
 			for(j=0;j<3;j++) {
-				pos = polBuffer[i*3+j];
+				pos = faceList.get(i*4+j) & 0xffff;
 						
 				// Añadimos (x, y, z)
-				dataBuffer[nM].put(i*24+j*8, vertexBuffer[pos*3]);
-				dataBuffer[nM].put(i*24+j*8+1, vertexBuffer[pos*3+1]);
-				dataBuffer[nM].put(i*24+j*8+2, vertexBuffer[pos*3+2]);
+				tri[j*8]   = vertexList.get(pos*3);
+				tri[j*8+1] = vertexList.get(pos*3+1);
+				tri[j*8+2] = vertexList.get(pos*3+2);
 						
 				// Añadimos las coordenadas de textura (u,v)
 				if (numUv[nM]>0) {
-					dataBuffer[nM].put(24*i+j*8+6, uvBuffer[pos*2]);
-					dataBuffer[nM].put(24*i+j*8+7, uvBuffer[pos*2+1]);
+					tri[j*8+6] = uvList.get(pos*2);
+					tri[j*8+7] = 1.0f - uvList.get(pos*2+1);
 				} else {
-					dataBuffer[nM].put(24*i+j*8+6, 0.0f);
-					dataBuffer[nM].put(24*i+j*8+7, 0.0f);
+					tri[j*8+6] = 0.0f;
+					tri[j*8+7] = 0.0f;
 				}
 			}
 			// Para cada triángulo se calcula la normal N = va x vb
 			for (j=0; j<3; j++) {
-				va[j] = dataBuffer[nM].get(i*24+8*2+j) - dataBuffer[nM].get(i*24+j);
-				vb[j] = dataBuffer[nM].get(i*24+8+j)   - dataBuffer[nM].get(i*24+j);
+				va[j] = tri[8*2+j] - tri[j];
+				vb[j] = tri[8+j]   - tri[j];
 			}
 			vector_cross(N, va, vb);
 			vector_normalize(N);
 					
 			// Añadimos las normal N(A, B, C)
 			for(j=0;j<3;j++) {
-				dataBuffer[nM].put(i*24+j*8+3, N[0]);
-				dataBuffer[nM].put(i*24+j*8+4, N[1]);
-				dataBuffer[nM].put(i*24+j*8+5, N[2]);
+				if (smoothingActive) {
+					smoothNormal(i, faceList.get(i*4+j) & 0xffff, N);
+				}
+				tri[j*8+3] = N[0];
+				tri[j*8+4] = N[1];
+				tri[j*8+5] = N[2];
+			}
+		}
+		
+		// Prepara las normales de cara y la adyacencia vértice->caras de la malla nM.
+		// Dos pasadas lineales sobre las caras; los vectores se reutilizan entre mallas.
+		private void prepareSmoothing(int nM) {
+			int i, j, v;
+			int nV = numVer[nM];
+			int nF = numPol[nM];
+			
+			if (faceNormals == null || faceNormals.length < nF*3) faceNormals = new float[nF*3];
+			if (vertexFaceStart == null || vertexFaceStart.length < nV+1) vertexFaceStart = new int[nV+1];
+			if (vertexFaces == null || vertexFaces.length < nF*3) vertexFaces = new int[nF*3];
+			
+			// Cuenta las caras de cada vértice y calcula las normales de cara
+			Arrays.fill(vertexFaceStart, 0, nV+1, 0);
+			for (i=0; i<nF; i++) {
+				int a = faceList.get(i*4)   & 0xffff;
+				int b = faceList.get(i*4+1) & 0xffff;
+				int c = faceList.get(i*4+2) & 0xffff;
+				vertexFaceStart[a+1]++;
+				vertexFaceStart[b+1]++;
+				vertexFaceStart[c+1]++;
+				
+				for (j=0; j<3; j++) {
+					va[j] = vertexList.get(c*3+j) - vertexList.get(a*3+j);
+					vb[j] = vertexList.get(b*3+j) - vertexList.get(a*3+j);
+				}
+				vector_cross(N, va, vb);
+				vector_normalize(N);
+				faceNormals[i*3]   = N[0];
+				faceNormals[i*3+1] = N[1];
+				faceNormals[i*3+2] = N[2];
+			}
+			for (v=0; v<nV; v++) {
+				vertexFaceStart[v+1] += vertexFaceStart[v];
 			}
+			
+			// Reparte las caras usando vertexFaceStart como cursor y luego lo restaura
+			for (i=0; i<nF; i++) {
+				for (j=0; j<3; j++) {
+					v = faceList.get(i*4+j) & 0xffff;
+					vertexFaces[vertexFaceStart[v]++] = i;
+				}
+			}
+			for (v=nV; v>0; v--) {
+				vertexFaceStart[v] = vertexFaceStart[v-1];
+			}
+			vertexFaceStart[0] = 0;
+		}
+		
+		private int smoothingGroup(int face) {
+			return smoothList != null ? smoothList.get(face) : defaultSmoothingGroup;
+		}
+		
+		// Normal del vértice v en la cara i: suma de las normales de las caras de v
+		// que comparten algún grupo de suavizado con i (la propia cara siempre cuenta)
+		private void smoothNormal(int i, int v, float[] N) {
+			int group = smoothingGroup(i);
+			float x = 0, y = 0, z = 0;
+			
+			for (int k=vertexFaceStart[v]; k<vertexFaceStart[v+1]; k++) {
+				int l = vertexFaces[k];
+				if (l == i || (group & smoothingGroup(l)) != 0) {
+					x += faceNormals[l*3];
+					y += faceNormals[l*3+1];
+					z += faceNormals[l*3+2];
+				}
+			}
+			N[0] = x;
+			N[1] = y;
+			N[2] = z;
+			vector_normalize(N);
+		}
+		
+		// Genera la lista de triángulos expandida (3 vértices por cara) de la malla nM
+		private MeshPart expandTriangles(int nM) {
+			int i;
+			MeshPart part = new MeshPart();
+			
+			// Crea un buffer en JNI (Java Native Interface)
+			part.data = ByteBuffer
+						.allocateDirect(numPol[nM] * TRIMESH_SIZE * BYTES_PER_FLOAT)
+						.order(ByteOrder.nativeOrder())
+						.asFloatBuffer();
 					
+			// Crea la malla de triángulos
+			for (i=0; i<numPol[nM]; i++) {
+				buildTriangle(nM, i);
+				part.data.put(tri);
+			}
+			part.data.position(0);
+			part.numVertices = numPol[nM]*3;
+			return part;
 		}
-	}
-	
-	public int read3DSFromResource(Context context, int resourceId) {
-		int 	l_chunk_id;
-		int 	l_chunk_length;
-		int 	l_byte;
-		int		i;
-		String name;
 		
+		// Suelda los vértices de la malla nM y genera sus índices. Si los vértices únicos no
+		// caben en índices de 16 bits, parte las caras en piezas que sí quepan.
+		private MeshPart[] expandIndexed(int nM) {
+			int i, j;
+			int nIndices = numPol[nM]*3;
+			int[] indices = new int[nIndices];
+			
+			if (welder == null) {
+				welder = new VertexWelder(FLOATS_PER_VERTEX, numVer[nM]);
+			} else {
+				welder.reset();
+			}
+			for (i=0; i<numPol[nM]; i++) {
+				buildTriangle(nM, i);
+				for (j=0; j<3; j++) {
+					indices[i*3+j] = welder.add(tri, j*FLOATS_PER_VERTEX);
+				}
+			}
+			
+			int nVertices = welder.getVertexCount();
+			if (nVertices <= MAX_SHORT_INDEX + 1) {
+				float[] vertices = optimizeVertexCache ? welder.getVertices() : null;
+				return new MeshPart[] { buildPart(indices, nIndices, vertices, nVertices) };
+			}
+			MeshPart[] parts = splitIndexed(indices, nIndices, welder.getVertices(), nVertices);
+			if (LoggerConfig.ON) {
+				Logger.w(TAG, "[R] Malla " + nM + " con " + nVertices + " vértices únicos, se parte en " + parts.length + " mallas");
+			}
+			return parts;
+		}
 		
-		analize3DSFromResource(context, resourceId);
-		numMeshes=-1;
+		// Reparte las caras, en su orden, en piezas de como mucho MAX_SHORT_INDEX+1 vértices.
+		// Cada pieza lleva sus propios vértices (los compartidos entre piezas se repiten).
+		private MeshPart[] splitIndexed(int[] indices, int nIndices, float[] vertices, int nVertices) {
+			MeshPart[] parts = new MeshPart[4];
+			int numParts = 0;
+			int[] partIndices = new int[nIndices];
+			float[] partVertices = new float[(MAX_SHORT_INDEX + 1) * FLOATS_PER_VERTEX];
+			int used = 0;
+			int first = 0;
+			
+			if (partVertex == null || partVertex.length < nVertices) {
+				partVertex = new int[nVertices];
+				partUsed = new int[MAX_SHORT_INDEX + 1];
+				Arrays.fill(partVertex, -1);
+			}
+			for (int i=0; i<=nIndices; i+=3) {
+				// Cierra la pieza al acabar o si la cara siguiente podría no caber
+				if (i == nIndices || used + 3 > MAX_SHORT_INDEX + 1) {
+					if (numParts == parts.length) parts = Arrays.copyOf(parts, numParts * 2);
+					int[] local = Arrays.copyOfRange(partIndices, first, i);
+					float[] localVertices = Arrays.copyOf(partVertices, used * FLOATS_PER_VERTEX);
+					parts[numParts++] = buildPart(local, local.length, localVertices, used);
+					for (int k=0; k<used; k++) {
+						partVertex[partUsed[k]] = -1;
+					}
+					used = 0;
+					first = i;
+					if (i == nIndices) break;
+				}
+				for (int j=0; j<3; j++) {
+					int v = indices[i+j];
+					if (partVertex[v] < 0) {
+						partVertex[v] = used;
+						partUsed[used] = v;
+						System.arraycopy(vertices, v * FLOATS_PER_VERTEX, partVertices, used * FLOATS_PER_VERTEX, FLOATS_PER_VERTEX);
+						used++;
+					}
+					partIndices[i+j] = partVertex[v];
+				}
+			}
+			return Arrays.copyOf(parts, numParts);
+		}
 		
-		// Crea los bufferes temporales
-		vertexBuffer=new float[maxVer*3];
-		polBuffer=new int[maxPol*3];
-		uvBuffer=new float[maxUv*2];
-		smoothBuffer=new int[maxPol];
+		// Malla indexada con los nIndices índices sobre nVertices vértices: vertices, o los
+		// del welder si es null (sin optimizar la caché basta con sus propios buffers)
+		private MeshPart buildPart(int[] indices, int nIndices, float[] vertices, int nVertices) {
+			MeshPart part = new MeshPart();
+			part.missesBefore = VertexCacheOptimizer.countCacheMisses(indices, nIndices, nVertices, VertexCacheOptimizer.FIFO_SIZE);
+			if (optimizeVertexCache) {
+				VertexCacheOptimizer.optimizeTriangles(indices, nIndices, nVertices);
+				vertices = VertexCacheOptimizer.reorderVertices(indices, nIndices, vertices, nVertices, FLOATS_PER_VERTEX);
+				part.missesAfter = VertexCacheOptimizer.countCacheMisses(indices, nIndices, nVertices, VertexCacheOptimizer.FIFO_SIZE);
+			} else {
+				part.missesAfter = part.missesBefore;
+			}
+			if (vertices == null) {
+				vertices = welder.getVertices();
+				part.data = welder.toFloatBuffer();
+			} else {
+				part.data = ByteBuffer
+						.allocateDirect(nVertices * FLOATS_PER_VERTEX * BYTES_PER_FLOAT)
+						.order(ByteOrder.nativeOrder())
+						.asFloatBuffer();
+				part.data.put(vertices, 0, nVertices * FLOATS_PER_VERTEX);
+				part.data.position(0);
+			}
+			part.numVertices = nVertices;
+			part.numIndices = nIndices;
+			part.indices = ByteBuffer
+					.allocateDirect(nIndices * BYTES_PER_SHORT)
+					.order(ByteOrder.nativeOrder())
+					.asShortBuffer();
+			for (int i=0; i<nIndices; i++) {
+				part.indices.put(i, (short) indices[i]);
+			}
+			
+			if (lodLevels > 1) {
+				part.lod = buildLevels(indices, nIndices, vertices, nVertices);
+			}
+			return part;
+		}
 		
-		if (LoggerConfig.ON) {
-			Log.w(TAG, "[R] Leyendo 3DS...");
+		// Niveles de detalle de una malla a partir de sus índices y vértices definitivos
+		private ShortBuffer[] buildLevels(int[] indices, int nIndices, float[] vertices, int nVertices) {
+			float[] ratios = new float[lodLevels - 1];
+			for (int l=0; l<ratios.length; l++) {
+				ratios[l] = 1.0f / (2 << l);
+			}
+			int[][] levels = MeshSimplifier.buildLevels(indices, nIndices, vertices, nVertices, FLOATS_PER_VERTEX, ratios);
+			ShortBuffer[] lod = new ShortBuffer[levels.length];
+			for (int l=0; l<levels.length; l++) {
+				if (optimizeVertexCache) {
+					VertexCacheOptimizer.optimizeTriangles(levels[l], levels[l].length, nVertices);
+				}
+				ShortBuffer level = ByteBuffer
+						.allocateDirect(levels[l].length * BYTES_PER_SHORT)
+						.order(ByteOrder.nativeOrder())
+						.asShortBuffer();
+				for (int i=0; i<levels[l].length; i++) {
+					level.put(i, (short) levels[l][i]);
+				}
+				lod[l] = level;
+			}
+			return lod;
 		}
-		try {
-			InputStream inputStream = context.getResources().openRawResource(resourceId);
+	}
 	
-			// Bucle para leer los trozos (chuks) de archivo mientras queden bytes por leer
-			while (inputStream.available() > 0) {
-				
-				// Lee la cabecera, id y longitud								
-				l_chunk_id = readUnsignedShort(inputStream);
-				l_chunk_length = readUnsignedInt(inputStream);
-				
-				//if (LoggerConfig.ON) {
-					//Log.w(TAG, "Leyendo 3DS id: " + l_chunk_id);
-					//Log.w(TAG, "Leyendo 3DS length: " + l_chunk_length);
-				//}
-				switch (l_chunk_id)
-			    {
-			    	case CHUNK_MAIN: 
-			    		break;
-			        
-			    	case CHUNK_OBJMESH:
-			        	break;
-			         
-			        case CHUNK_OBJBLOCK: 
-			        	
-			        	if (numMeshes>-1) expandVertices(numMeshes);
-			        	name="";
-			        	i=0;
-			            do {
-			            	l_byte = inputStream.read();
-			            	if (l_byte>0) name=name+(char)l_byte;
-			            	i++;
-			            } while(l_byte != 0 && i<20);
-			            //if (LoggerConfig.ON) {
-			        		Log.w(TAG, "[R] CHUNK_OBJBLOCK: " + name);
-						//}
-			            numMeshes++;
-			            break;
-			        
-			        case CHUNK_TRIMESH:
-			        	break;  
-			        	
-			        case CHUNK_VERTLIST: 
-			        	numVer[numMeshes] = readUnsignedShort(inputStream);
-				        	
-			            //if (LoggerConfig.ON) {
-							//Log.w(TAG, "[R] Número de Vértices: " + numVer[numMeshes]);
-						//}
-			            for (i=0; i<numVer[numMeshes]; i++)
-			            {
-			            	vertexBuffer[i*3]   = readFloat(inputStream);
-			            	vertexBuffer[i*3+1] = readFloat(inputStream);
-			            	vertexBuffer[i*3+2] = readFloat(inputStream);
-			            }
-			            break;
-			            
-			        case CHUNK_FACELIST:
-			        	numPol[numMeshes] = readUnsignedShort(inputStream);
-			        			        	        	
-			        	//if (LoggerConfig.ON) {
-							//Log.w(TAG, "[R] Número de Polígonos: " + numPol[numMeshes]);
-						//}
-			        			        		            
-			        	for (i=0; i<numPol[numMeshes]; i++)
-			            {
-			        		polBuffer[i*3]   = readUnsignedShort(inputStream);
-			        		polBuffer[i*3+1] = readUnsignedShort(inputStream);
-			        		polBuffer[i*3+2] = readUnsignedShort(inputStream);
-			        		l_byte = readUnsignedShort(inputStream);
-			            }
-			        	//int bytes_left = l_chunk_length - numPol[numMeshes] * 4 * BYTES_PER_SHORT - 2;  
-			        	//if (LoggerConfig.ON) {
-			        		//Log.w(TAG, "[R] Facelist, quedan: " + bytes_left + " bytes");
-			        	//}
-			        
-			            break;
-			            
-			        case CHUNK_MAPLIST:
-			        	numUv[numMeshes] = readUnsignedShort(inputStream);
-			        
-			        	if (LoggerConfig.ON) {
-							Log.w(TAG, "[R] Número de uv's: " + numUv[numMeshes]);
-						}
-			        				        	
-			        	for (i=0; i<numUv[numMeshes]; i++)
-			            {
-			            	uvBuffer[i*2]   = readFloat(inputStream);
-			            	uvBuffer[i*2+1] = 1.0f - readFloat(inputStream);
-			            }
-			            break;
-			         
-			        case CHUNK_SMOOLIST:
-			        	if (LoggerConfig.ON) {
-							Log.w(TAG, "[R] Leyendo smoothgroup... ");
-			        	}
-			        	for(i = 0; i < numPol[numMeshes]; i++) {
-			    			smoothBuffer[i] = readUnsignedInt(inputStream);
-			    		}
-			        	break;
-			        default:
-			           	//if (LoggerConfig.ON) {
-							//Log.w(TAG, "[R] 3DS saltando: " + (l_chunk_length-6) + " bytes");
-						//}
-			        	inputStream.skip(l_chunk_length-6);
-			        	break;
-			    }
-			}
-			inputStream.close();
-		} catch (EOFException e) {
-			throw new RuntimeException("Fin de fichero EOF: " + resourceId, e);
+	// Lee las mallas del stream según llegan, sin cargarlo entero ni suponer su tamaño.
+	// No cierra el stream.
+	public int read3DSFromStream(InputStream inputStream) throws IOException {
+		startRead();
+		parser.parse(inputStream, collector);
+		numObjects++;
+		return endRead();
+	}
+	
+	// Igual, de un canal cualquiera (red, fichero comprimido...). No cierra el canal.
+	public int read3DSFromChannel(ReadableByteChannel channel) throws IOException {
+		startRead();
+		parser.parse(channel, collector);
+		numObjects++;
+		return endRead();
+	}
+	
+	// Mapea [offset, offset+length) del canal y lee las mallas directamente de la región mapeada
+	public int read3DSFromChannel(FileChannel channel, long offset, long length) throws IOException {
+		ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+		return read3DSFromBuffer(data.order(ByteOrder.LITTLE_ENDIAN));
+	}
+	
+	// Lee las mallas de un 3DS completo en memoria (heap o mapeado), en una sola pasada.
+	// Las listas se leen directamente del buffer, sin copiarlas.
+	public int read3DSFromBuffer(ByteBuffer data) {
+		readChunks(data);
+		return endRead();
+	}
+	
+	// Recorre los chunks y guarda vistas sobre las listas de cada malla, sin expandirlas
+	// (salvo con un MeshListener), y deja numObjects con todos los objetos leídos. Tras esto
+	// expandMeshes() se puede llamar varias veces (así se mide por separado).
+	void readChunks(ByteBuffer data) {
+		startRead();
+		try {
+			parser.parse(data, collector);
 		} catch (IOException e) {
-			throw new RuntimeException("No se pudo abrir el recurso: " + resourceId, e);
-		} catch (Resources.NotFoundException nfe) {
-			throw new RuntimeException("Recurso no encontrado: " + resourceId, nfe);
+			throw new RuntimeException("3DS mal formado", e);
 		}
+		// numObjects es el índice del último objeto mientras se lee
+		numObjects++;
+	}
+	
+	private void startRead() {
+		numObjects = -1;
+		numVer = new int[INITIAL_MESHES];
+		numPol = new int[INITIAL_MESHES];
+		numUv  = new int[INITIAL_MESHES];
+		vertexLists = new FloatBuffer[INITIAL_MESHES];
+		faceLists = new ShortBuffer[INITIAL_MESHES];
+		uvLists = new FloatBuffer[INITIAL_MESHES];
+		smoothLists = new IntBuffer[INITIAL_MESHES];
+		objectParts = new MeshPart[INITIAL_MESHES][];
+		resetOutput();
 		
-		expandVertices(numMeshes);
-		numMeshes++;
+		if (LoggerConfig.ON) {
+			Logger.w(TAG, "[R] Leyendo 3DS...");
+		}
+	}
+	
+	// Tras recorrer los chunks (numObjects ya es el número de objetos)
+	private int endRead() {
+		if (meshListener == null) {
+			expandMeshes();
+		} else {
+			// Ya expandidas según se leían
+			sumTotals();
+		}
+		finishRead();
+		return numMeshes;
+	}
+	
+	/* Recoge los eventos del parser: una malla por CHUNK_OBJBLOCK, con vistas sobre sus
+	*  listas. Con un MeshListener cada malla se expande en cuanto termina su chunk.
+	*/
+	private class MeshCollector extends Chunk3DSParser.DefaultHandler {
+		@Override
+		public void objectName(String name) {
+			if (LoggerConfig.ON) {
+				Logger.w(TAG, "[R] CHUNK_OBJBLOCK: " + name);
+			}
+			addMesh();
+		}
+		
+		@Override
+		public void vertexList(ByteBuffer data, int count) {
+			if (numObjects < 0) return;
+			numVer[numObjects] = count;
+			vertexLists[numObjects] = data.asFloatBuffer();
+		}
+		
+		@Override
+		public void faceList(ByteBuffer data, int count) {
+			if (numObjects < 0) return;
+			// Cada cara son 4 shorts: v0, v1, v2 y flags
+			numPol[numObjects] = count;
+			faceLists[numObjects] = data.asShortBuffer();
+		}
+		
+		@Override
+		public void mapList(ByteBuffer data, int count) {
+			if (numObjects < 0) return;
+			if (LoggerConfig.ON) {
+				Logger.w(TAG, "[R] Número de uv's: " + count);
+			}
+			numUv[numObjects] = count;
+			uvLists[numObjects] = data.asFloatBuffer();
+		}
+		
+		@Override
+		public void smoothList(ByteBuffer data, int count) {
+			if (numObjects < 0) return;
+			if (LoggerConfig.ON) {
+				Logger.w(TAG, "[R] Leyendo smoothgroup... ");
+			}
+			// Un grupo por cara; si el chunk trae menos, las caras que faltan se quedan sin
+			// suavizar
+			if (count < numPol[numObjects]) {
+				IntBuffer groups = IntBuffer.allocate(numPol[numObjects]);
+				groups.put(data.asIntBuffer());
+				groups.clear();
+				smoothLists[numObjects] = groups;
+			} else {
+				smoothLists[numObjects] = data.asIntBuffer();
+			}
+		}
 		
-		// Liberamos la memoria (buffers) temporal
-		vertexBuffer=null;
-		polBuffer=null;
-		uvBuffer=null;
+		@Override
+		public void endChunk(int id, int depth) {
+			if (id != Chunk3DSParser.CHUNK_OBJBLOCK || meshListener == null || numObjects < 0) return;
+			final int nM = numObjects;
+			if (streamExpander == null) streamExpander = new MeshExpander();
+			streamExpander.expand(nM);
+			// Las listas ya no hacen falta: así sólo se retiene la entrada de la malla actual
+			vertexLists[nM] = null;
+			faceLists[nM] = null;
+			uvLists[nM] = null;
+			smoothLists[nM] = null;
+			int first = numMeshes;
+			placeParts(nM);
+			for (int m=first; m<numMeshes; m++) {
+				meshListener.meshReady(Resource3DSReader.this, m);
+			}
+		}
+	}
+	
+	// Recorta las tablas de salida al número de mallas y suelta las listas
+	private void finishRead() {
+		dataBuffer = Arrays.copyOf(dataBuffer, numMeshes);
+		numVertices = Arrays.copyOf(numVertices, numMeshes);
+		indexBuffer = Arrays.copyOf(indexBuffer, numMeshes);
+		numIndices = Arrays.copyOf(numIndices, numMeshes);
+		lodIndexBuffer = Arrays.copyOf(lodIndexBuffer, numMeshes);
+		meshObject = Arrays.copyOf(meshObject, numMeshes);
+		
+		// Soltamos las vistas para no retener el buffer del fichero
+		vertexLists=null;
+		faceLists=null;
+		uvLists=null;
+		smoothLists=null;
+		objectParts=null;
 		
 		if (LoggerConfig.ON) {
-			Log.w(TAG, "[R] Recurso 3DS leído correctamente, con " + numMeshes + " malla(s).");
+			Logger.w(TAG, "[R] Recurso 3DS leído correctamente, con " + numObjects + " objeto(s) y " + numMeshes + " malla(s).");
+			if (indexedOutput) {
+				Logger.w(TAG, "[R] Vértices: " + totalExpandedVertices + " expandidos -> " + totalUniqueVertices
+						+ " únicos (" + (100 - 100L * totalUniqueVertices / Math.max(1, totalExpandedVertices)) + "% menos)");
+				Logger.w(TAG, "[R] ACMR: " + getAcmrBefore() + " -> " + getAcmrAfter());
+			}
 		}
-		return numMeshes;
 	}
 }
-
-/* Leer grupos de smooth
-for(i = 0; i < trimesh->num_face; i++) {
-int j = i * 3,k;
-int v0 = face[j + 0];
-int v1 = face[j + 1];
-int v2 = face[j + 2];
-for(k = 1; k <= vertex_face[v0][0]; k++) {
-	int l = vertex_face[v0][k];
-	if(i == l || (smoothgroup && smoothgroup[i] & smoothgroup[l]))
-		vector_add(&normal_vertex[j + 0],&normal_face[l],
-			&normal_vertex[j + 0]);
-}
-for(k = 1; k <= vertex_face[v1][0]; k++) {
-	int l = vertex_face[v1][k];
-	if(i == l || (smoothgroup && smoothgroup[i] & smoothgroup[l]))
-		vector_add(&normal_vertex[j + 1],&normal_face[l],
-			&normal_vertex[j + 1]);
-}
-for(k = 1; k <= vertex_face[v2][0]; k++) {
-	int l = vertex_face[v2][k];
-	if(i == l || (smoothgroup && smoothgroup[i] & smoothgroup[l]))
-		vector_add(&normal_vertex[j + 2],&normal_face[l],
-			&normal_vertex[j + 2]);
-}
-}
-*/
\ No newline at end of file
@@ -0,0 +1,39 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import android.graphics.BitmapFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/* De dónde salen los recursos que usa el renderer: shaders y modelos de res/raw, texturas de
+*  res/drawable, modelos preconvertidos de assets y el directorio de la caché de modelos.
+*  En el dispositivo es AndroidResources, sobre un Context; fuera de él (por ejemplo para
+*  dibujar con SoftwareGLBackend en la JVM) se le pasa otra que lea los mismos ficheros.
+*  Se puede usar desde cualquier hilo.
+*/
+public interface ResourceSource {
+
+	// Imagen ya decodificada, lista para subirla a la GPU
+	interface Image {
+		// Bytes que ocupa el nivel 0
+		int getByteCount();
+		// Sube la imagen al nivel level de la textura enlazada a target (en el hilo de OpenGL)
+		void upload(GLBackend gl, int target, int level);
+		void recycle();
+	}
+
+	// Contenido del recurso raw: mapeado si se puede, si no leído entero, en little-endian
+	ByteBuffer readRaw(int resourceId) throws IOException;
+
+	// Nombre del recurso sin extensión (el de res/raw/angel_halo.3ds es "angel_halo")
+	String getResourceName(int resourceId);
+
+	File getCacheDir();
+
+	// Fichero de assets mapeado, o null si no existe
+	ByteBuffer readAsset(String path) throws IOException;
+
+	// Imagen del recurso decodificada, o null si no se pudo
+	Image decodeImage(int resourceId, BitmapFactory.Options options);
+}
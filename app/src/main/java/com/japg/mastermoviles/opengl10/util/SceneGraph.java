@@ -0,0 +1,114 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import java.util.Arrays;
+
+/* Grafo de escena con transformaciones jerárquicas.
+*  Cada nodo tiene una matriz local, un padre y una marca de cambio; la matriz de mundo es
+*  la del padre por la local. Las matrices (column-major, como las de android.opengl.Matrix)
+*  se guardan seguidas en arrays planos de floats, MATRIX_FLOATS por nodo, en lugar de un
+*  float[16] por objeto.
+*
+*  Un nodo sólo puede colgar de otro creado antes, así en el array los padres van siempre
+*  delante de sus hijos y update() recalcula en una sola pasada, sin recursión ni pila,
+*  sólo los nodos que han cambiado o cuyo padre ha cambiado. No reserva memoria salvo al
+*  crear nodos por encima de la capacidad. Java puro, sin dependencias de Android.
+*/
+public class SceneGraph {
+	public static final int NO_PARENT = -1;
+	public static final int MATRIX_FLOATS = 16;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int numNodes;
+	private int[] parent = new int[INITIAL_CAPACITY];
+	private float[] local = new float[INITIAL_CAPACITY * MATRIX_FLOATS];
+	// Matrices de mundo: la del nodo n empieza en world[n * MATRIX_FLOATS]. Válidas tras update().
+	private float[] world = new float[INITIAL_CAPACITY * MATRIX_FLOATS];
+	// Matriz local modificada desde el último update(), y matriz de mundo recalculada en él
+	private boolean[] dirty = new boolean[INITIAL_CAPACITY];
+	private boolean[] changed = new boolean[INITIAL_CAPACITY];
+	private boolean anyDirty;
+
+	// Nodos recalculados en el último update()
+	private int updatedNodes;
+
+	public int getNodeCount() {
+		return numNodes;
+	}
+
+	public int getParent(int node) {
+		return parent[node];
+	}
+
+	public int getUpdatedNodes() {
+		return updatedNodes;
+	}
+
+	// Crea un nodo con la matriz local identidad, colgando de parentNode (o NO_PARENT)
+	public int createNode(int parentNode) {
+		if (parentNode < NO_PARENT || parentNode >= numNodes) {
+			throw new IllegalArgumentException("Nodo padre no válido: " + parentNode);
+		}
+		if (numNodes == parent.length) {
+			int capacity = numNodes * 2;
+			parent = Arrays.copyOf(parent, capacity);
+			local = Arrays.copyOf(local, capacity * MATRIX_FLOATS);
+			world = Arrays.copyOf(world, capacity * MATRIX_FLOATS);
+			dirty = Arrays.copyOf(dirty, capacity);
+			changed = Arrays.copyOf(changed, capacity);
+		}
+		int node = numNodes++;
+		parent[node] = parentNode;
+		MatrixHelper.setIdentity(local, node * MATRIX_FLOATS);
+		dirty[node] = true;
+		anyDirty = true;
+		return node;
+	}
+
+	// Copia m[offset..offset+15] como matriz local del nodo y lo marca para recalcularlo
+	public void setLocalMatrix(int node, float[] m, int offset) {
+		System.arraycopy(m, offset, local, node * MATRIX_FLOATS, MATRIX_FLOATS);
+		dirty[node] = true;
+		anyDirty = true;
+	}
+
+	public void getLocalMatrix(int node, float[] m, int offset) {
+		System.arraycopy(local, node * MATRIX_FLOATS, m, offset, MATRIX_FLOATS);
+	}
+
+	// Matrices de mundo de todos los nodos; la de node empieza en worldOffset(node)
+	public float[] getWorldMatrices() {
+		return world;
+	}
+
+	public static int worldOffset(int node) {
+		return node * MATRIX_FLOATS;
+	}
+
+	public void getWorldMatrix(int node, float[] m, int offset) {
+		System.arraycopy(world, node * MATRIX_FLOATS, m, offset, MATRIX_FLOATS);
+	}
+
+	// Recalcula las matrices de mundo de los nodos cambiados y de sus descendientes.
+	// Devuelve cuántos ha recalculado.
+	public int update() {
+		updatedNodes = 0;
+		if (!anyDirty) {
+			return 0;
+		}
+		for (int n = 0; n < numNodes; n++) {
+			int p = parent[n];
+			changed[n] = dirty[n] || (p != NO_PARENT && changed[p]);
+			if (!changed[n]) continue;
+			if (p == NO_PARENT) {
+				System.arraycopy(local, n * MATRIX_FLOATS, world, n * MATRIX_FLOATS, MATRIX_FLOATS);
+			} else {
+				MatrixHelper.multiply(world, n * MATRIX_FLOATS, world, p * MATRIX_FLOATS, local, n * MATRIX_FLOATS);
+			}
+			dirty[n] = false;
+			updatedNodes++;
+		}
+		anyDirty = false;
+		return updatedNodes;
+	}
+}
@@ -1,5 +1,6 @@
 package com.japg.mastermoviles.opengl10.util;
 
+import android.content.Context;
 import android.util.Log;
 
 import static android.opengl.GLES20.GL_COMPILE_STATUS;
@@ -7,31 +8,81 @@ import static android.opengl.GLES20.GL_FRAGMENT_SHADER;
 import static android.opengl.GLES20.GL_LINK_STATUS;
 import static android.opengl.GLES20.GL_VALIDATE_STATUS;
 import static android.opengl.GLES20.GL_VERTEX_SHADER;
-import static android.opengl.GLES20.glAttachShader;
-import static android.opengl.GLES20.glCompileShader;
-import static android.opengl.GLES20.glCreateProgram;
-import static android.opengl.GLES20.glCreateShader;
-import static android.opengl.GLES20.glDeleteProgram;
-import static android.opengl.GLES20.glDeleteShader;
-import static android.opengl.GLES20.glGetProgramiv;
-import static android.opengl.GLES20.glGetShaderiv;
-import static android.opengl.GLES20.glLinkProgram;
-import static android.opengl.GLES20.glShaderSource;
-import static android.opengl.GLES20.glValidateProgram;
+
+import java.util.HashMap;
 
 public class ShaderHelper {
 	private static final String TAG = "ShaderHelper";
 	
+	// Programas ya enlazados, por pareja de recursos (vertex << 32 | fragment).
+	// Sólo se usa desde el hilo de OpenGL.
+	private static final HashMap<Long, ShaderProgram> programCache = new HashMap<Long, ShaderProgram>();
+	private static int compileCount;
+	private static int linkCount;
+	
+	// Devuelve el programa compartido para la pareja de shaders, compilándolo y
+	// enlazándolo sólo la primera vez que se pide en el contexto actual.
+	public static ShaderProgram getProgram(Context context, int vertexResourceId, int fragmentResourceId) {
+		return getProgram(GLES20Backend.INSTANCE, context, vertexResourceId, fragmentResourceId);
+	}
+	
+	public static ShaderProgram getProgram(GLBackend gl, Context context, int vertexResourceId, int fragmentResourceId) {
+		return getProgram(gl, new AndroidResources(context), vertexResourceId, fragmentResourceId);
+	}
+	
+	public static ShaderProgram getProgram(GLBackend gl, ResourceSource resources, int vertexResourceId, int fragmentResourceId) {
+		final Long key = ((long) vertexResourceId << 32) | (fragmentResourceId & 0xffffffffL);
+		ShaderProgram program = programCache.get(key);
+		
+		if (program == null) {
+			int vertexShader = compileVertexShader(gl,
+					TextResourceReader.readTextFileFromResource(resources, vertexResourceId));
+			int fragmentShader = compileFragmentShader(gl,
+					TextResourceReader.readTextFileFromResource(resources, fragmentResourceId));
+			int programId = linkProgram(gl, vertexShader, fragmentShader);
+			
+			if (LoggerConfig.ON) {
+				validateProgram(gl, programId);
+			}
+			program = new ShaderProgram(gl, programId);
+			programCache.put(key, program);
+		}
+		return program;
+	}
+	
+	// Olvida los programas de la caché. Se llama al crear un contexto nuevo, ya que
+	// los del anterior se perdieron con él.
+	public static void clearProgramCache() {
+		programCache.clear();
+	}
+	
+	public static int getCompileCount() {
+		return compileCount;
+	}
+	
+	public static int getLinkCount() {
+		return linkCount;
+	}
+	
 	public static int compileVertexShader(String shaderCode) {
-		return compileShader(GL_VERTEX_SHADER, shaderCode);
+		return compileVertexShader(GLES20Backend.INSTANCE, shaderCode);
+	}
+	
+	public static int compileVertexShader(GLBackend gl, String shaderCode) {
+		return compileShader(gl, GL_VERTEX_SHADER, shaderCode);
 	}
 	
 	public static int compileFragmentShader(String shaderCode) {
-		return compileShader(GL_FRAGMENT_SHADER, shaderCode);
+		return compileFragmentShader(GLES20Backend.INSTANCE, shaderCode);
 	}
 	
-	private static int compileShader(int type, String shaderCode) {
-		final int shaderObjectId = glCreateShader(type);
+	public static int compileFragmentShader(GLBackend gl, String shaderCode) {
+		return compileShader(gl, GL_FRAGMENT_SHADER, shaderCode);
+	}
+	
+	private static int compileShader(GLBackend gl, int type, String shaderCode) {
+		compileCount++;
+		final int shaderObjectId = gl.glCreateShader(type);
 		
 		if (shaderObjectId == 0) {
 			if (LoggerConfig.ON) {
@@ -39,11 +90,11 @@ public class ShaderHelper {
 			}
 			return 0;
 		}
-		glShaderSource(shaderObjectId, shaderCode);
-		glCompileShader(shaderObjectId);
+		gl.glShaderSource(shaderObjectId, shaderCode);
+		gl.glCompileShader(shaderObjectId);
 		
 		final int[] compileStatus = new int[1];
-		glGetShaderiv(shaderObjectId, GL_COMPILE_STATUS, compileStatus, 0);
+		gl.glGetShaderiv(shaderObjectId, GL_COMPILE_STATUS, compileStatus, 0);
 		
 		if (LoggerConfig.ON) {
 			// Print the shader info log to the Android log output.
@@ -52,7 +103,7 @@ public class ShaderHelper {
 		}
 		if (compileStatus[0] == 0) {
 			// Si falla borramos el objeto shader.
-			glDeleteShader(shaderObjectId);
+			gl.glDeleteShader(shaderObjectId);
 			if (LoggerConfig.ON) {
 				Log.w(TAG, "La compilación del shader ha fallado.");
 			}
@@ -63,7 +114,12 @@ public class ShaderHelper {
 	}
 	
 	public static int linkProgram(int vertexShaderId, int fragmentShaderId) {
-		final int programObjectId = glCreateProgram();
+		return linkProgram(GLES20Backend.INSTANCE, vertexShaderId, fragmentShaderId);
+	}
+	
+	public static int linkProgram(GLBackend gl, int vertexShaderId, int fragmentShaderId) {
+		linkCount++;
+		final int programObjectId = gl.glCreateProgram();
 		if (programObjectId == 0) {
 			if (LoggerConfig.ON) {
 				Log.w(TAG, "No se puede crear un nuevo programa");
@@ -71,13 +127,13 @@ public class ShaderHelper {
 			return 0;
 		}
 		// Añadimos los shaders
-		glAttachShader(programObjectId, vertexShaderId);
-		glAttachShader(programObjectId, fragmentShaderId);
+		gl.glAttachShader(programObjectId, vertexShaderId);
+		gl.glAttachShader(programObjectId, fragmentShaderId);
 		// Enlazamos los shaders
-		glLinkProgram(programObjectId);
+		gl.glLinkProgram(programObjectId);
 		// Comprobamos el resultado
 		final int[] linkStatus = new int[1];
-		glGetProgramiv(programObjectId, GL_LINK_STATUS, linkStatus, 0);
+		gl.glGetProgramiv(programObjectId, GL_LINK_STATUS, linkStatus, 0);
 		// Añadimos la traza al log
 		if (LoggerConfig.ON) {
 			Log.v(TAG, "Resultado del enlace del programa:\n");	//+ glGetProgramInfoLog(programObjectId));
@@ -85,7 +141,7 @@ public class ShaderHelper {
 		// Comprobamos el resultados del enlace
 		if (linkStatus[0] == 0) {
 			// Si falla borra el objeto programa.
-			glDeleteProgram(programObjectId);
+			gl.glDeleteProgram(programObjectId);
 			if (LoggerConfig.ON) {
 				Log.w(TAG, "Ha fallado el enlazado del programa.");
 			}
@@ -96,10 +152,14 @@ public class ShaderHelper {
 	}
 	
 	public static boolean validateProgram(int programObjectId) {
-		glValidateProgram(programObjectId);
+		return validateProgram(GLES20Backend.INSTANCE, programObjectId);
+	}
+	
+	public static boolean validateProgram(GLBackend gl, int programObjectId) {
+		gl.glValidateProgram(programObjectId);
 		
 		final int[] validateStatus = new int[1];
-		glGetProgramiv(programObjectId, GL_VALIDATE_STATUS, validateStatus, 0);
+		gl.glGetProgramiv(programObjectId, GL_VALIDATE_STATUS, validateStatus, 0);
 		
 		Log.v(TAG, "Resultado de la validación del programa: " + validateStatus[0]
 				+ "\nLog:\n");// + glGetProgramInfoLog(programObjectId));
@@ -0,0 +1,54 @@
+package com.japg.mastermoviles.opengl10.util;
+
+// Programa enlazado con las posiciones de sus uniform y attribute ya resueltas
+public class ShaderProgram {
+	// Nombre de los uniform
+	private static final String U_MVPMATRIX 		= "u_MVPMatrix";
+	private static final String U_MVMATRIX 			= "u_MVMatrix";
+	private static final String U_COLOR 			= "u_Color";
+	private static final String U_TEXTURE 			= "u_TextureUnit";
+	private static final String U_UVTRANSFORM 		= "u_UVTransform";
+	private static final String U_PROJECTIONMATRIX 	= "u_ProjectionMatrix";
+	private static final String U_INSTANCEMATRICES 	= "u_InstanceMatrices";
+
+	// Nombre de los attribute
+	private static final String A_POSITION = "a_Position";
+	private static final String A_NORMAL   = "a_Normal";
+	private static final String A_UV       = "a_UV";
+	private static final String A_INSTANCEMATRIX = "a_InstanceMatrix";
+	private static final String A_INSTANCEINDEX  = "a_InstanceIndex";
+
+	public final int programId;
+
+	// Handles para los shaders
+	public final int uMVPMatrixLocation;
+	public final int uMVMatrixLocation;
+	public final int uColorLocation;
+	public final int uTextureUnitLocation;
+	// -1 en los shaders sin vértices comprimidos
+	public final int uUVTransformLocation;
+	public final int aPositionLocation;
+	public final int aNormalLocation;
+	public final int aUVLocation;
+	// Sólo en los shaders de dibujo por instancias (-1 en los demás)
+	public final int uProjectionMatrixLocation;
+	public final int uInstanceMatricesLocation;
+	public final int aInstanceMatrixLocation;
+	public final int aInstanceIndexLocation;
+
+	ShaderProgram(GLBackend gl, int programId) {
+		this.programId = programId;
+		uMVPMatrixLocation = gl.glGetUniformLocation(programId, U_MVPMATRIX);
+		uMVMatrixLocation = gl.glGetUniformLocation(programId, U_MVMATRIX);
+		uColorLocation = gl.glGetUniformLocation(programId, U_COLOR);
+		uTextureUnitLocation = gl.glGetUniformLocation(programId, U_TEXTURE);
+		uUVTransformLocation = gl.glGetUniformLocation(programId, U_UVTRANSFORM);
+		aPositionLocation = gl.glGetAttribLocation(programId, A_POSITION);
+		aNormalLocation = gl.glGetAttribLocation(programId, A_NORMAL);
+		aUVLocation = gl.glGetAttribLocation(programId, A_UV);
+		uProjectionMatrixLocation = gl.glGetUniformLocation(programId, U_PROJECTIONMATRIX);
+		uInstanceMatricesLocation = gl.glGetUniformLocation(programId, U_INSTANCEMATRICES);
+		aInstanceMatrixLocation = gl.glGetAttribLocation(programId, A_INSTANCEMATRIX);
+		aInstanceIndexLocation = gl.glGetAttribLocation(programId, A_INSTANCEINDEX);
+	}
+}
@@ -0,0 +1,1008 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import static android.opengl.GLES20.GL_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_BYTE;
+import static android.opengl.GLES20.GL_COLOR_BUFFER_BIT;
+import static android.opengl.GLES20.GL_COMPILE_STATUS;
+import static android.opengl.GLES20.GL_CULL_FACE;
+import static android.opengl.GLES20.GL_DEPTH_BUFFER_BIT;
+import static android.opengl.GLES20.GL_DEPTH_TEST;
+import static android.opengl.GLES20.GL_ELEMENT_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_FLOAT;
+import static android.opengl.GLES20.GL_LINK_STATUS;
+import static android.opengl.GLES20.GL_MAX_TEXTURE_IMAGE_UNITS;
+import static android.opengl.GLES20.GL_MAX_VERTEX_TEXTURE_IMAGE_UNITS;
+import static android.opengl.GLES20.GL_RENDERER;
+import static android.opengl.GLES20.GL_RGBA;
+import static android.opengl.GLES20.GL_SHORT;
+import static android.opengl.GLES20.GL_TRIANGLES;
+import static android.opengl.GLES20.GL_UNSIGNED_BYTE;
+import static android.opengl.GLES20.GL_UNSIGNED_INT;
+import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
+import static android.opengl.GLES20.GL_VALIDATE_STATUS;
+import static android.opengl.GLES20.GL_VERSION;
+import static android.opengl.GLES20.GL_VERTEX_SHADER;
+import static android.opengl.GLES20.GL_VIEWPORT;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/* GLBackend sin GPU: rasteriza por CPU en un framebuffer de enteros ARGB con profundidad,
+*  para ejecutar onDrawFrame entero en una JVM (pruebas de imagen de referencia,
+*  benchmarks) sin contexto de OpenGL.
+*
+*  No interpreta GLSL: de los shaders sólo lee los uniform y attribute que declaran y
+*  reproduce en Java la iluminación de specular_vertex_shader (dos luces fijas, ambiente,
+*  difusa con textura y especular), según los nombres que encuentre: u_MVPMatrix o
+*  u_ProjectionMatrix * u_MVMatrix * (a_InstanceMatrix | u_InstanceMatrices[a_InstanceIndex]),
+*  y u_UVTransform con normales octaédricas para los vértices comprimidos. La textura se
+*  muestrea por fragmento (el más cercano, sin mipmaps) aunque el shader lo haga por vértice,
+*  así que las imágenes se parecen a las del dispositivo pero no son iguales píxel a píxel.
+*
+*  Sólo dibuja GL_TRIANGLES (los demás modos se cuentan y se ignoran), con recorte por el
+*  plano cercano, descarte de caras traseras (GL_CULL_FACE, CCW delante), prueba de
+*  profundidad GL_LESS (GL_DEPTH_TEST) e interpolación con corrección de perspectiva.
+*  La fila 0 del framebuffer es la de abajo, como en OpenGL.
+*/
+public class SoftwareGLBackend implements GLBackend {
+	private static final int MAX_ATTRIBS = 16;
+	private static final int MAX_TEXTURE_UNITS = 16;
+	// Tamaño de los arrays de uniform cuyo tamaño no se puede leer del shader
+	private static final int DEFAULT_ARRAY_SIZE = 64;
+
+	// Iluminación de los shaders specular_* e instanced_*
+	private static final float AMBIENT = 0.15f;
+	private static final float[] LIGHTS = {2, 5, 3, -4, -5, 3};
+	private static final float SHININESS = 200f;
+
+	// Datos de cada vértice procesado: posición de recorte (xyzw), color ambiente (rgba),
+	// color difuso (rgba), intensidad especular y uv
+	private static final int CLIP = 0;
+	private static final int AMBIENT_COLOR = 4;
+	private static final int DIFFUSE_COLOR = 8;
+	private static final int SPECULAR = 12;
+	private static final int UV = 13;
+	private static final int VERTEX_FLOATS = 15;
+	// Un triángulo recortado por el plano cercano tiene como mucho 4 vértices
+	private static final int MAX_CLIPPED = 4;
+
+	private static final Pattern UNIFORM = Pattern.compile("\\buniform\\s+\\w+\\s+(\\w+)\\s*(?:\\[\\s*(\\w+)\\s*\\])?\\s*;");
+	private static final Pattern ATTRIBUTE = Pattern.compile("\\b(?:attribute|in)\\s+(\\w+)\\s+(\\w+)\\s*;");
+	private static final Pattern DEFINE = Pattern.compile("#define\\s+(\\w+)\\s+(\\d+)");
+
+	private static class Shader {
+		final int type;
+		String source = "";
+
+		Shader(int type) {
+			this.type = type;
+		}
+	}
+
+	private static class Program {
+		Shader vertexShader;
+		Shader fragmentShader;
+		final HashMap<String, Integer> uniformLocations = new HashMap<String, Integer>();
+		final HashMap<String, Integer> attribLocations = new HashMap<String, Integer>();
+		float[][] uniforms = new float[0][];
+		// Posiciones de lo que entiende el rasterizador (-1 si el programa no lo declara)
+		int uMVPMatrix = -1, uMVMatrix = -1, uProjectionMatrix = -1, uColor = -1;
+		int uUVTransform = -1, uInstanceMatrices = -1;
+		int aPosition = -1, aNormal = -1, aUV = -1, aInstanceMatrix = -1, aInstanceIndex = -1;
+	}
+
+	private static class Texture {
+		int width;
+		int height;
+		int[] argb;
+	}
+
+	private final int width;
+	private final int height;
+	private final int[] color;
+	private final float[] depth;
+
+	// Objetos por nombre; el 0 no se usa
+	private int nextName = 1;
+	private Object[] objects = new Object[64];
+
+	private int viewportX, viewportY, viewportWidth, viewportHeight;
+	private int clearColor = 0xFF000000;
+	private boolean depthTest;
+	private boolean cullFace;
+	private Program program;
+	private int arrayBuffer;
+	private int elementBuffer;
+	private int activeTexture;
+	private final int[] boundTextures = new int[MAX_TEXTURE_UNITS];
+
+	// Estado de los atributos de vértice
+	private final boolean[] attribEnabled = new boolean[MAX_ATTRIBS];
+	private final int[] attribSize = new int[MAX_ATTRIBS];
+	private final int[] attribType = new int[MAX_ATTRIBS];
+	private final boolean[] attribNormalized = new boolean[MAX_ATTRIBS];
+	private final int[] attribStride = new int[MAX_ATTRIBS];
+	private final int[] attribOffset = new int[MAX_ATTRIBS];
+	private final int[] attribBuffer = new int[MAX_ATTRIBS];
+	private final int[] attribDivisor = new int[MAX_ATTRIBS];
+
+	// Memoria de trabajo del dibujo
+	private final float[] triangle = new float[3 * VERTEX_FLOATS];
+	private final float[] clipped = new float[MAX_CLIPPED * VERTEX_FLOATS];
+	private final float[] screen = new float[MAX_CLIPPED * 4];
+	private final float[] attrib = new float[4];
+	private final float[] position = new float[4];
+	private final float[] normal = new float[4];
+	private final float[] modelView = new float[16];
+	private final float[] instanceMatrix = new float[16];
+
+	private int drawCalls;
+	private int trianglesRasterized;
+	private int skippedDraws;
+	private long pixelsWritten;
+
+	public SoftwareGLBackend(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.color = new int[width * height];
+		this.depth = new float[width * height];
+		this.viewportWidth = width;
+		this.viewportHeight = height;
+		Arrays.fill(depth, 1f);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	// Framebuffer ARGB, fila 0 abajo
+	public int[] getColorBuffer() {
+		return color;
+	}
+
+	// Copia el framebuffer en argb (width * height) con la fila 0 arriba, como un Bitmap
+	public void getPixelsTopDown(int[] argb) {
+		for (int y = 0; y < height; y++) {
+			System.arraycopy(color, (height - 1 - y) * width, argb, y * width, width);
+		}
+	}
+
+	public int getDrawCalls() {
+		return drawCalls;
+	}
+
+	public int getTrianglesRasterized() {
+		return trianglesRasterized;
+	}
+
+	// Llamadas de dibujo con modos distintos de GL_TRIANGLES, que no se dibujan
+	public int getSkippedDraws() {
+		return skippedDraws;
+	}
+
+	public long getPixelsWritten() {
+		return pixelsWritten;
+	}
+
+	public void resetStatistics() {
+		drawCalls = 0;
+		trianglesRasterized = 0;
+		skippedDraws = 0;
+		pixelsWritten = 0;
+	}
+
+	// --- Objetos ---
+
+	private int newObject(Object object) {
+		if (nextName == objects.length) {
+			objects = Arrays.copyOf(objects, objects.length * 2);
+		}
+		objects[nextName] = object;
+		return nextName++;
+	}
+
+	private Object getObject(int name) {
+		return name > 0 && name < nextName ? objects[name] : null;
+	}
+
+	private void deleteObjects(int n, int[] names, int offset) {
+		for (int i = 0; i < n; i++) {
+			final int name = names[offset + i];
+			if (name > 0 && name < nextName) objects[name] = null;
+		}
+	}
+
+	// --- Estado y framebuffer ---
+
+	@Override
+	public void glClear(int mask) {
+		if ((mask & GL_COLOR_BUFFER_BIT) != 0) Arrays.fill(color, clearColor);
+		if ((mask & GL_DEPTH_BUFFER_BIT) != 0) Arrays.fill(depth, 1f);
+	}
+
+	@Override
+	public void glClearColor(float red, float green, float blue, float alpha) {
+		clearColor = argb(red, green, blue, alpha);
+	}
+
+	@Override
+	public void glEnable(int cap) {
+		setCapability(cap, true);
+	}
+
+	@Override
+	public void glDisable(int cap) {
+		setCapability(cap, false);
+	}
+
+	private void setCapability(int cap, boolean enabled) {
+		if (cap == GL_DEPTH_TEST) depthTest = enabled;
+		else if (cap == GL_CULL_FACE) cullFace = enabled;
+	}
+
+	@Override
+	public void glViewport(int x, int y, int width, int height) {
+		viewportX = x;
+		viewportY = y;
+		viewportWidth = width;
+		viewportHeight = height;
+	}
+
+	@Override
+	public void glLineWidth(float width) {
+	}
+
+	@Override
+	public void glGetIntegerv(int pname, int[] params, int offset) {
+		if (pname == GL_MAX_VERTEX_TEXTURE_IMAGE_UNITS || pname == GL_MAX_TEXTURE_IMAGE_UNITS) {
+			params[offset] = MAX_TEXTURE_UNITS;
+		} else if (pname == GL_VIEWPORT) {
+			params[offset] = viewportX;
+			params[offset + 1] = viewportY;
+			params[offset + 2] = viewportWidth;
+			params[offset + 3] = viewportHeight;
+		} else {
+			params[offset] = 0;
+		}
+	}
+
+	@Override
+	public String glGetString(int name) {
+		if (name == GL_VERSION) return "OpenGL ES 2.0";
+		if (name == GL_RENDERER) return "SoftwareGLBackend";
+		// Sin extensiones
+		return "";
+	}
+
+	// Sólo GL_RGBA / GL_UNSIGNED_BYTE en un ByteBuffer
+	@Override
+	public void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels) {
+		if (format != GL_RGBA || type != GL_UNSIGNED_BYTE || !(pixels instanceof ByteBuffer)) return;
+		final ByteBuffer out = (ByteBuffer) pixels;
+		int p = out.position();
+		for (int row = y; row < y + height; row++) {
+			for (int column = x; column < x + width; column++) {
+				final int c = row >= 0 && row < this.height && column >= 0 && column < this.width ? color[row * this.width + column] : 0;
+				out.put(p++, (byte) (c >> 16));
+				out.put(p++, (byte) (c >> 8));
+				out.put(p++, (byte) c);
+				out.put(p++, (byte) (c >>> 24));
+			}
+		}
+	}
+
+	// --- Shaders y programas ---
+
+	@Override
+	public int glCreateShader(int type) {
+		return newObject(new Shader(type));
+	}
+
+	@Override
+	public void glShaderSource(int shader, String source) {
+		final Object object = getObject(shader);
+		if (object instanceof Shader) ((Shader) object).source = source;
+	}
+
+	@Override
+	public void glCompileShader(int shader) {
+	}
+
+	@Override
+	public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+		params[offset] = pname == GL_COMPILE_STATUS && getObject(shader) instanceof Shader ? 1 : 0;
+	}
+
+	@Override
+	public String glGetShaderInfoLog(int shader) {
+		return "";
+	}
+
+	@Override
+	public void glDeleteShader(int shader) {
+		if (getObject(shader) instanceof Shader) objects[shader] = null;
+	}
+
+	@Override
+	public int glCreateProgram() {
+		return newObject(new Program());
+	}
+
+	@Override
+	public void glAttachShader(int program, int shader) {
+		final Object p = getObject(program);
+		final Object s = getObject(shader);
+		if (!(p instanceof Program) || !(s instanceof Shader)) return;
+		if (((Shader) s).type == GL_VERTEX_SHADER) ((Program) p).vertexShader = (Shader) s;
+		else ((Program) p).fragmentShader = (Shader) s;
+	}
+
+	// Da posiciones a los uniform de los dos shaders y a los attribute del de vértices,
+	// en el orden en que se declaran (una mat4 ocupa cuatro posiciones de attribute)
+	@Override
+	public void glLinkProgram(int program) {
+		final Object object = getObject(program);
+		if (!(object instanceof Program)) return;
+		final Program p = (Program) object;
+		p.uniformLocations.clear();
+		p.attribLocations.clear();
+		final java.util.ArrayList<float[]> uniforms = new java.util.ArrayList<float[]>();
+		for (Shader shader : new Shader[] {p.vertexShader, p.fragmentShader}) {
+			if (shader == null) continue;
+			final HashMap<String, Integer> defines = new HashMap<String, Integer>();
+			Matcher m = DEFINE.matcher(shader.source);
+			while (m.find()) {
+				defines.put(m.group(1), Integer.parseInt(m.group(2)));
+			}
+			m = UNIFORM.matcher(shader.source);
+			while (m.find()) {
+				if (p.uniformLocations.containsKey(m.group(1))) continue;
+				int arraySize = 1;
+				if (m.group(2) != null) {
+					final Integer defined = defines.get(m.group(2));
+					arraySize = defined != null ? defined
+							: m.group(2).matches("\\d+") ? Integer.parseInt(m.group(2)) : DEFAULT_ARRAY_SIZE;
+				}
+				p.uniformLocations.put(m.group(1), uniforms.size());
+				uniforms.add(new float[16 * arraySize]);
+			}
+			if (shader.type != GL_VERTEX_SHADER) continue;
+			int location = 0;
+			m = ATTRIBUTE.matcher(shader.source);
+			while (m.find()) {
+				p.attribLocations.put(m.group(2), location);
+				location += m.group(1).equals("mat4") ? 4 : 1;
+			}
+		}
+		p.uniforms = uniforms.toArray(new float[uniforms.size()][]);
+		p.uMVPMatrix = location(p.uniformLocations, "u_MVPMatrix");
+		p.uMVMatrix = location(p.uniformLocations, "u_MVMatrix");
+		p.uProjectionMatrix = location(p.uniformLocations, "u_ProjectionMatrix");
+		p.uColor = location(p.uniformLocations, "u_Color");
+		p.uUVTransform = location(p.uniformLocations, "u_UVTransform");
+		p.uInstanceMatrices = location(p.uniformLocations, "u_InstanceMatrices");
+		p.aPosition = location(p.attribLocations, "a_Position");
+		p.aNormal = location(p.attribLocations, "a_Normal");
+		p.aUV = location(p.attribLocations, "a_UV");
+		p.aInstanceMatrix = location(p.attribLocations, "a_InstanceMatrix");
+		p.aInstanceIndex = location(p.attribLocations, "a_InstanceIndex");
+		// Valores iniciales: matrices identidad y color blanco
+		for (float[] value : p.uniforms) {
+			for (int i = 0; i < value.length; i += 16) {
+				value[i] = value[i + 5] = value[i + 10] = value[i + 15] = 1;
+			}
+		}
+	}
+
+	private static int location(HashMap<String, Integer> locations, String name) {
+		final Integer location = locations.get(name);
+		return location != null ? location : -1;
+	}
+
+	@Override
+	public void glValidateProgram(int program) {
+	}
+
+	@Override
+	public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+		final boolean exists = getObject(program) instanceof Program;
+		params[offset] = exists && (pname == GL_LINK_STATUS || pname == GL_VALIDATE_STATUS) ? 1 : 0;
+	}
+
+	@Override
+	public String glGetProgramInfoLog(int program) {
+		return "";
+	}
+
+	@Override
+	public void glDeleteProgram(int program) {
+		if (getObject(program) instanceof Program) objects[program] = null;
+	}
+
+	@Override
+	public void glUseProgram(int program) {
+		final Object object = getObject(program);
+		this.program = object instanceof Program ? (Program) object : null;
+	}
+
+	@Override
+	public int glGetUniformLocation(int program, String name) {
+		final Object object = getObject(program);
+		return object instanceof Program ? location(((Program) object).uniformLocations, name) : -1;
+	}
+
+	@Override
+	public int glGetAttribLocation(int program, String name) {
+		final Object object = getObject(program);
+		return object instanceof Program ? location(((Program) object).attribLocations, name) : -1;
+	}
+
+	private float[] uniform(int location) {
+		if (program == null || location < 0 || location >= program.uniforms.length) return null;
+		return program.uniforms[location];
+	}
+
+	@Override
+	public void glUniform1i(int location, int x) {
+		glUniform1f(location, x);
+	}
+
+	@Override
+	public void glUniform1f(int location, float x) {
+		final float[] value = uniform(location);
+		if (value != null) value[0] = x;
+	}
+
+	@Override
+	public void glUniform4f(int location, float x, float y, float z, float w) {
+		final float[] value = uniform(location);
+		if (value == null) return;
+		value[0] = x;
+		value[1] = y;
+		value[2] = z;
+		value[3] = w;
+	}
+
+	@Override
+	public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+		final float[] uniform = uniform(location);
+		if (uniform == null) return;
+		System.arraycopy(value, offset, uniform, 0, Math.min(count * 16, uniform.length));
+	}
+
+	// --- Texturas ---
+
+	@Override
+	public void glGenTextures(int n, int[] textures, int offset) {
+		for (int i = 0; i < n; i++) {
+			textures[offset + i] = newObject(new Texture());
+		}
+	}
+
+	@Override
+	public void glDeleteTextures(int n, int[] textures, int offset) {
+		deleteObjects(n, textures, offset);
+	}
+
+	@Override
+	public void glActiveTexture(int texture) {
+		activeTexture = Math.max(0, Math.min(MAX_TEXTURE_UNITS - 1, texture - 0x84C0));
+	}
+
+	@Override
+	public void glBindTexture(int target, int texture) {
+		boundTextures[activeTexture] = texture;
+	}
+
+	@Override
+	public void glTexParameteri(int target, int pname, int param) {
+	}
+
+	// Sólo el nivel 0 en GL_RGBA / GL_UNSIGNED_BYTE; los demás niveles se ignoran
+	@Override
+	public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels) {
+		final Texture texture = boundTexture();
+		if (texture == null || level != 0 || format != GL_RGBA || type != GL_UNSIGNED_BYTE) return;
+		texture.width = width;
+		texture.height = height;
+		texture.argb = new int[width * height];
+		if (!(pixels instanceof ByteBuffer)) return;
+		final ByteBuffer in = (ByteBuffer) pixels;
+		int p = in.position();
+		for (int i = 0; i < width * height; i++, p += 4) {
+			texture.argb[i] = (in.get(p + 3) & 0xFF) << 24 | (in.get(p) & 0xFF) << 16 | (in.get(p + 1) & 0xFF) << 8 | (in.get(p + 2) & 0xFF);
+		}
+	}
+
+	@Override
+	public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+		final Texture texture = boundTexture();
+		if (texture == null || level != 0) return;
+		texture.width = bitmap.getWidth();
+		texture.height = bitmap.getHeight();
+		texture.argb = new int[texture.width * texture.height];
+		bitmap.getPixels(texture.argb, 0, texture.width, 0, 0, texture.width, texture.height);
+	}
+
+	@Override
+	public void glGenerateMipmap(int target) {
+	}
+
+	private Texture boundTexture() {
+		final Object object = getObject(boundTextures[activeTexture]);
+		return object instanceof Texture ? (Texture) object : null;
+	}
+
+	// --- Buffers ---
+
+	@Override
+	public void glGenBuffers(int n, int[] buffers, int offset) {
+		for (int i = 0; i < n; i++) {
+			buffers[offset + i] = newObject(ByteBuffer.allocate(0));
+		}
+	}
+
+	@Override
+	public void glDeleteBuffers(int n, int[] buffers, int offset) {
+		deleteObjects(n, buffers, offset);
+	}
+
+	@Override
+	public void glBindBuffer(int target, int buffer) {
+		if (target == GL_ARRAY_BUFFER) arrayBuffer = buffer;
+		else if (target == GL_ELEMENT_ARRAY_BUFFER) elementBuffer = buffer;
+	}
+
+	@Override
+	public void glBufferData(int target, int size, Buffer data, int usage) {
+		final int name = target == GL_ARRAY_BUFFER ? arrayBuffer : elementBuffer;
+		if (!(getObject(name) instanceof ByteBuffer)) return;
+		final ByteBuffer store = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+		objects[name] = store;
+		if (data != null) copy(data, store, 0, size);
+	}
+
+	@Override
+	public void glBufferSubData(int target, int offset, int size, Buffer data) {
+		final Object store = getObject(target == GL_ARRAY_BUFFER ? arrayBuffer : elementBuffer);
+		if (store instanceof ByteBuffer) copy(data, (ByteBuffer) store, offset, size);
+	}
+
+	// Copia size bytes de data (desde su posición, sin moverla) en store[offset..]
+	private static void copy(Buffer data, ByteBuffer store, int offset, int size) {
+		final ByteBuffer target = store.duplicate().order(store.order());
+		target.position(offset);
+		target.limit(offset + size);
+		if (data instanceof ByteBuffer) {
+			final ByteBuffer source = ((ByteBuffer) data).duplicate();
+			source.limit(source.position() + size);
+			target.put(source);
+		} else if (data instanceof FloatBuffer) {
+			final FloatBuffer source = ((FloatBuffer) data).duplicate();
+			source.limit(source.position() + size / 4);
+			target.asFloatBuffer().put(source);
+		} else if (data instanceof ShortBuffer) {
+			final ShortBuffer source = ((ShortBuffer) data).duplicate();
+			source.limit(source.position() + size / 2);
+			target.asShortBuffer().put(source);
+		} else if (data instanceof IntBuffer) {
+			final IntBuffer source = ((IntBuffer) data).duplicate();
+			source.limit(source.position() + size / 4);
+			target.asIntBuffer().put(source);
+		}
+	}
+
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+		if (index < 0 || index >= MAX_ATTRIBS) return;
+		attribSize[index] = size;
+		attribType[index] = type;
+		attribNormalized[index] = normalized;
+		attribStride[index] = stride != 0 ? stride : size * typeBytes(type);
+		attribOffset[index] = offset;
+		attribBuffer[index] = arrayBuffer;
+	}
+
+	@Override
+	public void glEnableVertexAttribArray(int index) {
+		if (index >= 0 && index < MAX_ATTRIBS) attribEnabled[index] = true;
+	}
+
+	@Override
+	public void glDisableVertexAttribArray(int index) {
+		if (index >= 0 && index < MAX_ATTRIBS) attribEnabled[index] = false;
+	}
+
+	@Override
+	public void glVertexAttribDivisor(int index, int divisor) {
+		if (index >= 0 && index < MAX_ATTRIBS) attribDivisor[index] = divisor;
+	}
+
+	// --- Consultas: sin GPU no hay tiempos ---
+
+	@Override
+	public void glGenQueries(int n, int[] ids, int offset) {
+		for (int i = 0; i < n; i++) {
+			ids[offset + i] = newObject(new Object());
+		}
+	}
+
+	@Override
+	public void glDeleteQueries(int n, int[] ids, int offset) {
+		deleteObjects(n, ids, offset);
+	}
+
+	@Override
+	public void glBeginQuery(int target, int id) {
+	}
+
+	@Override
+	public void glEndQuery(int target) {
+	}
+
+	@Override
+	public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {
+		params[offset] = 0;
+	}
+
+	// --- Dibujo ---
+
+	@Override
+	public void glDrawArrays(int mode, int first, int count) {
+		draw(mode, first, count, 0, -1, 1);
+	}
+
+	@Override
+	public void glDrawElements(int mode, int count, int type, int offset) {
+		draw(mode, offset, count, type, elementBuffer, 1);
+	}
+
+	@Override
+	public void glDrawArraysInstanced(int mode, int first, int count, int instanceCount) {
+		draw(mode, first, count, 0, -1, instanceCount);
+	}
+
+	@Override
+	public void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount) {
+		draw(mode, offset, count, type, elementBuffer, instanceCount);
+	}
+
+	// Sin índices (indexBuffer < 0) first es el primer vértice; con ellos, el desplazamiento
+	// en bytes del primer índice
+	private void draw(int mode, int first, int count, int indexType, int indexBuffer, int instanceCount) {
+		drawCalls++;
+		if (mode != GL_TRIANGLES || program == null) {
+			skippedDraws++;
+			return;
+		}
+		ByteBuffer indices = null;
+		if (indexBuffer >= 0) {
+			final Object object = getObject(indexBuffer);
+			if (!(object instanceof ByteBuffer)) return;
+			indices = (ByteBuffer) object;
+		}
+		final Texture texture = boundTexture();
+		for (int instance = 0; instance < instanceCount; instance++) {
+			for (int t = 0; t + 2 < count; t += 3) {
+				for (int k = 0; k < 3; k++) {
+					int vertex;
+					if (indices == null) {
+						vertex = first + t + k;
+					} else if (indexType == GL_UNSIGNED_INT) {
+						vertex = indices.getInt(first + (t + k) * 4);
+					} else if (indexType == GL_UNSIGNED_SHORT) {
+						vertex = indices.getShort(first + (t + k) * 2) & 0xFFFF;
+					} else {
+						vertex = indices.get(first + t + k) & 0xFF;
+					}
+					shadeVertex(vertex, instance, triangle, k * VERTEX_FLOATS);
+				}
+				rasterize(texture);
+			}
+		}
+	}
+
+	// Lee el atributo index del vértice (o de la instancia, si tiene divisor) en attrib,
+	// completando con (0, 0, 0, 1)
+	private void fetch(int index, int vertex, int instance, float[] out) {
+		out[0] = 0;
+		out[1] = 0;
+		out[2] = 0;
+		out[3] = 1;
+		if (index < 0 || index >= MAX_ATTRIBS || !attribEnabled[index]) return;
+		final Object object = getObject(attribBuffer[index]);
+		if (!(object instanceof ByteBuffer)) return;
+		final ByteBuffer data = (ByteBuffer) object;
+		final int element = attribDivisor[index] > 0 ? instance / attribDivisor[index] : vertex;
+		final int type = attribType[index];
+		final boolean normalized = attribNormalized[index];
+		int p = attribOffset[index] + element * attribStride[index];
+		if (p < 0 || p + attribSize[index] * typeBytes(type) > data.capacity()) return;
+		for (int c = 0; c < attribSize[index]; c++) {
+			float v;
+			if (type == GL_FLOAT) {
+				v = data.getFloat(p);
+			} else if (type == GL_SHORT) {
+				v = data.getShort(p);
+				if (normalized) v = Math.max(v / 32767f, -1f);
+			} else if (type == GL_UNSIGNED_SHORT) {
+				v = data.getShort(p) & 0xFFFF;
+				if (normalized) v /= 65535f;
+			} else if (type == GL_BYTE) {
+				v = data.get(p);
+				if (normalized) v = Math.max(v / 127f, -1f);
+			} else {
+				v = data.get(p) & 0xFF;
+				if (normalized) v /= 255f;
+			}
+			out[c] = v;
+			p += typeBytes(type);
+		}
+	}
+
+	private static int typeBytes(int type) {
+		if (type == GL_FLOAT || type == GL_UNSIGNED_INT) return 4;
+		if (type == GL_SHORT || type == GL_UNSIGNED_SHORT) return 2;
+		return 1;
+	}
+
+	// El "vertex shader": posición de recorte, iluminación y uv del vértice en out[o..]
+	private void shadeVertex(int vertex, int instance, float[] out, int o) {
+		final Program p = program;
+		final float[] mv = p.uMVMatrix >= 0 ? p.uniforms[p.uMVMatrix] : null;
+
+		// ModelView de la instancia, si la hay
+		boolean instanced = false;
+		if (p.aInstanceMatrix >= 0) {
+			for (int column = 0; column < 4; column++) {
+				fetch(p.aInstanceMatrix + column, vertex, instance, attrib);
+				System.arraycopy(attrib, 0, instanceMatrix, column * 4, 4);
+			}
+			instanced = true;
+		} else if (p.uInstanceMatrices >= 0 && p.aInstanceIndex >= 0) {
+			fetch(p.aInstanceIndex, vertex, instance, attrib);
+			final float[] matrices = p.uniforms[p.uInstanceMatrices];
+			final int i = Math.max(0, Math.min(matrices.length / 16 - 1, (int) attrib[0]));
+			System.arraycopy(matrices, i * 16, instanceMatrix, 0, 16);
+			instanced = true;
+		}
+		if (mv == null) {
+			MatrixHelper.setIdentity(modelView, 0);
+		} else if (instanced) {
+			MatrixHelper.multiply(modelView, 0, mv, 0, instanceMatrix, 0);
+		} else {
+			System.arraycopy(mv, 0, modelView, 0, 16);
+		}
+
+		fetch(p.aPosition, vertex, instance, position);
+		if (instanced || p.uMVPMatrix < 0) {
+			// gl_Position = u_ProjectionMatrix * (MV * a_Position)
+			transform(modelView, position, normal, 1f);
+			normal[3] = modelView[3] * position[0] + modelView[7] * position[1] + modelView[11] * position[2] + modelView[15] * position[3];
+			final float[] projection = p.uProjectionMatrix >= 0 ? p.uniforms[p.uProjectionMatrix] : null;
+			if (projection != null) {
+				multiplyVector(projection, normal, out, o + CLIP);
+			} else {
+				System.arraycopy(normal, 0, out, o + CLIP, 4);
+			}
+		} else {
+			multiplyVector(p.uniforms[p.uMVPMatrix], position, out, o + CLIP);
+		}
+
+		// Posición en el espacio del ojo
+		final float px = modelView[0] * position[0] + modelView[4] * position[1] + modelView[8] * position[2] + modelView[12] * position[3];
+		final float py = modelView[1] * position[0] + modelView[5] * position[1] + modelView[9] * position[2] + modelView[13] * position[3];
+		final float pz = modelView[2] * position[0] + modelView[6] * position[1] + modelView[10] * position[2] + modelView[14] * position[3];
+
+		// Normal (octaédrica en los vértices comprimidos, que la normalizan)
+		fetch(p.aNormal, vertex, instance, attrib);
+		final boolean quantized = p.uUVTransform >= 0;
+		if (quantized) octDecode(attrib[0], attrib[1], attrib);
+		transform(modelView, attrib, normal, 0f);
+		float nx = normal[0], ny = normal[1], nz = normal[2];
+		if (quantized) {
+			final float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+			if (length > 0) {
+				nx /= length;
+				ny /= length;
+				nz /= length;
+			}
+		}
+
+		// Dos luces fijas, como en los shaders
+		final float eyeLength = (float) Math.sqrt(px * px + py * py + pz * pz);
+		final float vx = eyeLength > 0 ? px / eyeLength : 0;
+		final float vy = eyeLength > 0 ? py / eyeLength : 0;
+		final float vz = eyeLength > 0 ? pz / eyeLength : 0;
+		float diffuse = 0;
+		float specular = 0;
+		for (int l = 0; l < LIGHTS.length; l += 3) {
+			float lx = px - LIGHTS[l], ly = py - LIGHTS[l + 1], lz = pz - LIGHTS[l + 2];
+			final float d = (float) Math.sqrt(lx * lx + ly * ly + lz * lz);
+			if (d > 0) {
+				lx /= d;
+				ly /= d;
+				lz /= d;
+			}
+			final float attenuation = 1f / (0.3f + 0.1f * d + 0.01f * d * d);
+			final float nDotL = nx * lx + ny * ly + nz * lz;
+			// R = reflect(-L, N) = 2(N.L)N - L, normalizado
+			float rx = 2 * nDotL * nx - lx, ry = 2 * nDotL * ny - ly, rz = 2 * nDotL * nz - lz;
+			final float rLength = (float) Math.sqrt(rx * rx + ry * ry + rz * rz);
+			final float vDotR = rLength > 0 ? (vx * rx + vy * ry + vz * rz) / rLength : 0;
+			diffuse += attenuation * Math.max(nDotL, 0f);
+			specular += attenuation * (float) Math.pow(Math.max(vDotR, 0f), SHININESS);
+		}
+
+		final float[] objectColor = p.uColor >= 0 ? p.uniforms[p.uColor] : null;
+		for (int c = 0; c < 4; c++) {
+			final float component = objectColor != null ? objectColor[c] : 1f;
+			out[o + AMBIENT_COLOR + c] = component * AMBIENT;
+			out[o + DIFFUSE_COLOR + c] = component * diffuse;
+		}
+		out[o + SPECULAR] = specular;
+
+		fetch(p.aUV, vertex, instance, attrib);
+		if (quantized) {
+			final float[] uvTransform = p.uniforms[p.uUVTransform];
+			out[o + UV] = attrib[0] * uvTransform[0] + uvTransform[2];
+			out[o + UV + 1] = attrib[1] * uvTransform[1] + uvTransform[3];
+		} else {
+			out[o + UV] = attrib[0];
+			out[o + UV + 1] = attrib[1];
+		}
+	}
+
+	// Normal a partir de su codificación octaédrica (sin normalizar)
+	private static void octDecode(float ex, float ey, float[] out) {
+		float x = ex, y = ey;
+		final float z = 1f - Math.abs(ex) - Math.abs(ey);
+		final float t = Math.max(-z, 0f);
+		x += x >= 0 ? -t : t;
+		y += y >= 0 ? -t : t;
+		out[0] = x;
+		out[1] = y;
+		out[2] = z;
+	}
+
+	// out.xyz = (m * (v.xyz, w)).xyz
+	private static void transform(float[] m, float[] v, float[] out, float w) {
+		final float x = v[0], y = v[1], z = v[2];
+		final float vw = w == 0 ? 0 : v[3];
+		out[0] = m[0] * x + m[4] * y + m[8] * z + m[12] * vw;
+		out[1] = m[1] * x + m[5] * y + m[9] * z + m[13] * vw;
+		out[2] = m[2] * x + m[6] * y + m[10] * z + m[14] * vw;
+	}
+
+	private static void multiplyVector(float[] m, float[] v, float[] out, int o) {
+		for (int row = 0; row < 4; row++) {
+			out[o + row] = m[row] * v[0] + m[4 + row] * v[1] + m[8 + row] * v[2] + m[12 + row] * v[3];
+		}
+	}
+
+	// Recorta el triángulo por el plano cercano (z >= -w) y rasteriza el polígono que quede
+	private void rasterize(Texture texture) {
+		int n = 0;
+		for (int k = 0; k < 3; k++) {
+			final int a = k * VERTEX_FLOATS;
+			final int b = ((k + 1) % 3) * VERTEX_FLOATS;
+			final float da = triangle[a + CLIP + 2] + triangle[a + CLIP + 3];
+			final float db = triangle[b + CLIP + 2] + triangle[b + CLIP + 3];
+			if (da >= 0) {
+				System.arraycopy(triangle, a, clipped, n++ * VERTEX_FLOATS, VERTEX_FLOATS);
+			}
+			if ((da >= 0) != (db >= 0)) {
+				final float t = da / (da - db);
+				final int o = n++ * VERTEX_FLOATS;
+				for (int i = 0; i < VERTEX_FLOATS; i++) {
+					clipped[o + i] = triangle[a + i] + t * (triangle[b + i] - triangle[a + i]);
+				}
+			}
+		}
+		if (n < 3) return;
+
+		// A coordenadas de ventana: x, y, z en [0, 1] y 1/w
+		for (int k = 0; k < n; k++) {
+			final int o = k * VERTEX_FLOATS;
+			final float w = Math.max(clipped[o + CLIP + 3], 1e-6f);
+			screen[k * 4] = viewportX + (clipped[o + CLIP] / w + 1) * 0.5f * viewportWidth;
+			screen[k * 4 + 1] = viewportY + (clipped[o + CLIP + 1] / w + 1) * 0.5f * viewportHeight;
+			screen[k * 4 + 2] = (clipped[o + CLIP + 2] / w + 1) * 0.5f;
+			screen[k * 4 + 3] = 1f / w;
+		}
+		for (int k = 1; k + 1 < n; k++) {
+			rasterizeTriangle(0, k, k + 1, texture);
+		}
+	}
+
+	private void rasterizeTriangle(int i0, int i1, int i2, Texture texture) {
+		final float x0 = screen[i0 * 4], y0 = screen[i0 * 4 + 1];
+		final float x1 = screen[i1 * 4], y1 = screen[i1 * 4 + 1];
+		final float x2 = screen[i2 * 4], y2 = screen[i2 * 4 + 1];
+		final float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+		// Caras delanteras en sentido antihorario
+		if (area == 0 || (cullFace && area < 0)) return;
+		trianglesRasterized++;
+
+		final int minX = Math.max(Math.max(0, viewportX), (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+		final int maxX = Math.min(Math.min(width, viewportX + viewportWidth) - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+		final int minY = Math.max(Math.max(0, viewportY), (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+		final int maxY = Math.min(Math.min(height, viewportY + viewportHeight) - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+		final float invArea = 1f / area;
+		final int v0 = i0 * VERTEX_FLOATS, v1 = i1 * VERTEX_FLOATS, v2 = i2 * VERTEX_FLOATS;
+		final float w0 = screen[i0 * 4 + 3], w1 = screen[i1 * 4 + 3], w2 = screen[i2 * 4 + 3];
+
+		for (int y = minY; y <= maxY; y++) {
+			final float sy = y + 0.5f;
+			for (int x = minX; x <= maxX; x++) {
+				final float sx = x + 0.5f;
+				final float b0 = ((x1 - sx) * (y2 - sy) - (x2 - sx) * (y1 - sy)) * invArea;
+				final float b1 = ((x2 - sx) * (y0 - sy) - (x0 - sx) * (y2 - sy)) * invArea;
+				final float b2 = 1f - b0 - b1;
+				if (b0 < 0 || b1 < 0 || b2 < 0) continue;
+
+				final float z = b0 * screen[i0 * 4 + 2] + b1 * screen[i1 * 4 + 2] + b2 * screen[i2 * 4 + 2];
+				final int pixel = y * width + x;
+				if (z < 0 || z > 1) continue;
+				if (depthTest && z >= depth[pixel]) continue;
+
+				// Pesos con corrección de perspectiva
+				float p0 = b0 * w0, p1 = b1 * w1, p2 = b2 * w2;
+				final float sum = p0 + p1 + p2;
+				p0 /= sum;
+				p1 /= sum;
+				p2 /= sum;
+
+				final float u = p0 * clipped[v0 + UV] + p1 * clipped[v1 + UV] + p2 * clipped[v2 + UV];
+				final float v = p0 * clipped[v0 + UV + 1] + p1 * clipped[v1 + UV + 1] + p2 * clipped[v2 + UV + 1];
+				final int texel = sample(texture, u, v);
+				final float specular = p0 * clipped[v0 + SPECULAR] + p1 * clipped[v1 + SPECULAR] + p2 * clipped[v2 + SPECULAR];
+				int argb = 0;
+				for (int c = 0; c < 4; c++) {
+					final float ambient = p0 * clipped[v0 + AMBIENT_COLOR + c] + p1 * clipped[v1 + AMBIENT_COLOR + c] + p2 * clipped[v2 + AMBIENT_COLOR + c];
+					final float diffuse = p0 * clipped[v0 + DIFFUSE_COLOR + c] + p1 * clipped[v1 + DIFFUSE_COLOR + c] + p2 * clipped[v2 + DIFFUSE_COLOR + c];
+					// Canales r, g, b, a del texel
+					final float t = ((texel >> (c == 3 ? 24 : 16 - c * 8)) & 0xFF) / 255f;
+					final float value = Math.min(1f, Math.max(0f, ambient + diffuse * t + specular));
+					final int shift = c == 3 ? 24 : 16 - c * 8;
+					argb |= ((int) (value * 255 + 0.5f)) << shift;
+				}
+				color[pixel] = argb;
+				if (depthTest) depth[pixel] = z;
+				pixelsWritten++;
+			}
+		}
+	}
+
+	// Texel más cercano con repetición; blanco sin textura
+	private static int sample(Texture texture, float u, float v) {
+		if (texture == null || texture.argb == null || texture.width == 0) return 0xFFFFFFFF;
+		u -= (float) Math.floor(u);
+		v -= (float) Math.floor(v);
+		final int x = Math.min(texture.width - 1, (int) (u * texture.width));
+		final int y = Math.min(texture.height - 1, (int) (v * texture.height));
+		return texture.argb[y * texture.width + x];
+	}
+
+	private static int argb(float red, float green, float blue, float alpha) {
+		return channel(alpha) << 24 | channel(red) << 16 | channel(green) << 8 | channel(blue);
+	}
+
+	private static int channel(float value) {
+		return (int) (Math.min(1f, Math.max(0f, value)) * 255 + 0.5f);
+	}
+}
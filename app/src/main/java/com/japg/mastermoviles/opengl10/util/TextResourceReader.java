@@ -1,21 +1,25 @@
 package com.japg.mastermoviles.opengl10.util;
 
 import android.content.Context;
-import android.content.res.Resources;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 public class TextResourceReader {
 	
 	public static String readTextFileFromResource(Context context, int resourceId) {
+		return readTextFileFromResource(new AndroidResources(context), resourceId);
+	}
+	
+	public static String readTextFileFromResource(ResourceSource resources, int resourceId) {
 		StringBuilder body = new StringBuilder();
 		try {
-			InputStream inputStream = context.getResources().openRawResource(resourceId);
-			InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
-			BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
+			ByteBuffer source = resources.readRaw(resourceId);
+			BufferedReader bufferedReader = new BufferedReader(
+					new StringReader(Charset.forName("UTF-8").decode(source).toString()));
 			
 			String nextLine;
 			
@@ -26,8 +30,6 @@ public class TextResourceReader {
 		} catch (IOException e) {
 			throw new RuntimeException(
 			"Could not open resource: " + resourceId, e);
-		} catch (Resources.NotFoundException nfe) {
-			throw new RuntimeException("Resource not found: " + resourceId, nfe);
 		}
 		return body.toString();
 	}
@@ -10,52 +10,193 @@ import static android.opengl.GLES20.GL_LINEAR_MIPMAP_LINEAR;
 import static android.opengl.GLES20.GL_TEXTURE_2D;
 import static android.opengl.GLES20.GL_TEXTURE_MAG_FILTER;
 import static android.opengl.GLES20.GL_TEXTURE_MIN_FILTER;
-import static android.opengl.GLES20.glBindTexture;
-import static android.opengl.GLES20.glDeleteTextures;
-import static android.opengl.GLES20.glGenTextures;
-import static android.opengl.GLES20.glGenerateMipmap;
-import static android.opengl.GLES20.glTexParameteri;
-import static android.opengl.GLUtils.texImage2D;
+
+import java.util.HashMap;
 
 public class TextureHelper {
 	private static final String TAG = "TextureHelper";
 	
-	public static int loadTexture(Context context, int resourceId) {
+	// Textura compartida: nombre en OpenGL, número de usuarios y bytes que ocupa en la GPU
+	private static class SharedTexture {
+		final String key;
+		final int textureId;
+		final long bytes;
+		int refCount;
 		
-		final int[] textureObjectIds = new int[1];
+		SharedTexture(String key, int textureId, long bytes) {
+			this.key = key;
+			this.textureId = textureId;
+			this.bytes = bytes;
+		}
+	}
+	
+	// Registro de texturas residentes. Sólo se usa desde el hilo de OpenGL.
+	private static final HashMap<String, SharedTexture> texturesByKey = new HashMap<String, SharedTexture>();
+	private static final HashMap<Integer, SharedTexture> texturesById = new HashMap<Integer, SharedTexture>();
+	private static long residentBytes;
+	
+	// Devuelve la textura del recurso, subiéndola sólo si nadie la tiene ya cargada.
+	// Cada acquireTexture debe emparejarse con un releaseTexture.
+	public static int acquireTexture(Context context, int resourceId) {
+		return acquireTexture(GLES20Backend.INSTANCE, context, resourceId);
+	}
+	
+	public static int acquireTexture(GLBackend gl, Context context, int resourceId) {
+		return acquireTexture(gl, context, resourceId, defaultOptions());
+	}
+	
+	public static int acquireTexture(GLBackend gl, Context context, int resourceId, BitmapFactory.Options options) {
+		return acquireTexture(gl, new AndroidResources(context), resourceId, options);
+	}
+	
+	public static int acquireTexture(GLBackend gl, ResourceSource resources, int resourceId) {
+		return acquireTexture(gl, resources, resourceId, defaultOptions());
+	}
+	
+	public static int acquireTexture(GLBackend gl, ResourceSource resources, int resourceId, BitmapFactory.Options options) {
+		SharedTexture texture = texturesByKey.get(textureKey(resourceId, options));
 		
-		glGenTextures(1, textureObjectIds, 0);
+		if (texture == null) {
+			final ResourceSource.Image image = decodeImage(resources, resourceId, options);
+			if (image == null) {
+				return 0;
+			}
+			return acquireTexture(gl, resourceId, options, image);
+		}
+		texture.refCount++;
+		return texture.textureId;
+	}
+	
+	// Como acquireTexture, pero con la imagen ya decodificada (por ejemplo en otro hilo).
+	// Se queda con la imagen y la recicla, se haya usado o no.
+	public static int acquireTexture(GLBackend gl, int resourceId, BitmapFactory.Options options, ResourceSource.Image image) {
+		final String key = textureKey(resourceId, options);
+		SharedTexture texture = texturesByKey.get(key);
 		
-		if (textureObjectIds[0] == 0) {
-			if (LoggerConfig.ON) {
-					Log.w(TAG, "No se pudo crear una textura de OpenGL.");
+		if (texture == null) {
+			final int textureId = uploadImage(gl, image);
+			if (textureId == 0) {
+				image.recycle();
+				return 0;
 			}
-			return 0;
+			// La cadena de mipmaps añade un tercio al nivel 0
+			texture = new SharedTexture(key, textureId, (long) image.getByteCount() * 4 / 3);
+			texturesByKey.put(key, texture);
+			texturesById.put(textureId, texture);
+			residentBytes += texture.bytes;
 		}
+		image.recycle();
+		texture.refCount++;
+		return texture.textureId;
+	}
+	
+	private static String textureKey(int resourceId, BitmapFactory.Options options) {
+		return resourceId + ":" + options.inScaled + ":" + options.inPreferredConfig + ":" + options.inSampleSize;
+	}
+	
+	// Suelta un uso de la textura; al soltar el último se borra de la GPU
+	public static void releaseTexture(int textureId) {
+		releaseTexture(GLES20Backend.INSTANCE, textureId);
+	}
+	
+	public static void releaseTexture(GLBackend gl, int textureId) {
+		final SharedTexture texture = texturesById.get(textureId);
 		
+		if (texture == null || --texture.refCount > 0) {
+			return;
+		}
+		texturesByKey.remove(texture.key);
+		texturesById.remove(textureId);
+		residentBytes -= texture.bytes;
+		gl.glDeleteTextures(1, new int[] { textureId }, 0);
+	}
+	
+	// Olvida todas las texturas sin borrarlas. Se llama al crear un contexto nuevo,
+	// ya que las del anterior se perdieron con él.
+	public static void clearTextureCache() {
+		texturesByKey.clear();
+		texturesById.clear();
+		residentBytes = 0;
+	}
+	
+	// Bytes ocupados en la GPU por las texturas registradas (incluidos los mipmaps)
+	public static long getResidentTextureBytes() {
+		return residentBytes;
+	}
+	
+	// Bytes que ocupa en la GPU una textura registrada (0 si no lo está)
+	public static long getTextureBytes(int textureId) {
+		final SharedTexture texture = texturesById.get(textureId);
+		return texture == null ? 0 : texture.bytes;
+	}
+	
+	public static BitmapFactory.Options defaultOptions() {
 		final BitmapFactory.Options options = new BitmapFactory.Options();
 		options.inScaled = false;
+		return options;
+	}
+	
+	// Decodifica la imagen del recurso. No usa OpenGL, se puede llamar desde cualquier hilo.
+	public static Bitmap decodeBitmap(Context context, int resourceId, BitmapFactory.Options options) {
 		final Bitmap bitmap = BitmapFactory.decodeResource(
 				context.getResources(), resourceId, options);
 		if (bitmap == null) {
 			if (LoggerConfig.ON) {
 				Log.w(TAG, "EL recurso con ID " + resourceId + " no se pudo decodificar.");
 			}
-			glDeleteTextures(1, textureObjectIds, 0);
+		}
+		return bitmap;
+	}
+	
+	// Lo mismo con cualquier ResourceSource
+	public static ResourceSource.Image decodeImage(ResourceSource resources, int resourceId, BitmapFactory.Options options) {
+		final ResourceSource.Image image = resources.decodeImage(resourceId, options);
+		if (image == null) {
+			if (LoggerConfig.ON) {
+				Log.w(TAG, "EL recurso con ID " + resourceId + " no se pudo decodificar.");
+			}
+		}
+		return image;
+	}
+	
+	public static int loadTexture(Context context, int resourceId) {
+		return loadTexture(GLES20Backend.INSTANCE, context, resourceId);
+	}
+	
+	public static int loadTexture(GLBackend gl, Context context, int resourceId) {
+		final Bitmap bitmap = decodeBitmap(context, resourceId, defaultOptions());
+		if (bitmap == null) {
 			return 0;
 		}
+		final int textureId = uploadImage(gl, new AndroidResources.BitmapImage(bitmap));
+		bitmap.recycle();
+		return textureId;
+	}
+	
+	// Crea una textura con mipmaps a partir de la imagen (en el hilo de OpenGL)
+	private static int uploadImage(GLBackend gl, ResourceSource.Image image) {
 		
-		glBindTexture(GL_TEXTURE_2D, textureObjectIds[0]);
+		final int[] textureObjectIds = new int[1];
 		
-		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
-		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+		gl.glGenTextures(1, textureObjectIds, 0);
 		
-		texImage2D(GL_TEXTURE_2D, 0, bitmap, 0);
-		bitmap.recycle();
+		if (textureObjectIds[0] == 0) {
+			if (LoggerConfig.ON) {
+					Log.w(TAG, "No se pudo crear una textura de OpenGL.");
+			}
+			return 0;
+		}
+		
+		gl.glBindTexture(GL_TEXTURE_2D, textureObjectIds[0]);
+		
+		gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+		gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+		
+		image.upload(gl, GL_TEXTURE_2D, 0);
 		
-		glGenerateMipmap(GL_TEXTURE_2D);
+		gl.glGenerateMipmap(GL_TEXTURE_2D);
 		
-		glBindTexture(GL_TEXTURE_2D, 0);
+		gl.glBindTexture(GL_TEXTURE_2D, 0);
 		
 		return textureObjectIds[0];
 	}
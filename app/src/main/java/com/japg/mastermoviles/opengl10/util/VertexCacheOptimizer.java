@@ -0,0 +1,220 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import java.util.Arrays;
+
+/* Reordena los triángulos de una malla indexada para aprovechar la caché de vértices
+*  transformados de la GPU (algoritmo de Tom Forsyth, "Linear-Speed Vertex Cache
+*  Optimisation"), y después los vértices en el orden en que se leen.
+*  Java puro, sin dependencias de Android.
+*/
+public class VertexCacheOptimizer {
+	// Caché LRU que simula el algoritmo para puntuar los vértices
+	private static final int CACHE_SIZE = 32;
+	private static final float CACHE_DECAY_POWER = 1.5f;
+	private static final float LAST_TRI_SCORE = 0.75f;
+	private static final float VALENCE_BOOST_SCALE = 2.0f;
+	private static final float VALENCE_BOOST_POWER = 0.5f;
+	private static final int MAX_VALENCE_SCORE = 64;
+
+	// Caché FIFO con la que se mide el ACMR (tamaño típico de las GPU móviles)
+	public static final int FIFO_SIZE = 16;
+
+	private static final float[] CACHE_SCORE = new float[CACHE_SIZE];
+	private static final float[] VALENCE_SCORE = new float[MAX_VALENCE_SCORE];
+
+	static {
+		for (int i = 0; i < CACHE_SIZE; i++) {
+			if (i < 3) {
+				// Los vértices del último triángulo tienen una puntuación fija para no
+				// favorecer tiras largas y delgadas
+				CACHE_SCORE[i] = LAST_TRI_SCORE;
+			} else {
+				CACHE_SCORE[i] = (float) Math.pow(1.0f - (float) (i - 3) / (CACHE_SIZE - 3), CACHE_DECAY_POWER);
+			}
+		}
+		for (int i = 1; i < MAX_VALENCE_SCORE; i++) {
+			VALENCE_SCORE[i] = VALENCE_BOOST_SCALE * (float) Math.pow(i, -VALENCE_BOOST_POWER);
+		}
+	}
+
+	// Fallos de una caché FIFO de fifoSize vértices al dibujar indices[0..indexCount)
+	public static int countCacheMisses(int[] indices, int indexCount, int vertexCount, int fifoSize) {
+		// Un vértice está en la caché si entró hace menos de fifoSize fallos
+		int[] insertedAt = new int[vertexCount];
+		Arrays.fill(insertedAt, -fifoSize - 1);
+		int misses = 0;
+
+		for (int i = 0; i < indexCount; i++) {
+			int v = indices[i];
+			if (misses - insertedAt[v] > fifoSize) {
+				insertedAt[v] = misses++;
+			}
+		}
+		return misses;
+	}
+
+	// ACMR: fallos de caché por triángulo (entre 0.5 en el mejor caso y 3)
+	public static float acmr(int[] indices, int indexCount, int vertexCount) {
+		return indexCount == 0 ? 0 : (float) countCacheMisses(indices, indexCount, vertexCount, FIFO_SIZE) * 3 / indexCount;
+	}
+
+	// Reordena en el sitio los triángulos de indices[0..indexCount)
+	public static void optimizeTriangles(int[] indices, int indexCount, int vertexCount) {
+		int numTriangles = indexCount / 3;
+		int i, j, t, v;
+
+		// Adyacencia vértice->triángulos (CSR) y número de triángulos pendientes por vértice
+		int[] triStart = new int[vertexCount + 1];
+		for (i = 0; i < numTriangles * 3; i++) {
+			triStart[indices[i] + 1]++;
+		}
+		for (v = 0; v < vertexCount; v++) {
+			triStart[v + 1] += triStart[v];
+		}
+		int[] vertexTris = new int[numTriangles * 3];
+		int[] fill = Arrays.copyOf(triStart, vertexCount);
+		for (i = 0; i < numTriangles * 3; i++) {
+			vertexTris[fill[indices[i]]++] = i / 3;
+		}
+		int[] activeTris = new int[vertexCount];
+		for (v = 0; v < vertexCount; v++) {
+			activeTris[v] = triStart[v + 1] - triStart[v];
+		}
+
+		int[] cachePosition = new int[vertexCount];
+		Arrays.fill(cachePosition, -1);
+		float[] vertexScore = new float[vertexCount];
+		for (v = 0; v < vertexCount; v++) {
+			vertexScore[v] = vertexScore(-1, activeTris[v]);
+		}
+		float[] triScore = new float[numTriangles];
+		boolean[] emitted = new boolean[numTriangles];
+		for (t = 0; t < numTriangles; t++) {
+			triScore[t] = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]] + vertexScore[indices[t * 3 + 2]];
+		}
+
+		int[] cache = new int[CACHE_SIZE + 3];
+		int[] newCache = new int[CACHE_SIZE + 3];
+		int cacheCount = 0;
+		int[] output = new int[numTriangles * 3];
+		int bestTri = -1;
+		float bestScore = -1;
+		int scanCursor = 0;
+
+		for (int emittedCount = 0; emittedCount < numTriangles; emittedCount++) {
+			// Sin candidato en la caché: el mejor triángulo pendiente (al principio) o el siguiente
+			if (bestTri < 0) {
+				if (emittedCount == 0) {
+					for (t = 0; t < numTriangles; t++) {
+						if (triScore[t] > bestScore) {
+							bestScore = triScore[t];
+							bestTri = t;
+						}
+					}
+				} else {
+					while (emitted[scanCursor]) scanCursor++;
+					bestTri = scanCursor;
+				}
+			}
+
+			// Emite el triángulo y lo quita de la adyacencia de sus vértices
+			t = bestTri;
+			emitted[t] = true;
+			for (j = 0; j < 3; j++) {
+				v = indices[t * 3 + j];
+				output[emittedCount * 3 + j] = v;
+				int end = triStart[v] + activeTris[v] - 1;
+				for (int k = triStart[v]; k <= end; k++) {
+					if (vertexTris[k] == t) {
+						vertexTris[k] = vertexTris[end];
+						vertexTris[end] = t;
+						break;
+					}
+				}
+				activeTris[v]--;
+			}
+
+			// Nueva caché LRU: los 3 vértices delante y después el resto
+			int newCount = 0;
+			for (j = 0; j < 3; j++) {
+				newCache[newCount++] = indices[t * 3 + j];
+			}
+			for (i = 0; i < cacheCount; i++) {
+				v = cache[i];
+				if (v != indices[t * 3] && v != indices[t * 3 + 1] && v != indices[t * 3 + 2]) {
+					newCache[newCount++] = v;
+				}
+			}
+			int[] swap = cache;
+			cache = newCache;
+			newCache = swap;
+			cacheCount = newCount;
+
+			// Actualiza las puntuaciones de los vértices de la caché (y de los que salen)
+			for (i = 0; i < cacheCount; i++) {
+				v = cache[i];
+				cachePosition[v] = i < CACHE_SIZE ? i : -1;
+				float score = vertexScore(cachePosition[v], activeTris[v]);
+				float delta = score - vertexScore[v];
+				vertexScore[v] = score;
+				if (delta != 0) {
+					for (int k = triStart[v]; k < triStart[v] + activeTris[v]; k++) {
+						triScore[vertexTris[k]] += delta;
+					}
+				}
+			}
+			if (cacheCount > CACHE_SIZE) {
+				cacheCount = CACHE_SIZE;
+			}
+
+			// Siguiente: el triángulo pendiente con más puntuación entre los de la caché
+			bestTri = -1;
+			bestScore = -1;
+			for (i = 0; i < cacheCount; i++) {
+				v = cache[i];
+				for (int k = triStart[v]; k < triStart[v] + activeTris[v]; k++) {
+					int candidate = vertexTris[k];
+					if (triScore[candidate] > bestScore) {
+						bestScore = triScore[candidate];
+						bestTri = candidate;
+					}
+				}
+			}
+		}
+		System.arraycopy(output, 0, indices, 0, numTriangles * 3);
+	}
+
+	// Reordena los vértices en el orden en que los leen los índices (y reescribe estos).
+	// Los vértices que no usa ningún índice quedan al final.
+	public static float[] reorderVertices(int[] indices, int indexCount, float[] vertices, int vertexCount, int floatsPerVertex) {
+		int[] remap = new int[vertexCount];
+		Arrays.fill(remap, -1);
+		float[] reordered = new float[vertexCount * floatsPerVertex];
+		int next = 0;
+		int i, v;
+
+		for (i = 0; i < indexCount; i++) {
+			v = indices[i];
+			if (remap[v] < 0) {
+				remap[v] = next++;
+			}
+			indices[i] = remap[v];
+		}
+		for (v = 0; v < vertexCount; v++) {
+			if (remap[v] < 0) {
+				remap[v] = next++;
+			}
+			System.arraycopy(vertices, v * floatsPerVertex, reordered, remap[v] * floatsPerVertex, floatsPerVertex);
+		}
+		return reordered;
+	}
+
+	private static float vertexScore(int cachePosition, int activeTris) {
+		if (activeTris == 0) {
+			// Ya no le quedan triángulos
+			return -1;
+		}
+		float score = cachePosition >= 0 ? CACHE_SCORE[cachePosition] : 0;
+		return score + VALENCE_SCORE[Math.min(activeTris, MAX_VALENCE_SCORE - 1)];
+	}
+}
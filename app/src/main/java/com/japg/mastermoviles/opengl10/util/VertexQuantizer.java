@@ -0,0 +1,197 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/* Formato de vértice comprimido (16 bytes en lugar de 32):
+*    posición:  4 shorts normalizados (x, y, z, 1) dentro de la caja del lote
+*    normal:    2 shorts normalizados con la normal en codificación octaédrica
+*    uv:        2 unsigned shorts normalizados dentro del rango de uv del lote
+*
+*  La caja se escala igual en los tres ejes (un cubo), así la matriz de descuantización
+*  (traslación + escala uniforme) se puede multiplicar por la del modelo sin deformar
+*  las normales; el shader sólo tiene que normalizar N y decodificar la octaédrica.
+*
+*  Por cada lote se guardan DEQUANT_FLOATS floats: centro (x, y, z), semilado,
+*  y uv mínima (u, v) y rango (u, v).
+*  Los shorts con signo se codifican como c = round(f * 32767). OpenGL ES 3.0 los decodifica
+*  con max(c / 32767, -1), que es la inversa; OpenGL ES 2.0 con (2c + 1) / 65535, que se
+*  separa de ella hasta un paso (1 / 32767) cerca de -1. La app dibuja los modelos comprimidos
+*  con contextos de las dos versiones, así que measure() da el peor error de las dos.
+*/
+public class VertexQuantizer {
+	public static final int BYTES_PER_VERTEX = 16;
+	public static final int DEQUANT_FLOATS = 8;
+
+	// Desplazamientos de cada atributo dentro del vértice
+	public static final int POSITION_OFFSET = 0;
+	public static final int NORMAL_OFFSET = 8;
+	public static final int UV_OFFSET = 12;
+
+	private static final int FLOATS_PER_VERTEX = 8;
+
+	// Comprime count vértices (x, y, z, A, B, C, u, v) de src y deja en dequant[offset..]
+	// los parámetros para descomprimirlos
+	public static ByteBuffer pack(FloatBuffer src, int count, float[] dequant, int offset) {
+		float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+		float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+		int i, k;
+
+		// Caja de las posiciones (0..2) y rango de las uv (3..4)
+		for (i = 0; i < count; i++) {
+			int base = i * FLOATS_PER_VERTEX;
+			for (k = 0; k < 5; k++) {
+				float value = src.get(base + (k < 3 ? k : k + 3));
+				if (value < min[k]) min[k] = value;
+				if (value > max[k]) max[k] = value;
+			}
+		}
+		if (count == 0) {
+			for (k = 0; k < 5; k++) {
+				min[k] = 0;
+				max[k] = 0;
+			}
+		}
+		float half = Math.max(max[0] - min[0], Math.max(max[1] - min[1], max[2] - min[2])) / 2;
+		dequant[offset]     = (min[0] + max[0]) / 2;
+		dequant[offset + 1] = (min[1] + max[1]) / 2;
+		dequant[offset + 2] = (min[2] + max[2]) / 2;
+		dequant[offset + 3] = half > 0 ? half : 1;
+		dequant[offset + 4] = min[3];
+		dequant[offset + 5] = min[4];
+		dequant[offset + 6] = max[3] > min[3] ? max[3] - min[3] : 1;
+		dequant[offset + 7] = max[4] > min[4] ? max[4] - min[4] : 1;
+
+		ByteBuffer out = ByteBuffer
+				.allocateDirect(count * BYTES_PER_VERTEX)
+				.order(ByteOrder.nativeOrder());
+		float[] oct = new float[2];
+		for (i = 0; i < count; i++) {
+			int base = i * FLOATS_PER_VERTEX;
+			float scale = dequant[offset + 3];
+			out.putShort(toSnorm((src.get(base)     - dequant[offset])     / scale));
+			out.putShort(toSnorm((src.get(base + 1) - dequant[offset + 1]) / scale));
+			out.putShort(toSnorm((src.get(base + 2) - dequant[offset + 2]) / scale));
+			out.putShort(Short.MAX_VALUE);
+			octEncode(src.get(base + 3), src.get(base + 4), src.get(base + 5), oct);
+			out.putShort(toSnorm(oct[0]));
+			out.putShort(toSnorm(oct[1]));
+			out.putShort(toUnorm((src.get(base + 6) - dequant[offset + 4]) / dequant[offset + 6]));
+			out.putShort(toUnorm((src.get(base + 7) - dequant[offset + 5]) / dequant[offset + 7]));
+		}
+		out.position(0);
+		return out;
+	}
+
+	// Descomprime el vértice i de packed a out[0..7] (x, y, z, A, B, C, u, v), como lo haría
+	// una GPU con OpenGL ES 3.0
+	public static void unpack(ByteBuffer packed, int i, float[] dequant, int offset, float[] out) {
+		unpack(packed, i, dequant, offset, out, false);
+	}
+
+	// Igual, con la conversión de OpenGL ES 2.0 si es2
+	static void unpack(ByteBuffer packed, int i, float[] dequant, int offset, float[] out, boolean es2) {
+		int base = i * BYTES_PER_VERTEX;
+		float scale = dequant[offset + 3];
+
+		out[0] = fromSnorm(packed.getShort(base), es2)     * scale + dequant[offset];
+		out[1] = fromSnorm(packed.getShort(base + 2), es2) * scale + dequant[offset + 1];
+		out[2] = fromSnorm(packed.getShort(base + 4), es2) * scale + dequant[offset + 2];
+		octDecode(fromSnorm(packed.getShort(base + NORMAL_OFFSET), es2),
+				fromSnorm(packed.getShort(base + NORMAL_OFFSET + 2), es2), out, 3);
+		out[6] = fromUnorm(packed.getShort(base + UV_OFFSET))     * dequant[offset + 6] + dequant[offset + 4];
+		out[7] = fromUnorm(packed.getShort(base + UV_OFFSET + 2)) * dequant[offset + 7] + dequant[offset + 5];
+	}
+
+	// Error máximo de la compresión: posición (unidades del modelo), normal (grados) y uv,
+	// el peor entre las conversiones de OpenGL ES 2.0 y 3.0.
+	// Acumula en error[0..2] el máximo con lo que ya hubiera.
+	public static void measure(FloatBuffer src, ByteBuffer packed, int count, float[] dequant, int offset, float[] error) {
+		measure(src, packed, count, dequant, offset, error, false);
+		measure(src, packed, count, dequant, offset, error, true);
+	}
+
+	private static void measure(FloatBuffer src, ByteBuffer packed, int count, float[] dequant, int offset, float[] error, boolean es2) {
+		float[] v = new float[FLOATS_PER_VERTEX];
+
+		for (int i = 0; i < count; i++) {
+			int base = i * FLOATS_PER_VERTEX;
+			unpack(packed, i, dequant, offset, v, es2);
+			for (int k = 0; k < 3; k++) {
+				error[0] = Math.max(error[0], Math.abs(v[k] - src.get(base + k)));
+			}
+			float length = (float) Math.sqrt(src.get(base + 3) * src.get(base + 3)
+					+ src.get(base + 4) * src.get(base + 4) + src.get(base + 5) * src.get(base + 5));
+			if (length > 0) {
+				float cos = (v[3] * src.get(base + 3) + v[4] * src.get(base + 4) + v[5] * src.get(base + 5)) / length;
+				error[1] = Math.max(error[1], (float) Math.toDegrees(Math.acos(Math.min(1, Math.max(-1, cos)))));
+			}
+			error[2] = Math.max(error[2], Math.abs(v[6] - src.get(base + 6)));
+			error[2] = Math.max(error[2], Math.abs(v[7] - src.get(base + 7)));
+		}
+	}
+
+	// Matriz (column-major) que pasa de las posiciones comprimidas a las del modelo
+	public static void dequantMatrix(float[] m, int mOffset, float[] dequant, int offset) {
+		float scale = dequant[offset + 3];
+		for (int i = 0; i < 16; i++) {
+			m[mOffset + i] = 0;
+		}
+		m[mOffset]      = scale;
+		m[mOffset + 5]  = scale;
+		m[mOffset + 10] = scale;
+		m[mOffset + 12] = dequant[offset];
+		m[mOffset + 13] = dequant[offset + 1];
+		m[mOffset + 14] = dequant[offset + 2];
+		m[mOffset + 15] = 1;
+	}
+
+	// Codificación octaédrica de la normal (x, y, z) en oct[0..1], en [-1, 1]
+	static void octEncode(float x, float y, float z, float[] oct) {
+		float l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+		if (l1 == 0) {
+			oct[0] = 0;
+			oct[1] = 0;
+			return;
+		}
+		float u = x / l1;
+		float v = y / l1;
+		if (z < 0) {
+			float fu = (1 - Math.abs(v)) * (u >= 0 ? 1 : -1);
+			float fv = (1 - Math.abs(u)) * (v >= 0 ? 1 : -1);
+			u = fu;
+			v = fv;
+		}
+		oct[0] = u;
+		oct[1] = v;
+	}
+
+	// Inversa de octEncode (la misma que hace el shader), normalizada, en out[offset..offset+2]
+	static void octDecode(float u, float v, float[] out, int offset) {
+		float z = 1 - Math.abs(u) - Math.abs(v);
+		float t = Math.max(-z, 0);
+		u += u >= 0 ? -t : t;
+		v += v >= 0 ? -t : t;
+		float length = (float) Math.sqrt(u * u + v * v + z * z);
+		out[offset]     = u / length;
+		out[offset + 1] = v / length;
+		out[offset + 2] = z / length;
+	}
+
+	private static short toSnorm(float f) {
+		return (short) Math.round(Math.max(-1, Math.min(1, f)) * 32767);
+	}
+
+	private static float fromSnorm(short c, boolean es2) {
+		return es2 ? (2 * c + 1) / 65535f : Math.max(c / 32767f, -1);
+	}
+
+	private static short toUnorm(float f) {
+		return (short) Math.round(Math.max(0, Math.min(1, f)) * 65535);
+	}
+
+	private static float fromUnorm(short c) {
+		return (c & 0xffff) / 65535f;
+	}
+}
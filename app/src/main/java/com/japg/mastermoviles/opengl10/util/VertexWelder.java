@@ -0,0 +1,113 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/* Suelda vértices idénticos (posición + normal + uv) de una malla expandida.
+*  Usa una tabla hash de direccionamiento abierto sobre los bits de los floats,
+*  así que no se crean objetos por vértice.
+*/
+public class VertexWelder {
+	private final int floatsPerVertex;
+
+	// Vértices únicos, intercalados
+	private float[] vertices;
+	private int numVertices;
+
+	// Tabla hash: índice del vértice + 1 (0 = hueco libre)
+	private int[] table;
+	private int mask;
+
+	public VertexWelder(int floatsPerVertex, int expectedVertices) {
+		this.floatsPerVertex = floatsPerVertex;
+		this.vertices = new float[Math.max(expectedVertices, 16) * floatsPerVertex];
+		int size = Integer.highestOneBit(Math.max(expectedVertices, 16) * 2 - 1) << 1;
+		this.table = new int[size];
+		this.mask = size - 1;
+	}
+
+	public void reset() {
+		numVertices = 0;
+		Arrays.fill(table, 0);
+	}
+
+	public int getVertexCount() {
+		return numVertices;
+	}
+
+	public float[] getVertices() {
+		return vertices;
+	}
+
+	// Devuelve el índice del vértice v[offset..offset+floatsPerVertex), añadiéndolo si es nuevo
+	public int add(float[] v, int offset) {
+		int slot = hash(v, offset) & mask;
+		int entry;
+
+		while ((entry = table[slot]) != 0) {
+			if (equals(entry - 1, v, offset)) {
+				return entry - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if ((numVertices + 1) * floatsPerVertex > vertices.length) {
+			vertices = Arrays.copyOf(vertices, vertices.length * 2);
+		}
+		System.arraycopy(v, offset, vertices, numVertices * floatsPerVertex, floatsPerVertex);
+		table[slot] = ++numVertices;
+
+		// Mantenemos la ocupación por debajo del 50%
+		if (numVertices * 2 > table.length) {
+			rehash(table.length * 2);
+		}
+		return numVertices - 1;
+	}
+
+	// Copia los vértices únicos a un buffer nativo listo para OpenGL
+	public FloatBuffer toFloatBuffer() {
+		FloatBuffer buffer = ByteBuffer
+				.allocateDirect(numVertices * floatsPerVertex * 4)
+				.order(ByteOrder.nativeOrder())
+				.asFloatBuffer();
+		buffer.put(vertices, 0, numVertices * floatsPerVertex);
+		buffer.position(0);
+		return buffer;
+	}
+
+	private int hash(float[] v, int offset) {
+		int h = 1;
+		for (int i = 0; i < floatsPerVertex; i++) {
+			h = 31 * h + Float.floatToIntBits(v[offset + i]);
+		}
+		// Mezcla final para repartir mejor los bits bajos
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return h;
+	}
+
+	private boolean equals(int index, float[] v, int offset) {
+		int base = index * floatsPerVertex;
+		for (int i = 0; i < floatsPerVertex; i++) {
+			if (Float.floatToIntBits(vertices[base + i]) != Float.floatToIntBits(v[offset + i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash(int size) {
+		table = new int[size];
+		mask = size - 1;
+		for (int i = 0; i < numVertices; i++) {
+			int slot = hash(vertices, i * floatsPerVertex) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = i + 1;
+		}
+	}
+}
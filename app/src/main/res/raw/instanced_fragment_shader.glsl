@@ -0,0 +1,15 @@
+#version 300 es
+precision mediump float;			// Precisión media
+
+uniform sampler2D u_TextureUnit;	// in: Unidad de Textura
+in vec4 v_Color;					// in: Color ambiente desde el vertex shader
+in vec4 v_Diffuse;					// in: Color difuso desde el vertex shader
+in float v_Specular;				// in: Intensidad especular desde el vertex shader
+in vec2 v_UV;						// in: UVs recibidas desde el vertex shader
+
+out vec4 fragColor;
+
+void main()
+{
+	fragColor = v_Color + v_Diffuse*texture(u_TextureUnit, v_UV) + vec4(v_Specular);
+}
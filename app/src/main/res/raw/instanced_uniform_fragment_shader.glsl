@@ -0,0 +1,12 @@
+precision mediump float;			// Precisión media
+
+uniform sampler2D u_TextureUnit;	// in: Unidad de Textura
+varying vec4 v_Color;				// in: Color ambiente desde el vertex shader
+varying vec4 v_Diffuse;				// in: Color difuso desde el vertex shader
+varying float v_Specular;			// in: Intensidad especular desde el vertex shader
+varying vec2 v_UV;					// in: UVs recibidas desde el vertex shader
+
+void main()
+{
+	gl_FragColor = v_Color + v_Diffuse*texture2D(u_TextureUnit, v_UV) + vec4(v_Specular);
+}
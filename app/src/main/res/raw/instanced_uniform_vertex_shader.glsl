@@ -0,0 +1,53 @@
+// Dibujo por instancias para OpenGL ES 2.0: las matrices de hasta MAX_INSTANCES copias van
+// en un array de uniform y cada vértice lleva el índice de la copia a la que pertenece
+#define MAX_INSTANCES 16			// = InstancedBuffers.MAX_UNIFORM_INSTANCES
+
+uniform mat4 u_ProjectionMatrix;	// in: Matriz Projection
+uniform mat4 u_MVMatrix;			// in: Matriz ModelView del grupo de instancias
+uniform vec4 u_Color;				// in: color del objeto
+uniform mat4 u_InstanceMatrices[MAX_INSTANCES];	// in: Matrices de las instancias (relativas al grupo)
+
+attribute vec4 a_Position;			// in: Posición de cada vértice
+attribute vec3 a_Normal;			// in: Normal de cada vértice
+attribute vec2 a_UV;				// in: Coordenadas UV de mapeado de textura
+attribute float a_InstanceIndex;	// in: Copia a la que pertenece el vértice
+
+varying vec4 v_Color;				// out: Color ambiente al fragment shader
+varying vec4 v_Diffuse;				// out: Color difuso (a multiplicar por la textura)
+varying float v_Specular;			// out: Intensidad especular
+varying vec2 v_UV;					// out: UVs de salida al fragment shader
+
+
+void main()
+{
+	float ambient  = 0.15;									// 15% de intensidad ambiente
+	
+	vec3 LightPos0 = vec3( 2,  5, 3);						// Posición de la luz 0 [fija]
+	vec3 LightPos1 = vec3(-4, -5, 3);						// Posición de la luz 1 [fija]
+	
+	mat4 MV = u_MVMatrix * u_InstanceMatrices[int(a_InstanceIndex)];	// ModelView de la instancia
+	vec3 P = vec3(MV * a_Position);							// Posición del vértice
+	vec3 N = vec3(MV * vec4(a_Normal, 0.0));				// Normal del vértice
+	vec3 V = normalize(P);									// Vector Visión (Eye)
+	
+	// Primera Luz
+	float d = length(P - LightPos0);						// distancia
+	vec3  L = normalize(P - LightPos0);						// Vector Luz
+	vec3  R = normalize(reflect(-L, N));					// Vector reflejado R=2N(N.L)-L
+	float attenuation = 1.0/(0.3+(0.1*d)+(0.01*d*d)); 		// Cálculo de la atenuación
+	
+	v_Color = u_Color*ambient;
+	v_Diffuse = u_Color*attenuation*max(dot(N, L), 0.0);
+	v_Specular = attenuation*pow(max(dot(V, R), 0.0), 200.0);
+	
+	// Segunda Luz
+	d = length(P - LightPos1);
+	L = normalize(P - LightPos1);
+	R = normalize(reflect(-L, N));
+	attenuation = 1.0/(0.3+(0.1*d)+(0.01*d*d));
+	
+	v_Diffuse += u_Color*attenuation*max(dot(N, L), 0.0);
+	v_Specular += attenuation*pow(max(dot(V, R), 0.0), 200.0);
+	v_UV = a_UV;
+	gl_Position = u_ProjectionMatrix * (MV * a_Position);
+}
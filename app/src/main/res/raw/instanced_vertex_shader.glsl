@@ -0,0 +1,50 @@
+#version 300 es
+// Dibujo por instancias (OpenGL ES 3.0): la matriz de cada copia llega como atributo
+uniform mat4 u_ProjectionMatrix;	// in: Matriz Projection
+uniform mat4 u_MVMatrix;			// in: Matriz ModelView del grupo de instancias
+uniform vec4 u_Color;				// in: color del objeto
+
+in vec4 a_Position;					// in: Posición de cada vértice
+in vec3 a_Normal;					// in: Normal de cada vértice
+in vec2 a_UV;						// in: Coordenadas UV de mapeado de textura
+in mat4 a_InstanceMatrix;			// in: Matriz de la instancia (relativa al grupo)
+
+out vec4 v_Color;					// out: Color ambiente al fragment shader
+out vec4 v_Diffuse;					// out: Color difuso (a multiplicar por la textura)
+out float v_Specular;				// out: Intensidad especular
+out vec2 v_UV;						// out: UVs de salida al fragment shader
+
+
+void main()
+{
+	float ambient  = 0.15;									// 15% de intensidad ambiente
+	
+	vec3 LightPos0 = vec3( 2,  5, 3);						// Posición de la luz 0 [fija]
+	vec3 LightPos1 = vec3(-4, -5, 3);						// Posición de la luz 1 [fija]
+	
+	mat4 MV = u_MVMatrix * a_InstanceMatrix;				// ModelView de la instancia
+	vec3 P = vec3(MV * a_Position);							// Posición del vértice
+	vec3 N = vec3(MV * vec4(a_Normal, 0.0));				// Normal del vértice
+	vec3 V = normalize(P);									// Vector Visión (Eye)
+	
+	// Primera Luz
+	float d = length(P - LightPos0);						// distancia
+	vec3  L = normalize(P - LightPos0);						// Vector Luz
+	vec3  R = normalize(reflect(-L, N));					// Vector reflejado R=2N(N.L)-L
+	float attenuation = 1.0/(0.3+(0.1*d)+(0.01*d*d)); 		// Cálculo de la atenuación
+	
+	v_Color = u_Color*ambient;
+	v_Diffuse = u_Color*attenuation*max(dot(N, L), 0.0);
+	v_Specular = attenuation*pow(max(dot(V, R), 0.0), 200.0);
+	
+	// Segunda Luz
+	d = length(P - LightPos1);
+	L = normalize(P - LightPos1);
+	R = normalize(reflect(-L, N));
+	attenuation = 1.0/(0.3+(0.1*d)+(0.01*d*d));
+	
+	v_Diffuse += u_Color*attenuation*max(dot(N, L), 0.0);
+	v_Specular += attenuation*pow(max(dot(V, R), 0.0), 200.0);
+	v_UV = a_UV;
+	gl_Position = u_ProjectionMatrix * (MV * a_Position);
+}
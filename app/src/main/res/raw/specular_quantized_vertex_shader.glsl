@@ -0,0 +1,64 @@
+// Variante para vértices comprimidos (VertexQuantizer). Las matrices ya incluyen la
+// descompresión de la posición (centro + escala uniforme del lote).
+uniform mat4 u_MVPMatrix;   		// in: Matriz Projection*ModelView*Descompresión
+uniform mat4 u_MVMatrix;			// in: Matriz ModelView*Descompresión
+uniform vec4 u_UVTransform;			// in: rango (xy) y mínimo (zw) de las uv del lote
+uniform vec4 u_Color;				// in: color del objeto
+uniform sampler2D u_TextureUnit;	// in: Unidad de Textura
+
+attribute vec4 a_Position;			// in: Posición de cada vértice
+attribute vec2 a_Normal;			// in: Normal de cada vértice (codificación octaédrica)
+attribute vec2 a_UV;				// in: Coordenadas UV normalizadas en el rango del lote
+
+varying vec4 v_Color;				// out: Color de salida al fragment shader
+
+
+// Normal a partir de su codificación octaédrica
+vec3 octDecode(vec2 e)
+{
+	vec3 n = vec3(e, 1.0 - abs(e.x) - abs(e.y));
+	float t = max(-n.z, 0.0);
+	n.x += n.x >= 0.0 ? -t : t;
+	n.y += n.y >= 0.0 ? -t : t;
+	return normalize(n);
+}
+
+void main()
+{
+	float ambient  = 0.15;									// 15% de intensidad ambiente
+	vec4  specularColor = vec4(1, 1, 1, 1);					// Color especular (brillos blancos)
+	
+	vec3 LightPos0 = vec3( 2,  5, 3);						// Posición de la luz 0 [fija]
+	vec3 LightPos1 = vec3(-4, -5, 3);						// Posición de la luz 1 [fija]
+	
+	vec3 P = vec3(u_MVMatrix * a_Position);					// Posición del vértice
+	vec3 N = normalize(vec3(u_MVMatrix * vec4(octDecode(a_Normal), 0.0)));	// Normal del vértice (sin la escala)
+	vec2 UV = a_UV * u_UVTransform.xy + u_UVTransform.zw;	// Coordenadas UV
+	
+	// Primera Luz
+	float d = length(P - LightPos0);						// distancia
+	vec3  L = normalize(P - LightPos0);						// Vector Luz
+	vec3  V = normalize(P);	  								// Vector Visión (Eye)
+	vec3  R = normalize(reflect(-L, N));					// Vector reflejado R=2N(N.L)-L
+	
+	float attenuation = 1.0/(0.3+(0.1*d)+(0.01*d*d)); 		// Cálculo de la atenuación
+	
+	float diffuse  = max(dot(N, L), 0.0);					// Cálculo de la intensidad difusa
+	float specular = pow(max(dot(V, R), 0.0), 200.0);		// Exponente de Phong (200)
+		
+	v_Color = u_Color*ambient+attenuation*(u_Color*texture2D(u_TextureUnit, UV)*diffuse + specularColor*specular); 
+	
+	// Segunda Luz
+	d = length(P - LightPos1);								// distancia
+	L = normalize(P - LightPos1);							// Vector Luz
+	V = normalize(P);	  									// Vector Visión (Eye)
+	R = normalize(reflect(-L, N));							// Vector reflejado R=2N(N.L)-L
+	
+	attenuation = 1.0/(0.3+(0.1*d)+(0.01*d*d)); 			// Cálculo de la atenuación
+	
+	diffuse  = max(dot(N, L), 0.0);							// Cálculo de la intensidad difusa
+	specular = pow(max(dot(V, R), 0.0), 200.0);				// Exponente de Phong (200)
+	
+	v_Color += attenuation*(u_Color*texture2D(u_TextureUnit, UV)*diffuse + specularColor*specular); 
+	gl_Position = u_MVPMatrix * a_Position;
+}
\ No newline at end of file
@@ -0,0 +1,100 @@
+package com.japg.mastermoviles.opengl10;
+
+import com.japg.mastermoviles.opengl10.util.GoldenImage;
+import com.japg.mastermoviles.opengl10.util.InputQueue;
+import com.japg.mastermoviles.opengl10.util.Logger;
+import com.japg.mastermoviles.opengl10.util.SoftwareGLBackend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/* El renderer entero sobre SoftwareGLBackend, como lo usa GLSurfaceView: onSurfaceCreated,
+*  onSurfaceChanged y frames hasta que el halo y el cuerpo se han cargado en segundo plano;
+*  después un arrastre y unos frames más, y la imagen se compara con
+*  golden/renderer_frame.png (se regenera con -Dgolden.update=true).
+*/
+public class OpenGLRendererTest {
+	private static final int WIDTH = 96;
+	private static final int HEIGHT = 128;
+	private static final String GOLDEN = "renderer_frame";
+	private static final int TOLERANCE = 2;
+	private static final int MAX_BAD_PIXELS = 8;
+	private static final long LOAD_TIMEOUT_MILLIS = 30000;
+	private static final int FRAMES = 10;
+
+	private static final Logger.Sink SILENT = new Logger.Sink() {
+		@Override
+		public void w(String tag, String message) {
+		}
+	};
+
+	private File cacheDir;
+	private SoftwareGLBackend gl;
+	private OpenGLRenderer renderer;
+
+	@Before
+	public void setUp() throws IOException {
+		Logger.setSink(SILENT);
+		cacheDir = File.createTempFile("models", "");
+		if (!cacheDir.delete() || !cacheDir.mkdir()) {
+			throw new IOException("No se puede crear " + cacheDir);
+		}
+		gl = new SoftwareGLBackend(WIDTH, HEIGHT);
+		renderer = new OpenGLRenderer(new ResourceFiles(cacheDir), 2, gl);
+	}
+
+	@After
+	public void tearDown() {
+		Logger.setSink(Logger.CONSOLE);
+		File[] files = cacheDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		cacheDir.delete();
+	}
+
+	// Dibuja frames hasta que no queda nada por cargar
+	private void drawUntilLoaded() throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + LOAD_TIMEOUT_MILLIS;
+		while (!renderer.isLoaded()) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("Los modelos no se han cargado en " + LOAD_TIMEOUT_MILLIS + " ms");
+			}
+			renderer.onDrawFrame(null);
+			Thread.sleep(1);
+		}
+	}
+
+	@Test
+	public void drawsTheSceneLikeTheGoldenImage() throws IOException, InterruptedException {
+		renderer.onSurfaceCreated(null, null);
+		renderer.onSurfaceChanged(null, WIDTH, HEIGHT);
+		drawUntilLoaded();
+
+		// El cuerpo gira hacia el arrastre y el halo lo sigue
+		renderer.getInputQueue().push(InputQueue.TOUCH_DRAG, 0.2f, -0.1f);
+		final long frames = renderer.getMetrics().getFrames();
+		for (int i = 0; i < FRAMES; i++) {
+			renderer.onDrawFrame(null);
+		}
+		assertEquals(frames + FRAMES, renderer.getMetrics().getFrames());
+		assertTrue(renderer.getDrawnMeshes() > 0);
+		assertTrue(renderer.getDrawCalls() > 0);
+		assertTrue(renderer.getTrianglesDrawn() > 0);
+		assertTrue(gl.getTrianglesRasterized() > 0);
+
+		int[] argb = new int[WIDTH * HEIGHT];
+		gl.getPixelsTopDown(argb);
+		GoldenImage.check(GOLDEN, argb, WIDTH, HEIGHT, TOLERANCE, MAX_BAD_PIXELS);
+	}
+}
@@ -0,0 +1,128 @@
+package com.japg.mastermoviles.opengl10;
+
+import android.graphics.BitmapFactory;
+
+import com.japg.mastermoviles.opengl10.util.GLBackend;
+import com.japg.mastermoviles.opengl10.util.ResourceSource;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import static android.opengl.GLES20.GL_RGBA;
+import static android.opengl.GLES20.GL_UNSIGNED_BYTE;
+
+/* Los recursos de la aplicación leídos de src/main/res, para usar el renderer en la JVM
+*  (los tests se ejecutan desde el directorio del módulo app). Los identificadores se
+*  buscan por nombre en R.raw y R.drawable; las imágenes se decodifican con ImageIO a RGBA
+*  y se suben con glTexImage2D. Sin assets: los modelos salen de la caché o del 3DS.
+*/
+class ResourceFiles implements ResourceSource {
+	private static final File RES = new File("src/main/res");
+
+	// Imagen RGBA sin premultiplicar, de arriba abajo como un Bitmap
+	private static class RgbaImage implements Image {
+		private final int width;
+		private final int height;
+		private final ByteBuffer pixels;
+
+		RgbaImage(BufferedImage image) {
+			width = image.getWidth();
+			height = image.getHeight();
+			pixels = ByteBuffer.allocate(width * height * 4).order(ByteOrder.nativeOrder());
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					int argb = image.getRGB(x, y);
+					pixels.put((byte) (argb >> 16)).put((byte) (argb >> 8)).put((byte) argb).put((byte) (argb >>> 24));
+				}
+			}
+			pixels.flip();
+		}
+
+		@Override
+		public int getByteCount() {
+			return pixels.capacity();
+		}
+
+		@Override
+		public void upload(GLBackend gl, int target, int level) {
+			gl.glTexImage2D(target, level, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+		}
+
+		@Override
+		public void recycle() {
+		}
+	}
+
+	private final File cacheDir;
+
+	ResourceFiles(File cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	@Override
+	public ByteBuffer readRaw(int resourceId) throws IOException {
+		return ByteBuffer.wrap(Files.readAllBytes(find("raw", resourceId).toPath())).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	@Override
+	public String getResourceName(int resourceId) {
+		String name = name(R.raw.class, resourceId);
+		return name != null ? name : name(R.drawable.class, resourceId);
+	}
+
+	@Override
+	public File getCacheDir() {
+		return cacheDir;
+	}
+
+	@Override
+	public ByteBuffer readAsset(String path) {
+		return null;
+	}
+
+	@Override
+	public Image decodeImage(int resourceId, BitmapFactory.Options options) {
+		try {
+			BufferedImage image = ImageIO.read(find("drawable", resourceId));
+			return image != null ? new RgbaImage(image) : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	// Fichero del recurso en res/<type> o en sus variantes (drawable-v24...), con cualquier extensión
+	private static File find(String type, int resourceId) throws FileNotFoundException {
+		String name = name(type.equals("raw") ? R.raw.class : R.drawable.class, resourceId);
+		File[] dirs = RES.listFiles();
+		if (name != null && dirs != null) {
+			for (File dir : dirs) {
+				if (!dir.getName().equals(type) && !dir.getName().startsWith(type + "-")) continue;
+				File[] files = dir.listFiles();
+				if (files == null) continue;
+				for (File file : files) {
+					if (file.getName().startsWith(name + ".")) return file;
+				}
+			}
+		}
+		throw new FileNotFoundException("Recurso no encontrado: " + resourceId);
+	}
+
+	private static String name(Class<?> type, int resourceId) {
+		for (Field field : type.getFields()) {
+			try {
+				if (field.getType() == int.class && field.getInt(null) == resourceId) return field.getName();
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return null;
+	}
+}
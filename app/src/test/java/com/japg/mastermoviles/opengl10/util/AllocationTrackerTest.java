@@ -0,0 +1,230 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/* El trabajo de CPU de cada frame del renderer (entrada, grafo de escena, matrices y
+*  métricas) con AllocationTracker en modo estricto: un frame que reserve falla la prueba.
+*  En la JVM se cuentan los bytes reservados por el hilo (HotSpot). El JIT, al compilar o
+*  desoptimizar, reserva alguna vez en el hilo que ejecuta (con -Xint no pasa nunca): eso
+*  sale en un frame suelto, mientras que una reserva del código sale en todos.
+*/
+public class AllocationTrackerTest {
+	private static final int WARMUP_FRAMES = 5000;
+	private static final int FRAMES = 5000;
+	private static final int ATTEMPTS = 3;
+
+	// Bytes del hilo actual, descontando lo que reserve la propia lectura
+	private static class ThreadBytesCounter implements AllocationTracker.Counter {
+		private final com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		private long readBytes;
+		private long reads;
+
+		@Override
+		public void start() {
+			threads.setThreadAllocatedMemoryEnabled(true);
+			final long first = read();
+			readBytes = read() - first;
+			reads = 0;
+		}
+
+		@Override
+		public long allocations() {
+			reads++;
+			return read() - reads * readBytes;
+		}
+
+		private long read() {
+			return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+	}
+
+	// Contador que avanza a mano
+	private static class ManualCounter implements AllocationTracker.Counter {
+		long bytes;
+
+		@Override
+		public void start() {
+		}
+
+		@Override
+		public long allocations() {
+			return bytes;
+		}
+	}
+
+	// Lo mismo que hace OpenGLRenderer con la entrada: mueve el cuerpo y el halo
+	private static class Scene implements InputQueue.Handler {
+		final SceneGraph graph = new SceneGraph();
+		final ModelTransform body = new ModelTransform(0f, 0f, -4f);
+		final ModelTransform halo = new ModelTransform(0f, 0f, 0f);
+		final float[] projection = new float[16];
+		final float[] model = new float[16];
+		final float[] mvp = new float[16];
+
+		Scene() {
+			body.attach(graph, graph.createNode(SceneGraph.NO_PARENT));
+			halo.attach(graph, graph.createNode(body.getSceneNode()));
+			Projection.perspective(projection, 0, 45f, 1.5f, 1f, 10f);
+		}
+
+		@Override
+		public void onInputEvent(int type, float x, float y) {
+			switch (type) {
+				case InputQueue.TOUCH_PRESS:
+					halo.setDestination(-y * 20f, x * 20f);
+					break;
+				case InputQueue.TOUCH_DRAG:
+					body.setDestination(-y * 180f, x * 180f);
+					halo.setDestination(0f, 0f);
+					break;
+				case InputQueue.ZOOM_IN:
+					body.zoom(-x);
+					break;
+				case InputQueue.ZOOM_OUT:
+					body.zoom(x);
+					break;
+				case InputQueue.ROTATE_LEFT:
+					halo.rotateY(-20);
+					break;
+				case InputQueue.ROTATE_RIGHT:
+					halo.rotateY(20);
+					break;
+			}
+		}
+
+		void draw(ModelTransform transform) {
+			transform.loadModelMatrix(model, 0);
+			MatrixHelper.multiply(mvp, 0, projection, 0, model, 0);
+		}
+	}
+
+	private final InputQueue input = new InputQueue();
+	private final FrameMetrics metrics = new FrameMetrics();
+	private final Scene scene = new Scene();
+
+	@Before
+	public void setUp() {
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assertTrue(threads.isThreadAllocatedMemorySupported());
+	}
+
+	// Un frame de onDrawFrame sin OpenGL; los eventos se encolan desde el mismo hilo
+	private void frame(AllocationTracker tracker, int n) {
+		tracker.begin();
+		metrics.beginFrame();
+		final float t = (n % 100) / 100f;
+		input.push(InputQueue.TOUCH_DRAG, t, 1f - t);
+		input.push(InputQueue.TOUCH_DRAG, 1f - t, t);
+		input.push(n % 2 == 0 ? InputQueue.ZOOM_IN : InputQueue.ZOOM_OUT, 0.05f, 0f);
+		if (n % 10 == 0) input.push(InputQueue.TOUCH_PRESS, t, t);
+		if (n % 25 == 0) input.push(n % 50 == 0 ? InputQueue.ROTATE_LEFT : InputQueue.ROTATE_RIGHT);
+		input.drain(scene);
+
+		scene.graph.update();
+		scene.draw(scene.halo);
+		scene.draw(scene.body);
+		scene.halo.updatePosition(0.06f);
+		scene.body.updatePosition(0.06f);
+
+		metrics.endFrame(2, 1000 + n, 4, 2);
+		tracker.end();
+	}
+
+	// Los primeros frames cargan clases y pasan por el JIT; después cada intento audita
+	// FRAMES frames y falla en el primero que reserve. Basta con que uno pase entero: una
+	// reserva del código hace fallar todos.
+	@Test
+	public void framesDoNotAllocate() {
+		int n = 0;
+		AllocationTracker warmUp = new AllocationTracker(new ThreadBytesCounter(), true);
+		warmUp.skipFrames(WARMUP_FRAMES);
+		for (; n < WARMUP_FRAMES; n++) {
+			frame(warmUp, n);
+		}
+
+		IllegalStateException failure = null;
+		for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+			AllocationTracker tracker = new AllocationTracker(new ThreadBytesCounter(), true);
+			try {
+				for (int frame = 0; frame < FRAMES; frame++, n++) {
+					frame(tracker, n);
+				}
+			} catch (IllegalStateException e) {
+				failure = e;
+				continue;
+			}
+			assertEquals(FRAMES, tracker.getAuditedFrames());
+			assertEquals(0, tracker.getAllocatingFrames());
+			assertTrue(metrics.getFrames() >= WARMUP_FRAMES + FRAMES);
+			assertTrue(scene.graph.getUpdatedNodes() > 0);
+			return;
+		}
+		throw failure;
+	}
+
+	// El contador ve las reservas del hilo: un frame que reserva falla en modo estricto
+	@Test
+	public void strictModeCatchesAnAllocatingFrame() {
+		AllocationTracker tracker = new AllocationTracker(new ThreadBytesCounter(), true);
+		tracker.skipFrames(WARMUP_FRAMES);
+		for (int n = 0; n < WARMUP_FRAMES + 10; n++) {
+			frame(tracker, n);
+		}
+		tracker.begin();
+		metrics.summary();
+		try {
+			tracker.end();
+			fail("El frame con reservas no ha lanzado la excepción");
+		} catch (IllegalStateException expected) {
+			assertTrue(tracker.getLastAllocations() > 0);
+			assertEquals(1, tracker.getAllocatingFrames());
+		}
+	}
+
+	@Test
+	public void countsAllocatingFrames() {
+		ManualCounter counter = new ManualCounter();
+		AllocationTracker tracker = new AllocationTracker(counter, false);
+		tracker.begin();
+		assertEquals(0, tracker.end());
+		tracker.begin();
+		counter.bytes += 64;
+		assertEquals(64, tracker.end());
+		tracker.begin();
+		counter.bytes += 32;
+		assertEquals(32, tracker.end());
+		assertEquals(3, tracker.getAuditedFrames());
+		assertEquals(2, tracker.getAllocatingFrames());
+		assertEquals(32, tracker.getLastAllocations());
+		assertEquals(96, tracker.getTotalAllocations());
+	}
+
+	// skipFrames(n) deja sin auditar el frame en curso y los n siguientes
+	@Test
+	public void skippedFramesAreNotAudited() {
+		ManualCounter counter = new ManualCounter();
+		AllocationTracker tracker = new AllocationTracker(counter, true);
+		tracker.begin();
+		counter.bytes += 100;
+		tracker.skipFrames(2);
+		assertEquals(0, tracker.end());
+		for (int n = 0; n < 2; n++) {
+			tracker.begin();
+			counter.bytes += 100;
+			assertEquals(0, tracker.end());
+		}
+		tracker.begin();
+		assertEquals(0, tracker.end());
+		assertEquals(1, tracker.getAuditedFrames());
+		assertEquals(0, tracker.getAllocatingFrames());
+	}
+}
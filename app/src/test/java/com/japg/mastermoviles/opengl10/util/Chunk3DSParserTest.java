@@ -0,0 +1,139 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class Chunk3DSParserTest {
+
+	// Cuenta los grupos de suavizado y los bytes que le llegan en las listas
+	private static class Counter extends Chunk3DSParser.DefaultHandler {
+		int faces = -1;
+		int groups = -1;
+		long listBytes;
+
+		@Override
+		public void faceList(ByteBuffer data, int count) {
+			faces = count;
+			listBytes += data.remaining();
+		}
+
+		@Override
+		public void smoothList(ByteBuffer data, int count) {
+			groups = count;
+			listBytes += data.remaining();
+		}
+	}
+
+	// MAIN > OBJMESH > OBJBLOCK > TRIMESH > FACELIST con faces caras y un CHUNK_SMOOLIST con
+	// smoothGroups grupos. MAIN y CHUNK_SMOOLIST dicen medir declared bytes (< 0 = lo que miden).
+	private static byte[] smoothScene(int faces, int smoothGroups, long declared) {
+		int smooth = 6 + smoothGroups * Chunk3DSParser.SMOOTH_BYTES;
+		int faceList = 6 + 2 + faces * Chunk3DSParser.FACE_BYTES + smooth;
+		int triMesh = 6 + faceList;
+		int objBlock = 6 + 2 + triMesh;
+		int objMesh = 6 + objBlock;
+		ByteBuffer data = ByteBuffer.allocate(6 + objMesh).order(ByteOrder.LITTLE_ENDIAN);
+		header(data, Chunk3DSParser.CHUNK_MAIN, declared < 0 ? 6 + objMesh : declared);
+		header(data, Chunk3DSParser.CHUNK_OBJMESH, objMesh);
+		header(data, Chunk3DSParser.CHUNK_OBJBLOCK, objBlock);
+		data.put((byte) 'a').put((byte) 0);
+		header(data, Chunk3DSParser.CHUNK_TRIMESH, triMesh);
+		header(data, Chunk3DSParser.CHUNK_FACELIST, faceList);
+		data.putShort((short) faces);
+		for (int f = 0; f < faces; f++) {
+			data.putShort((short) 0).putShort((short) 1).putShort((short) 2).putShort((short) 0);
+		}
+		header(data, Chunk3DSParser.CHUNK_SMOOLIST, declared < 0 ? smooth : declared);
+		for (int g = 0; g < smoothGroups; g++) {
+			data.putInt(1);
+		}
+		return data.array();
+	}
+
+	private static void header(ByteBuffer data, int id, long length) {
+		data.putShort((short) id);
+		data.putInt((int) length);
+	}
+
+	@Test
+	public void smoothGroupsAreCappedAtFaceCount() throws IOException {
+		// El chunk y su padre dicen medir casi 4 GB: sólo se leen tantos grupos como caras
+		byte[] scene = smoothScene(2, 5, 0xfffffff0L);
+		Counter stream = new Counter();
+		new Chunk3DSParser().parse(new ByteArrayInputStream(scene), stream);
+		assertEquals(2, stream.faces);
+		assertEquals(2, stream.groups);
+		assertEquals(2 * Chunk3DSParser.FACE_BYTES + 2 * Chunk3DSParser.SMOOTH_BYTES, stream.listBytes);
+
+		Counter buffer = new Counter();
+		new Chunk3DSParser().parse(ByteBuffer.wrap(scene), buffer);
+		assertEquals(2, buffer.groups);
+	}
+
+	@Test
+	public void smoothGroupsOutsideFaceListAreIgnored() throws IOException {
+		byte[] scene = smoothScene(0, 3, 0xfffffff0L);
+		Counter counter = new Counter();
+		new Chunk3DSParser().parse(new ByteArrayInputStream(scene), counter);
+		assertEquals(0, counter.groups);
+	}
+
+	@Test
+	public void inputUpToTheLimitIsRead() throws IOException {
+		byte[] scene = smoothScene(2, 2, -1);
+		Chunk3DSParser parser = new Chunk3DSParser();
+		parser.setMaxBytes(scene.length);
+		Counter stream = new Counter();
+		parser.parse(new ByteArrayInputStream(scene), stream);
+		assertEquals(2, stream.groups);
+		Counter buffer = new Counter();
+		parser.parse(ByteBuffer.wrap(scene), buffer);
+		assertEquals(2, buffer.groups);
+	}
+
+	@Test
+	public void inputPastTheLimitThrows() {
+		byte[] scene = smoothScene(2, 2, 0xfffffff0L);
+		Chunk3DSParser parser = new Chunk3DSParser();
+		// En medio de la lista de caras, al saltar un chunk y justo al final
+		long[] limits = {20, scene.length - 4, scene.length - 1};
+		for (long limit : limits) {
+			parser.setMaxBytes(limit);
+			try {
+				parser.parse(new ByteArrayInputStream(scene), new Counter());
+				fail("Sin error con el límite en " + limit);
+			} catch (IOException e) {
+				assertEquals("El 3DS pasa del límite de " + limit + " bytes", e.getMessage());
+			}
+			try {
+				parser.parse(ByteBuffer.wrap(scene), new Counter());
+				fail("Sin error con el límite en " + limit);
+			} catch (IOException e) {
+				assertEquals("El 3DS pasa del límite de " + limit + " bytes", e.getMessage());
+			}
+		}
+	}
+
+	@Test
+	public void readerReportsTheLimit() throws IOException {
+		Resource3DSReader reader = new Resource3DSReader();
+		reader.setMaxInputBytes(1024);
+		FileInputStream input = new FileInputStream("src/main/res/raw/esfera.3ds");
+		try {
+			reader.read3DSFromStream(input);
+			fail("esfera.3ds ocupa más de 1 KB");
+		} catch (IOException e) {
+			assertEquals("El 3DS pasa del límite de 1024 bytes", e.getMessage());
+		} finally {
+			input.close();
+		}
+	}
+}
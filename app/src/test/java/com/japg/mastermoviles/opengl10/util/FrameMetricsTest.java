@@ -0,0 +1,100 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+/* FrameHistogram y FrameMetrics en la JVM, sin OpenGL: percentiles, ventana móvil, cubo de
+*  desbordamiento e informe de dump().
+*/
+public class FrameMetricsTest {
+	private static final long BUCKET = 100000;
+
+	// Un percentil es el límite superior del cubo en que cae la muestra de rango ceil(p * n)
+	@Test
+	public void percentileIsTheUpperBoundOfTheRankBucket() {
+		FrameHistogram histogram = new FrameHistogram(BUCKET, 10, 0);
+		assertEquals(0, histogram.percentile(0.5));
+		for (int b = 0; b < 10; b++) {
+			histogram.record(b * BUCKET + BUCKET / 2);
+		}
+		assertEquals(BUCKET, histogram.percentile(0));
+		assertEquals(5 * BUCKET, histogram.percentile(0.5));
+		assertEquals(6 * BUCKET, histogram.percentile(0.51));
+		assertEquals(10 * BUCKET, histogram.percentile(1));
+		for (int b = 0; b < 10; b++) {
+			assertEquals(1, histogram.getBucket(b));
+		}
+		// Las duraciones negativas o nulas van al primer cubo
+		histogram.record(-5);
+		histogram.record(0);
+		assertEquals(3, histogram.getBucket(0));
+	}
+
+	@Test
+	public void windowEvictsTheOldestSamples() {
+		FrameHistogram histogram = new FrameHistogram(BUCKET, 10, 4);
+		histogram.record(BUCKET / 2);
+		histogram.record(BUCKET / 2);
+		for (int i = 0; i < 4; i++) {
+			histogram.record(5 * BUCKET + 1);
+		}
+		assertEquals(4, histogram.getCount());
+		assertEquals(6, histogram.getSamples());
+		assertEquals(0, histogram.getBucket(0));
+		assertEquals(4, histogram.getBucket(5));
+		assertEquals(6 * BUCKET, histogram.percentile(0.01));
+		// La máxima y el total no son de la ventana
+		assertEquals(5 * BUCKET + 1, histogram.getMaxNanos());
+		assertEquals(BUCKET + 4 * (5 * BUCKET + 1), histogram.getTotalNanos());
+	}
+
+	// Pasados WINDOW_FRAMES frames, la HUD ya no ve los primeros y el informe sí
+	@Test
+	public void recentMetricsForgetFramesOutsideTheWindow() {
+		FrameMetrics metrics = new FrameMetrics();
+		for (int i = 0; i < 10; i++) {
+			metrics.recordFrame(50000000, 1, 1, 1, 1);
+		}
+		for (int i = 0; i < FrameMetrics.WINDOW_FRAMES; i++) {
+			metrics.recordFrame(1000000, 1, 1, 1, 1);
+		}
+		assertEquals(FrameMetrics.WINDOW_FRAMES + 10, metrics.getFrames());
+		assertEquals(FrameMetrics.WINDOW_FRAMES, metrics.getCpuRecent().getCount());
+		assertEquals(1100000, metrics.getCpuRecent().percentile(1));
+		assertEquals(50100000, metrics.getCpuTotal().percentile(1));
+	}
+
+	@Test
+	public void longSamplesGoToTheLastBucket() {
+		FrameHistogram histogram = new FrameHistogram(BUCKET, 10, 0);
+		histogram.record(50 * BUCKET);
+		assertEquals(1, histogram.getBucket(9));
+		assertEquals(10 * BUCKET, histogram.percentile(0.5));
+		assertEquals(50 * BUCKET, histogram.getMaxNanos());
+	}
+
+	@Test
+	public void dumpListsPercentilesBucketsAndTheLastFrame() throws IOException {
+		FrameMetrics metrics = new FrameMetrics();
+		metrics.recordFrame(1500000, 3, 100, 5, 2);
+		metrics.recordFrame(2500000, 3, 100, 5, 2);
+		// Más de 100 ms: al cubo de desbordamiento, sin límite superior
+		metrics.recordFrame(200000000, 7, 900, 6, 4);
+		metrics.recordGpu(3000000);
+
+		StringWriter out = new StringWriter();
+		metrics.dump(out);
+		assertEquals("Frames: 3\n"
+				+ "CPU: p50 2.6 p95 100.0 p99 100.0 máx 200.0 media 68.0 ms\n"
+				+ "  1.5-1.6 ms: 1\n"
+				+ "  2.5-2.6 ms: 1\n"
+				+ "  99.9- ms: 1\n"
+				+ "GPU: p50 3.1 p95 3.1 p99 3.1 máx 3.0 media 3.0 ms\n"
+				+ "  3.0-3.1 ms: 1\n"
+				+ "Último frame: 7 llamadas, 900 triángulos, 6 cambios de estado, 4 texturas\n", out.toString());
+	}
+}
@@ -0,0 +1,103 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrustumTest {
+	// La proyección del renderer en horizontal
+	private static final float FOVY = 45f;
+	private static final float ASPECT = 1.5f;
+	private static final float NEAR = 0.01f;
+	private static final float FAR = 1000f;
+
+	private final float[] projection = new float[16];
+	private final float[] planes = new float[Frustum.NUM_PLANES * Frustum.PLANE_FLOATS];
+	private float tanY;
+	private float tanX;
+
+	@Before
+	public void setUp() {
+		Projection.perspective(projection, 0, FOVY, ASPECT, NEAR, FAR);
+		Frustum.extractPlanes(projection, 0, planes);
+		tanY = (float) Math.tan(Math.toRadians(FOVY / 2));
+		tanX = tanY * ASPECT;
+	}
+
+	private boolean outside(float x, float y, float z) {
+		return Frustum.sphereOutside(planes, x, y, z, 0);
+	}
+
+	// perspective() escribe m[10] = (n - f)/(f - n) = -1: la z de recorte no crece con la
+	// distancia como en glFrustum, así que no hay plano lejano
+	@Test
+	public void perspectiveHasNoFarPlane() {
+		assertEquals(-1f, projection[10], 0f);
+		assertEquals(-2 * FAR * NEAR / (FAR - NEAR), projection[14], 1e-7f);
+
+		// Fila 3 - fila 2 = (0, 0, 0, -m[14]): plano sin normal que no descarta nada
+		int far = Frustum.FAR * Frustum.PLANE_FLOATS;
+		assertEquals(0f, planes[far], 0f);
+		assertEquals(0f, planes[far + 1], 0f);
+		assertEquals(0f, planes[far + 2], 0f);
+		assertTrue(planes[far + 3] > 0);
+		assertFalse(outside(0, 0, -FAR * 1000));
+	}
+
+	// Con frustum() (perspective2) sí se descarta lo que queda más allá de f
+	@Test
+	public void frustumHasFarPlane() {
+		float[] finite = new float[16];
+		Projection.perspective2(finite, 0, FOVY, ASPECT, NEAR, FAR);
+		Frustum.extractPlanes(finite, 0, planes);
+		assertEquals(-(FAR + NEAR) / (FAR - NEAR), finite[10], 1e-6f);
+		assertFalse(outside(0, 0, -FAR * 0.99f));
+		assertTrue(outside(0, 0, -FAR * 1.01f));
+	}
+
+	// El plano cercano acaba en z = -f*n/(f - n) (fila 3 + fila 2 = (0, 0, -2, m[14])),
+	// un poco más allá de n
+	@Test
+	public void nearPlaneFollowsPerspective() {
+		float near = FAR * NEAR / (FAR - NEAR);
+		assertFalse(outside(0, 0, -near * 1.01f));
+		assertTrue(outside(0, 0, -near * 0.99f));
+		assertTrue(outside(0, 0, 1));
+	}
+
+	// Los planos laterales pasan por el origen con el ángulo de visión de la proyección
+	@Test
+	public void sidePlanesMatchFieldOfView() {
+		float[] depths = {1, 10, 500};
+		for (float depth : depths) {
+			float x = tanX * depth;
+			float y = tanY * depth;
+			assertFalse(outside(x * 0.99f, 0, -depth));
+			assertTrue(outside(x * 1.01f, 0, -depth));
+			assertFalse(outside(-x * 0.99f, 0, -depth));
+			assertTrue(outside(-x * 1.01f, 0, -depth));
+			assertFalse(outside(0, y * 0.99f, -depth));
+			assertTrue(outside(0, y * 1.01f, -depth));
+			assertFalse(outside(0, -y * 0.99f, -depth));
+			assertTrue(outside(0, -y * 1.01f, -depth));
+		}
+		for (int p = 0; p < Frustum.NEAR; p++) {
+			assertEquals(0f, planes[p * Frustum.PLANE_FLOATS + 3], 1e-6f);
+		}
+	}
+
+	// Una esfera o una caja que cruza un plano no se descarta aunque su centro esté fuera
+	@Test
+	public void volumesCrossingAPlaneAreKept() {
+		float depth = 10;
+		float x = tanX * depth * 1.1f;
+		float gap = x - tanX * depth;
+		assertTrue(Frustum.sphereOutside(planes, x, 0, -depth, gap * 0.5f));
+		assertFalse(Frustum.sphereOutside(planes, x, 0, -depth, gap * 2));
+		assertTrue(Frustum.boxOutside(planes, x, 0, -depth, gap * 0.5f, 0, 0));
+		assertFalse(Frustum.boxOutside(planes, x, 0, -depth, gap * 2, 0, 0));
+	}
+}
@@ -0,0 +1,72 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/* Comparación de lo dibujado por SoftwareGLBackend con una imagen de referencia de
+*  src/test/resources/golden. Con -Dgolden.update=true se escribe la imagen en lugar de
+*  compararla; si no coincide se deja lo dibujado en build/golden para verlo.
+*/
+public class GoldenImage {
+
+	// Falla si más de maxBadPixels píxeles de argb (ARGB, de arriba abajo) se apartan más
+	// de tolerance en algún canal de golden/<name>.png
+	public static void check(String name, int[] argb, int width, int height, int tolerance, int maxBadPixels) throws IOException {
+		final String golden = "golden/" + name + ".png";
+		if (Boolean.getBoolean("golden.update")) {
+			write(argb, width, height, new File("src/test/resources", golden));
+			return;
+		}
+		InputStream input = GoldenImage.class.getClassLoader().getResourceAsStream(golden);
+		assertNotNull("Falta " + golden, input);
+		BufferedImage image;
+		try {
+			image = ImageIO.read(input);
+		} finally {
+			input.close();
+		}
+		assertEquals(width, image.getWidth());
+		assertEquals(height, image.getHeight());
+
+		int bad = 0;
+		int worst = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int difference = difference(image.getRGB(x, y), argb[y * width + x]);
+				worst = Math.max(worst, difference);
+				if (difference > tolerance) bad++;
+			}
+		}
+		if (bad > maxBadPixels) {
+			File output = new File("build/golden", name + "_actual.png");
+			write(argb, width, height, output);
+			fail(bad + " píxeles distintos de " + golden + " (diferencia máxima " + worst + "); imagen en " + output);
+		}
+	}
+
+	// Mayor diferencia entre los canales de dos colores ARGB
+	private static int difference(int a, int b) {
+		int max = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			max = Math.max(max, Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF)));
+		}
+		return max;
+	}
+
+	private static void write(int[] argb, int width, int height, File file) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, width, height, argb, 0, width);
+		file.getParentFile().mkdirs();
+		if (!ImageIO.write(image, "png", file)) {
+			throw new IOException("No se puede escribir " + file);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InputQueueTest {
+
+	// Apunta los eventos entregados como texto
+	private static class Recorder implements InputQueue.Handler {
+		final List<String> events = new ArrayList<String>();
+
+		@Override
+		public void onInputEvent(int type, float x, float y) {
+			events.add(type + ":" + x + "," + y);
+		}
+	}
+
+	private static String event(int type, float x, float y) {
+		return type + ":" + x + "," + y;
+	}
+
+	@Test
+	public void coalescesDragsAndZoomBetweenOtherEvents() {
+		InputQueue queue = new InputQueue(16);
+		queue.push(InputQueue.TOUCH_DRAG, 1, 1);
+		queue.push(InputQueue.TOUCH_DRAG, 2, 2);
+		queue.push(InputQueue.ZOOM_OUT, 3, 0);
+		queue.push(InputQueue.ZOOM_IN, 1, 0);
+		queue.push(InputQueue.TOUCH_PRESS, 5, 5);
+		queue.push(InputQueue.TOUCH_DRAG, 6, 6);
+		Recorder recorder = new Recorder();
+		assertEquals(4, queue.drain(recorder));
+		assertEquals(Arrays.asList(
+				event(InputQueue.TOUCH_DRAG, 2, 2),
+				event(InputQueue.ZOOM_OUT, 2, 0),
+				event(InputQueue.TOUCH_PRESS, 5, 5),
+				event(InputQueue.TOUCH_DRAG, 6, 6)), recorder.events);
+		assertEquals(2, queue.getCoalescedEvents());
+	}
+
+	// Con la cola llena se conservan el último arrastre y la suma de los zoom, y sólo se
+	// descartan los demás eventos
+	@Test
+	public void overflowKeepsLatestDragAndZoom() {
+		InputQueue queue = new InputQueue(2);
+		assertTrue(queue.push(InputQueue.TOUCH_PRESS, 0, 0));
+		assertTrue(queue.push(InputQueue.TOUCH_DRAG, 1, 1));
+		for (int i = 2; i <= 100; i++) {
+			assertTrue(queue.push(InputQueue.TOUCH_DRAG, i, -i));
+			assertTrue(queue.push(InputQueue.ZOOM_IN, 0.5f, 0));
+		}
+		assertFalse(queue.push(InputQueue.ROTATE_LEFT));
+		assertEquals(1, queue.getDroppedEvents());
+		assertEquals(198, queue.getOverflowEvents());
+
+		Recorder recorder = new Recorder();
+		queue.drain(recorder);
+		assertEquals(Arrays.asList(
+				event(InputQueue.TOUCH_PRESS, 0, 0),
+				event(InputQueue.TOUCH_DRAG, 100, -100),
+				event(InputQueue.ZOOM_IN, 49.5f, 0)), recorder.events);
+
+		// Lo desbordado sólo se entrega una vez
+		recorder.events.clear();
+		assertEquals(0, queue.drain(recorder));
+		assertTrue(recorder.events.isEmpty());
+	}
+
+	// Un arrastre desbordado mientras drain() vacía la cola va antes de los eventos que
+	// entran en ella después, aunque se entregue en el drain() siguiente
+	@Test
+	public void overflowedDragKeepsItsPlace() {
+		final InputQueue queue = new InputQueue(2);
+		queue.push(InputQueue.TOUCH_PRESS, 0, 0);
+		final Recorder recorder = new Recorder();
+		// El handler hace de productor a la vez que drain(): llena la cola y desborda
+		queue.drain(new InputQueue.Handler() {
+			@Override
+			public void onInputEvent(int type, float x, float y) {
+				recorder.onInputEvent(type, x, y);
+				assertTrue(queue.push(InputQueue.TOUCH_DRAG, 1, 1));
+				assertTrue(queue.push(InputQueue.TOUCH_DRAG, 2, 2));
+			}
+		});
+		assertEquals(Arrays.asList(event(InputQueue.TOUCH_PRESS, 0, 0)), recorder.events);
+		assertEquals(1, queue.getOverflowEvents());
+
+		// La cola tiene el arrastre 1 y la pulsación; el arrastre 2 va entre ellos
+		assertTrue(queue.push(InputQueue.TOUCH_PRESS, 3, 3));
+		recorder.events.clear();
+		queue.drain(recorder);
+		assertEquals(Arrays.asList(
+				event(InputQueue.TOUCH_DRAG, 2, 2),
+				event(InputQueue.TOUCH_PRESS, 3, 3)), recorder.events);
+	}
+
+	// Un productor que inunda una cola pequeña mientras el consumidor vacía a ratos: los
+	// arrastres llegan en orden, el último siempre llega y no se pierde ningún zoom
+	@Test
+	public void floodFromAnotherThread() throws InterruptedException {
+		final int events = 200000;
+		final InputQueue queue = new InputQueue(4);
+		final float[] lastDrag = {0};
+		final double[] zoom = {0};
+		final int[] outOfOrder = {0};
+		final InputQueue.Handler handler = new InputQueue.Handler() {
+			@Override
+			public void onInputEvent(int type, float x, float y) {
+				if (type == InputQueue.TOUCH_DRAG) {
+					if (x <= lastDrag[0] || y != -x) outOfOrder[0]++;
+					lastDrag[0] = x;
+				} else if (type == InputQueue.ZOOM_OUT) {
+					zoom[0] += x;
+				} else if (type == InputQueue.ZOOM_IN) {
+					zoom[0] -= x;
+				}
+			}
+		};
+
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 1; i <= events; i++) {
+					queue.push(InputQueue.TOUCH_DRAG, i, -i);
+					queue.push(i % 3 == 0 ? InputQueue.ZOOM_IN : InputQueue.ZOOM_OUT, 0.5f, 0);
+				}
+			}
+		});
+		producer.start();
+		while (producer.isAlive()) {
+			queue.drain(handler);
+			Thread.yield();
+		}
+		producer.join();
+		queue.drain(handler);
+
+		int zoomIns = events / 3;
+		assertEquals(0, outOfOrder[0]);
+		assertEquals((float) events, lastDrag[0], 0f);
+		assertEquals(0.5 * (events - 2 * zoomIns), zoom[0], 1e-6);
+		assertEquals(0, queue.getDroppedEvents());
+		assertTrue("sin desbordes: la prueba no ha llenado la cola", queue.getOverflowEvents() > 0);
+	}
+}
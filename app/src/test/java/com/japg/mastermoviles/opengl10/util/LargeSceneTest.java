@@ -0,0 +1,103 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/* Escenas generadas (SyntheticScene) más allá de los modelos de res/raw: sin límite de
+*  mallas y con los objetos de más de 65536 vértices únicos partidos en la salida indexada.
+*/
+public class LargeSceneTest {
+	private static final int FLOATS_PER_VERTEX = 8;
+	private static final int MAX_MESH_VERTICES = 0x10000;
+
+	@Before
+	public void setUp() {
+		TestModels.silenceLog();
+	}
+
+	@After
+	public void tearDown() {
+		TestModels.restoreLog();
+	}
+
+	private static Resource3DSReader read(ByteBuffer scene, boolean indexed) {
+		Resource3DSReader reader = new Resource3DSReader();
+		reader.setIndexedOutput(indexed);
+		reader.read3DSFromBuffer(scene.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+		return reader;
+	}
+
+	// 5000 objetos y un millón de triángulos: una malla por objeto, en orden
+	@Test
+	public void readsFiveThousandMeshes() {
+		ByteBuffer scene = SyntheticScene.build(5000, 200, false);
+		Resource3DSReader expanded = read(scene, false);
+		assertEquals(5000, expanded.numMeshes);
+		long triangles = 0;
+		for (int m = 0; m < expanded.numMeshes; m++) {
+			assertEquals(m, expanded.meshObject[m]);
+			triangles += expanded.numVertices[m] / 3;
+		}
+		assertEquals(1000000, triangles);
+
+		Resource3DSReader indexed = read(scene, true);
+		assertEquals(5000, indexed.numMeshes);
+		assertSameTriangles(expanded, indexed);
+	}
+
+	// Un objeto de 65000 caras sin vértices compartidos: 195000 vértices únicos que no caben
+	// en índices de 16 bits y se reparten en varias mallas
+	@Test
+	public void splitsObjectsPastSixteenBitIndices() {
+		ByteBuffer scene = SyntheticScene.build(1, 65000, true);
+		Resource3DSReader expanded = read(scene, false);
+		assertEquals(1, expanded.numMeshes);
+		assertEquals(65000 * 3, expanded.numVertices[0]);
+
+		Resource3DSReader indexed = read(scene, true);
+		assertTrue(indexed.numMeshes >= 3);
+		for (int m = 0; m < indexed.numMeshes; m++) {
+			assertEquals(0, indexed.meshObject[m]);
+			assertTrue(indexed.numVertices[m] <= MAX_MESH_VERTICES);
+		}
+		assertSameTriangles(expanded, indexed);
+	}
+
+	// Las mallas indexadas de cada objeto, una tras otra, dibujan exactamente los triángulos
+	// expandidos del objeto, en el mismo orden
+	private static void assertSameTriangles(Resource3DSReader expanded, Resource3DSReader indexed) {
+		int m = 0;
+		for (int object = 0; object < expanded.numMeshes; object++) {
+			FloatBuffer reference = expanded.dataBuffer[object];
+			int k = 0;
+			for (; m < indexed.numMeshes && indexed.meshObject[m] == object; m++) {
+				FloatBuffer vertices = indexed.dataBuffer[m];
+				if (indexed.indexBuffer[m] == null) {
+					for (int i = 0; i < indexed.numVertices[m] * FLOATS_PER_VERTEX; i++) {
+						assertEquals(reference.get(k++), vertices.get(i), 0f);
+					}
+					continue;
+				}
+				for (int i = 0; i < indexed.numIndices[m]; i++) {
+					int v = indexed.indexBuffer[m].get(i) & 0xffff;
+					for (int c = 0; c < FLOATS_PER_VERTEX; c++) {
+						if (reference.get(k++) != vertices.get(v * FLOATS_PER_VERTEX + c)) {
+							assertEquals("objeto " + object + ", malla " + m + ", índice " + i,
+									reference.get(k - 1), vertices.get(v * FLOATS_PER_VERTEX + c), 0f);
+						}
+					}
+				}
+			}
+			assertEquals("objeto " + object, expanded.numVertices[object] * FLOATS_PER_VERTEX, k);
+		}
+		assertEquals(indexed.numMeshes, m);
+	}
+}
@@ -0,0 +1,111 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/* Lectura con el fichero mapeado (read3DSFromChannel) frente a la copia en el heap
+*  (readFully + read3DSFromBuffer): misma salida sin reservar el fichero en el heap.
+*  Las reservas se miden con los bytes asignados por el hilo (JVM de HotSpot).
+*/
+public class MappedReadTest {
+	private static final String MODEL = "mono_hd";
+
+	private final com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		TestModels.silenceLog();
+		file = TestModels.file(MODEL);
+		assertTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+		// Una lectura de cada para cargar las clases antes de medir
+		readHeap(0);
+		readMapped(0);
+	}
+
+	@After
+	public void tearDown() {
+		TestModels.restoreLog();
+	}
+
+	private long allocated() {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static Resource3DSReader newReader(int flags) {
+		Resource3DSReader reader = ModelCache.newReader(flags);
+		reader.setThreadCount(1);
+		return reader;
+	}
+
+	private Resource3DSReader readHeap(int flags) throws IOException {
+		FileInputStream input = new FileInputStream(file);
+		try {
+			Resource3DSReader reader = newReader(flags);
+			reader.read3DSFromBuffer(Resource3DSReader.readFully(input));
+			return reader;
+		} finally {
+			input.close();
+		}
+	}
+
+	private Resource3DSReader readMapped(int flags) throws IOException {
+		FileInputStream input = new FileInputStream(file);
+		try {
+			FileChannel channel = input.getChannel();
+			Resource3DSReader reader = newReader(flags);
+			reader.read3DSFromChannel(channel, 0, channel.size());
+			return reader;
+		} finally {
+			input.close();
+		}
+	}
+
+	private void compare(int flags) throws IOException {
+		long start = allocated();
+		Resource3DSReader heap = readHeap(flags);
+		long heapBytes = allocated() - start;
+		start = allocated();
+		Resource3DSReader mapped = readMapped(flags);
+		long mappedBytes = allocated() - start;
+
+		// La copia del fichero (y lo que crece el array al leerlo) es toda la diferencia
+		String message = "heap " + heapBytes + ", mapeado " + mappedBytes + ", fichero " + file.length();
+		assertTrue(message, heapBytes - mappedBytes >= file.length());
+
+		assertEquals(heap.numMeshes, mapped.numMeshes);
+		for (int m = 0; m < heap.numMeshes; m++) {
+			assertEquals(heap.dataBuffer[m], mapped.dataBuffer[m]);
+			assertEquals(heap.indexBuffer[m], mapped.indexBuffer[m]);
+		}
+	}
+
+	// Triángulos expandidos: el lector no reserva nada por vértice en el heap, así que el
+	// camino mapeado apenas reserva (unos 10 KB frente a unos 10 MB del heap con mono_hd)
+	@Test
+	public void mappedTrianglesSkipTheHeapCopy() throws IOException {
+		compare(0);
+		long start = allocated();
+		readMapped(0);
+		long mappedBytes = allocated() - start;
+		assertTrue("mapeado " + mappedBytes, mappedBytes < file.length() / 16);
+	}
+
+	// Indexado: la soldadura reserva lo mismo en los dos caminos
+	@Test
+	public void mappedIndexedSkipsTheHeapCopy() throws IOException {
+		compare(ModelCache.FLAG_INDEXED | ModelCache.FLAG_SMOOTH);
+	}
+}
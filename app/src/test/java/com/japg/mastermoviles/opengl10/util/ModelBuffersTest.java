@@ -0,0 +1,174 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static android.opengl.GLES20.GL_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_ELEMENT_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_FLOAT;
+import static android.opengl.GLES20.GL_SHORT;
+import static android.opengl.GLES20.GL_STATIC_DRAW;
+import static android.opengl.GLES20.GL_TRIANGLES;
+import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ModelBuffersTest {
+	private static final int POSITION = 0;
+	private static final int NORMAL = 1;
+	private static final int UV = 2;
+
+	private RecordingGLBackend gl;
+	private ModelBuffers buffers;
+
+	@Before
+	public void setUp() {
+		TestModels.silenceLog();
+		gl = new RecordingGLBackend();
+		gl.setLogging(true);
+		buffers = new ModelBuffers(gl);
+	}
+
+	@After
+	public void tearDown() {
+		TestModels.restoreLog();
+	}
+
+	private static ModelBatches batches(String model, int flags) throws IOException {
+		return ModelCache.parse(TestModels.load(model), flags);
+	}
+
+	@Test
+	public void uploadBindDrawRelease() throws IOException {
+		ModelBatches cube = batches("cubo", TestModels.APP_FLAGS);
+		assertEquals(1, cube.numBatches);
+		int vertexBytes = cube.batchVertexCount[0] * 8 * 4;
+		int indexBytes = cube.indexData[0].capacity() * 2;
+		int indices = cube.first(0, 0) + cube.count(0, 0);
+
+		buffers.upload(cube);
+		assertTrue(buffers.isUploaded());
+		assertEquals(Arrays.asList(
+				"glGenBuffers(1, int[], 0)",
+				"glBindBuffer(" + GL_ARRAY_BUFFER + ", 1)",
+				"glBufferData(" + GL_ARRAY_BUFFER + ", " + vertexBytes + ", Buffer, " + GL_STATIC_DRAW + ")",
+				"glBindBuffer(" + GL_ARRAY_BUFFER + ", 0)",
+				"glGenBuffers(1, int[], 0)",
+				"glBindBuffer(" + GL_ELEMENT_ARRAY_BUFFER + ", 2)",
+				"glBufferData(" + GL_ELEMENT_ARRAY_BUFFER + ", " + indexBytes + ", Buffer, " + GL_STATIC_DRAW + ")",
+				"glBindBuffer(" + GL_ELEMENT_ARRAY_BUFFER + ", 0)"), gl.getLog());
+		assertEquals(vertexBytes + indexBytes, ModelBuffers.batchBytes(cube, 0));
+
+		// Un lote ya subido no se vuelve a subir
+		gl.reset();
+		buffers.uploadBatch(0);
+		assertEquals(0, gl.getTotalCalls());
+
+		buffers.bind(0, POSITION, NORMAL, UV);
+		buffers.draw(0);
+		buffers.unbind();
+		assertEquals(Arrays.asList(
+				"glBindBuffer(" + GL_ARRAY_BUFFER + ", 1)",
+				"glVertexAttribPointer(" + POSITION + ", 3, " + GL_FLOAT + ", false, 32, 0)",
+				"glVertexAttribPointer(" + NORMAL + ", 3, " + GL_FLOAT + ", false, 32, 12)",
+				"glVertexAttribPointer(" + UV + ", 2, " + GL_FLOAT + ", false, 32, 24)",
+				"glBindBuffer(" + GL_ELEMENT_ARRAY_BUFFER + ", 2)",
+				"glDrawElements(" + GL_TRIANGLES + ", " + indices + ", " + GL_UNSIGNED_SHORT + ", 0)",
+				"glBindBuffer(" + GL_ARRAY_BUFFER + ", 0)",
+				"glBindBuffer(" + GL_ELEMENT_ARRAY_BUFFER + ", 0)"), gl.getLog());
+		assertEquals(1, buffers.getDrawCalls());
+		assertEquals(indices / 3, buffers.getTrianglesDrawn());
+
+		gl.reset();
+		buffers.release();
+		assertEquals(Arrays.asList("glDeleteBuffers(1, int[], 0)", "glDeleteBuffers(1, int[], 0)"), gl.getLog());
+		assertFalse(buffers.isUploaded());
+		assertEquals(0, buffers.getBatchCount());
+		// Liberar dos veces no vuelve a borrar
+		buffers.release();
+		assertEquals(2, gl.getCallCount("glDeleteBuffers"));
+	}
+
+	@Test
+	public void drawArraysWithoutIndices() throws IOException {
+		ModelBatches cube = batches("cubo", 0);
+		buffers.upload(cube);
+		assertEquals(1, gl.getCallCount("glGenBuffers"));
+		gl.reset();
+		buffers.bind(0, POSITION, NORMAL, UV);
+		buffers.draw(0);
+		List<String> log = gl.getLog();
+		assertEquals("glBindBuffer(" + GL_ELEMENT_ARRAY_BUFFER + ", 0)", log.get(log.size() - 2));
+		assertEquals("glDrawArrays(" + GL_TRIANGLES + ", 0, " + cube.batchVertexCount[0] + ")", log.get(log.size() - 1));
+	}
+
+	@Test
+	public void quantizedAttributes() throws IOException {
+		ModelBatches cube = batches("cubo", TestModels.APP_FLAGS | ModelCache.FLAG_QUANTIZED);
+		buffers.upload(cube);
+		assertEquals(cube.batchVertexCount[0] * VertexQuantizer.BYTES_PER_VERTEX + cube.indexData[0].capacity() * 2,
+				ModelBuffers.batchBytes(cube, 0));
+		gl.reset();
+		buffers.bind(0, POSITION, NORMAL, UV);
+		int stride = VertexQuantizer.BYTES_PER_VERTEX;
+		assertEquals(Arrays.asList(
+				"glBindBuffer(" + GL_ARRAY_BUFFER + ", 1)",
+				"glVertexAttribPointer(" + POSITION + ", 4, " + GL_SHORT + ", true, " + stride + ", " + VertexQuantizer.POSITION_OFFSET + ")",
+				"glVertexAttribPointer(" + NORMAL + ", 2, " + GL_SHORT + ", true, " + stride + ", " + VertexQuantizer.NORMAL_OFFSET + ")",
+				"glVertexAttribPointer(" + UV + ", 2, " + GL_UNSIGNED_SHORT + ", true, " + stride + ", " + VertexQuantizer.UV_OFFSET + ")",
+				"glBindBuffer(" + GL_ELEMENT_ARRAY_BUFFER + ", 2)"), gl.getLog());
+	}
+
+	// Al perder el contexto los buffers mueren con él: prepare() los olvida sin borrarlos
+	// y se vuelven a subir, lote a lote, con nombres nuevos
+	@Test
+	public void reuploadAfterContextLoss() throws IOException {
+		ModelBatches model = batches("mono_hd", TestModels.APP_FLAGS);
+		assertTrue(model.numBatches > 1);
+		buffers.upload(model);
+		assertEquals(2 * model.numBatches, gl.getCallCount("glGenBuffers"));
+
+		gl.reset();
+		buffers.prepare(model);
+		assertEquals(0, gl.getTotalCalls());
+		assertFalse(buffers.isUploaded());
+		for (int b = 0; b < model.numBatches; b++) {
+			assertFalse(buffers.isBatchUploaded(b));
+			buffers.uploadBatch(b);
+			assertTrue(buffers.isBatchUploaded(b));
+		}
+		assertTrue(buffers.isUploaded());
+		assertEquals(2 * model.numBatches, gl.getCallCount("glGenBuffers"));
+		assertEquals(0, gl.getCallCount("glDeleteBuffers"));
+
+		// Los nombres siguen a los del contexto anterior: el último lote usa los dos últimos
+		gl.reset();
+		buffers.bind(model.numBatches - 1, POSITION, NORMAL, UV);
+		assertEquals("glBindBuffer(" + GL_ARRAY_BUFFER + ", " + (4 * model.numBatches - 1) + ")", gl.getLog().get(0));
+
+		// Se dibujan todos los triángulos del modelo
+		buffers.resetDrawCalls();
+		int triangles = 0;
+		for (int b = 0; b < model.numBatches; b++) {
+			buffers.bind(b, POSITION, NORMAL, UV);
+			buffers.draw(b);
+		}
+		for (int m = 0; m < model.numMeshes; m++) {
+			triangles += model.count(0, m) / 3;
+		}
+		assertEquals(model.numBatches, buffers.getDrawCalls());
+		assertEquals(triangles, buffers.getTrianglesDrawn());
+
+		gl.reset();
+		buffers.release();
+		assertEquals(Arrays.asList(
+				"glDeleteBuffers(" + model.numBatches + ", int[], 0)",
+				"glDeleteBuffers(" + model.numBatches + ", int[], 0)"), gl.getLog());
+	}
+}
@@ -0,0 +1,123 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResidencyManagerTest {
+	private static final long MODEL_BYTES = 100;
+
+	// Modelo de prueba: apunta en evicted el orden de las expulsiones
+	private class Model implements ResidencyManager.Resident {
+		final String name;
+		final ResidencyManager.Entry entry;
+
+		Model(String name) {
+			this.name = name;
+			this.entry = residency.register(this);
+		}
+
+		@Override
+		public void evict() {
+			evicted.add(name);
+		}
+
+		// Lo que hace Model3D al dibujarse: si estaba expulsado, se vuelve a cargar
+		void draw() {
+			if (!residency.touch(entry)) {
+				residency.loaded(entry, MODEL_BYTES);
+			}
+		}
+	}
+
+	private final List<String> evicted = new ArrayList<String>();
+	private ResidencyManager residency;
+
+	@Before
+	public void setUp() {
+		residency = new ResidencyManager(3 * MODEL_BYTES);
+	}
+
+	private Model[] load(String... names) {
+		Model[] models = new Model[names.length];
+		for (int i = 0; i < names.length; i++) {
+			models[i] = new Model(names[i]);
+			residency.touch(models[i].entry);
+			residency.loaded(models[i].entry, MODEL_BYTES);
+		}
+		return models;
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedFirst() {
+		residency.beginFrame();
+		Model[] models = load("a", "b", "c");
+		residency.beginFrame();
+		models[0].draw();
+		models[1].draw();
+		models[2].draw();
+		residency.beginFrame();
+		residency.beginFrame();
+		models[2].draw();
+		models[0].draw();
+		// Tras dos frames sin dibujar nada se puede expulsar todo: primero b, el que hace
+		// más tiempo que no se usa, y después c
+		residency.beginFrame();
+		residency.beginFrame();
+		load("d", "e");
+		assertEquals("[b, c]", evicted.toString());
+		assertEquals(3 * MODEL_BYTES, residency.getResidentBytes());
+		assertEquals(3, residency.getResidentCount());
+		assertEquals(2, residency.getEvictions());
+	}
+
+	@Test
+	public void keepsWhatWasDrawnThisFrameAndTheLast() {
+		residency.beginFrame();
+		Model[] models = load("a", "b", "c");
+		// a se dibujó en el frame anterior y b y c en este: ninguno se expulsa y se pasa
+		// del presupuesto
+		residency.beginFrame();
+		models[1].draw();
+		models[2].draw();
+		load("d");
+		assertTrue(evicted.isEmpty());
+		assertEquals(4 * MODEL_BYTES, residency.getResidentBytes());
+
+		// Un frame después a ya no está protegido
+		residency.beginFrame();
+		models[1].draw();
+		residency.trim();
+		assertEquals("[a]", evicted.toString());
+		assertEquals(3 * MODEL_BYTES, residency.getResidentBytes());
+	}
+
+	@Test
+	public void evictedModelsReloadOnDraw() {
+		residency.beginFrame();
+		Model[] models = load("a", "b");
+		residency.beginFrame();
+		residency.beginFrame();
+		residency.setBudgetBytes(MODEL_BYTES);
+		assertEquals("[a]", evicted.toString());
+		assertFalse(models[0].entry.isLoaded());
+
+		models[1].draw();
+		models[0].draw();
+		assertTrue(models[0].entry.isLoaded());
+		assertEquals(1, residency.getHits());
+		assertEquals(1, residency.getMisses());
+		// b sigue cargado: se ha dibujado en este frame
+		assertEquals(2 * MODEL_BYTES, residency.getResidentBytes());
+
+		residency.unregister(models[0].entry);
+		assertEquals(MODEL_BYTES, residency.getResidentBytes());
+		assertEquals(1, residency.getResidentCount());
+	}
+}
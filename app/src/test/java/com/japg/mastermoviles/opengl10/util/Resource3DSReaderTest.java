@@ -0,0 +1,95 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class Resource3DSReaderTest {
+	// Triángulos con la normal de cada cara, con normales suavizadas y como los carga la app
+	private static final int[] FLAGS = {0, ModelCache.FLAG_SMOOTH, TestModels.APP_FLAGS};
+
+	@Before
+	public void setUp() {
+		TestModels.silenceLog();
+	}
+
+	@After
+	public void tearDown() {
+		TestModels.restoreLog();
+	}
+
+	// Un hilo, un pool propio de 4 y el pool común dan exactamente las mismas mallas
+	@Test
+	public void parallelExpansionMatchesSerial() throws IOException {
+		int multiObject = 0;
+		for (String model : TestModels.MODELS) {
+			for (int flags : FLAGS) {
+				Resource3DSReader serial = TestModels.read(model, flags, 1);
+				assertSameMeshes(model + "/" + flags + " con 4 hilos", serial, TestModels.read(model, flags, 4));
+				assertSameMeshes(model + "/" + flags + " en el pool común", serial, TestModels.read(model, flags, 0));
+			}
+			if (TestModels.read(model, 0, 1).meshObject.length > 1) multiObject++;
+		}
+		// Sin varios objetos no se reparte nada entre los hilos
+		assertTrue(multiObject > 1);
+	}
+
+	// readChunks + expandMeshes (lo que miden los benchmarks de expansión) da lo mismo que
+	// una lectura completa, con todos los objetos
+	@Test
+	public void readChunksThenExpandMatchesFullRead() throws IOException {
+		for (String model : TestModels.MODELS) {
+			for (int flags : FLAGS) {
+				String message = model + "/" + flags;
+				Resource3DSReader full = TestModels.read(model, flags, 1);
+				Resource3DSReader split = ModelCache.newReader(flags);
+				split.setThreadCount(1);
+				split.readChunks(TestModels.load(model));
+				assertEquals(message, full.numObjects, split.numObjects);
+				split.expandMeshes();
+				assertEquals(message, full.numMeshes, split.numMeshes);
+				assertEquals(message, full.totalExpandedVertices, split.totalExpandedVertices);
+				assertEquals(message, full.totalUniqueVertices, split.totalUniqueVertices);
+				assertEquals(message, full.indexedTriangles, split.indexedTriangles);
+				assertEquals(message, sum(full.numVertices, full.numMeshes), sum(split.numVertices, split.numMeshes));
+				assertEquals(message, sum(full.numIndices, full.numMeshes), sum(split.numIndices, split.numMeshes));
+			}
+		}
+	}
+
+	private static long sum(int[] counts, int n) {
+		long total = 0;
+		for (int i = 0; i < n; i++) {
+			total += counts[i];
+		}
+		return total;
+	}
+
+	private static void assertSameMeshes(String message, Resource3DSReader expected, Resource3DSReader actual) {
+		assertEquals(message, expected.numMeshes, actual.numMeshes);
+		assertArrayEquals(message, expected.meshObject, actual.meshObject);
+		assertArrayEquals(message, expected.numVertices, actual.numVertices);
+		assertArrayEquals(message, expected.numIndices, actual.numIndices);
+		assertEquals(message, expected.cacheMissesAfter, actual.cacheMissesAfter);
+		for (int m = 0; m < expected.numMeshes; m++) {
+			assertEquals(message + " malla " + m, expected.dataBuffer[m], actual.dataBuffer[m]);
+			assertEquals(message + " malla " + m, expected.indexBuffer[m], actual.indexBuffer[m]);
+			if (expected.lodIndexBuffer[m] == null) {
+				assertNull(message + " malla " + m, actual.lodIndexBuffer[m]);
+				continue;
+			}
+			assertEquals(message + " malla " + m, expected.lodIndexBuffer[m].length, actual.lodIndexBuffer[m].length);
+			for (int l = 0; l < expected.lodIndexBuffer[m].length; l++) {
+				assertEquals(message + " malla " + m + " nivel " + l,
+						expected.lodIndexBuffer[m][l], actual.lodIndexBuffer[m][l]);
+			}
+		}
+	}
+}
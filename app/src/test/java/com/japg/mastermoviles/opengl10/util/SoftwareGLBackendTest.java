@@ -0,0 +1,144 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static android.opengl.GLES20.GL_COLOR_BUFFER_BIT;
+import static android.opengl.GLES20.GL_CULL_FACE;
+import static android.opengl.GLES20.GL_DEPTH_BUFFER_BIT;
+import static android.opengl.GLES20.GL_DEPTH_TEST;
+import static android.opengl.GLES20.GL_FRAGMENT_SHADER;
+import static android.opengl.GLES20.GL_RGBA;
+import static android.opengl.GLES20.GL_TEXTURE_2D;
+import static android.opengl.GLES20.GL_UNSIGNED_BYTE;
+import static android.opengl.GLES20.GL_VERTEX_SHADER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/* Imagen de referencia del rasterizador: esfera.3ds con specular_vertex_shader y una textura
+*  de cuadros, comparada con golden/esfera_specular.png. Si cambia a propósito, se regenera
+*  ejecutando el test con -Dgolden.update=true (escribe en src/test/resources/golden).
+*/
+public class SoftwareGLBackendTest {
+	private static final int SIZE = 96;
+	private static final String GOLDEN = "esfera_specular";
+	private static final int CLEAR = 0xFF202020;
+	// Diferencia por canal tolerada y píxeles que pueden pasarse de ella (redondeos de
+	// Math.pow entre JVMs en los bordes de los brillos)
+	private static final int TOLERANCE = 2;
+	private static final int MAX_BAD_PIXELS = 8;
+
+	private SoftwareGLBackend gl;
+
+	@Before
+	public void setUp() {
+		TestModels.silenceLog();
+		gl = new SoftwareGLBackend(SIZE, SIZE);
+	}
+
+	@After
+	public void tearDown() {
+		TestModels.restoreLog();
+	}
+
+	private static String readShader(String name) throws IOException {
+		FileInputStream input = new FileInputStream(new File("src/main/res/raw", name + ".glsl"));
+		try {
+			ByteBuffer source = Resource3DSReader.readFully(input);
+			return new String(source.array(), source.arrayOffset() + source.position(), source.remaining(), "UTF-8");
+		} finally {
+			input.close();
+		}
+	}
+
+	private int program() throws IOException {
+		int vertex = gl.glCreateShader(GL_VERTEX_SHADER);
+		gl.glShaderSource(vertex, readShader("specular_vertex_shader"));
+		gl.glCompileShader(vertex);
+		int fragment = gl.glCreateShader(GL_FRAGMENT_SHADER);
+		gl.glShaderSource(fragment, readShader("specular_fragment_shader"));
+		gl.glCompileShader(fragment);
+		int program = gl.glCreateProgram();
+		gl.glAttachShader(program, vertex);
+		gl.glAttachShader(program, fragment);
+		gl.glLinkProgram(program);
+		return program;
+	}
+
+	// Cuadros de 4x4 texels blancos y azulados
+	private void checkerTexture() {
+		int[] names = new int[1];
+		gl.glGenTextures(1, names, 0);
+		gl.glBindTexture(GL_TEXTURE_2D, names[0]);
+		ByteBuffer pixels = ByteBuffer.allocate(8 * 8 * 4).order(ByteOrder.nativeOrder());
+		for (int y = 0; y < 8; y++) {
+			for (int x = 0; x < 8; x++) {
+				boolean white = ((x / 4) + (y / 4)) % 2 == 0;
+				pixels.put((byte) (white ? 255 : 64)).put((byte) (white ? 255 : 128)).put((byte) 255).put((byte) 255);
+			}
+		}
+		pixels.flip();
+		gl.glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, 8, 8, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+	}
+
+	private int[] render() throws IOException {
+		int program = program();
+		gl.glUseProgram(program);
+		int aPosition = gl.glGetAttribLocation(program, "a_Position");
+		int aNormal = gl.glGetAttribLocation(program, "a_Normal");
+		int aUV = gl.glGetAttribLocation(program, "a_UV");
+
+		float[] projection = new float[16];
+		float[] modelView = new float[16];
+		float[] mvp = new float[16];
+		Projection.perspective(projection, 0, 45f, 1f, 0.01f, 1000f);
+		MatrixHelper.setIdentity(modelView, 0);
+		MatrixHelper.translate(modelView, 0, 0f, 0f, -1.8f);
+		MatrixHelper.rotate(modelView, 0, 30f, 1f, 1f, 0f);
+		MatrixHelper.multiply(mvp, 0, projection, 0, modelView, 0);
+		gl.glUniformMatrix4fv(gl.glGetUniformLocation(program, "u_MVPMatrix"), 1, false, mvp, 0);
+		gl.glUniformMatrix4fv(gl.glGetUniformLocation(program, "u_MVMatrix"), 1, false, modelView, 0);
+		gl.glUniform4f(gl.glGetUniformLocation(program, "u_Color"), 1f, 0.8f, 0.6f, 1f);
+		gl.glUniform1i(gl.glGetUniformLocation(program, "u_TextureUnit"), 0);
+		checkerTexture();
+
+		gl.glClearColor(0.125f, 0.125f, 0.125f, 1f);
+		gl.glEnable(GL_DEPTH_TEST);
+		gl.glEnable(GL_CULL_FACE);
+		gl.glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+
+		ModelBatches batches = ModelCache.parse(TestModels.load("esfera"), TestModels.APP_FLAGS);
+		ModelBuffers buffers = new ModelBuffers(gl);
+		buffers.upload(batches);
+		gl.glEnableVertexAttribArray(aPosition);
+		gl.glEnableVertexAttribArray(aNormal);
+		gl.glEnableVertexAttribArray(aUV);
+		for (int b = 0; b < batches.numBatches; b++) {
+			buffers.bind(b, aPosition, aNormal, aUV);
+			buffers.draw(b);
+		}
+		buffers.unbind();
+
+		int[] argb = new int[SIZE * SIZE];
+		gl.getPixelsTopDown(argb);
+		return argb;
+	}
+
+	@Test
+	public void matchesGoldenImage() throws IOException {
+		int[] actual = render();
+		assertTrue(gl.getTrianglesRasterized() > 0);
+		// Fondo en la esquina y la esfera en el centro
+		assertEquals(CLEAR, actual[0]);
+		assertTrue(actual[SIZE / 2 * SIZE + SIZE / 2] != CLEAR);
+
+		GoldenImage.check(GOLDEN, actual, SIZE, SIZE, TOLERANCE, MAX_BAD_PIXELS);
+	}
+}
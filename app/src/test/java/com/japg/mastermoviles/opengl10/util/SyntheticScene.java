@@ -0,0 +1,111 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/* 3DS generados en memoria para probar y medir escenas más grandes que las de res/raw
+*  (también lo compila el módulo benchmark): meshes objetos, cada uno una rejilla con
+*  trianglesPerMesh triángulos (con sus uv's) desplazada para que no se solapen. Con bumpy las alturas de la rejilla varían y cada cara tiene su normal, así que
+*  al soldar casi no se comparten vértices (para pasar del límite de los índices de 16 bits).
+*/
+class SyntheticScene {
+	static ByteBuffer build(int meshes, int trianglesPerMesh, boolean bumpy) {
+		int cells = (trianglesPerMesh + 1) / 2;
+		int columns = (int) Math.ceil(Math.sqrt(cells));
+		int rows = (cells + columns - 1) / columns;
+		int vertices = (columns + 1) * (rows + 1);
+		if (vertices > 0xffff || trianglesPerMesh > 0xffff) {
+			throw new IllegalArgumentException("La malla no cabe en las listas de 16 bits del 3DS");
+		}
+
+		int vertList = Chunk3DSParser.CHUNK_HEADER_SIZE + 2 + vertices * Chunk3DSParser.VERTEX_BYTES;
+		int mapList = Chunk3DSParser.CHUNK_HEADER_SIZE + 2 + vertices * Chunk3DSParser.UV_BYTES;
+		int faceList = Chunk3DSParser.CHUNK_HEADER_SIZE + 2 + trianglesPerMesh * Chunk3DSParser.FACE_BYTES;
+		int triMesh = Chunk3DSParser.CHUNK_HEADER_SIZE + vertList + mapList + faceList;
+		int objBlock = Chunk3DSParser.CHUNK_HEADER_SIZE + name(0).length() + 1 + triMesh;
+		long objMesh = Chunk3DSParser.CHUNK_HEADER_SIZE + (long) meshes * objBlock;
+		long main = Chunk3DSParser.CHUNK_HEADER_SIZE + objMesh;
+		if (main > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Escena demasiado grande: " + main + " bytes");
+		}
+
+		ByteBuffer data = ByteBuffer.allocate((int) main).order(ByteOrder.LITTLE_ENDIAN);
+		header(data, Chunk3DSParser.CHUNK_MAIN, main);
+		header(data, Chunk3DSParser.CHUNK_OBJMESH, objMesh);
+		for (int m = 0; m < meshes; m++) {
+			float x0 = (m % 100) * (columns + 1);
+			float z0 = (m / 100) * (rows + 1);
+
+			header(data, Chunk3DSParser.CHUNK_OBJBLOCK, objBlock);
+			String name = name(m);
+			for (int i = 0; i < name.length(); i++) {
+				data.put((byte) name.charAt(i));
+			}
+			data.put((byte) 0);
+			header(data, Chunk3DSParser.CHUNK_TRIMESH, triMesh);
+
+			header(data, Chunk3DSParser.CHUNK_VERTLIST, vertList);
+			data.putShort((short) vertices);
+			for (int r = 0; r <= rows; r++) {
+				for (int c = 0; c <= columns; c++) {
+					data.putFloat(x0 + c);
+					data.putFloat(bumpy ? height(m, r * (columns + 1) + c) : 0f);
+					data.putFloat(z0 + r);
+				}
+			}
+
+			header(data, Chunk3DSParser.CHUNK_MAPLIST, mapList);
+			data.putShort((short) vertices);
+			for (int r = 0; r <= rows; r++) {
+				for (int c = 0; c <= columns; c++) {
+					data.putFloat((float) c / columns);
+					data.putFloat((float) r / rows);
+				}
+			}
+
+			// Dos triángulos por celda, hasta completar los pedidos
+			header(data, Chunk3DSParser.CHUNK_FACELIST, faceList);
+			data.putShort((short) trianglesPerMesh);
+			for (int t = 0; t < trianglesPerMesh; t++) {
+				int cell = t / 2;
+				int a = (cell / columns) * (columns + 1) + cell % columns;
+				int b = a + 1;
+				int c = a + columns + 1;
+				int d = c + 1;
+				if (t % 2 == 0) {
+					face(data, a, c, b);
+				} else {
+					face(data, b, c, d);
+				}
+			}
+		}
+		data.flip();
+		return data;
+	}
+
+	// Nombres de longitud fija, para que todos los objetos ocupen lo mismo
+	private static String name(int mesh) {
+		return String.format("obj%05d", mesh);
+	}
+
+	// Altura en [0, 1) que sólo depende de la malla y del vértice
+	private static float height(int mesh, int vertex) {
+		int h = (mesh * 0x9e3779b1) ^ (vertex * 0x85ebca6b);
+		h ^= h >>> 15;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 13;
+		return (h & 0xffff) / 65536f;
+	}
+
+	private static void header(ByteBuffer data, int id, long length) {
+		data.putShort((short) id);
+		data.putInt((int) length);
+	}
+
+	private static void face(ByteBuffer data, int a, int b, int c) {
+		data.putShort((short) a);
+		data.putShort((short) b);
+		data.putShort((short) c);
+		data.putShort((short) 0);
+	}
+}
@@ -0,0 +1,54 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/* Modelos de res/raw para los tests (se ejecutan desde el directorio del módulo app) */
+class TestModels {
+	static final String[] MODELS = {
+		"angel_halo", "batmobile", "body", "cubo", "esfera", "esfera2", "mono", "mono_hd",
+		"t90a", "tierra", "torus"
+	};
+
+	// Las opciones con que carga los modelos la aplicación
+	static final int APP_FLAGS = ModelCache.FLAG_INDEXED | ModelCache.FLAG_SMOOTH
+			| ModelCache.FLAG_CACHE_OPTIMIZED | ModelCache.FLAG_LOD;
+
+	private static final Logger.Sink SILENT = new Logger.Sink() {
+		@Override
+		public void w(String tag, String message) {
+		}
+	};
+
+	// Los mensajes de cada lectura no aportan nada a la salida de los tests
+	static void silenceLog() {
+		Logger.setSink(SILENT);
+	}
+
+	static void restoreLog() {
+		Logger.setSink(Logger.CONSOLE);
+	}
+
+	static File file(String model) {
+		return new File("src/main/res/raw", model + ".3ds");
+	}
+
+	static ByteBuffer load(String model) throws IOException {
+		FileInputStream inputStream = new FileInputStream(file(model));
+		try {
+			return Resource3DSReader.readFully(inputStream).order(ByteOrder.LITTLE_ENDIAN);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	static Resource3DSReader read(String model, int flags, int threads) throws IOException {
+		Resource3DSReader reader = ModelCache.newReader(flags);
+		reader.setThreadCount(threads);
+		reader.read3DSFromBuffer(load(model));
+		return reader;
+	}
+}
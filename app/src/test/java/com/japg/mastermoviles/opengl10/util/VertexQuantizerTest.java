@@ -0,0 +1,86 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/* Error de VertexQuantizer con las dos conversiones de shorts con signo: la de OpenGL ES 3.0,
+*  max(c / 32767, -1), y la de OpenGL ES 2.0, (2c + 1) / 65535.
+*/
+public class VertexQuantizerTest {
+	// Margen por el redondeo de los float
+	private static final float EPSILON = 1e-6f;
+
+	@Before
+	public void setUp() {
+		TestModels.silenceLog();
+	}
+
+	@After
+	public void tearDown() {
+		TestModels.restoreLog();
+	}
+
+	// Con ES 3.0 la posición se aleja a lo sumo medio paso; con ES 2.0, paso y medio.
+	// measure() da el peor de los dos.
+	@Test
+	public void positionErrorIsBoundedUnderBothConversions() throws IOException {
+		for (String model : TestModels.MODELS) {
+			Resource3DSReader reader = TestModels.read(model, 0, 1);
+			for (int m = 0; m < reader.numMeshes; m++) {
+				FloatBuffer src = reader.dataBuffer[m];
+				int count = reader.numVertices[m];
+				float[] dequant = new float[VertexQuantizer.DEQUANT_FLOATS];
+				ByteBuffer packed = VertexQuantizer.pack(src, count, dequant, 0);
+				float step = dequant[3] / 32767;
+
+				float es3 = positionError(src, packed, count, dequant, false);
+				float es2 = positionError(src, packed, count, dequant, true);
+				assertTrue(model + "/" + m + " ES 3.0: " + es3, es3 <= 0.5f * step + EPSILON * dequant[3]);
+				assertTrue(model + "/" + m + " ES 2.0: " + es2, es2 <= 1.5f * step + EPSILON * dequant[3]);
+
+				float[] error = new float[3];
+				VertexQuantizer.measure(src, packed, count, dequant, 0, error);
+				assertEquals(model + "/" + m, Math.max(es2, es3), error[0], 0f);
+			}
+		}
+	}
+
+	// Los extremos de la caja se codifican como ±32767, que ES 3.0 devuelve exactos
+	@Test
+	public void boxCornersDecodeExactlyWithEs3() {
+		FloatBuffer src = FloatBuffer.wrap(new float[] {
+				-2f, -1f, 3f, 0f, 0f, 1f, 0f, 0f,
+				2f, 3f, 7f, 0f, 1f, 0f, 1f, 1f
+		});
+		float[] dequant = new float[VertexQuantizer.DEQUANT_FLOATS];
+		ByteBuffer packed = VertexQuantizer.pack(src, 2, dequant, 0);
+		assertEquals(-Short.MAX_VALUE, packed.getShort(0));
+		assertEquals(Short.MAX_VALUE, packed.getShort(VertexQuantizer.BYTES_PER_VERTEX));
+
+		float[] v = new float[8];
+		VertexQuantizer.unpack(packed, 0, dequant, 0, v);
+		assertEquals(-2f, v[0], 0f);
+		VertexQuantizer.unpack(packed, 1, dequant, 0, v);
+		assertEquals(2f, v[0], 0f);
+	}
+
+	private static float positionError(FloatBuffer src, ByteBuffer packed, int count, float[] dequant, boolean es2) {
+		float[] v = new float[8];
+		float error = 0;
+		for (int i = 0; i < count; i++) {
+			VertexQuantizer.unpack(packed, i, dequant, 0, v, es2);
+			for (int k = 0; k < 3; k++) {
+				error = Math.max(error, Math.abs(v[k] - src.get(i * 8 + k)));
+			}
+		}
+		return error;
+	}
+}
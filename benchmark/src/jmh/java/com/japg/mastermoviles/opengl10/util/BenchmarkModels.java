@@ -0,0 +1,58 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/* Modelos de res/raw para los benchmarks (directorio en la propiedad raw.dir, que pone
+*  build.gradle) y las salidas del lector que se comparan.
+*/
+class BenchmarkModels {
+	// Salidas de Resource3DSReader: triángulos expandidos con la normal de cada cara,
+	// expandidos con normales suavizadas, o indexados como los carga Model3D
+	static final String TRIANGLES = "triangles";
+	static final String SMOOTH = "smooth";
+	static final String INDEXED = "indexed";
+
+	// Los niveles de detalle que genera ModelCache con FLAG_LOD
+	private static final int LOD_LEVELS = 4;
+
+	// Mensajes de la lectura descartados, para no medir la consola
+	private static final Logger.Sink SILENT = new Logger.Sink() {
+		@Override
+		public void w(String tag, String message) {
+		}
+	};
+
+	static void silenceLog() {
+		Logger.setSink(SILENT);
+	}
+
+	static ByteBuffer load(String model) throws IOException {
+		silenceLog();
+		File file = new File(System.getProperty("raw.dir", "../app/src/main/res/raw"), model + ".3ds");
+		FileInputStream inputStream = new FileInputStream(file);
+		try {
+			return Resource3DSReader.readFully(inputStream);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	static Resource3DSReader newReader(String output, int threads) {
+		Resource3DSReader reader = new Resource3DSReader();
+		reader.setThreadCount(threads);
+		if (SMOOTH.equals(output)) {
+			reader.setSmoothNormals(true);
+		} else if (INDEXED.equals(output)) {
+			reader.setIndexedOutput(true);
+			reader.setSmoothNormals(true);
+			reader.setOptimizeVertexCache(true);
+			reader.setLodLevels(LOD_LEVELS);
+		} else if (!TRIANGLES.equals(output)) {
+			throw new IllegalArgumentException("Salida desconocida: " + output);
+		}
+		return reader;
+	}
+}
@@ -0,0 +1,69 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/* La cadena de matrices de Model3D.drawModel sin las llamadas de OpenGL: matriz del
+*  modelo (de su nodo del grafo de escena o calculada), modelo-vista-proyección, planos
+*  del volumen de visión y descarte de las mallas que quedan fuera.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrawMatricesBenchmark {
+	@Param({"body", "mono_hd"})
+	public String model;
+
+	// Con el modelo colgado de un nodo del grafo de escena (como en el renderer) o sin grafo
+	@Param({"true", "false"})
+	public boolean attached;
+
+	private ModelBatches batches;
+	private ModelTransform transform;
+	private final float[] projectionMatrix = new float[16];
+	private final float[] modelMatrix = new float[16];
+	private final float[] modelViewProjectionMatrix = new float[16];
+	private final float[] frustumPlanes = new float[Frustum.NUM_PLANES * Frustum.PLANE_FLOATS];
+
+	@Setup
+	public void setUp() throws IOException {
+		Resource3DSReader reader = BenchmarkModels.newReader(BenchmarkModels.INDEXED, 1);
+		reader.read3DSFromBuffer(BenchmarkModels.load(model).order(ByteOrder.LITTLE_ENDIAN));
+		batches = ModelBatches.build(reader, null);
+		Projection.perspective(projectionMatrix, 0, 45f, 1920f / 1080f, 0.01f, 1000f);
+		transform = new ModelTransform(30f, 45f, -4f);
+		if (attached) {
+			SceneGraph scene = new SceneGraph();
+			transform.attach(scene, scene.createNode(SceneGraph.NO_PARENT));
+			scene.update();
+		}
+	}
+
+	@Benchmark
+	public int modelViewProjection() {
+		transform.loadModelMatrix(modelMatrix, 0);
+		MatrixHelper.multiply(modelViewProjectionMatrix, 0, projectionMatrix, 0, modelMatrix, 0);
+		Frustum.extractPlanes(modelViewProjectionMatrix, 0, frustumPlanes);
+		int culled = 0;
+		for (int m = 0; m < batches.numMeshes; m++) {
+			if (Frustum.meshOutside(frustumPlanes, batches.meshBounds, m * ModelBatches.MESH_BOUNDS_FLOATS)) culled++;
+		}
+		return culled;
+	}
+}
@@ -0,0 +1,52 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/* Sólo la expansión de las mallas y el cálculo de sus normales (expandMeshes), sobre los
+*  chunks ya recorridos, con distinto número de hilos del pool fork-join para ver cómo
+*  escala con los núcleos (0 = pool común). Los modelos son los de varias mallas.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpandMeshesBenchmark {
+	@Param({"tierra", "t90a", "mono", "batmobile", "mono_hd"})
+	public String model;
+
+	@Param({BenchmarkModels.TRIANGLES, BenchmarkModels.SMOOTH, BenchmarkModels.INDEXED})
+	public String output;
+
+	@Param({"1", "2", "4", "0"})
+	public int threads;
+
+	private Resource3DSReader reader;
+
+	@Setup
+	public void setUp() throws IOException {
+		reader = BenchmarkModels.newReader(output, threads);
+		reader.readChunks(BenchmarkModels.load(model).order(ByteOrder.LITTLE_ENDIAN));
+	}
+
+	@Benchmark
+	public Object expand() {
+		reader.expandMeshes();
+		return reader.dataBuffer;
+	}
+}
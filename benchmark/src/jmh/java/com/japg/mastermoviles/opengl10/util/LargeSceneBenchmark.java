@@ -0,0 +1,70 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/* Lectura de escenas generadas (SyntheticScene) más allá de los modelos de res/raw:
+*  "cad", 5000 objetos y 1M de triángulos, y "split", un objeto de 65000 caras sin vértices
+*  compartidos que en la salida indexada se parte en varias mallas de índices de 16 bits.
+*  En el setup se comprueba que el lector devuelve todos los triángulos.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LargeSceneBenchmark {
+	private static final int CAD_MESHES = 5000;
+	private static final int CAD_TRIANGLES_PER_MESH = 200;
+	private static final int SPLIT_TRIANGLES = 65000;
+
+	@Param({"cad", "split"})
+	public String scene;
+
+	@Param({BenchmarkModels.TRIANGLES, BenchmarkModels.INDEXED})
+	public String output;
+
+	@Param({"1", "0"})
+	public int threads;
+
+	private ByteBuffer data;
+
+	@Setup
+	public void setUp() {
+		BenchmarkModels.silenceLog();
+		int meshes = "cad".equals(scene) ? CAD_MESHES : 1;
+		int triangles = "cad".equals(scene) ? CAD_TRIANGLES_PER_MESH : SPLIT_TRIANGLES;
+		data = SyntheticScene.build(meshes, triangles, !"cad".equals(scene));
+
+		Resource3DSReader reader = read();
+		long read = 0;
+		for (int m = 0; m < reader.numMeshes; m++) {
+			read += reader.indexBuffer[m] != null ? reader.numIndices[m] / 3 : reader.numVertices[m] / 3;
+		}
+		if (read != (long) meshes * triangles || reader.meshObject[reader.numMeshes - 1] != meshes - 1) {
+			throw new IllegalStateException("Escena " + scene + ": " + read + " triángulos leídos de "
+					+ (long) meshes * triangles);
+		}
+	}
+
+	@Benchmark
+	public Resource3DSReader read() {
+		Resource3DSReader reader = BenchmarkModels.newReader(output, threads);
+		reader.read3DSFromBuffer(data.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+		return reader;
+	}
+}
@@ -0,0 +1,91 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+/* El lector de antes (LegacyResource3DSReader: byte a byte y en dos pasadas) frente al de
+*  ahora (una pasada sobre el fichero en memoria), con cada 3DS de res/raw y la misma
+*  salida: triángulos expandidos con la normal de cada cara, en un solo hilo. Los dos leen
+*  de los bytes del fichero ya cargados, así sólo se mide la lectura. En el setup se
+*  comprueba que los dos dan las mismas mallas.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LegacyRead3DSBenchmark {
+	static final String LEGACY = "legacy";
+	static final String CURRENT = "current";
+
+	@Param({"cubo", "esfera", "angel_halo", "body", "tierra", "esfera2", "t90a", "mono", "torus", "batmobile", "mono_hd"})
+	public String model;
+
+	@Param({LEGACY, CURRENT})
+	public String reader;
+
+	private ByteBuffer data;
+	private byte[] bytes;
+
+	@Setup
+	public void setUp() throws IOException {
+		data = BenchmarkModels.load(model);
+		bytes = new byte[data.remaining()];
+		data.duplicate().get(bytes);
+
+		LegacyResource3DSReader legacy = readLegacy();
+		Resource3DSReader current = readCurrent();
+		if (legacy.numMeshes != current.numMeshes) {
+			throw new IllegalStateException(model + ": " + legacy.numMeshes + " mallas antes, "
+					+ current.numMeshes + " ahora");
+		}
+		for (int m = 0; m < legacy.numMeshes; m++) {
+			if (legacy.numVertices[m] != current.numVertices[m]
+					|| !sameFloats(legacy.dataBuffer[m], current.dataBuffer[m])) {
+				throw new IllegalStateException(model + ": la malla " + m + " no coincide");
+			}
+		}
+	}
+
+	// Igual salvo el redondeo de las normales (las dos se normalizan en double)
+	private static boolean sameFloats(FloatBuffer a, FloatBuffer b) {
+		if (a.capacity() != b.capacity()) return false;
+		for (int i = 0; i < a.capacity(); i++) {
+			if (Math.abs(a.get(i) - b.get(i)) > 1e-5f) return false;
+		}
+		return true;
+	}
+
+	private LegacyResource3DSReader readLegacy() {
+		LegacyResource3DSReader legacy = new LegacyResource3DSReader();
+		legacy.read3DS(bytes);
+		return legacy;
+	}
+
+	private Resource3DSReader readCurrent() {
+		Resource3DSReader current = BenchmarkModels.newReader(BenchmarkModels.TRIANGLES, 1);
+		current.read3DSFromBuffer(data.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+		return current;
+	}
+
+	@Benchmark
+	public Object read() {
+		return LEGACY.equals(reader) ? readLegacy().dataBuffer : readCurrent().dataBuffer;
+	}
+}
@@ -0,0 +1,49 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Matrices de proyección de onSurfaceChanged, con los parámetros del renderer
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProjectionBenchmark {
+	public float aspectRatio = 1920f / 1080f;
+	private final float[] m = new float[16];
+
+	@Benchmark
+	public float[] perspective() {
+		Projection.perspective(m, 0, 45f, aspectRatio, 0.01f, 1000f);
+		return m;
+	}
+
+	@Benchmark
+	public float[] perspective2() {
+		Projection.perspective2(m, 0, 45f, aspectRatio, 0.01f, 1000f);
+		return m;
+	}
+
+	@Benchmark
+	public float[] frustum() {
+		Projection.frustum(m, 0, -aspectRatio, aspectRatio, -1f, 1f, 1f, 1000f);
+		return m;
+	}
+
+	@Benchmark
+	public float[] frustum2() {
+		Projection.frustum2(m, 0, -aspectRatio, aspectRatio, -1f, 1f, 1f, 1000f);
+		return m;
+	}
+}
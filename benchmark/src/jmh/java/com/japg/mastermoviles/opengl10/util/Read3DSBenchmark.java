@@ -0,0 +1,50 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/* Lectura completa de cada 3DS de res/raw (de cubo.3ds a mono_hd.3ds) ya en memoria:
+*  recorrido de los chunks, expansión de las mallas y, según la salida, normales suavizadas,
+*  soldado de vértices, orden para la caché y niveles de detalle. En un solo hilo.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Read3DSBenchmark {
+	@Param({"cubo", "esfera", "angel_halo", "body", "tierra", "esfera2", "t90a", "mono", "torus", "batmobile", "mono_hd"})
+	public String model;
+
+	@Param({BenchmarkModels.TRIANGLES, BenchmarkModels.SMOOTH, BenchmarkModels.INDEXED})
+	public String output;
+
+	private ByteBuffer data;
+
+	@Setup
+	public void setUp() throws IOException {
+		data = BenchmarkModels.load(model);
+	}
+
+	@Benchmark
+	public Object read() {
+		Resource3DSReader reader = BenchmarkModels.newReader(output, 1);
+		reader.read3DSFromBuffer(data.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+		return reader.dataBuffer;
+	}
+}
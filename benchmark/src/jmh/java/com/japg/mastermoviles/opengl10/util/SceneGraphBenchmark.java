@@ -0,0 +1,65 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/* SceneGraph.update() con un árbol aleatorio (siempre el mismo) de 10.000 nodos, cambiando
+*  la raíz (se recalcula todo), uno de cada cien nodos (sin la raíz), o ninguno.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SceneGraphBenchmark {
+	private static final int NODES = 10000;
+	private static final int SPARSE_STRIDE = 100;
+
+	@Param({"root", "sparse", "none"})
+	public String changed;
+
+	private SceneGraph scene;
+	private final float[] local = new float[MatrixHelper.MATRIX_FLOATS];
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(16);
+		scene = new SceneGraph();
+		scene.createNode(SceneGraph.NO_PARENT);
+		for (int n = 1; n < NODES; n++) {
+			scene.createNode(random.nextInt(n));
+		}
+		MatrixHelper.setIdentity(local, 0);
+		MatrixHelper.translate(local, 0, 0.5f, 0f, -1f);
+		MatrixHelper.rotate(local, 0, 10f, 0f, 1f, 0f);
+		for (int n = 0; n < NODES; n++) {
+			scene.setLocalMatrix(n, local, 0);
+		}
+		scene.update();
+	}
+
+	@Benchmark
+	public int update() {
+		if ("root".equals(changed)) {
+			scene.setLocalMatrix(0, local, 0);
+		} else if ("sparse".equals(changed)) {
+			for (int n = SPARSE_STRIDE - 1; n < NODES; n += SPARSE_STRIDE) {
+				scene.setLocalMatrix(n, local, 0);
+			}
+		}
+		return scene.update();
+	}
+}
@@ -0,0 +1,51 @@
+package com.japg.mastermoviles.opengl10.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/* Model3D.updatePosition de cada frame, con el destino moviéndose (como al girar con los
+*  botones) para que la rotación cambie siempre. Colgado de un nodo, además escribe la
+*  matriz local en el grafo de escena.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdatePositionBenchmark {
+	// Velocidad con la que el renderer acerca los modelos a su destino
+	private static final float SPEED = 0.06f;
+
+	@Param({"true", "false"})
+	public boolean attached;
+
+	private ModelTransform transform;
+
+	@Setup
+	public void setUp() {
+		transform = new ModelTransform(0f, 0f, -4f);
+		if (attached) {
+			SceneGraph scene = new SceneGraph();
+			transform.attach(scene, scene.createNode(SceneGraph.NO_PARENT));
+		}
+	}
+
+	@Benchmark
+	public float updatePosition() {
+		transform.rotateY(1f);
+		transform.updatePosition(SPEED);
+		return transform.getRotationY();
+	}
+}